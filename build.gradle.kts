@@ -6,8 +6,16 @@ plugins {
 group = "io.github.ageofwar"
 version = "1.0-SNAPSHOT"
 
+// the bytecode backend is written against the class-file API that ships inside java.base
+val classfileExports = listOf("--add-exports", "java.base/jdk.internal.classfile=ALL-UNNAMED")
+
 application {
     mainClass.set("io.github.ageofwar.Main")
+    applicationDefaultJvmArgs = classfileExports
+}
+
+tasks.withType<JavaCompile> {
+    options.compilerArgs.addAll(classfileExports)
 }
 
 repositories {
@@ -21,4 +29,21 @@ dependencies {
 
 tasks.test {
     useJUnitPlatform()
-}
\ No newline at end of file
+    jvmArgs(classfileExports)
+    environment("BIT_PATH", projectDir)
+}
+
+// microbenchmarks, run with `gradle bench`
+sourceSets {
+    create("bench") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+
+tasks.register<JavaExec>("bench") {
+    classpath = sourceSets["bench"].runtimeClasspath
+    mainClass.set(providers.gradleProperty("benchmark").orElse("io.github.ageofwar.bench.CallBenchmark"))
+    jvmArgs(classfileExports)
+    environment("BIT_PATH", projectDir)
+}
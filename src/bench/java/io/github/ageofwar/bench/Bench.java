@@ -0,0 +1,83 @@
+package io.github.ageofwar.bench;
+
+import io.github.ageofwar.bit.compiler.BytecodeCompiler;
+import io.github.ageofwar.bit.interpreter.Interpreter;
+import io.github.ageofwar.bit.interpreter.NodeInterpreter;
+import io.github.ageofwar.bit.packages.FilePackageResolver;
+import io.github.ageofwar.bit.parser.Parser;
+import io.github.ageofwar.bit.resolver.ResolvedBit;
+import io.github.ageofwar.bit.resolver.Resolver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// runs main of a Bit program on every engine: the best time of ITERATIONS runs after WARMUP ones and the fewest bytes a
+// run allocated. The first run must print the expected output, what the others print is not measured
+final class Bench {
+    static final String[] ENGINES = { "tree", "nodes", "bytecode" };
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 10;
+
+    private static final Map<String, Consumer<ResolvedBit.Program>> RUNNERS = Map.of(
+            "tree", program -> new Interpreter().interpret(program, "main"),
+            "nodes", program -> new NodeInterpreter().interpret(program, "main"),
+            "bytecode", program -> new BytecodeCompiler().run(program, "main")
+    );
+
+    record Measurement(long time, long allocated) {
+    }
+
+    private Bench() {
+    }
+
+    static ResolvedBit.Program resolve(String source) {
+        return new Resolver(new FilePackageResolver()).resolve(new Parser(new StringReader(source)).nextProgram());
+    }
+
+    // the label, then the time and the bytes allocated on each engine
+    static void run(String label, String source, String expected) {
+        var program = resolve(source);
+        System.out.println(label);
+        for (var engine : ENGINES) {
+            var measurement = measure(engine, program, expected);
+            System.out.printf("%-8s %8.2f ms %,14d bytes%n", engine, measurement.time() / 1e6, measurement.allocated());
+        }
+    }
+
+    static Measurement measure(String engine, ResolvedBit.Program program, String expected) {
+        var run = RUNNERS.get(engine);
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var thread = Thread.currentThread().threadId();
+        var out = System.out;
+        var printed = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(printed, true, StandardCharsets.UTF_8));
+            run.accept(program);
+            if (!printed.toString(StandardCharsets.UTF_8).equals(expected)) {
+                throw new IllegalStateException(engine + " printed " + printed.toString(StandardCharsets.UTF_8) + " instead of " + expected);
+            }
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            for (var i = 1; i < WARMUP; i++) {
+                run.accept(program);
+            }
+            var best = Long.MAX_VALUE;
+            var allocated = Long.MAX_VALUE;
+            for (var i = 0; i < ITERATIONS; i++) {
+                var bytes = threads.getThreadAllocatedBytes(thread);
+                var start = System.nanoTime();
+                run.accept(program);
+                best = Math.min(best, System.nanoTime() - start);
+                allocated = Math.min(allocated, threads.getThreadAllocatedBytes(thread) - bytes);
+            }
+            return new Measurement(best, allocated);
+        } finally {
+            System.setOut(out);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package io.github.ageofwar.bench;
+
+import java.util.Map;
+
+// calls per second of a doubly recursive fibonacci on every engine, once as a top-level function and once as a local
+// function, which is only reachable through its value
+public class CallBenchmark {
+    private static final int N = 30;
+    // fib(N) makes 2 * fib(N + 1) - 1 calls
+    private static final long CALLS = 2 * 1346269 - 1;
+
+    private static final Map<String, String> PROGRAMS = Map.of(
+            "top-level", """
+                    from format import *
+
+                    fun fib(n: Integer): Integer = if (n <= 1) n else fib(n - 1) + fib(n - 2)
+                    fun main() {
+                        println(fib(%d))
+                    }
+                    """.formatted(N),
+            "local", """
+                    from format import *
+
+                    fun main() {
+                        fun fib(n: Integer): Integer = if (n <= 1) n else fib(n - 1) + fib(n - 2)
+                        println(fib(%d))
+                    }
+                    """.formatted(N)
+    );
+
+    private static final String EXPECTED = "832040\n";
+
+    public static void main(String[] args) {
+        for (var engine : Bench.ENGINES) {
+            for (var name : new String[] { "top-level", "local" }) {
+                var measurement = Bench.measure(engine, Bench.resolve(PROGRAMS.get(name)), EXPECTED);
+                System.out.printf("%-8s %-9s %,15.0f calls/s%n", engine, name, CALLS * 1e9 / measurement.time());
+            }
+        }
+    }
+}
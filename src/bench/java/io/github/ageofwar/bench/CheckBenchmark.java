@@ -0,0 +1,86 @@
+package io.github.ageofwar.bench;
+
+import io.github.ageofwar.bit.packages.FilePackageResolver;
+import io.github.ageofwar.bit.parser.Bit;
+import io.github.ageofwar.bit.parser.Parser;
+import io.github.ageofwar.bit.resolver.ResolvedBit;
+import io.github.ageofwar.bit.resolver.Resolver;
+
+import java.io.StringReader;
+import java.util.concurrent.ForkJoinPool;
+
+// wall time to resolve a short script that prints a few values, importing format, collection and a grown helper
+// package of which it calls one function, checked strictly and lazily; no cache, every package is resolved every time
+public class CheckBenchmark {
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 20;
+    private static final int HELPERS = 400;
+
+    private static final String SCRIPT = """
+            from format import println
+            from collection import *
+            from helpers import *
+
+            fun main() {
+                xs = mutableListOf<Integer>()
+                xs.add(helper0(1))
+                xs.forEach(println)
+            }
+            """;
+
+    private static final String HELPER = """
+            type Pair$<A, B> = [ first: A, second: B ]
+
+            fun swap$<A>(pair: Pair$<A, String>): Pair$<String, A> {
+                [ first: pair.second, second: pair.first ]
+            }
+
+            fun helper$(n: Integer): Integer {
+                xs = mutableListOf<Integer | String>()
+                xs.add(n)
+                xs.add("a")
+                var total: Integer = 0
+                xs.forEach((x: Integer | String): None -> {
+                    if (x is Integer) {
+                        mut total = total + x * 2
+                    }
+                })
+                p = swap$<Integer>([ first: n, second: "s" ])
+                total + p.second
+            }
+
+            impl Pair$<Integer, Integer> {
+                fun sum$(): Integer {
+                    this.first + this.second
+                }
+            }
+
+            """;
+
+    public static void main(String[] args) {
+        var helpers = new StringBuilder("from collection import *\n\n");
+        for (var i = 0; i < HELPERS; i++) {
+            helpers.append(HELPER.replace("$", Integer.toString(i)));
+        }
+        var program = new Parser(new StringReader(SCRIPT)).nextProgram();
+
+        for (var mode : Resolver.Mode.values()) {
+            for (var i = 0; i < WARMUP; i++) {
+                resolve(program, helpers.toString(), mode);
+            }
+            var best = Long.MAX_VALUE;
+            var declarations = 0;
+            for (var i = 0; i < ITERATIONS; i++) {
+                var start = System.nanoTime();
+                declarations = resolve(program, helpers.toString(), mode).declarations().size();
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.printf("%-8s %,6d declarations %8.2f ms%n", mode.name().toLowerCase(), declarations, best / 1e6);
+        }
+    }
+
+    private static ResolvedBit.Program resolve(Bit.Program program, String helpers, Resolver.Mode mode) {
+        var files = new FilePackageResolver();
+        return new Resolver(path -> String.join(".", path).equals("helpers") ? new StringReader(helpers) : files.resolvePackage(path), null, ForkJoinPool.commonPool(), mode).resolve(program);
+    }
+}
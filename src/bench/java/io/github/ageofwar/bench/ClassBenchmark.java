@@ -0,0 +1,45 @@
+package io.github.ageofwar.bench;
+
+// time and bytes allocated by every engine for a loop creating small class instances with several methods and calling
+// them
+public class ClassBenchmark {
+    private static final String PROGRAM = """
+            from format import *
+
+            class Vector(x: Integer, y: Integer) {
+                var x: Integer = x
+                var y: Integer = y
+                fun dot(other: [ x: Integer, y: Integer ]): Integer = this.x * other.x + this.y * other.y
+                fun scale(k: Integer): None {
+                    mut this.x = this.x * k
+                    mut this.y = this.y * k
+                }
+                fun length(): Integer = this.x + this.y
+                fun flip(): None {
+                    tmp = this.x
+                    mut this.x = this.y
+                    mut this.y = tmp
+                }
+            }
+
+            fun main() {
+                var sum: Integer = 0
+                var i: Integer = 0
+                while (i < 100000) {
+                    v = new Vector(i, 1)
+                    w = new Vector(1, i)
+                    w.scale(2)
+                    w.flip()
+                    mut sum = sum + v.dot(w) + w.length()
+                    mut i = i + 1
+                }
+                println(sum)
+            }
+            """;
+
+    private static final String EXPECTED = "666666667000000\n";
+
+    public static void main(String[] args) {
+        Bench.run("class instances", PROGRAM, EXPECTED);
+    }
+}
@@ -0,0 +1,42 @@
+package io.github.ageofwar.bench;
+
+// time and bytes allocated by every engine for extension calls: forEach over a million elements, which calls the
+// generic forEachRemaining and a non generic extension of Integer for each of them, then a
+// loop of a million calls of the non generic extension alone
+public class ExtensionBenchmark {
+    private static final String PROGRAM = """
+            from format import *
+            from collection import *
+
+            type Small = Range<0, 1000000>
+
+            impl Integer {
+                fun twice(): Integer = this * 2
+            }
+
+            fun main() {
+                xs = mutableListOf<Small>()
+                var i: Integer = 0
+                while (i < 1000000) {
+                    xs.add(i as Small)
+                    mut i = i + 1
+                }
+                var sum: Integer = 0
+                xs.forEach((x: Small): None -> {
+                    mut sum = sum + x.twice()
+                })
+                mut i = 0
+                while (i < 1000000) {
+                    mut sum = sum + i.twice()
+                    mut i = i + 1
+                }
+                println(sum)
+            }
+            """;
+
+    private static final String EXPECTED = "1999998000000\n";
+
+    public static void main(String[] args) {
+        Bench.run("extension calls", PROGRAM, EXPECTED);
+    }
+}
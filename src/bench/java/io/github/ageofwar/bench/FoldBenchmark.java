@@ -0,0 +1,102 @@
+package io.github.ageofwar.bench;
+
+import io.github.ageofwar.bit.interpreter.NodeInterpreter;
+import io.github.ageofwar.bit.optimizer.ConstantFolder;
+import io.github.ageofwar.bit.optimizer.TreeSize;
+import io.github.ageofwar.bit.packages.FilePackageResolver;
+import io.github.ageofwar.bit.parser.Parser;
+import io.github.ageofwar.bit.resolver.ResolvedBit;
+import io.github.ageofwar.bit.resolver.Resolver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+// nodes of the stdlib and of the samples, with all their declarations resolved strictly, before and after the constant
+// folder, the time it takes and the time to run main on the node interpreter with the program as resolved and folded.
+// The last program is a loop over top-level constants and a disabled debug branch, run BIT_PATH=. from the root
+public class FoldBenchmark {
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 20;
+
+    private static final String STDLIB = """
+            from format import *
+            from collection import *
+            from io import *
+
+            fun main() {}
+            """;
+
+    private static final String CONSTANTS = """
+            from format import println
+
+            limit = 1000
+            step = 2
+            debug = false
+
+            fun main() {
+                var i: Integer = 0
+                var total: Integer = 0
+                while (i < 100000) {
+                    if (debug) {
+                        println(i)
+                    }
+                    mut total = total + step * limit + (limit as Integer)
+                    mut i = i + 1
+                }
+            }
+            """;
+
+    public static void main(String[] args) throws IOException {
+        var out = System.out;
+        report(out, "stdlib", new StringReader(STDLIB));
+        report(out, "test.bit", Files.newBufferedReader(Path.of("test.bit")));
+        report(out, "ranges.bit", Files.newBufferedReader(Path.of("ranges.bit")));
+        report(out, "constants", new StringReader(CONSTANTS));
+    }
+
+    private static void report(PrintStream out, String name, Reader source) throws IOException {
+        ResolvedBit.Program program;
+        try (source) {
+            program = new Resolver(new FilePackageResolver(), null, ForkJoinPool.commonPool(), Resolver.Mode.STRICT).resolve(new Parser(source).nextProgram());
+        }
+        var folder = new ConstantFolder();
+        for (var i = 0; i < WARMUP; i++) {
+            folder.fold(program);
+        }
+        var fold = Long.MAX_VALUE;
+        ResolvedBit.Program folded = null;
+        for (var i = 0; i < ITERATIONS; i++) {
+            var start = System.nanoTime();
+            folded = folder.fold(program);
+            fold = Math.min(fold, System.nanoTime() - start);
+        }
+        // the samples print, what they print is not measured
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            var before = run(program);
+            var after = run(folded);
+            out.printf("%-14s %,7d nodes -> %,7d %8.2f ms folding %9.2f ms -> %9.2f ms running%n", name, TreeSize.of(program), TreeSize.of(folded), fold / 1e6, before / 1e6, after / 1e6);
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static long run(ResolvedBit.Program program) {
+        for (var i = 0; i < WARMUP; i++) {
+            new NodeInterpreter().interpret(program, "main");
+        }
+        var best = Long.MAX_VALUE;
+        for (var i = 0; i < ITERATIONS; i++) {
+            var start = System.nanoTime();
+            new NodeInterpreter().interpret(program, "main");
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,37 @@
+package io.github.ageofwar.bench;
+
+// time and bytes allocated by every engine to format integers, strings, booleans and class instances the way print
+// does, each format going through the type tests of the standard formatter
+public class FormatBenchmark {
+    private static final String PROGRAM = """
+            from format import *
+
+            class Point(x: Integer) {
+                size: Integer = x
+
+                fun toString(): String {
+                    "point"
+                }
+            }
+
+            fun main() {
+                point = new Point(2)
+                var n: Integer = 0
+                var i: Integer = 0
+                while (i < 20000) {
+                    mut n = n + formatter.format(i).size()
+                    mut n = n + formatter.format("text").size()
+                    mut n = n + formatter.format(i < 10000).size()
+                    mut n = n + formatter.format(point).size()
+                    mut i = i + 1
+                }
+                println(n)
+            }
+            """;
+
+    private static final String EXPECTED = "358890\n";
+
+    public static void main(String[] args) {
+        Bench.run("formatting", PROGRAM, EXPECTED);
+    }
+}
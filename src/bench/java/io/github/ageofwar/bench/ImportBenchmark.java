@@ -0,0 +1,103 @@
+package io.github.ageofwar.bench;
+
+import io.github.ageofwar.bit.packages.FilePackageResolver;
+import io.github.ageofwar.bit.parser.Bit;
+import io.github.ageofwar.bit.parser.Parser;
+import io.github.ageofwar.bit.resolver.Resolver;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+// wall time to resolve a program importing layers of packages, each package importing two of the layer below, with a
+// pool of one thread and with one of a thread per core; no cache, every package is parsed and resolved every time
+public class ImportBenchmark {
+    private static final int WARMUP = 10;
+    private static final int ITERATIONS = 10;
+    private static final int LAYERS = 6;
+    private static final int WIDTH = 8;
+
+    private static final String BLOCK = """
+            type Pair$<A, B> = [ first: A, second: B ]
+
+            class Box$<T>(public item: T) {
+            }
+
+            fun swap$<A>(pair: Pair$<A, String>): Pair$<String, A> {
+                [ first: pair.second, second: pair.first ]
+            }
+
+            fun use$(): Integer {
+                xs = mutableListOf<Integer | String>()
+                xs.add(1)
+                xs.add("a")
+                p = swap$<Integer>([ first: 1, second: "s" ])
+                box = new Box$<MutableList<Integer | String>>(xs)
+                var n: Integer = 0
+                box.item.forEach((x: Integer | String): None -> {
+                    if (x is Integer) {
+                        mut n = n + x
+                    }
+                })
+                n + p.second
+            }
+
+            """;
+
+    public static void main(String[] args) throws IOException {
+        var packages = new HashMap<String, String>();
+        for (var layer = 0; layer < LAYERS; layer++) {
+            for (var i = 0; i < WIDTH; i++) {
+                packages.put(name(layer, i), source(layer, i));
+            }
+        }
+        var main = new StringBuilder();
+        for (var i = 0; i < WIDTH; i++) {
+            main.append("from ").append(name(LAYERS - 1, i)).append(" import *\n");
+        }
+        var program = new Parser(new StringReader(main.toString())).nextProgram();
+
+        var cores = Runtime.getRuntime().availableProcessors();
+        for (var parallelism : cores == 1 ? new int[] { 1 } : new int[] { 1, cores }) {
+            var pool = new ForkJoinPool(parallelism);
+            for (var i = 0; i < WARMUP; i++) {
+                resolve(program, packages, pool);
+            }
+            var best = Long.MAX_VALUE;
+            for (var i = 0; i < ITERATIONS; i++) {
+                var start = System.nanoTime();
+                resolve(program, packages, pool);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            pool.shutdown();
+            System.out.printf("%2d threads %8.2f ms%n", parallelism, best / 1e6);
+        }
+    }
+
+    private static String name(int layer, int i) {
+        return "layer" + layer + "_" + i;
+    }
+
+    private static String source(int layer, int i) {
+        var source = new StringBuilder("from collection import *\n");
+        if (layer > 0) {
+            source.append("from ").append(name(layer - 1, i)).append(" import *\n");
+            source.append("from ").append(name(layer - 1, (i + 1) % WIDTH)).append(" import *\n");
+        }
+        source.append("\n").append(BLOCK.replace("$", name(layer, i)));
+        if (layer > 0) {
+            source.append("fun link").append(name(layer, i)).append("(): Integer {\n    use").append(name(layer - 1, i)).append("() + use").append(name(layer - 1, (i + 1) % WIDTH)).append("()\n}\n");
+        }
+        return source.toString();
+    }
+
+    private static void resolve(Bit.Program program, Map<String, String> packages, ForkJoinPool pool) {
+        var files = new FilePackageResolver();
+        new Resolver(path -> {
+            var source = packages.get(String.join(".", path));
+            return source != null ? new StringReader(source) : files.resolvePackage(path);
+        }, null, pool).resolve(program);
+    }
+}
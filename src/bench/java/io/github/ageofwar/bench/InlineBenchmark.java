@@ -0,0 +1,57 @@
+package io.github.ageofwar.bench;
+
+import io.github.ageofwar.bit.optimizer.Inliner;
+import io.github.ageofwar.bit.optimizer.TreeShaker;
+import io.github.ageofwar.bit.optimizer.TreeSize;
+
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// a loop calling small helpers, an extension and println over a list with forEach, on every engine, as resolved and
+// with the calls inlined. Run BIT_PATH=. from the root
+public class InlineBenchmark {
+    private static final String PROGRAM = """
+            from format import *
+            from collection import *
+
+            fun clamp(n: Integer, low: Integer, high: Integer): Integer = if (n < low) low else if (n > high) high else n
+            fun square(n: Integer): Integer = n * n
+
+            impl Integer {
+                fun isEven(): Boolean = this / 2 * 2 == this
+            }
+
+            fun main() {
+                xs = mutableListOf<Integer>()
+                var i: Integer = 0
+                var total: Integer = 0
+                while (i < 20000) {
+                    mut total = total + clamp(square(i), 0, 1000)
+                    if (i.isEven()) {
+                        xs.add(i)
+                    }
+                    mut i = i + 1
+                }
+                xs.forEach(println)
+                println(total)
+            }
+            """;
+
+    // the even numbers below 20000, then the squares clamped to 1000 summed
+    private static final String EXPECTED = IntStream.range(0, 20000).filter(i -> i % 2 == 0).mapToObj(i -> i + "\n").collect(Collectors.joining())
+            + IntStream.range(0, 20000).map(i -> Math.min(i * i, 1000)).sum() + "\n";
+
+    public static void main(String[] args) {
+        var program = Bench.resolve(PROGRAM);
+        var inliner = new Inliner();
+        var inlined = new TreeShaker().shake(inliner.inline(program), "main");
+        program = new TreeShaker().shake(program, "main");
+        inliner.report().forEach((name, calls) -> System.out.printf("inlined %-16s at %d calls%n", name, calls));
+        System.out.printf("%,d nodes -> %,d%n", TreeSize.of(program), TreeSize.of(inlined));
+        for (var engine : Bench.ENGINES) {
+            var before = Bench.measure(engine, program, EXPECTED);
+            var after = Bench.measure(engine, inlined, EXPECTED);
+            System.out.printf("%-8s %8.2f ms -> %8.2f ms%n", engine, before.time() / 1e6, after.time() / 1e6);
+        }
+    }
+}
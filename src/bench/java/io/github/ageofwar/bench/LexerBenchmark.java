@@ -0,0 +1,87 @@
+package io.github.ageofwar.bench;
+
+import io.github.ageofwar.bit.lexer.Lexer;
+import io.github.ageofwar.bit.lexer.SpanLexer;
+import io.github.ageofwar.bit.lexer.TokenStream;
+
+import java.io.StringReader;
+import java.util.function.Function;
+
+// throughput of the streaming lexer and of the span lexer on a generated source of about 10 MB: the span lexer is
+// measured scanning spans only, and making every token as the parser asks for them
+public class LexerBenchmark {
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 10;
+    private static final int SIZE = 10 << 20;
+
+    private static final String BLOCK = """
+            from collection import *
+
+            // a block of declarations repeated under different names
+            type Pair$<A, B> = [ first: A, second: B ]
+
+            class Box$<T>(public item: T) {
+                public size: Integer = 0
+
+                fun toString(): String {
+                    "box\\t$"
+                }
+            }
+
+            fun use$(xs: MutableList<Integer | String>, limit: Integer): Integer {
+                var n: Integer = 0
+                var i: Integer = 0
+                while (i < limit and i >= -1) {
+                    if (xs.get(i) is Integer) {
+                        mut n = n + xs.get(i) * 2 - 1 / 3
+                    } else {
+                        mut n = n + 1
+                    }
+                    mut i = i + 1
+                }
+                xs.forEach((x: Integer | String): None -> {
+                    n == 0 | n <= 10 & true
+                })
+                n
+            }
+
+            """;
+
+    public static void main(String[] args) {
+        var builder = new StringBuilder(SIZE + BLOCK.length());
+        for (var i = 0; builder.length() < SIZE; i++) {
+            builder.append(BLOCK.replace("$", Integer.toString(i)));
+        }
+        var source = builder.toString();
+        var chars = source.toCharArray();
+
+        run("stream", source, text -> count(new Lexer(new StringReader(text))));
+        run("spans", source, text -> {
+            var lexer = new SpanLexer(chars);
+            var count = 0;
+            while (lexer.next() != null) count++;
+            return count;
+        });
+        run("tokens", source, text -> count(new SpanLexer(chars)));
+    }
+
+    private static void run(String name, String source, Function<String, Integer> lex) {
+        var tokens = 0;
+        for (var i = 0; i < WARMUP; i++) {
+            tokens = lex.apply(source);
+        }
+        var best = Long.MAX_VALUE;
+        for (var i = 0; i < ITERATIONS; i++) {
+            var start = System.nanoTime();
+            lex.apply(source);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-8s %,10d tokens %8.2f ms %8.1f MB/s%n", name, tokens, best / 1e6, source.length() / (best / 1e9) / (1 << 20));
+    }
+
+    private static int count(TokenStream lexer) {
+        var count = 0;
+        while (lexer.nextToken() != null) count++;
+        return count;
+    }
+}
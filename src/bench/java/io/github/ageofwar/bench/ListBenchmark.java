@@ -0,0 +1,44 @@
+package io.github.ageofwar.bench;
+
+// time and bytes allocated by every engine to fill a list and walk it, once with elements the resolver proves fit in a
+// long and once with elements that need boxed storage
+public class ListBenchmark {
+    private static final String PROGRAM = """
+            from format import *
+            from collection import *
+
+            type Small = Range<0, 1000000>
+
+            fun main() {
+                xs = mutableListOf<ELEMENT>()
+                var i: Integer = 0
+                while (i < 100000) {
+                    xs.add(i as Small)
+                    mut i = i + 1
+                }
+                var sum: Integer = 0
+                mut i = 0
+                while (i < xs.size()) {
+                    x = xs.get(i)
+                    if (x is Small) {
+                        mut sum = sum + x
+                    }
+                    mut i = i + 1
+                }
+                xs.forEach((x: ELEMENT): None -> {
+                    if (x is Small) {
+                        mut sum = sum + x
+                    }
+                })
+                println(sum)
+            }
+            """;
+
+    private static final String EXPECTED = "9999900000\n";
+
+    public static void main(String[] args) {
+        for (var element : new String[] { "Small", "Small | String" }) {
+            Bench.run("MutableList<" + element + ">", PROGRAM.replace("ELEMENT", element), EXPECTED);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.ageofwar.bench;
+
+import io.github.ageofwar.bit.lexer.SpanLexer;
+import io.github.ageofwar.bit.parser.Parser;
+
+// throughput of the parser on a generated source of about 4 MB, heavy on what makes it look ahead and backtrack:
+// generic calls next to comparisons, lambdas next to grouped expressions and function types next to grouped types
+public class ParserBenchmark {
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 10;
+    private static final int SIZE = 4 << 20;
+
+    private static final String HEADER = """
+            from collection import *
+
+            """;
+
+    private static final String BLOCK = """
+            type Pair$<A, B> = [ first: A, second: B ]
+            type Handler$ = (Integer | String) -> None
+            type Grouped$ = (Integer | String) & Any
+
+            class Box$<T>(public item: T) {
+                public size: Integer = 0
+
+                fun toString(): String {
+                    "box\\t$"
+                }
+            }
+
+            fun use$(xs: MutableList<Integer | String>, limit: Integer): Integer {
+                var n: Integer = 0
+                var i: Integer = 0
+                while (i < limit and i >= 0) {
+                    if (xs.get(i) is Integer) {
+                        mut n = n + (xs.get(i) as Integer) * 2 - (1 + n) / 3
+                    } else {
+                        mut n = n + 1
+                    }
+                    mut i = i + 1
+                }
+                p = swap$<Integer>([ first: 1, second: "s" ])
+                box = new Box$<MutableList<Integer | String>>(xs)
+                xs.forEach((x: Integer | String): None -> {
+                    n == 0 or n <= 10 and true
+                })
+                n
+            }
+
+            fun swap$<A>(pair: Pair$<A, String>): Pair$<String, A> {
+                [ first: pair.second, second: pair.first ]
+            }
+
+            """;
+
+    public static void main(String[] args) {
+        var builder = new StringBuilder(SIZE + BLOCK.length()).append(HEADER);
+        for (var i = 0; builder.length() < SIZE; i++) {
+            builder.append(BLOCK.replace("$", Integer.toString(i)));
+        }
+        var source = builder.toString().toCharArray();
+
+        var declarations = 0;
+        for (var i = 0; i < WARMUP; i++) {
+            declarations = new Parser(new SpanLexer(source)).nextProgram().declarations().size();
+        }
+        var best = Long.MAX_VALUE;
+        for (var i = 0; i < ITERATIONS; i++) {
+            var start = System.nanoTime();
+            new Parser(new SpanLexer(source)).nextProgram();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-8s %,10d declarations %8.2f ms %8.1f MB/s%n", "parse", declarations, best / 1e6, source.length / (best / 1e9) / (1 << 20));
+    }
+}
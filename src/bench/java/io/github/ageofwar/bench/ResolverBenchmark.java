@@ -0,0 +1,117 @@
+package io.github.ageofwar.bench;
+
+import io.github.ageofwar.bit.packages.FilePackageResolver;
+import io.github.ageofwar.bit.parser.Bit;
+import io.github.ageofwar.bit.parser.Parser;
+import io.github.ageofwar.bit.resolver.Resolver;
+import io.github.ageofwar.bit.types.Types;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+
+// time and bytes allocated to resolve a program heavy on types: generic structs and classes, lists of the stdlib and
+// lambdas over them, wide unions of structs and of integer literals, repeated under different names
+public class ResolverBenchmark {
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 20;
+    private static final int COPIES = 40;
+    private static final int VARIANTS = 16;
+    private static final int CODES = 48;
+
+    private static final String HEADER = """
+            from collection import *
+            from format import *
+
+            """;
+
+    private static final String BLOCK = """
+            type Pair$<A, B> = [ first: A, second: B ]
+
+            class Box$<T>(public item: T) {
+            }
+
+            fun swap$<A>(pair: Pair$<A, String>): Pair$<String, A> {
+                [ first: pair.second, second: pair.first ]
+            }
+
+            fun use$(): Integer {
+                xs = mutableListOf<Integer | String>()
+                xs.add(1)
+                xs.add("a")
+                p = swap$<Integer>([ first: 1, second: "s" ])
+                box = new Box$<MutableList<Integer | String>>(xs)
+                var n: Integer = 0
+                box.item.forEach((x: Integer | String): None -> {
+                    if (x is Integer) {
+                        mut n = n + x
+                    }
+                })
+                n + p.second
+            }
+
+            fun event$(i: Integer): Event$ {
+                EVENTS
+            }
+
+            fun code$(i: Integer): Code$ {
+                CODES
+            }
+
+            """;
+
+    public static void main(String[] args) throws IOException {
+        var source = new StringBuilder(HEADER);
+        for (var i = 0; i < COPIES; i++) {
+            source.append("type Event").append(i).append(" = ");
+            for (var variant = 0; variant < VARIANTS; variant++) {
+                source.append(variant == 0 ? "" : " | ").append("[ kind: ").append(variant).append(", payload: ").append(variant % 2 == 0 ? "Integer" : "String").append(" ]");
+            }
+            source.append("\n").append("type Code").append(i).append(" = ");
+            for (var code = 0; code < CODES; code++) {
+                source.append(code == 0 ? "" : " | ").append(2 * code);
+            }
+            source.append("\n\n").append(BLOCK.replace("$", Integer.toString(i)).replace("EVENTS", events()).replace("CODES", codes()));
+        }
+        var program = new Parser(new StringReader(source.toString())).nextProgram();
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var thread = Thread.currentThread().threadId();
+        for (var i = 0; i < WARMUP; i++) {
+            resolve(program);
+        }
+        var best = Long.MAX_VALUE;
+        var allocated = Long.MAX_VALUE;
+        for (var i = 0; i < ITERATIONS; i++) {
+            var bytes = threads.getThreadAllocatedBytes(thread);
+            var start = System.nanoTime();
+            resolve(program);
+            best = Math.min(best, System.nanoTime() - start);
+            allocated = Math.min(allocated, threads.getThreadAllocatedBytes(thread) - bytes);
+        }
+        System.out.printf("%-8s %8.2f ms %,14d bytes%n", "resolve", best / 1e6, allocated);
+        System.out.println("subtype cache: " + Types.subtypeStatistics());
+    }
+
+    // an if chain with a struct of every variant in its branches, so that its type is a union as wide as the event type
+    private static String events() {
+        var events = new StringBuilder();
+        for (var variant = 0; variant < VARIANTS; variant++) {
+            var payload = variant % 2 == 0 ? "i" : "\"x\"";
+            events.append(variant == VARIANTS - 1 ? "" : "if (i == " + variant + ") ").append("[ kind: ").append(variant).append(", payload: ").append(payload).append(" ]").append(variant == VARIANTS - 1 ? "" : " else ");
+        }
+        return events.toString();
+    }
+
+    // an if chain over every literal of the code type, apart so that they do not merge into a range
+    private static String codes() {
+        var codes = new StringBuilder();
+        for (var code = 1; code < CODES; code++) {
+            codes.append("if (i == ").append(code).append(") ").append(2 * code).append(" else ");
+        }
+        return codes.append("0").toString();
+    }
+
+    private static void resolve(Bit.Program program) throws IOException {
+        new Resolver(new FilePackageResolver()).resolve(program);
+    }
+}
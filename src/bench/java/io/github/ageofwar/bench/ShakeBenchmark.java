@@ -0,0 +1,93 @@
+package io.github.ageofwar.bench;
+
+import io.github.ageofwar.bit.interpreter.Environment;
+import io.github.ageofwar.bit.interpreter.NodeInterpreter;
+import io.github.ageofwar.bit.optimizer.TreeShaker;
+import io.github.ageofwar.bit.packages.FilePackageResolver;
+import io.github.ageofwar.bit.parser.Parser;
+import io.github.ageofwar.bit.resolver.ResolvedBit;
+import io.github.ageofwar.bit.resolver.Resolver;
+
+import java.io.StringReader;
+
+// startup of a script calling one function of a grown helper package full of classes, formatters and tables built at
+// the top level: the time to compile and run the declarations of the program, before main, and the heap they retain,
+// with every declaration and with those left by the tree shaker
+public class ShakeBenchmark {
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 20;
+    private static final int HELPERS = 300;
+
+    private static final String SCRIPT = """
+            from format import println
+            from helpers import *
+
+            fun main() {
+                println(helper0(1))
+            }
+            """;
+
+    private static final String HELPER = """
+            class Formatter$(public prefix: String) {
+                public count: Integer = 0
+
+                fun format(n: Integer): String {
+                    if (n > 0) this.prefix else "none"
+                }
+            }
+
+            formatter$ = new Formatter$("helper$")
+            table$ = [ 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 ]
+            limits$ = [ low: 0, high: 100, name: "limits$" ]
+
+            fun helper$(n: Integer): Integer {
+                if (n > limits$.high) limits$.high else n * 2
+            }
+
+            """;
+
+    public static void main(String[] args) {
+        var helpers = new StringBuilder("from collection import *\n\n");
+        for (var i = 0; i < HELPERS; i++) {
+            helpers.append(HELPER.replace("$", Integer.toString(i)));
+        }
+        var files = new FilePackageResolver();
+        var resolver = new Resolver(path -> String.join(".", path).equals("helpers") ? new StringReader(helpers.toString()) : files.resolvePackage(path));
+        var program = resolver.resolve(new Parser(new StringReader(SCRIPT)).nextProgram());
+        var shaken = new TreeShaker().shake(program, "main");
+
+        measure("all", program);
+        measure("shaken", shaken);
+    }
+
+    private static void measure(String name, ResolvedBit.Program program) {
+        for (var i = 0; i < WARMUP; i++) {
+            start(program);
+        }
+        var best = Long.MAX_VALUE;
+        for (var i = 0; i < ITERATIONS; i++) {
+            var start = System.nanoTime();
+            start(program);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        var before = used();
+        var environment = start(program);
+        var retained = used() - before;
+        System.out.printf("%-8s %,6d declarations %,6d globals %8.2f ms %,12d bytes retained%n", name, program.declarations().size(), program.variables(), best / 1e6, retained);
+        if (environment == null) throw new AssertionError();
+    }
+
+    private static Environment start(ResolvedBit.Program program) {
+        var environment = Environment.init(program.variables());
+        new NodeInterpreter().interpret(program, environment);
+        return environment;
+    }
+
+    private static long used() {
+        var runtime = Runtime.getRuntime();
+        for (var i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,30 @@
+package io.github.ageofwar.bench;
+
+// time and bytes allocated by every engine for a loop that walks the characters of a string literal
+public class StringBenchmark {
+    private static final String PROGRAM = """
+            from format import *
+            from collection import *
+
+            fun main() {
+                var n: Integer = 0
+                var i: Integer = 0
+                while (i < 2000) {
+                    s = "the quick brown fox jumps over the lazy dog"
+                    s.forEach((c: String): None -> {
+                        if (c == "o") {
+                            mut n = n + s.size()
+                        }
+                    })
+                    mut i = i + 1
+                }
+                println(n)
+            }
+            """;
+
+    private static final String EXPECTED = "344000\n";
+
+    public static void main(String[] args) {
+        Bench.run("string characters", PROGRAM, EXPECTED);
+    }
+}
@@ -0,0 +1,41 @@
+package io.github.ageofwar.bench;
+
+// time and bytes allocated by every engine for field reads, field writes and method calls on class instances and
+// struct literals, through both exact and wider static types
+public class StructBenchmark {
+    private static final String PROGRAM = """
+            from format import *
+
+            class Point(x: Integer, y: Integer) {
+                var x: Integer = x
+                var y: Integer = y
+                fun length(): Integer = this.x + this.y
+            }
+
+            type Result = [ error: Boolean, value: Integer ]
+
+            fun value(result: [ value: Integer ]): Integer = result.value
+
+            fun x(point: [ x: Integer ]): Integer = point.x
+
+            fun main() {
+                p = new Point(1, 2)
+                var sum: Integer = 0
+                var i: Integer = 0
+                while (i < 100000) {
+                    mut p.x = i
+                    mut sum = sum + p.length()
+                    r: Result = [ error: false, value: i ]
+                    mut sum = sum + value(r) + x(p) + x([ x: i, tag: true ])
+                    mut i = i + 1
+                }
+                println(sum)
+            }
+            """;
+
+    private static final String EXPECTED = "20000000000\n";
+
+    public static void main(String[] args) {
+        Bench.run("fields and methods", PROGRAM, EXPECTED);
+    }
+}
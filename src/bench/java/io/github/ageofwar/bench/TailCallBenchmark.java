@@ -0,0 +1,30 @@
+package io.github.ageofwar.bench;
+
+// recursion a million calls deep on every engine, all in tail position: a function calling itself, two functions
+// calling each other through a function value and an extension calling itself. Run BIT_PATH=. from the root
+public class TailCallBenchmark {
+    private static final String PROGRAM = """
+            from format import *
+
+            fun sum(n: Integer, acc: Integer): Integer = if (n == 0) acc else sum(n - 1, acc + n)
+
+            fun isOdd(n: Integer, isEven: (Integer) -> Boolean): Boolean = if (n == 0) false else isEven(n - 1)
+            fun isEven(n: Integer): Boolean = if (n == 0) true else isOdd(n - 1, isEven)
+
+            impl Integer {
+                fun countdown(acc: Integer): Integer = if (this == 0) acc else (this - 1).countdown(acc + 1)
+            }
+
+            fun main() {
+                println(sum(1000000, 0))
+                println(isEven(1000000))
+                println(1000000.countdown(0))
+            }
+            """;
+
+    private static final String EXPECTED = "500000500000\ntrue\n1000000\n";
+
+    public static void main(String[] args) {
+        Bench.run("tail calls", PROGRAM, EXPECTED);
+    }
+}
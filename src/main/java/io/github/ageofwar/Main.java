@@ -1,23 +1,88 @@
 package io.github.ageofwar;
 
+import io.github.ageofwar.bit.compiler.BytecodeCompiler;
 import io.github.ageofwar.bit.interpreter.Interpreter;
+import io.github.ageofwar.bit.interpreter.NodeInterpreter;
+import io.github.ageofwar.bit.optimizer.ConstantFolder;
+import io.github.ageofwar.bit.optimizer.Inliner;
+import io.github.ageofwar.bit.optimizer.TreeShaker;
 import io.github.ageofwar.bit.packages.FilePackageResolver;
 import io.github.ageofwar.bit.parser.Parser;
+import io.github.ageofwar.bit.resolver.PackageCache;
 import io.github.ageofwar.bit.resolver.Resolver;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
 
 public class Main {
+    // usage: [--engine=nodes|tree|bytecode] [--check=lazy|strict] [--cache=<directory>|--no-cache] [--no-shake] [--no-fold]
+    //        [--inline-size=<nodes>|--no-inline] [--inline-report] [file]
+    // imported packages are cached in BIT_CACHE, or in bit-cache under the temporary directory; lazy checking only
+    // resolves the imported functions the program reaches, strict checking resolves all of them and fills the cache
+    // --no-shake keeps the declarations main doesn't reach, --no-fold doesn't compute what the types already know
+    // --inline-size bounds the functions inlined at their calls, --no-inline inlines none; the tree engine never inlines
+    // --inline-report lists the inlined functions on the standard error
     public static void main(String[] args) throws IOException {
-        try (var reader = Files.newBufferedReader(Paths.get("test.bit"))) {
+        var engine = "nodes";
+        var mode = Resolver.Mode.LAZY;
+        var file = "test.bit";
+        var cache = PackageCache.defaultCache();
+        var shake = true;
+        var fold = true;
+        var inlineSize = Inliner.FUNCTION_SIZE;
+        var inlineReport = false;
+        for (var arg : args) {
+            if (arg.startsWith("--engine=")) {
+                engine = arg.substring("--engine=".length());
+            } else if (arg.startsWith("--check=")) {
+                mode = Resolver.Mode.valueOf(arg.substring("--check=".length()).toUpperCase());
+            } else if (arg.startsWith("--cache=")) {
+                cache = new PackageCache(Path.of(arg.substring("--cache=".length())));
+            } else if (arg.equals("--no-cache")) {
+                cache = null;
+            } else if (arg.equals("--no-shake")) {
+                shake = false;
+            } else if (arg.equals("--no-fold")) {
+                fold = false;
+            } else if (arg.startsWith("--inline-size=")) {
+                inlineSize = Integer.parseInt(arg.substring("--inline-size=".length()));
+            } else if (arg.equals("--no-inline")) {
+                inlineSize = -1;
+            } else if (arg.equals("--inline-report")) {
+                inlineReport = true;
+            } else {
+                file = arg;
+            }
+        }
+        try (var reader = Files.newBufferedReader(Paths.get(file))) {
             var parser = new Parser(reader);
             var program = parser.nextProgram();
-            var resolver = new Resolver(new FilePackageResolver());
+            var resolver = new Resolver(new FilePackageResolver(), cache, ForkJoinPool.commonPool(), mode);
             var resolvedProgram = resolver.resolve(program);
-            var interpreter = new Interpreter();
-            interpreter.interpret(resolvedProgram, "main");
+            // the tree engine dispatches every statement through a type switch, the locals an inlined body binds cost it
+            // more than the call did
+            if (inlineSize >= 0 && !engine.equals("tree")) {
+                var inliner = new Inliner(inlineSize, inlineSize);
+                resolvedProgram = inliner.inline(resolvedProgram);
+                if (inlineReport) {
+                    inliner.report().forEach((name, calls) -> System.err.println("inlined " + name + " at " + calls + " calls"));
+                }
+            }
+            if (shake) {
+                resolvedProgram = new TreeShaker().shake(resolvedProgram, "main");
+            }
+            if (fold) {
+                resolvedProgram = new ConstantFolder().fold(resolvedProgram);
+            }
+            switch (engine) {
+                case "nodes" -> new NodeInterpreter().interpret(resolvedProgram, "main");
+                case "tree" -> new Interpreter().interpret(resolvedProgram, "main");
+                case "bytecode" -> new BytecodeCompiler().run(resolvedProgram, "main");
+                default -> throw new IllegalArgumentException("Unknown engine: " + engine);
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,131 @@
+package io.github.ageofwar.bit.compiler;
+
+import io.github.ageofwar.bit.interpreter.BitCallable;
+import io.github.ageofwar.bit.interpreter.Environment;
+import io.github.ageofwar.bit.resolver.ResolvedBit;
+import jdk.internal.classfile.ClassHierarchyResolver;
+
+import java.lang.constant.ClassDesc;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// lowers a resolved program into hidden classes: functions and extensions become static methods, every class
+// declaration gets a class of its own holding its constructor and methods
+public class BytecodeCompiler {
+    private static final String PACKAGE = BytecodeCompiler.class.getPackageName() + ".";
+
+    private final List<Unit> units = new ArrayList<>();
+    // top-level functions and extensions, which can be invoked statically
+    private final Map<Integer, Target> targets = new HashMap<>();
+    private Environment environment;
+
+    public void run(ResolvedBit.Program program, String mainFunctionName) {
+        var environment = Environment.init(program.variables());
+        try {
+            compile(program, environment).invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+
+        ResolvedBit.Symbol mainSymbol = null;
+        for (var declaration : program.declarations()) {
+            if (declaration.name() != null && declaration.name().name().equals(mainFunctionName)) {
+                mainSymbol = declaration.name();
+                break;
+            }
+        }
+        if (mainSymbol == null) {
+            throw new RuntimeException("Main function not found: " + mainFunctionName);
+        }
+        var main = (BitCallable) environment.get(mainSymbol);
+        main.call0();
+    }
+
+    // returns a handle running the top-level declarations of the program against the given environment
+    public java.lang.invoke.MethodHandle compile(ResolvedBit.Program program, Environment environment) {
+        this.environment = environment;
+        var main = newUnit("Program");
+        for (var declaration : program.declarations()) {
+            switch (declaration) {
+                case ResolvedBit.Declaration.Function function -> targets.put(function.name().id(), new Target(main, main.newName("function"), bindings(function).size()));
+                case ResolvedBit.Declaration.Implementation implementation -> {
+                    for (var extension : implementation.extensions()) {
+                        targets.put(extension.name().id(), new Target(main, main.newName("extension"), bindings(implementation, extension).size()));
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        MethodCompiler.main(this, main, "run", program.declarations());
+        try {
+            var lookup = MethodHandles.lookup();
+            var resolver = ClassHierarchyResolver.ofClassLoading(lookup);
+            // defining a unit may discover the classes declared in it
+            for (var i = 0; i < units.size(); i++) {
+                units.get(i).define(lookup, resolver);
+            }
+            for (var unit : units) {
+                unit.link();
+            }
+            return main.lookup().findStatic(main.lookup().lookupClass(), "run", MethodType.methodType(void.class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load compiled program", e);
+        }
+    }
+
+    Unit newUnit(String name) {
+        var unit = new Unit(ClassDesc.of(PACKAGE + name));
+        units.add(unit);
+        return unit;
+    }
+
+    Target target(ResolvedBit.Symbol symbol) {
+        if (symbol.storage() != ResolvedBit.Symbol.Storage.GLOBAL) return null;
+        return targets.get(symbol.id());
+    }
+
+    Environment environment() {
+        return environment;
+    }
+
+    // arguments, generics and receivers are bound positionally, in the order the interpreter passes them
+
+    static List<ResolvedBit.Symbol> bindings(ResolvedBit.Declaration.Function function) {
+        var bindings = new ArrayList<ResolvedBit.Symbol>();
+        function.generics().forEach(generic -> bindings.add(generic.name()));
+        function.parameters().forEach(parameter -> bindings.add(parameter.name()));
+        return bindings;
+    }
+
+    static List<ResolvedBit.Symbol> bindings(ResolvedBit.Expression.Function function) {
+        var bindings = new ArrayList<ResolvedBit.Symbol>();
+        function.generics().forEach(generic -> bindings.add(generic.name()));
+        function.parameters().forEach(parameter -> bindings.add(parameter.name()));
+        return bindings;
+    }
+
+    static List<ResolvedBit.Symbol> bindings(ResolvedBit.Declaration.Implementation implementation, ResolvedBit.Declaration.Implementation.Function function) {
+        var bindings = new ArrayList<ResolvedBit.Symbol>();
+        bindings.add(function.thisSymbol());
+        implementation.generics().forEach(generic -> bindings.add(generic.name()));
+        function.generics().forEach(generic -> bindings.add(generic.name()));
+        function.parameters().forEach(parameter -> bindings.add(parameter.name()));
+        return bindings;
+    }
+
+    static int slot(ResolvedBit.Symbol symbol) {
+        if (symbol.storage() != ResolvedBit.Symbol.Storage.LOCAL) {
+            throw new IllegalStateException("Expected a local binding: " + symbol);
+        }
+        return symbol.slot();
+    }
+
+    record Target(Unit unit, String name, int arity) {}
+}
@@ -0,0 +1,97 @@
+package io.github.ageofwar.bit.compiler;
+
+import io.github.ageofwar.bit.interpreter.BitCallable;
+
+import java.lang.invoke.MethodHandle;
+
+// the value of a compiled function: the function itself, its name$call adapter and the values it captured. calls
+// matching the arity go straight to the function, any other shape through the argument array. A compiled function
+// ending with a call of another one returns a TailCall instead, which the call runs once the function has returned
+final class Closure implements BitCallable {
+    private final Object[] captured;
+    private final MethodHandle function;
+    private final MethodHandle spread;
+    private final int arity;
+
+    Closure(Object[] captured, MethodHandle function, MethodHandle spread, int arity) {
+        this.captured = captured;
+        this.function = function;
+        this.spread = spread;
+        this.arity = arity;
+    }
+
+    @Override
+    public Object call0() {
+        if (arity != 0) return call();
+        try {
+            return result((Object) function.invokeExact(captured));
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public Object call1(Object a) {
+        if (arity != 1) return call(a);
+        try {
+            return result((Object) function.invokeExact(captured, a));
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public Object call2(Object a, Object b) {
+        if (arity != 2) return call(a, b);
+        try {
+            return result((Object) function.invokeExact(captured, a, b));
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public Object call3(Object a, Object b, Object c) {
+        if (arity != 3) return call(a, b, c);
+        try {
+            return result((Object) function.invokeExact(captured, a, b, c));
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public Object call4(Object a, Object b, Object c, Object d) {
+        if (arity != 4) return call(a, b, c, d);
+        try {
+            return result((Object) function.invokeExact(captured, a, b, c, d));
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public Object call(Object... args) {
+        try {
+            return result((Object) spread.invokeExact(captured, args));
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // the value of a call, once the tail calls it returned have run
+    static Object result(Object value) throws Throwable {
+        while (value instanceof TailCall(var closure, var args)) {
+            value = (Object) closure.spread.invokeExact(closure.captured, args);
+        }
+        return value;
+    }
+
+    static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException runtimeException) return runtimeException;
+        if (e instanceof Error error) throw error;
+        return new RuntimeException(e);
+    }
+
+    record TailCall(Closure closure, Object[] args) {}
+}
@@ -0,0 +1,132 @@
+package io.github.ageofwar.bit.compiler;
+
+import io.github.ageofwar.bit.interpreter.BitCallable;
+import io.github.ageofwar.bit.interpreter.FieldCache;
+import io.github.ageofwar.bit.interpreter.Shape;
+import io.github.ageofwar.bit.interpreter.Struct;
+import io.github.ageofwar.bit.interpreter.TypeBindings;
+import io.github.ageofwar.bit.interpreter.TypeTest;
+import io.github.ageofwar.bit.types.Type;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
+import java.util.HashMap;
+
+// operations the generated code calls instead of inlining them
+final class Intrinsics {
+    private Intrinsics() {
+    }
+
+    static BitCallable closure(Object[] captured, MethodHandle function, MethodHandle spread, int arity) {
+        return new Closure(captured, function, spread, arity);
+    }
+
+    // a compiled function called by a tail call is left for the caller to run, any other function is called here
+    static Object tailCall(Object function, Object[] args) {
+        if (function instanceof Closure closure) {
+            return new Closure.TailCall(closure, args);
+        }
+        return ((BitCallable) function).callWith(args);
+    }
+
+    // a tail call of a member: a method of the receiver class with the receiver, a function stored in a field without it
+    static Object tailCallMember(FieldCache cache, Object receiver, Object[] args) {
+        var method = cache.method(receiver);
+        if (method == null) {
+            return tailCall(cache.read(receiver), args);
+        }
+        var all = new Object[1 + args.length];
+        all[0] = receiver;
+        System.arraycopy(args, 0, all, 1, args.length);
+        return tailCall(method, all);
+    }
+
+    // the value of a direct call of a compiled function
+    static Object result(Object value) {
+        try {
+            return Closure.result(value);
+        } catch (Throwable e) {
+            throw Closure.rethrow(e);
+        }
+    }
+
+    // a mutable local captured by a closure lives in a one-element array shared by both frames
+    static Object[] cell(Object value) {
+        return new Object[] { value };
+    }
+
+    static Struct struct(Shape shape, Object[] values) {
+        return new Struct(shape, values);
+    }
+
+    static Shape shape(String[] fields, String[] methodNames, Object[] methods) {
+        var table = new HashMap<String, BitCallable>();
+        for (var i = 0; i < methodNames.length; i++) {
+            table.put(methodNames[i], (BitCallable) methods[i]);
+        }
+        return Shape.of(Arrays.asList(fields), table);
+    }
+
+    // the constructor of a class creates the instance and lets construct fill its fields
+    static BitCallable constructor(Shape shape, BitCallable construct) {
+        return new BitCallable() {
+            @Override
+            public Object call0() {
+                return construct.call1(new Struct(shape));
+            }
+
+            @Override
+            public Object call1(Object a) {
+                return construct.call2(new Struct(shape), a);
+            }
+
+            @Override
+            public Object call2(Object a, Object b) {
+                return construct.call3(new Struct(shape), a, b);
+            }
+
+            @Override
+            public Object call3(Object a, Object b, Object c) {
+                return construct.call4(new Struct(shape), a, b, c);
+            }
+
+            @Override
+            public Object call(Object... args) {
+                var all = new Object[1 + args.length];
+                all[0] = new Struct(shape);
+                System.arraycopy(args, 0, all, 1, args.length);
+                return construct.callWith(all);
+            }
+        };
+    }
+
+    static Object extension(Object receiver, Object extension, Object[] generics) {
+        return BitCallable.bind((BitCallable) extension, receiver, generics);
+    }
+
+    static Type reify(Object bound, Type generic) {
+        return bound instanceof Type type ? type : generic;
+    }
+
+    static boolean isAssignable(Object value, TypeTest test, int[] ids, Object[] values) {
+        return test.test(value, bindings(ids, values));
+    }
+
+    static Object cast(Object value, TypeTest test, int[] ids, Object[] values) {
+        if (!test.test(value, bindings(ids, values))) {
+            throw new RuntimeException("Cannot cast " + value + " to type " + test.type());
+        }
+        return value;
+    }
+
+    // a test of a type without variables never looks at the bindings
+    private static TypeBindings bindings(int[] ids, Object[] values) {
+        if (ids == null) return null;
+        return symbol -> {
+            for (var i = 0; i < ids.length; i++) {
+                if (ids[i] == symbol.id()) return values[i];
+            }
+            return null;
+        };
+    }
+}
@@ -0,0 +1,970 @@
+package io.github.ageofwar.bit.compiler;
+
+import io.github.ageofwar.bit.interpreter.BitString;
+import io.github.ageofwar.bit.interpreter.FieldCache;
+import io.github.ageofwar.bit.interpreter.Shape;
+import io.github.ageofwar.bit.interpreter.TypeTest;
+import io.github.ageofwar.bit.interpreter.Values;
+import io.github.ageofwar.bit.resolver.ResolvedBit;
+import io.github.ageofwar.bit.types.Type;
+import jdk.internal.classfile.Classfile;
+import jdk.internal.classfile.CodeBuilder;
+import jdk.internal.classfile.Label;
+
+import java.lang.constant.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import static io.github.ageofwar.bit.types.Types.none;
+import static java.lang.constant.ConstantDescs.*;
+
+// emits the body of one JVM method; bit frame slots become JVM locals
+final class MethodCompiler {
+    static final ClassDesc CD_CALLABLE = ClassDesc.of("io.github.ageofwar.bit.interpreter.BitCallable");
+    static final ClassDesc CD_OBJECT_ARRAY = CD_Object.arrayType();
+    private static final ClassDesc CD_INTEGERS = ClassDesc.of("io.github.ageofwar.bit.interpreter.Integers");
+    private static final ClassDesc CD_OBJECTS = ClassDesc.of("java.util.Objects");
+    private static final ClassDesc CD_TYPE = ClassDesc.of("io.github.ageofwar.bit.types.Type");
+    private static final ClassDesc CD_SYMBOL = ClassDesc.of("io.github.ageofwar.bit.resolver.ResolvedBit$Symbol");
+    private static final ClassDesc CD_ENVIRONMENT = ClassDesc.of("io.github.ageofwar.bit.interpreter.Environment");
+    private static final ClassDesc CD_BIT_STRING = ClassDesc.of("io.github.ageofwar.bit.interpreter.BitString");
+    private static final ClassDesc CD_BIT_LIST = ClassDesc.of("io.github.ageofwar.bit.interpreter.BitList");
+    private static final ClassDesc CD_STRUCT = ClassDesc.of("io.github.ageofwar.bit.interpreter.Struct");
+    private static final ClassDesc CD_SHAPE = ClassDesc.of("io.github.ageofwar.bit.interpreter.Shape");
+    private static final ClassDesc CD_FIELD_CACHE = ClassDesc.of("io.github.ageofwar.bit.interpreter.FieldCache");
+    private static final ClassDesc CD_TYPE_TEST = ClassDesc.of("io.github.ageofwar.bit.interpreter.TypeTest");
+    private static final ClassDesc CD_VALUES = ClassDesc.of("io.github.ageofwar.bit.interpreter.Values");
+    private static final ClassDesc CD_INTRINSICS = ClassDesc.of("io.github.ageofwar.bit.compiler.Intrinsics");
+    private static final MethodTypeDesc MTD_CALL = MethodTypeDesc.of(CD_Object, CD_OBJECT_ARRAY, CD_OBJECT_ARRAY);
+
+    private final BytecodeCompiler compiler;
+    private final Unit unit;
+    private final CodeBuilder code;
+    private final int localBase;
+    private final ResolvedBit.FrameLayout layout;
+    private final List<ResolvedBit.Symbol> bindings;
+    // type variables visible to this function, by symbol id, mapped to the slot holding their generic argument
+    private final Map<Integer, Integer> typeSlots;
+    private final Deque<Loop> loops;
+    // the top-level function or extension being compiled, whose tail calls of itself jump back to start
+    private BytecodeCompiler.Target self;
+    private Label start;
+    // values pushed on the operand stack by enclosing expressions, dropped before jumping out of a loop
+    private int depth;
+    private int nextLocal;
+
+    private MethodCompiler(BytecodeCompiler compiler, Unit unit, CodeBuilder code, int localBase, ResolvedBit.FrameLayout layout, List<ResolvedBit.Symbol> bindings) {
+        this.compiler = compiler;
+        this.unit = unit;
+        this.code = code;
+        this.localBase = localBase;
+        this.layout = layout;
+        this.bindings = bindings;
+        this.typeSlots = new HashMap<>();
+        for (var capture : layout.captures()) {
+            typeSlots.put(capture.target().id(), capture.target().slot());
+        }
+        for (var binding : bindings) {
+            typeSlots.put(binding.id(), binding.slot());
+        }
+        this.loops = new ArrayDeque<>();
+        this.nextLocal = localBase + layout.size();
+    }
+
+    // the statements run when the program is loaded; every symbol at this level is global
+    static void main(BytecodeCompiler compiler, Unit unit, String name, List<ResolvedBit.Declaration> declarations) {
+        unit.method(classBuilder -> classBuilder.withMethodBody(name, MethodTypeDesc.of(CD_void), Classfile.ACC_STATIC, code -> {
+            var method = new MethodCompiler(compiler, unit, code, 0, ResolvedBit.FrameLayout.EMPTY, List.of());
+            for (var declaration : declarations) {
+                method.declaration(declaration);
+            }
+            code.return_();
+        }));
+    }
+
+    static MethodTypeDesc functionType(int arity) {
+        var parameters = new ClassDesc[arity + 1];
+        Arrays.fill(parameters, CD_Object);
+        parameters[0] = CD_OBJECT_ARRAY;
+        return MethodTypeDesc.of(CD_Object, parameters);
+    }
+
+    // a function takes its captured values and one argument per binding; name$call spreads an argument array over them
+    static void function(BytecodeCompiler compiler, Unit unit, String name, ResolvedBit.FrameLayout layout, List<ResolvedBit.Symbol> bindings, Consumer<MethodCompiler> body) {
+        var type = functionType(bindings.size());
+        unit.method(classBuilder -> classBuilder.withMethodBody(name, type, Classfile.ACC_STATIC, code -> {
+            var method = new MethodCompiler(compiler, unit, code, bindings.size() + 1, layout, bindings);
+            method.prologue();
+            method.start = code.newBoundLabel();
+            body.accept(method);
+            code.areturn();
+        }));
+        unit.method(classBuilder -> classBuilder.withMethodBody(name + "$call", MTD_CALL, Classfile.ACC_STATIC, code -> {
+            code.aload(0);
+            for (var i = 0; i < bindings.size(); i++) {
+                code.aload(1);
+                code.constantInstruction(i);
+                code.aaload();
+            }
+            code.invokestatic(unit.descriptor(), name, type);
+            code.areturn();
+        }));
+    }
+
+    // turns the captured values on the stack into a BitCallable calling name, or name$call for other arities
+    static void lambda(CodeBuilder code, Unit unit, String name, int arity) {
+        code.constantInstruction(MethodHandleDesc.ofMethod(DirectMethodHandleDesc.Kind.STATIC, unit.descriptor(), name, functionType(arity)));
+        code.constantInstruction(MethodHandleDesc.ofMethod(DirectMethodHandleDesc.Kind.STATIC, unit.descriptor(), name + "$call", MTD_CALL));
+        code.constantInstruction(arity);
+        code.invokestatic(CD_INTRINSICS, "closure", MethodTypeDesc.of(CD_CALLABLE, CD_OBJECT_ARRAY, CD_MethodHandle, CD_MethodHandle, CD_int));
+    }
+
+    private void prologue() {
+        for (var slot = 0; slot < layout.size(); slot++) {
+            code.aconst_null();
+            code.astore(local(slot));
+        }
+        var captures = layout.captures();
+        for (var i = 0; i < captures.size(); i++) {
+            code.aload(0);
+            code.constantInstruction(i);
+            code.aaload();
+            code.astore(local(captures.get(i).target().slot()));
+        }
+        for (var i = 0; i < bindings.size(); i++) {
+            code.aload(i + 1);
+            code.astore(local(BytecodeCompiler.slot(bindings.get(i))));
+        }
+    }
+
+    private int local(int slot) {
+        return localBase + slot;
+    }
+
+    private int newLocal() {
+        return nextLocal++;
+    }
+
+    // declarations
+
+    private void declaration(ResolvedBit.Declaration declaration) {
+        switch (declaration) {
+            case ResolvedBit.Declaration.Variable variable -> define(variable.name(), () -> expression(variable.value()));
+            case ResolvedBit.Declaration.Value value -> define(value.name(), () -> expression(value.value()));
+            case ResolvedBit.Declaration.Function function -> function(function);
+            case ResolvedBit.Declaration.Type type -> {
+                if (type.valueName() != null) {
+                    define(type.valueName(), () -> code.constantInstruction(unit.constant(type.value(), CD_TYPE)));
+                }
+            }
+            case ResolvedBit.Declaration.Class classDeclaration -> classDeclaration(classDeclaration);
+            case ResolvedBit.Declaration.Implementation implementation -> implementation(implementation);
+        }
+    }
+
+    private void function(ResolvedBit.Declaration.Function function) {
+        var target = compiler.target(function.name());
+        if (target != null) {
+            function(compiler, unit, target.name(), function.frame(), BytecodeCompiler.bindings(function), method -> method.body(target, function.body()));
+            define(function.name(), () -> {
+                code.aconst_null();
+                lambda(code, unit, target.name(), target.arity());
+            });
+            return;
+        }
+        var name = unit.newName("function");
+        var bindings = BytecodeCompiler.bindings(function);
+        function(compiler, unit, name, function.frame(), bindings, method -> method.expression(function.body()));
+        var captured = newLocal();
+        captured(function.frame());
+        code.astore(captured);
+        define(function.name(), () -> {
+            code.aload(captured);
+            lambda(code, unit, name, bindings.size());
+        });
+        // a local function referring to itself captured its own slot before it was assigned
+        var captures = function.frame().captures();
+        for (var i = 0; i < captures.size(); i++) {
+            if (captures.get(i).source().id() == function.name().id()) {
+                code.aload(captured);
+                code.constantInstruction(i);
+                read(function.name());
+                code.aastore();
+            }
+        }
+    }
+
+    private void classDeclaration(ResolvedBit.Declaration.Class classDeclaration) {
+        var classUnit = compiler.newUnit("Class$" + classDeclaration.name().name());
+        var constructor = classDeclaration.constructor();
+        // construct fills the instance it gets before the arguments of the constructor
+        var parameters = new ArrayList<ResolvedBit.Symbol>();
+        parameters.add(classDeclaration.thisSymbol());
+        constructor.parameters().forEach(parameter -> parameters.add(parameter.name()));
+        function(compiler, classUnit, "construct", constructor.frame(), parameters, method -> method.construct(classDeclaration));
+        var factoryType = MethodTypeDesc.of(CD_CALLABLE, CD_OBJECT_ARRAY);
+        classUnit.method(classBuilder -> classBuilder.withMethodBody("constructor", factoryType, Classfile.ACC_STATIC, factory -> {
+            factory.aload(0);
+            lambda(factory, classUnit, "construct", parameters.size());
+            factory.areturn();
+        }));
+        var methods = classDeclaration.members().stream().filter(member -> member.declaration() instanceof ResolvedBit.Declaration.Function).toList();
+        define(classDeclaration.name(), () -> {
+            // the shape holds the methods, created once when the class is declared
+            code.constantInstruction(unit.constant(Values.fields(classDeclaration).toArray(String[]::new), CD_String.arrayType()));
+            code.constantInstruction(unit.constant(methods.stream().map(member -> member.declaration().name().name()).toArray(String[]::new), CD_String.arrayType()));
+            depth += 2;
+            objects(methods.size(), i -> {
+                var member = methods.get(i);
+                var function = (ResolvedBit.Declaration.Function) member.declaration();
+                var bindings = new ArrayList<ResolvedBit.Symbol>();
+                bindings.add(member.receiver());
+                bindings.addAll(BytecodeCompiler.bindings(function));
+                closure(function.frame(), bindings, function.body());
+            });
+            depth -= 2;
+            code.invokestatic(CD_INTRINSICS, "shape", MethodTypeDesc.of(CD_SHAPE, CD_String.arrayType(), CD_String.arrayType(), CD_OBJECT_ARRAY));
+            depth++;
+            code.constantInstruction(unit.link(classUnit, "constructor", factoryType));
+            depth++;
+            captured(constructor.frame());
+            depth--;
+            code.invokevirtual(CD_MethodHandle, "invokeExact", factoryType);
+            depth--;
+            code.invokestatic(CD_INTRINSICS, "constructor", MethodTypeDesc.of(CD_CALLABLE, CD_SHAPE, CD_CALLABLE));
+        });
+    }
+
+    private void construct(ResolvedBit.Declaration.Class classDeclaration) {
+        // fields take the slots of a struct literal with the same fields, the methods of the class have none
+        var fields = Shape.of(Values.fields(classDeclaration));
+        var thisLocal = local(BytecodeCompiler.slot(classDeclaration.thisSymbol()));
+        for (var member : classDeclaration.members()) {
+            switch (member.declaration()) {
+                case ResolvedBit.Declaration.Variable v -> field(thisLocal, fields.slot(v.name().name()), () -> expression(v.value()));
+                case ResolvedBit.Declaration.Value v -> field(thisLocal, fields.slot(v.name().name()), () -> expression(v.value()));
+                case ResolvedBit.Declaration.Function ignored -> {}
+                case ResolvedBit.Declaration declaration -> declaration(declaration);
+            }
+        }
+        code.aload(thisLocal);
+    }
+
+    private void field(int instance, int slot, Runnable value) {
+        code.aload(instance);
+        code.checkcast(CD_STRUCT);
+        code.constantInstruction(slot);
+        depth += 2;
+        value.run();
+        depth -= 2;
+        code.invokevirtual(CD_STRUCT, "set", MethodTypeDesc.of(CD_void, CD_int, CD_Object));
+    }
+
+    private void implementation(ResolvedBit.Declaration.Implementation implementation) {
+        for (var extension : implementation.extensions()) {
+            var bindings = BytecodeCompiler.bindings(implementation, extension);
+            var target = compiler.target(extension.name());
+            if (target != null) {
+                function(compiler, unit, target.name(), extension.frame(), bindings, method -> method.body(target, extension.body()));
+                define(extension.name(), () -> {
+                    code.aconst_null();
+                    lambda(code, unit, target.name(), target.arity());
+                });
+            } else {
+                define(extension.name(), () -> closure(extension.frame(), bindings, extension.body()));
+            }
+        }
+    }
+
+    private void body(BytecodeCompiler.Target target, ResolvedBit.Expression body) {
+        self = target;
+        expression(body);
+    }
+
+    private void closure(ResolvedBit.FrameLayout layout, List<ResolvedBit.Symbol> bindings, ResolvedBit.Expression body) {
+        var name = unit.newName("function");
+        function(compiler, unit, name, layout, bindings, method -> method.expression(body));
+        captured(layout);
+        lambda(code, unit, name, bindings.size());
+    }
+
+    // the values a closure with the given layout copies out of this frame; cells are shared, not unwrapped
+    private void captured(ResolvedBit.FrameLayout layout) {
+        var captures = layout.captures();
+        if (captures.isEmpty()) {
+            code.aconst_null();
+            return;
+        }
+        objects(captures.size(), i -> {
+            var source = captures.get(i).source();
+            if (source.storage() == ResolvedBit.Symbol.Storage.GLOBAL) {
+                read(source);
+            } else {
+                code.aload(local(source.slot()));
+            }
+        });
+    }
+
+    // variables
+
+    private void read(ResolvedBit.Symbol symbol) {
+        switch (symbol.storage()) {
+            case GLOBAL -> {
+                environment();
+                code.constantInstruction(unit.constant(symbol, CD_SYMBOL));
+                code.invokevirtual(CD_ENVIRONMENT, "get", MethodTypeDesc.of(CD_Object, CD_SYMBOL));
+            }
+            case LOCAL -> code.aload(local(symbol.slot()));
+            case CELL -> {
+                code.aload(local(symbol.slot()));
+                code.checkcast(CD_OBJECT_ARRAY);
+                code.iconst_0();
+                code.aaload();
+            }
+        }
+    }
+
+    private void define(ResolvedBit.Symbol symbol, Runnable value) {
+        switch (symbol.storage()) {
+            case GLOBAL -> global(symbol, value);
+            case LOCAL -> {
+                value.run();
+                code.astore(local(symbol.slot()));
+            }
+            case CELL -> {
+                value.run();
+                code.invokestatic(CD_INTRINSICS, "cell", MethodTypeDesc.of(CD_OBJECT_ARRAY, CD_Object));
+                code.astore(local(symbol.slot()));
+            }
+        }
+    }
+
+    private void assign(ResolvedBit.Symbol symbol, Runnable value) {
+        switch (symbol.storage()) {
+            case GLOBAL -> global(symbol, value);
+            case LOCAL -> {
+                value.run();
+                code.astore(local(symbol.slot()));
+            }
+            case CELL -> {
+                code.aload(local(symbol.slot()));
+                code.checkcast(CD_OBJECT_ARRAY);
+                code.iconst_0();
+                depth += 2;
+                value.run();
+                depth -= 2;
+                code.aastore();
+            }
+        }
+    }
+
+    private void global(ResolvedBit.Symbol symbol, Runnable value) {
+        environment();
+        code.constantInstruction(unit.constant(symbol, CD_SYMBOL));
+        depth += 2;
+        value.run();
+        depth -= 2;
+        code.invokevirtual(CD_ENVIRONMENT, "assignVariable", MethodTypeDesc.of(CD_void, CD_SYMBOL, CD_Object));
+    }
+
+    private void environment() {
+        code.constantInstruction(unit.constant(compiler.environment(), CD_ENVIRONMENT));
+    }
+
+    // expressions; each one leaves exactly one value on the operand stack
+
+    private void expression(ResolvedBit.Expression expression) {
+        switch (expression) {
+            case ResolvedBit.Expression.Identifier identifier -> read(identifier.name());
+            case ResolvedBit.Expression.Call call -> call(call);
+            case ResolvedBit.Expression.CallExtension call -> callExtension(call);
+            case ResolvedBit.Expression.Block block -> block(block);
+            case ResolvedBit.Expression.NumberLiteral numberLiteral -> code.constantInstruction(unit.constant(numberLiteral.value(), CD_Object));
+            case ResolvedBit.Expression.StringLiteral stringLiteral -> code.constantInstruction(unit.constant(new BitString(stringLiteral.value()), CD_BIT_STRING));
+            case ResolvedBit.Expression.BooleanLiteral booleanLiteral -> bool(booleanLiteral.value());
+            case ResolvedBit.Expression.Minus minus -> arithmetic(minus, minus.lhs(), minus.rhs(), minus.primitive(), "subtract");
+            case ResolvedBit.Expression.Plus plus -> arithmetic(plus, plus.lhs(), plus.rhs(), plus.primitive(), "add");
+            case ResolvedBit.Expression.Multiply multiply -> arithmetic(multiply, multiply.lhs(), multiply.rhs(), multiply.primitive(), "multiply");
+            case ResolvedBit.Expression.Divide divide -> arithmetic(divide, divide.lhs(), divide.rhs(), divide.primitive(), "divide");
+            case ResolvedBit.Expression.If ifExpression -> ifExpression(ifExpression);
+            case ResolvedBit.Expression.While whileExpression -> whileExpression(whileExpression);
+            case ResolvedBit.Expression.GreaterThan ignored -> booleanValue(expression);
+            case ResolvedBit.Expression.GreaterThanOrEqual ignored -> booleanValue(expression);
+            case ResolvedBit.Expression.LessThan ignored -> booleanValue(expression);
+            case ResolvedBit.Expression.LessThanOrEqual ignored -> booleanValue(expression);
+            case ResolvedBit.Expression.Equal ignored -> booleanValue(expression);
+            case ResolvedBit.Expression.NotEqual ignored -> booleanValue(expression);
+            case ResolvedBit.Expression.And ignored -> booleanValue(expression);
+            case ResolvedBit.Expression.Or ignored -> booleanValue(expression);
+            case ResolvedBit.Expression.Not ignored -> booleanValue(expression);
+            case ResolvedBit.Expression.Is ignored -> booleanValue(expression);
+            case ResolvedBit.Expression.As asExpression -> {
+                typeCheck(asExpression.expression(), asExpression.type());
+                code.invokestatic(CD_INTRINSICS, "cast", MethodTypeDesc.of(CD_Object, CD_Object, CD_TYPE_TEST, CD_int.arrayType(), CD_OBJECT_ARRAY));
+            }
+            case ResolvedBit.Expression.Struct struct -> struct(struct);
+            case ResolvedBit.Expression.Array array -> {
+                objects(array.elements().size(), i -> expression(array.elements().get(i)));
+                code.constantInstruction(array.primitive() ? 1 : 0);
+                code.invokestatic(CD_BIT_LIST, "of", MethodTypeDesc.of(CD_BIT_LIST, CD_OBJECT_ARRAY, CD_boolean));
+            }
+            case ResolvedBit.Expression.Access access -> {
+                code.constantInstruction(unit.constant(new FieldCache(access.field(), access.slot()), CD_FIELD_CACHE));
+                depth++;
+                expression(access.expression());
+                depth--;
+                code.invokevirtual(CD_FIELD_CACHE, "read", MethodTypeDesc.of(CD_Object, CD_Object));
+            }
+            case ResolvedBit.Expression.Function function -> closure(function.frame(), BytecodeCompiler.bindings(function), function.body());
+            case ResolvedBit.Expression.Instantiation instantiation -> {
+                read(instantiation.className());
+                apply(instantiation.arguments().size(), i -> expression(instantiation.arguments().get(i)));
+            }
+            case ResolvedBit.Expression.AccessExtension access -> {
+                expression(access.expression());
+                depth++;
+                read(access.name());
+                depth++;
+                objects(access.generics().size(), i -> generic(access.generics().get(i)));
+                depth -= 2;
+                code.invokestatic(CD_INTRINSICS, "extension", MethodTypeDesc.of(CD_Object, CD_Object, CD_Object, CD_OBJECT_ARRAY));
+            }
+            case ResolvedBit.Expression.Break ignored -> jump(loop().end());
+            case ResolvedBit.Expression.Continue ignored -> jump(loop().start());
+            case ResolvedBit.Expression.Return returnExpression -> {
+                expression(returnExpression.value());
+                code.areturn();
+                // unreachable, keeps the stack shape every expression is expected to leave
+                code.aconst_null();
+            }
+        }
+    }
+
+    private void bool(boolean value) {
+        code.getstatic(CD_Boolean, value ? "TRUE" : "FALSE", CD_Boolean);
+    }
+
+    private void noneValue() {
+        code.constantInstruction(unit.constant(none(), CD_TYPE));
+    }
+
+    private void operands(ResolvedBit.Expression lhs, ResolvedBit.Expression rhs) {
+        expression(lhs);
+        depth++;
+        expression(rhs);
+        depth--;
+    }
+
+    private void arithmetic(ResolvedBit.Expression expression, ResolvedBit.Expression lhs, ResolvedBit.Expression rhs, boolean primitive, String operation) {
+        if (primitive) {
+            longValue(expression);
+            code.invokestatic(CD_Long, "valueOf", MethodTypeDesc.of(CD_Long, CD_long));
+            return;
+        }
+        operands(lhs, rhs);
+        code.invokestatic(CD_INTEGERS, operation, MethodTypeDesc.of(CD_Object, CD_Object, CD_Object));
+    }
+
+    // leaves an unboxed long; nested primitive operations never box their intermediate results
+    private void longValue(ResolvedBit.Expression expression) {
+        switch (expression) {
+            case ResolvedBit.Expression.NumberLiteral numberLiteral when numberLiteral.value() instanceof Long value -> code.constantInstruction(value);
+            case ResolvedBit.Expression.Plus plus when plus.primitive() -> {
+                longOperands(plus.lhs(), plus.rhs());
+                code.ladd();
+            }
+            case ResolvedBit.Expression.Minus minus when minus.primitive() -> {
+                longOperands(minus.lhs(), minus.rhs());
+                code.lsub();
+            }
+            case ResolvedBit.Expression.Multiply multiply when multiply.primitive() -> {
+                longOperands(multiply.lhs(), multiply.rhs());
+                code.lmul();
+            }
+            case ResolvedBit.Expression.Divide divide when divide.primitive() -> {
+                longOperands(divide.lhs(), divide.rhs());
+                code.ldiv();
+            }
+            default -> {
+                expression(expression);
+                code.checkcast(CD_Long);
+                code.invokevirtual(CD_Long, "longValue", MethodTypeDesc.of(CD_long));
+            }
+        }
+    }
+
+    private void longOperands(ResolvedBit.Expression lhs, ResolvedBit.Expression rhs) {
+        longValue(lhs);
+        if (isSimple(rhs)) {
+            longValue(rhs);
+            return;
+        }
+        // the right operand may jump out of a loop, which only drops boxed values, so the left one waits in a local
+        var left = nextLocal;
+        nextLocal += 2;
+        code.lstore(left);
+        longValue(rhs);
+        var right = nextLocal;
+        nextLocal += 2;
+        code.lstore(right);
+        code.lload(left);
+        code.lload(right);
+    }
+
+    // expressions that cannot jump, so a long may sit below them on the operand stack
+    private static boolean isSimple(ResolvedBit.Expression expression) {
+        return switch (expression) {
+            case ResolvedBit.Expression.NumberLiteral ignored -> true;
+            case ResolvedBit.Expression.Identifier ignored -> true;
+            case ResolvedBit.Expression.Plus plus -> plus.primitive() && isSimple(plus.lhs()) && isSimple(plus.rhs());
+            case ResolvedBit.Expression.Minus minus -> minus.primitive() && isSimple(minus.lhs()) && isSimple(minus.rhs());
+            case ResolvedBit.Expression.Multiply multiply -> multiply.primitive() && isSimple(multiply.lhs()) && isSimple(multiply.rhs());
+            case ResolvedBit.Expression.Divide divide -> divide.primitive() && isSimple(divide.lhs()) && isSimple(divide.rhs());
+            default -> false;
+        };
+    }
+
+    private void block(ResolvedBit.Expression.Block block) {
+        var statements = block.statements();
+        var last = -1;
+        for (var i = 0; i < statements.size(); i++) {
+            if (statements.get(i) instanceof ResolvedBit.Expression) last = i;
+        }
+        // the value of a block is its last expression, even when declarations follow it
+        var result = last != -1 && last != statements.size() - 1 ? newLocal() : -1;
+        for (var i = 0; i < statements.size(); i++) {
+            switch (statements.get(i)) {
+                case ResolvedBit.Expression expression -> {
+                    expression(expression);
+                    if (i != last) {
+                        code.pop();
+                    } else if (result != -1) {
+                        code.astore(result);
+                    }
+                }
+                case ResolvedBit.Declaration declaration -> declaration(declaration);
+                case ResolvedBit.VariableAssignment assignment -> assign(assignment.name(), () -> expression(assignment.value()));
+                case ResolvedBit.VariableFieldAssignment assignment -> {
+                    code.constantInstruction(unit.constant(new FieldCache(assignment.name(), assignment.slot()), CD_FIELD_CACHE));
+                    depth++;
+                    expression(assignment.struct());
+                    depth++;
+                    expression(assignment.value());
+                    depth -= 2;
+                    code.invokevirtual(CD_FIELD_CACHE, "write", MethodTypeDesc.of(CD_void, CD_Object, CD_Object));
+                }
+                default -> throw new IllegalStateException("Unexpected statement " + statements.get(i));
+            }
+        }
+        if (last == -1) {
+            code.aconst_null();
+        } else if (result != -1) {
+            code.aload(result);
+        }
+    }
+
+    private void ifExpression(ResolvedBit.Expression.If ifExpression) {
+        var elseBranch = code.newLabel();
+        var end = code.newLabel();
+        condition(ifExpression.condition(), elseBranch);
+        expression(ifExpression.thenBranch());
+        code.goto_(end);
+        code.labelBinding(elseBranch);
+        if (ifExpression.elseBranch() != null) {
+            expression(ifExpression.elseBranch());
+        } else {
+            noneValue();
+        }
+        code.labelBinding(end);
+    }
+
+    private void whileExpression(ResolvedBit.Expression.While whileExpression) {
+        var start = code.newBoundLabel();
+        var end = code.newLabel();
+        condition(whileExpression.condition(), end);
+        loops.push(new Loop(start, end, depth));
+        expression(whileExpression.body());
+        code.pop();
+        loops.pop();
+        code.goto_(start);
+        code.labelBinding(end);
+        noneValue();
+    }
+
+    private Loop loop() {
+        var loop = loops.peek();
+        if (loop == null) {
+            throw new IllegalStateException("Jump outside of a loop");
+        }
+        return loop;
+    }
+
+    private void jump(Label target) {
+        for (var i = loop().depth(); i < depth; i++) {
+            code.pop();
+        }
+        code.goto_(target);
+        // unreachable, keeps the stack shape every expression is expected to leave
+        code.aconst_null();
+    }
+
+    // conditions jump to the given label when false and fall through when true
+
+    private void condition(ResolvedBit.Expression expression, Label otherwise) {
+        switch (expression) {
+            case ResolvedBit.Expression.BooleanLiteral booleanLiteral -> {
+                if (!booleanLiteral.value()) code.goto_(otherwise);
+            }
+            case ResolvedBit.Expression.Not not -> {
+                var then = code.newLabel();
+                condition(not.expression(), then);
+                code.goto_(otherwise);
+                code.labelBinding(then);
+            }
+            case ResolvedBit.Expression.And and -> {
+                condition(and.lhs(), otherwise);
+                condition(and.rhs(), otherwise);
+            }
+            case ResolvedBit.Expression.Or or -> {
+                var rhs = code.newLabel();
+                var then = code.newLabel();
+                condition(or.lhs(), rhs);
+                code.goto_(then);
+                code.labelBinding(rhs);
+                condition(or.rhs(), otherwise);
+                code.labelBinding(then);
+            }
+            case ResolvedBit.Expression.GreaterThan greaterThan -> {
+                compare(greaterThan.lhs(), greaterThan.rhs(), greaterThan.primitive());
+                code.ifle(otherwise);
+            }
+            case ResolvedBit.Expression.GreaterThanOrEqual greaterThanOrEqual -> {
+                compare(greaterThanOrEqual.lhs(), greaterThanOrEqual.rhs(), greaterThanOrEqual.primitive());
+                code.iflt(otherwise);
+            }
+            case ResolvedBit.Expression.LessThan lessThan -> {
+                compare(lessThan.lhs(), lessThan.rhs(), lessThan.primitive());
+                code.ifge(otherwise);
+            }
+            case ResolvedBit.Expression.LessThanOrEqual lessThanOrEqual -> {
+                compare(lessThanOrEqual.lhs(), lessThanOrEqual.rhs(), lessThanOrEqual.primitive());
+                code.ifgt(otherwise);
+            }
+            case ResolvedBit.Expression.Equal equal -> {
+                operands(equal.lhs(), equal.rhs());
+                code.invokestatic(CD_OBJECTS, "equals", MethodTypeDesc.of(CD_boolean, CD_Object, CD_Object));
+                code.ifeq(otherwise);
+            }
+            case ResolvedBit.Expression.NotEqual notEqual -> {
+                operands(notEqual.lhs(), notEqual.rhs());
+                code.invokestatic(CD_OBJECTS, "equals", MethodTypeDesc.of(CD_boolean, CD_Object, CD_Object));
+                code.ifne(otherwise);
+            }
+            case ResolvedBit.Expression.Is isExpression -> {
+                typeCheck(isExpression.expression(), isExpression.checkType());
+                code.invokestatic(CD_INTRINSICS, "isAssignable", MethodTypeDesc.of(CD_boolean, CD_Object, CD_TYPE_TEST, CD_int.arrayType(), CD_OBJECT_ARRAY));
+                code.ifeq(otherwise);
+            }
+            default -> {
+                expression(expression);
+                code.checkcast(CD_Boolean);
+                code.invokevirtual(CD_Boolean, "booleanValue", MethodTypeDesc.of(CD_boolean));
+                code.ifeq(otherwise);
+            }
+        }
+    }
+
+    private void booleanValue(ResolvedBit.Expression expression) {
+        var otherwise = code.newLabel();
+        var end = code.newLabel();
+        condition(expression, otherwise);
+        bool(true);
+        code.goto_(end);
+        code.labelBinding(otherwise);
+        bool(false);
+        code.labelBinding(end);
+    }
+
+    private void compare(ResolvedBit.Expression lhs, ResolvedBit.Expression rhs, boolean primitive) {
+        if (primitive) {
+            longOperands(lhs, rhs);
+            code.lcmp();
+            return;
+        }
+        operands(lhs, rhs);
+        code.invokestatic(CD_INTEGERS, "compare", MethodTypeDesc.of(CD_int, CD_Object, CD_Object));
+    }
+
+    // pushes the value, the type and the generic arguments bound to the type variables it mentions
+    private void typeCheck(ResolvedBit.Expression expression, Type type) {
+        expression(expression);
+        code.constantInstruction(unit.constant(new TypeTest(type), CD_TYPE_TEST));
+        var variables = new ArrayList<ResolvedBit.Symbol>();
+        typeVariables(type, Collections.newSetFromMap(new IdentityHashMap<>()), variables);
+        if (variables.isEmpty()) {
+            code.aconst_null();
+            code.aconst_null();
+            return;
+        }
+        code.constantInstruction(unit.constant(variables.stream().mapToInt(ResolvedBit.Symbol::id).toArray(), CD_int.arrayType()));
+        objects(variables.size(), i -> code.aload(local(typeSlots.get(variables.get(i).id()))));
+    }
+
+    private void typeVariables(Type type, Set<Type> visited, List<ResolvedBit.Symbol> variables) {
+        if (!visited.add(type)) return;
+        switch (type) {
+            case Type.TypeVariable typeVariable -> {
+                if (typeVariable.name() != null && typeSlots.containsKey(typeVariable.name().id())) {
+                    variables.add(typeVariable.name());
+                }
+                typeVariables(typeVariable.bounds(), visited, variables);
+            }
+            case Type.Struct struct -> struct.fields().values().forEach(field -> typeVariables(field, visited, variables));
+            case Type.Union union -> Arrays.stream(union.types()).forEach(t -> typeVariables(t, visited, variables));
+            case Type.Intersection intersection -> Arrays.stream(intersection.types()).forEach(t -> typeVariables(t, visited, variables));
+            case Type.Function function -> {
+                typeVariables(function.returnType(), visited, variables);
+                Arrays.stream(function.parameters()).forEach(t -> typeVariables(t, visited, variables));
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void struct(ResolvedBit.Expression.Struct struct) {
+        // values are evaluated in the order the resolver lists the fields and stored at the slots the shape assigns to their fields
+        var entries = List.copyOf(struct.fields().entrySet());
+        var shape = Shape.of(struct.fields().keySet());
+        code.constantInstruction(unit.constant(shape, CD_SHAPE));
+        depth++;
+        code.constantInstruction(entries.size());
+        code.anewarray(CD_Object);
+        for (var i = 0; i < entries.size(); i++) {
+            code.dup();
+            code.constantInstruction(shape.slot(entries.get(i).getKey()));
+            depth += 3;
+            expression(entries.get(i).getValue());
+            depth -= 3;
+            code.aastore();
+        }
+        depth--;
+        code.invokestatic(CD_INTRINSICS, "struct", MethodTypeDesc.of(CD_STRUCT, CD_SHAPE, CD_OBJECT_ARRAY));
+    }
+
+    // calls
+
+    private void call(ResolvedBit.Expression.Call call) {
+        var arity = call.generics().size() + call.arguments().size();
+        if (call.callee() instanceof ResolvedBit.Expression.Access access && access.intrinsic()) {
+            push(access.expression());
+            call.arguments().forEach(this::push);
+            depth -= 1 + call.arguments().size();
+            var parameters = new ClassDesc[1 + call.arguments().size()];
+            Arrays.fill(parameters, CD_Object);
+            code.invokestatic(CD_VALUES, access.field(), MethodTypeDesc.of(CD_Object, parameters));
+            return;
+        }
+        if (call.callee() instanceof ResolvedBit.Expression.Identifier identifier) {
+            var target = compiler.target(identifier.name());
+            if (target != null && target.arity() == arity && (!call.tail() || target == self)) {
+                Runnable arguments = () -> {
+                    call.generics().forEach(this::pushGeneric);
+                    call.arguments().forEach(this::push);
+                };
+                if (call.tail()) {
+                    restart(arguments);
+                } else {
+                    direct(target, arguments);
+                }
+                return;
+            }
+        }
+        if (call.callee() instanceof ResolvedBit.Expression.Access access) {
+            // a method of the receiver class is called with the receiver, a function stored in a field without it
+            code.constantInstruction(unit.constant(new FieldCache(access.field(), access.slot()), CD_FIELD_CACHE));
+            depth++;
+            push(access.expression());
+            if (call.tail()) {
+                objects(arity, i -> {
+                    if (i < call.generics().size()) {
+                        generic(call.generics().get(i));
+                    } else {
+                        expression(call.arguments().get(i - call.generics().size()));
+                    }
+                });
+                depth -= 2;
+                code.invokestatic(CD_INTRINSICS, "tailCallMember", MethodTypeDesc.of(CD_Object, CD_FIELD_CACHE, CD_Object, CD_OBJECT_ARRAY));
+            } else if (arity < 4) {
+                call.generics().forEach(this::pushGeneric);
+                call.arguments().forEach(this::push);
+                depth -= 2 + arity;
+                var parameters = new ClassDesc[1 + arity];
+                Arrays.fill(parameters, CD_Object);
+                code.invokevirtual(CD_FIELD_CACHE, "call" + arity, MethodTypeDesc.of(CD_Object, parameters));
+            } else {
+                objects(arity, i -> {
+                    if (i < call.generics().size()) {
+                        generic(call.generics().get(i));
+                    } else {
+                        expression(call.arguments().get(i - call.generics().size()));
+                    }
+                });
+                depth -= 2;
+                code.invokevirtual(CD_FIELD_CACHE, "callWith", MethodTypeDesc.of(CD_Object, CD_Object, CD_OBJECT_ARRAY));
+            }
+            return;
+        }
+        expression(call.callee());
+        IntConsumer argument = i -> {
+            if (i < call.generics().size()) {
+                generic(call.generics().get(i));
+            } else {
+                expression(call.arguments().get(i - call.generics().size()));
+            }
+        };
+        if (call.tail()) {
+            tailCall(arity, argument);
+        } else {
+            apply(arity, argument);
+        }
+    }
+
+    private void callExtension(ResolvedBit.Expression.CallExtension call) {
+        var generics = new ArrayList<>(call.receiverGenerics());
+        generics.addAll(call.generics());
+        var arity = 1 + generics.size() + call.arguments().size();
+        var target = compiler.target(call.name());
+        if (target != null && target.arity() == arity && (!call.tail() || target == self)) {
+            Runnable arguments = () -> {
+                push(call.receiver());
+                generics.forEach(this::pushGeneric);
+                call.arguments().forEach(this::push);
+            };
+            if (call.tail()) {
+                restart(arguments);
+            } else {
+                direct(target, arguments);
+            }
+            return;
+        }
+        read(call.name());
+        IntConsumer argument = i -> {
+            if (i == 0) {
+                expression(call.receiver());
+            } else if (i <= generics.size()) {
+                generic(generics.get(i - 1));
+            } else {
+                expression(call.arguments().get(i - 1 - generics.size()));
+            }
+        };
+        if (call.tail()) {
+            tailCall(arity, argument);
+        } else {
+            apply(arity, argument);
+        }
+    }
+
+    // a tail call of the function being compiled: the arguments on the stack replace its bindings and it starts over
+    private void restart(Runnable arguments) {
+        var base = depth;
+        arguments.run();
+        depth = base;
+        for (var i = bindings.size() - 1; i >= 0; i--) {
+            code.astore(local(BytecodeCompiler.slot(bindings.get(i))));
+        }
+        for (var i = 0; i < depth; i++) {
+            code.pop();
+        }
+        code.goto_(start);
+        // unreachable, keeps the stack shape every expression is expected to leave
+        code.aconst_null();
+    }
+
+    // a tail call of the function on the stack, see Intrinsics.tailCall; its value is what the caller returns
+    private void tailCall(int arity, IntConsumer argument) {
+        depth++;
+        objects(arity, argument);
+        depth--;
+        code.invokestatic(CD_INTRINSICS, "tailCall", MethodTypeDesc.of(CD_Object, CD_Object, CD_OBJECT_ARRAY));
+    }
+
+    // a function known at compile time is invoked statically, without going through its Function value, and the tail
+    // call it may return is run here
+    private void direct(BytecodeCompiler.Target target, Runnable arguments) {
+        var type = functionType(target.arity());
+        var base = depth;
+        if (target.unit() == unit) {
+            code.aconst_null();
+            depth++;
+            arguments.run();
+            depth = base;
+            code.invokestatic(unit.descriptor(), target.name(), type);
+            code.invokestatic(CD_INTRINSICS, "result", MethodTypeDesc.of(CD_Object, CD_Object));
+        } else {
+            code.constantInstruction(unit.link(target.unit(), target.name(), type));
+            code.aconst_null();
+            depth += 2;
+            arguments.run();
+            depth = base;
+            code.invokevirtual(CD_MethodHandle, "invokeExact", type);
+            code.invokestatic(CD_INTRINSICS, "result", MethodTypeDesc.of(CD_Object, CD_Object));
+        }
+    }
+
+    private void push(ResolvedBit.Expression expression) {
+        expression(expression);
+        depth++;
+    }
+
+    private void pushGeneric(Type generic) {
+        generic(generic);
+        depth++;
+    }
+
+    // calls the BitCallable on the stack with the given number of arguments, without an argument array up to four
+    private void apply(int arity, IntConsumer argument) {
+        code.checkcast(CD_CALLABLE);
+        depth++;
+        if (arity <= 4) {
+            var base = depth;
+            for (var i = 0; i < arity; i++) {
+                argument.accept(i);
+                depth++;
+            }
+            depth = base - 1;
+            var parameters = new ClassDesc[arity];
+            Arrays.fill(parameters, CD_Object);
+            code.invokeinterface(CD_CALLABLE, "call" + arity, MethodTypeDesc.of(CD_Object, parameters));
+            return;
+        }
+        objects(arity, argument);
+        depth--;
+        code.invokeinterface(CD_CALLABLE, "call", MethodTypeDesc.of(CD_Object, CD_OBJECT_ARRAY));
+    }
+
+    // generic arguments are passed by value, so type variables of the caller must be bound before the call
+    private void generic(Type generic) {
+        code.constantInstruction(unit.constant(generic, CD_TYPE));
+        if (generic instanceof Type.TypeVariable typeVariable && typeVariable.name() != null && typeSlots.containsKey(typeVariable.name().id())) {
+            code.aload(local(typeSlots.get(typeVariable.name().id())));
+            code.swap();
+            code.invokestatic(CD_INTRINSICS, "reify", MethodTypeDesc.of(CD_TYPE, CD_Object, CD_TYPE));
+        }
+    }
+
+    private void objects(int size, IntConsumer element) {
+        code.constantInstruction(size);
+        code.anewarray(CD_Object);
+        for (var i = 0; i < size; i++) {
+            code.dup();
+            code.constantInstruction(i);
+            depth += 3;
+            element.accept(i);
+            depth -= 3;
+            code.aastore();
+        }
+    }
+
+    private record Loop(Label start, Label end, int depth) {}
+}
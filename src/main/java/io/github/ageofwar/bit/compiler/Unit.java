@@ -0,0 +1,88 @@
+package io.github.ageofwar.bit.compiler;
+
+import jdk.internal.classfile.ClassBuilder;
+import jdk.internal.classfile.ClassHierarchyResolver;
+import jdk.internal.classfile.Classfile;
+
+import java.lang.constant.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.*;
+import java.util.function.Consumer;
+
+import static java.lang.constant.ConstantDescs.*;
+
+// one generated hidden class; objects it needs are handed over as class data and loaded as dynamic constants
+final class Unit {
+    private static final DirectMethodHandleDesc CLASS_DATA_AT = ConstantDescs.ofConstantBootstrap(ClassDesc.of("java.lang.invoke.MethodHandles"), "classDataAt", CD_Object, CD_int);
+
+    private final ClassDesc descriptor;
+    private final List<Object> constants;
+    private final Map<Object, Integer> indexes;
+    private final List<Link> links;
+    private final Deque<Consumer<ClassBuilder>> methods;
+    private int names;
+    private MethodHandles.Lookup lookup;
+
+    Unit(ClassDesc descriptor) {
+        this.descriptor = descriptor;
+        this.constants = new ArrayList<>();
+        this.indexes = new IdentityHashMap<>();
+        this.links = new ArrayList<>();
+        this.methods = new ArrayDeque<>();
+    }
+
+    ClassDesc descriptor() {
+        return descriptor;
+    }
+
+    String newName(String prefix) {
+        return prefix + names++;
+    }
+
+    void method(Consumer<ClassBuilder> method) {
+        methods.add(method);
+    }
+
+    ConstantDesc constant(Object value, ClassDesc type) {
+        var index = indexes.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            indexes.put(value, index);
+        }
+        return DynamicConstantDesc.ofNamed(CLASS_DATA_AT, DEFAULT_NAME, type, index);
+    }
+
+    // a handle to a static method of another unit, resolved once every unit has been defined
+    ConstantDesc link(Unit target, String name, MethodTypeDesc type) {
+        var index = constants.size();
+        constants.add(null);
+        links.add(new Link(index, target, name, type));
+        return DynamicConstantDesc.ofNamed(CLASS_DATA_AT, DEFAULT_NAME, CD_MethodHandle, index);
+    }
+
+    void define(MethodHandles.Lookup lookup, ClassHierarchyResolver resolver) throws IllegalAccessException {
+        var bytes = Classfile.build(descriptor, List.of(Classfile.Option.classHierarchyResolver(resolver)), classBuilder -> {
+            classBuilder.withFlags(Classfile.ACC_FINAL | Classfile.ACC_SUPER | Classfile.ACC_SYNTHETIC);
+            // emitting a method may queue the functions nested in it
+            while (!methods.isEmpty()) {
+                methods.poll().accept(classBuilder);
+            }
+        });
+        this.lookup = lookup.defineHiddenClassWithClassData(bytes, constants, true);
+    }
+
+    void link() throws ReflectiveOperationException {
+        for (var link : links) {
+            var type = (MethodType) link.type().resolveConstantDesc(link.target().lookup);
+            constants.set(link.index(), link.target().lookup.findStatic(link.target().lookup.lookupClass(), link.name(), type));
+        }
+    }
+
+    MethodHandles.Lookup lookup() {
+        return lookup;
+    }
+
+    private record Link(int index, Unit target, String name, MethodTypeDesc type) {}
+}
@@ -0,0 +1,3 @@
+package io.github.ageofwar.bit.interpreter;
+
+enum Action { BREAK, CONTINUE, RETURN }
@@ -0,0 +1,128 @@
+package io.github.ageofwar.bit.interpreter;
+
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// every Bit function value; generic arguments come first, then the arguments. call0..call4 let callers that know the
+// arity skip the argument array, implementations override the ones they can serve without it
+@FunctionalInterface
+public interface BitCallable {
+    Object call(Object... args);
+
+    default Object call0() {
+        return call();
+    }
+
+    default Object call1(Object a) {
+        return call(a);
+    }
+
+    default Object call2(Object a, Object b) {
+        return call(a, b);
+    }
+
+    default Object call3(Object a, Object b, Object c) {
+        return call(a, b, c);
+    }
+
+    default Object call4(Object a, Object b, Object c, Object d) {
+        return call(a, b, c, d);
+    }
+
+    // picks the fast path for the number of arguments
+    default Object callWith(Object[] args) {
+        return switch (args.length) {
+            case 0 -> call0();
+            case 1 -> call1(args[0]);
+            case 2 -> call2(args[0], args[1]);
+            case 3 -> call3(args[0], args[1], args[2]);
+            case 4 -> call4(args[0], args[1], args[2], args[3]);
+            default -> call(args);
+        };
+    }
+
+    static BitCallable of0(Supplier<Object> function) {
+        return new BitCallable() {
+            @Override
+            public Object call0() {
+                return function.get();
+            }
+
+            @Override
+            public Object call(Object... args) {
+                return function.get();
+            }
+        };
+    }
+
+    static BitCallable of1(Function<Object, Object> function) {
+        return new BitCallable() {
+            @Override
+            public Object call1(Object a) {
+                return function.apply(a);
+            }
+
+            @Override
+            public Object call(Object... args) {
+                return function.apply(args[0]);
+            }
+        };
+    }
+
+    static BitCallable of2(BiFunction<Object, Object, Object> function) {
+        return new BitCallable() {
+            @Override
+            public Object call2(Object a, Object b) {
+                return function.apply(a, b);
+            }
+
+            @Override
+            public Object call(Object... args) {
+                return function.apply(args[0], args[1]);
+            }
+        };
+    }
+
+    // an extension bound to its receiver and generic arguments, which precede the arguments of the call
+    static BitCallable bind(BitCallable function, Object receiver, Object[] generics) {
+        if (generics.length > 0) {
+            return args -> {
+                var all = new Object[1 + generics.length + args.length];
+                all[0] = receiver;
+                System.arraycopy(generics, 0, all, 1, generics.length);
+                System.arraycopy(args, 0, all, 1 + generics.length, args.length);
+                return function.callWith(all);
+            };
+        }
+        return new BitCallable() {
+            @Override
+            public Object call0() {
+                return function.call1(receiver);
+            }
+
+            @Override
+            public Object call1(Object a) {
+                return function.call2(receiver, a);
+            }
+
+            @Override
+            public Object call2(Object a, Object b) {
+                return function.call3(receiver, a, b);
+            }
+
+            @Override
+            public Object call3(Object a, Object b, Object c) {
+                return function.call4(receiver, a, b, c);
+            }
+
+            @Override
+            public Object call(Object... args) {
+                var all = new Object[1 + args.length];
+                all[0] = receiver;
+                System.arraycopy(args, 0, all, 1, args.length);
+                return function.callWith(all);
+            }
+        };
+    }
+}
@@ -0,0 +1,152 @@
+package io.github.ageofwar.bit.interpreter;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.StringJoiner;
+
+import static io.github.ageofwar.bit.types.Types.none;
+
+// a growable list backing array literals and MutableList. lists whose elements the resolver proved to fit in a long
+// keep them unboxed in a long[], until a value of any other kind is stored
+public final class BitList {
+    static final Set<String> MEMBERS = Set.of("size", "get", "set", "add", "remove", "sequence", "toString");
+    private static final long[] NO_LONGS = {};
+    private static final Object[] NO_OBJECTS = {};
+
+    private long[] longs;
+    private Object[] objects;
+    private int size;
+
+    public BitList(boolean primitive) {
+        if (primitive) {
+            longs = NO_LONGS;
+        } else {
+            objects = NO_OBJECTS;
+        }
+    }
+
+    // takes ownership of values
+    public static BitList of(Object[] values, boolean primitive) {
+        var list = new BitList(false);
+        if (primitive) {
+            list.objects = null;
+            list.longs = new long[values.length];
+            for (var i = 0; i < values.length; i++) {
+                list.longs[i] = (Long) values[i];
+            }
+        } else {
+            list.objects = values;
+        }
+        list.size = values.length;
+        return list;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public Object get(Object index) {
+        var i = Integers.index(index, size);
+        if (i < 0) return none();
+        return element(i);
+    }
+
+    public Object set(Object index, Object value) {
+        var i = Integers.index(index, size);
+        if (i < 0) {
+            throw new IndexOutOfBoundsException("Index out of bounds: " + index);
+        }
+        var previous = element(i);
+        store(i, value);
+        return previous;
+    }
+
+    public Object add(Object value) {
+        var capacity = longs != null ? longs.length : objects.length;
+        if (size == capacity) {
+            grow(Math.max(8, capacity + (capacity >> 1)));
+        }
+        store(size++, value);
+        return none();
+    }
+
+    public Object remove(Object index) {
+        var i = Integers.index(index, size);
+        if (i < 0) return none();
+        var removed = element(i);
+        var moved = size - i - 1;
+        if (longs != null) {
+            System.arraycopy(longs, i + 1, longs, i, moved);
+        } else {
+            System.arraycopy(objects, i + 1, objects, i, moved);
+            objects[size - 1] = null;
+        }
+        size--;
+        return removed;
+    }
+
+    // walks the list as it is when next is called, so elements added meanwhile are seen
+    public BitSequence sequence() {
+        return new BitSequence() {
+            private int index;
+
+            @Override
+            public Object next() {
+                return index < size ? element(index++) : none();
+            }
+        };
+    }
+
+    Object member(String name) {
+        return switch (name) {
+            case "size" -> BitCallable.of0(this::size);
+            case "get" -> BitCallable.of1(this::get);
+            case "set" -> BitCallable.of2(this::set);
+            case "add" -> BitCallable.of1(this::add);
+            case "remove" -> BitCallable.of1(this::remove);
+            case "sequence" -> BitCallable.of0(this::sequence);
+            case "toString" -> BitCallable.of0(() -> new BitString(toString()));
+            default -> null;
+        };
+    }
+
+    private Object element(int index) {
+        return longs != null ? (Object) longs[index] : objects[index];
+    }
+
+    private void store(int index, Object value) {
+        if (longs != null) {
+            if (value instanceof Long l) {
+                longs[index] = l;
+                return;
+            }
+            inflate();
+        }
+        objects[index] = value;
+    }
+
+    private void grow(int capacity) {
+        if (longs != null) {
+            longs = Arrays.copyOf(longs, capacity);
+        } else {
+            objects = Arrays.copyOf(objects, capacity);
+        }
+    }
+
+    private void inflate() {
+        objects = new Object[longs.length];
+        for (var i = 0; i < size; i++) {
+            objects[i] = longs[i];
+        }
+        longs = null;
+    }
+
+    @Override
+    public String toString() {
+        var joiner = new StringJoiner(", ", "[", "]");
+        for (var i = 0; i < size; i++) {
+            joiner.add(String.valueOf(element(i)));
+        }
+        return joiner.toString();
+    }
+}
@@ -0,0 +1,15 @@
+package io.github.ageofwar.bit.interpreter;
+
+// a Sequence produced by a native value; the engines call next directly
+public abstract class BitSequence {
+    public abstract Object next();
+
+    Object member(String name) {
+        return name.equals("next") ? BitCallable.of0(this::next) : null;
+    }
+
+    @Override
+    public String toString() {
+        return "[next]";
+    }
+}
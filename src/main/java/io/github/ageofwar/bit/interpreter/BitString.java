@@ -0,0 +1,53 @@
+package io.github.ageofwar.bit.interpreter;
+
+import static io.github.ageofwar.bit.types.Types.none;
+
+// an immutable string; its members are computed on access instead of being stored in a struct
+public record BitString(String value) {
+    private static final BitString[] ASCII = new BitString[128];
+
+    static {
+        for (var c = 0; c < ASCII.length; c++) {
+            ASCII[c] = new BitString(String.valueOf((char) c));
+        }
+    }
+
+    public static BitString of(char c) {
+        return c < ASCII.length ? ASCII[c] : new BitString(String.valueOf(c));
+    }
+
+    public long size() {
+        return value.length();
+    }
+
+    public Object get(Object index) {
+        var i = Integers.index(index, value.length());
+        return i < 0 ? none() : of(value.charAt(i));
+    }
+
+    public BitSequence sequence() {
+        return new BitSequence() {
+            private int index;
+
+            @Override
+            public Object next() {
+                return index < value.length() ? of(value.charAt(index++)) : none();
+            }
+        };
+    }
+
+    // a member read without calling it, bound to this string
+    Object member(String name) {
+        return switch (name) {
+            case "size" -> BitCallable.of0(this::size);
+            case "get" -> BitCallable.of1(this::get);
+            case "sequence" -> BitCallable.of0(this::sequence);
+            default -> null;
+        };
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
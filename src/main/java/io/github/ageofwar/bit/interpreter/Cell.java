@@ -0,0 +1,14 @@
+package io.github.ageofwar.bit.interpreter;
+
+final class Cell {
+    Object value;
+
+    Cell(Object value) {
+        this.value = value;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(value);
+    }
+}
@@ -1,13 +1,12 @@
 package io.github.ageofwar.bit.interpreter;
 
 import io.github.ageofwar.bit.resolver.ResolvedBit;
+import io.github.ageofwar.bit.types.Type;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
-import java.util.List;
-import java.util.function.Function;
 
 import static io.github.ageofwar.bit.types.Types.*;
 
@@ -17,69 +16,68 @@ public class Environment {
     public static Environment init(int variablesSize) {
         var environment = new Environment(variablesSize);
         var i = 0;
-        environment.assignVariable(new ResolvedBit.Symbol("__read_stdin", i++), (Function<List<Object>, Object>) args -> {;
+        environment.assignVariable(new ResolvedBit.Symbol("__read_stdin", i++), BitCallable.of0(() -> {
             try {
                 var c = System.in.read();
-                if (c == -1) return "";
-                return String.valueOf((char) c);
+                if (c == -1) return new BitString("");
+                return BitString.of((char) c);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
-        });
-        environment.assignVariable(new ResolvedBit.Symbol("__write_stdout", i++), (Function<List<Object>, Object>) args -> {
-            if (args.getFirst() instanceof Struct(var fields) && fields.containsKey("$")) {
-                System.out.print(fields.get("$"));
-                return none();
-            }
-            System.out.print(args.getFirst());
+        }));
+        environment.assignVariable(new ResolvedBit.Symbol("__write_stdout", i++), BitCallable.of1(value -> {
+            System.out.print(value);
             return none();
-        });
-        environment.assignVariable(new ResolvedBit.Symbol("__file_open_read", i++), (Function<List<Object>, Object>) args -> {
+        }));
+        environment.assignVariable(new ResolvedBit.Symbol("__file_open_read", i++), BitCallable.of1(path -> {
             try {
-                return Files.newBufferedReader(Paths.get((String) args.getFirst()));
+                return Files.newBufferedReader(Paths.get(path.toString()));
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
-        });
-        environment.assignVariable(new ResolvedBit.Symbol("__file_open_write", i++), (Function<List<Object>, Object>) args -> {
+        }));
+        environment.assignVariable(new ResolvedBit.Symbol("__file_open_write", i++), BitCallable.of1(path -> {
             try {
-                return Files.newBufferedWriter(Paths.get((String) args.getFirst()), StandardOpenOption.CREATE);
+                return Files.newBufferedWriter(Paths.get(path.toString()), StandardOpenOption.CREATE);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
-        });
-        environment.assignVariable(new ResolvedBit.Symbol("__file_close", i++), (Function<List<Object>, Object>) args -> {
+        }));
+        environment.assignVariable(new ResolvedBit.Symbol("__file_close", i++), BitCallable.of1(file -> {
             try {
-                ((AutoCloseable) args.getFirst()).close();
+                ((AutoCloseable) file).close();
                 return none();
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
-        });
-        environment.assignVariable(new ResolvedBit.Symbol("__file_read", i++), (Function<List<Object>, Object>) args -> {
+        }));
+        environment.assignVariable(new ResolvedBit.Symbol("__file_read", i++), BitCallable.of1(file -> {
             try {
-                var reader = (java.io.BufferedReader) args.getFirst();
+                var reader = (java.io.BufferedReader) file;
                 int c = reader.read();
-                if (c == -1) return "";
-                return String.valueOf((char) c);
+                if (c == -1) return new BitString("");
+                return BitString.of((char) c);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
-        });
-        environment.assignVariable(new ResolvedBit.Symbol("__file_write", i++), (Function<List<Object>, Object>) args -> {
+        }));
+        environment.assignVariable(new ResolvedBit.Symbol("__file_write", i++), BitCallable.of2((file, text) -> {
             try {
-                var writer = (java.io.BufferedWriter) args.getFirst();
-                writer.write((String) args.get(1));
+                var writer = (java.io.BufferedWriter) file;
+                writer.write(((BitString) text).value());
                 writer.flush();
                 return none();
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
-        });
+        }));
 
-        environment.assignVariable(new ResolvedBit.Symbol("toString", i++), (Function<List<Object>, Object>) args -> {
-            return args.getFirst().toString();
-        });
+        environment.assignVariable(new ResolvedBit.Symbol("toString", i++), BitCallable.of1(value -> {
+            return new BitString(value.toString());
+        }));
+        environment.assignVariable(new ResolvedBit.Symbol("__list_new", i++), BitCallable.of1(element -> {
+            return new BitList(fitsLong((Type) element));
+        }));
         return environment;
     }
 
@@ -0,0 +1,95 @@
+package io.github.ageofwar.bit.interpreter;
+
+// the inline cache of a field access site. The resolver hint is tried first, then up to four shapes seen at this site;
+// past that the site is megamorphic and looks the member up in the shape. A call through the site invokes a method of
+// the receiver class directly, with the receiver as first argument
+public final class FieldCache {
+    private static final int ENTRIES = 4;
+
+    private final String field;
+    private final int hint;
+    private final Shape[] shapes = new Shape[ENTRIES];
+    private final int[] members = new int[ENTRIES];
+
+    public FieldCache(String field, int hint) {
+        this.field = field.intern();
+        this.hint = hint;
+    }
+
+    public Object read(Object receiver) {
+        if (receiver instanceof Struct struct) {
+            var member = member(struct.shape());
+            var value = member < 0 ? null : struct.member(member);
+            if (value == null) {
+                throw new RuntimeException("Field '" + field + "' not found in struct: " + struct);
+            }
+            return value;
+        }
+        return Values.access(receiver, field);
+    }
+
+    public void write(Object receiver, Object value) {
+        var struct = (Struct) receiver;
+        var member = member(struct.shape());
+        var slot = member < 0 ? -1 : struct.shape().slot(member);
+        if (slot < 0) {
+            throw new RuntimeException("Field '" + field + "' not found in struct: " + struct);
+        }
+        struct.set(slot, value);
+    }
+
+    public Object call0(Object receiver) {
+        var method = method(receiver);
+        return method != null ? method.call1(receiver) : ((BitCallable) read(receiver)).call0();
+    }
+
+    public Object call1(Object receiver, Object a) {
+        var method = method(receiver);
+        return method != null ? method.call2(receiver, a) : ((BitCallable) read(receiver)).call1(a);
+    }
+
+    public Object call2(Object receiver, Object a, Object b) {
+        var method = method(receiver);
+        return method != null ? method.call3(receiver, a, b) : ((BitCallable) read(receiver)).call2(a, b);
+    }
+
+    public Object call3(Object receiver, Object a, Object b, Object c) {
+        var method = method(receiver);
+        return method != null ? method.call4(receiver, a, b, c) : ((BitCallable) read(receiver)).call3(a, b, c);
+    }
+
+    public Object callWith(Object receiver, Object[] args) {
+        var method = method(receiver);
+        if (method == null) {
+            return ((BitCallable) read(receiver)).callWith(args);
+        }
+        var all = new Object[1 + args.length];
+        all[0] = receiver;
+        System.arraycopy(args, 0, all, 1, args.length);
+        return method.callWith(all);
+    }
+
+    // the method of the receiver class this site names, null when the receiver stores the member in a field
+    public BitCallable method(Object receiver) {
+        if (!(receiver instanceof Struct struct) || !struct.shape().hasMethods()) return null;
+        var member = member(struct.shape());
+        return member < 0 ? null : struct.shape().method(member);
+    }
+
+    private int member(Shape shape) {
+        if (hint >= 0 && hint < shape.members() && shape.name(hint) == field) {
+            return hint;
+        }
+        for (var i = 0; i < ENTRIES; i++) {
+            var cached = shapes[i];
+            if (cached == shape) return members[i];
+            if (cached == null) {
+                var member = shape.member(field);
+                members[i] = member;
+                shapes[i] = shape;
+                return member;
+            }
+        }
+        return shape.member(field);
+    }
+}
@@ -0,0 +1,102 @@
+package io.github.ageofwar.bit.interpreter;
+
+import io.github.ageofwar.bit.resolver.ResolvedBit;
+
+public final class Frame implements TypeBindings {
+    private static final Object[] NO_CAPTURES = new Object[0];
+
+    private final Environment environment;
+    private final ResolvedBit.FrameLayout layout;
+    private final Object[] slots;
+    // how the running statement completed, null while it completes normally. a loop consumes the break or continue
+    // leaving its body, the call consumes a return and its value
+    Action completion;
+    Object returned;
+    // a tail call returns the frame it prepared for its callee in place of a value, with the function to run in it as
+    // the engine that prepared it knows functions; the caller runs it in place of itself
+    Object callee;
+
+    public Frame(Environment environment) {
+        this(environment, ResolvedBit.FrameLayout.EMPTY, NO_CAPTURES);
+    }
+
+    public Frame(Environment environment, ResolvedBit.FrameLayout layout, Object[] captured) {
+        this.environment = environment;
+        this.layout = layout;
+        this.slots = new Object[layout.size()];
+        var captures = layout.captures();
+        for (var i = 0; i < captured.length; i++) {
+            slots[captures.get(i).target().slot()] = captured[i];
+        }
+    }
+
+    public Environment environment() {
+        return environment;
+    }
+
+    // values a closure with the given layout copies out of this frame; cells are shared, not unwrapped
+    public Object[] capture(ResolvedBit.FrameLayout layout) {
+        var captures = layout.captures();
+        if (captures.isEmpty()) return NO_CAPTURES;
+        var captured = new Object[captures.size()];
+        for (var i = 0; i < captured.length; i++) {
+            var source = captures.get(i).source();
+            captured[i] = source.storage() == ResolvedBit.Symbol.Storage.GLOBAL ? environment.get(source) : slots[source.slot()];
+        }
+        return captured;
+    }
+
+    public Object get(ResolvedBit.Symbol symbol) {
+        return switch (symbol.storage()) {
+            case GLOBAL -> environment.get(symbol);
+            case LOCAL -> slots[symbol.slot()];
+            case CELL -> ((Cell) slots[symbol.slot()]).value;
+        };
+    }
+
+    public void define(ResolvedBit.Symbol symbol, Object value) {
+        switch (symbol.storage()) {
+            case GLOBAL -> environment.assignVariable(symbol, value);
+            case LOCAL -> slots[symbol.slot()] = value;
+            case CELL -> slots[symbol.slot()] = new Cell(value);
+        }
+    }
+
+    public void assign(ResolvedBit.Symbol symbol, Object value) {
+        switch (symbol.storage()) {
+            case GLOBAL -> environment.assignVariable(symbol, value);
+            case LOCAL -> slots[symbol.slot()] = value;
+            case CELL -> ((Cell) slots[symbol.slot()]).value = value;
+        }
+    }
+
+    Object complete(Action action, Object value) {
+        completion = action;
+        returned = value;
+        return value;
+    }
+
+    // the result of a function body, which is the returned value if it completed with a return
+    Object result(Object value) {
+        return completion == Action.RETURN ? returned : value;
+    }
+
+    // direct slot access for engines that resolved the storage of a symbol ahead of time
+    Object load(int slot) {
+        return slots[slot];
+    }
+
+    void store(int slot, Object value) {
+        slots[slot] = value;
+    }
+
+    // type variables keep the symbol of their declaration, which may have been captured into this frame
+    @Override
+    public Object lookup(ResolvedBit.Symbol symbol) {
+        if (symbol.storage() == ResolvedBit.Symbol.Storage.GLOBAL) return environment.get(symbol);
+        for (var capture : layout.captures()) {
+            if (capture.target().id() == symbol.id()) return get(capture.target());
+        }
+        return symbol.slot() < slots.length ? get(symbol) : null;
+    }
+}
@@ -0,0 +1,66 @@
+package io.github.ageofwar.bit.interpreter;
+
+import java.math.BigInteger;
+
+// integers are a Long whenever they fit and a BigInteger only past the long range, so that equal values always share
+// one representation and the common case never allocates a BigInteger
+public final class Integers {
+    private Integers() {
+    }
+
+    public static Object valueOf(BigInteger value) {
+        return value.bitLength() < Long.SIZE ? (Object) value.longValue() : value;
+    }
+
+    public static BigInteger toBigInteger(Object value) {
+        return value instanceof Long l ? BigInteger.valueOf(l) : (BigInteger) value;
+    }
+
+    public static Object add(Object lhs, Object rhs) {
+        if (lhs instanceof Long a && rhs instanceof Long b) {
+            long result = a + b;
+            // overflow iff both operands have the sign the result lacks
+            if (((a ^ result) & (b ^ result)) >= 0) return result;
+        }
+        return valueOf(toBigInteger(lhs).add(toBigInteger(rhs)));
+    }
+
+    public static Object subtract(Object lhs, Object rhs) {
+        if (lhs instanceof Long a && rhs instanceof Long b) {
+            long result = a - b;
+            if (((a ^ b) & (a ^ result)) >= 0) return result;
+        }
+        return valueOf(toBigInteger(lhs).subtract(toBigInteger(rhs)));
+    }
+
+    public static Object multiply(Object lhs, Object rhs) {
+        if (lhs instanceof Long a && rhs instanceof Long b) {
+            long result = a * b;
+            long high = Math.multiplyHigh(a, b);
+            if ((high == 0 && result >= 0) || (high == -1 && result < 0)) return result;
+        }
+        return valueOf(toBigInteger(lhs).multiply(toBigInteger(rhs)));
+    }
+
+    public static Object divide(Object lhs, Object rhs) {
+        if (lhs instanceof Long a && rhs instanceof Long b) {
+            if (b == 0) throw new ArithmeticException("Division by zero");
+            // Long.MIN_VALUE / -1 is the only quotient that does not fit
+            if (a != Long.MIN_VALUE || b != -1) return a / b;
+        }
+        var divisor = toBigInteger(rhs);
+        if (divisor.signum() == 0) throw new ArithmeticException("Division by zero");
+        return valueOf(toBigInteger(lhs).divide(divisor));
+    }
+
+    public static int compare(Object lhs, Object rhs) {
+        if (lhs instanceof Long a && rhs instanceof Long b) return Long.compare(a, b);
+        return toBigInteger(lhs).compareTo(toBigInteger(rhs));
+    }
+
+    // the index as an int if it lies in [0, size), -1 otherwise
+    public static int index(Object value, int size) {
+        if (value instanceof Long l && l >= 0 && l < size) return (int) (long) l;
+        return -1;
+    }
+}
@@ -3,15 +3,18 @@ package io.github.ageofwar.bit.interpreter;
 import io.github.ageofwar.bit.resolver.ResolvedBit;
 import io.github.ageofwar.bit.types.Type;
 
-import java.math.BigInteger;
 import java.util.*;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import static io.github.ageofwar.bit.types.Types.*;
 
 public class Interpreter {
+    // every literal evaluates to the same string
+    private final Map<ResolvedBit.Expression.StringLiteral, BitString> strings = new IdentityHashMap<>();
+    // field reads and writes and struct literals remember the slot lookups of their site
+    private final Map<ResolvedBit, FieldCache> fieldCaches = new IdentityHashMap<>();
+    private final Map<ResolvedBit, TypeTest> typeTests = new IdentityHashMap<>();
+    private final Map<ResolvedBit.Expression.Struct, Shape> shapes = new IdentityHashMap<>();
+
     @SuppressWarnings("unchecked")
     public void interpret(ResolvedBit.Program program, String mainFunctionName) {
         var environment = Environment.init(program.variables());
@@ -27,464 +30,550 @@ public class Interpreter {
         if (mainSymbol == null) {
             throw new RuntimeException("Main function not found: " + mainFunctionName);
         }
-        var main = (Function<List<Object>, Object>) environment.get(mainSymbol);
-        main.apply(List.of());
+        var main = (BitCallable) environment.get(mainSymbol);
+        main.call0();
     }
 
     public void interpret(ResolvedBit.Program program, Environment environment) {
+        var frame = new Frame(environment);
         for (var declaration : program.declarations()) {
-            interpret(declaration, environment);
+            interpret(declaration, frame);
         }
     }
 
-    private void interpret(ResolvedBit.Declaration declaration, Environment environment) {
+    private void interpret(ResolvedBit.Declaration declaration, Frame frame) {
         switch (declaration) {
-            case ResolvedBit.Declaration.Variable variable -> interpret(variable, environment);
-            case ResolvedBit.Declaration.Function function -> interpret(function, environment);
-            case ResolvedBit.Declaration.Value Object -> interpret(Object, environment);
-            case ResolvedBit.Declaration.Type type -> interpret(type, environment);
-            case ResolvedBit.Declaration.Class classDeclaration -> interpret(classDeclaration, environment);
-            case ResolvedBit.Declaration.Implementation implementation -> interpret(implementation, environment);
+            case ResolvedBit.Declaration.Variable variable -> interpret(variable, frame);
+            case ResolvedBit.Declaration.Function function -> interpret(function, frame);
+            case ResolvedBit.Declaration.Value Object -> interpret(Object, frame);
+            case ResolvedBit.Declaration.Type type -> interpret(type, frame);
+            case ResolvedBit.Declaration.Class classDeclaration -> interpret(classDeclaration, frame);
+            case ResolvedBit.Declaration.Implementation implementation -> interpret(implementation, frame);
         }
     }
 
-    private void interpret(ResolvedBit.Declaration.Function function, Environment environment) {
-        environment.assignVariable(function.name(), (Function<List<Object>, Object>) args -> {
-            for (var i = 0; i < function.generics().size(); i++) {
-                environment.assignVariable(function.generics().get(i).name(), args.get(i));
-            }
-            var offset = function.generics().size();
-            for (var i = 0; i < function.parameters().size(); i++) {
-                environment.assignVariable(function.parameters().get(i).name(), args.get(offset + i));
-            }
-            var result = eval(function.body(), environment);
-            if (result instanceof Return(var value)) {
-                return value;
+    private void interpret(ResolvedBit.Declaration.Function function, Frame frame) {
+        var bindings = new ArrayList<ResolvedBit.Symbol>();
+        function.generics().forEach(generic -> bindings.add(generic.name()));
+        function.parameters().forEach(parameter -> bindings.add(parameter.name()));
+        var captured = frame.capture(function.frame());
+        var callable = closure(function.frame(), captured, bindings, function.body(), frame.environment());
+        frame.define(function.name(), callable);
+        // a local function referring to itself captured its own slot before it was assigned
+        var captures = function.frame().captures();
+        for (var i = 0; i < captures.size(); i++) {
+            if (captures.get(i).source().id() == function.name().id()) {
+                captured[i] = callable;
             }
-            return result;
-        });
+        }
     }
 
-    private void interpret(ResolvedBit.Declaration.Variable variable, Environment environment) {
-        environment.assignVariable(variable.name(), eval(variable.value(), environment));
+    private void interpret(ResolvedBit.Declaration.Variable variable, Frame frame) {
+        frame.define(variable.name(), eval(variable.value(), frame));
     }
 
-    private void interpret(ResolvedBit.Declaration.VariableAssignment assignment, Environment environment) {
-        environment.assignVariable(assignment.name(), eval(assignment.value(), environment));
+    private void interpret(ResolvedBit.Declaration.VariableAssignment assignment, Frame frame) {
+        frame.assign(assignment.name(), eval(assignment.value(), frame));
     }
 
-    private void interpret(ResolvedBit.Declaration.VariableFieldAssignment assignment, Environment environment) {
-        ((Struct) eval(assignment.struct(), environment)).setField(assignment.name(), eval(assignment.value(), environment));
+    private void interpret(ResolvedBit.Declaration.VariableFieldAssignment assignment, Frame frame) {
+        var struct = eval(assignment.struct(), frame);
+        fieldCaches.computeIfAbsent(assignment, a -> new FieldCache(assignment.name(), assignment.slot())).write(struct, eval(assignment.value(), frame));
     }
 
-    private void interpret(ResolvedBit.Declaration.Value value, Environment environment) {
-        environment.assignVariable(value.name(), eval(value.value(), environment));
+    private void interpret(ResolvedBit.Declaration.Value value, Frame frame) {
+        frame.define(value.name(), eval(value.value(), frame));
     }
 
-    private void interpret(ResolvedBit.Declaration.Type type, Environment environment) {
+    private void interpret(ResolvedBit.Declaration.Type type, Frame frame) {
         if (type.valueName() != null) {
-            environment.assignVariable(type.valueName(), type.value());
+            frame.define(type.valueName(), type.value());
         }
     }
 
-    public void interpret(ResolvedBit.Declaration.Class classDeclaration, Environment environment) {
-        var constructor = (Function<List<Object>, Object>) args -> {
+    public void interpret(ResolvedBit.Declaration.Class classDeclaration, Frame frame) {
+        var layout = classDeclaration.constructor().frame();
+        var captured = frame.capture(layout);
+        var methods = new HashMap<String, BitCallable>();
+        for (var member : classDeclaration.members()) {
+            if (member.declaration() instanceof ResolvedBit.Declaration.Function f) {
+                var bindings = new ArrayList<ResolvedBit.Symbol>();
+                bindings.add(member.receiver());
+                f.generics().forEach(generic -> bindings.add(generic.name()));
+                f.parameters().forEach(parameter -> bindings.add(parameter.name()));
+                methods.put(f.name().name(), closure(f.frame(), frame.capture(f.frame()), bindings, f.body(), frame.environment()));
+            }
+        }
+        var shape = Shape.of(Values.fields(classDeclaration), methods);
+        var constructor = (BitCallable) args -> {
+            var constructorFrame = new Frame(frame.environment(), layout, captured);
             for (var i = 0; i < classDeclaration.constructor().parameters().size(); i++) {
-                environment.assignVariable(classDeclaration.constructor().parameters().get(i).name(), args.get(i));
+                constructorFrame.define(classDeclaration.constructor().parameters().get(i).name(), args[i]);
             }
-            var fields = new java.util.HashMap<String, Object>();
+            var instance = new Struct(shape);
+            constructorFrame.define(classDeclaration.thisSymbol(), instance);
             for (var declaration : classDeclaration.members()) {
                 switch (declaration.declaration()) {
-                    case ResolvedBit.Declaration.Variable v -> fields.put(v.name().name(), eval(v.value(), environment));
-                    case ResolvedBit.Declaration.Value v -> fields.put(v.name().name(), eval(v.value(), environment));
-                    case ResolvedBit.Declaration.Function f -> fields.put(f.name().name(), (Function<List<Object>, Object>) a -> {
-                        environment.assignVariable(classDeclaration.thisSymbol(), new Struct(fields));
-                        for (var i = 0; i < f.parameters().size(); i++) {
-                            environment.assignVariable(f.parameters().get(i).name(), a.get(i));
-                        }
-                        var result = eval(f.body(), environment);
-                        if (result instanceof Return(var value)) {
-                            return value;
-                        }
-                        return result;
-                    });
-                    case ResolvedBit.Declaration.Type t -> interpret(t, environment);
-                    case ResolvedBit.Declaration.Class c -> interpret(c, environment);
-                    case ResolvedBit.Declaration.Implementation impl -> interpret(impl, environment);
+                    case ResolvedBit.Declaration.Variable v -> instance.setField(v.name().name(), eval(v.value(), constructorFrame));
+                    case ResolvedBit.Declaration.Value v -> instance.setField(v.name().name(), eval(v.value(), constructorFrame));
+                    case ResolvedBit.Declaration.Function ignored -> {}
+                    case ResolvedBit.Declaration.Type t -> interpret(t, constructorFrame);
+                    case ResolvedBit.Declaration.Class c -> interpret(c, constructorFrame);
+                    case ResolvedBit.Declaration.Implementation impl -> interpret(impl, constructorFrame);
                 }
             }
-            return new Struct(fields);
+            return instance;
         };
 
-        environment.assignVariable(classDeclaration.name(), constructor);
+        frame.define(classDeclaration.name(), constructor);
     }
 
-    private void interpret(ResolvedBit.Declaration.Implementation implementation, Environment environment) {
+    private void interpret(ResolvedBit.Declaration.Implementation implementation, Frame frame) {
         for (var function : implementation.extensions()) {
-            environment.assignVariable(function.name(), (Function<List<Object>, Object>) args -> {
-                environment.assignVariable(function.thisSymbol(), args.getFirst());
-                for (var i = 0; i < implementation.generics().size(); i++) {
-                    environment.assignVariable(implementation.generics().get(i).name(), args.get(i + 1));
-                }
-                var offset = implementation.generics().size() + 1;
-                for (var i = 0; i < function.generics().size(); i++) {
-                    environment.assignVariable(function.generics().get(i).name(), args.get(offset + i));
-                }
-                offset += function.generics().size();
-                for (var i = 0; i < function.parameters().size(); i++) {
-                    environment.assignVariable(function.parameters().get(i).name(), args.get(offset + i));
-                }
-                var result = eval(function.body(), environment);
-                if (result instanceof Return(var value)) {
-                    return value;
-                }
-                return result;
-            });
+            var bindings = new ArrayList<ResolvedBit.Symbol>();
+            bindings.add(function.thisSymbol());
+            implementation.generics().forEach(generic -> bindings.add(generic.name()));
+            function.generics().forEach(generic -> bindings.add(generic.name()));
+            function.parameters().forEach(parameter -> bindings.add(parameter.name()));
+            frame.define(function.name(), closure(function.frame(), frame.capture(function.frame()), bindings, function.body(), frame.environment()));
+        }
+    }
+
+    // every call gets its own frame; arguments are bound positionally to the given symbols
+    private BitCallable closure(ResolvedBit.FrameLayout layout, Object[] captured, List<ResolvedBit.Symbol> bindings, ResolvedBit.Expression body, Environment environment) {
+        return new Closure(layout, captured, bindings.toArray(ResolvedBit.Symbol[]::new), body, environment);
+    }
+
+    private final class Closure implements BitCallable {
+        private final ResolvedBit.FrameLayout layout;
+        private final Object[] captured;
+        private final ResolvedBit.Symbol[] symbols;
+        private final ResolvedBit.Expression body;
+        private final Environment environment;
+
+        Closure(ResolvedBit.FrameLayout layout, Object[] captured, ResolvedBit.Symbol[] symbols, ResolvedBit.Expression body, Environment environment) {
+            this.layout = layout;
+            this.captured = captured;
+            this.symbols = symbols;
+            this.body = body;
+            this.environment = environment;
+        }
+
+        @Override
+        public Object call0() {
+            return run(new Frame(environment, layout, captured));
+        }
+
+        @Override
+        public Object call1(Object a) {
+            var frame = new Frame(environment, layout, captured);
+            frame.define(symbols[0], a);
+            return run(frame);
+        }
+
+        @Override
+        public Object call2(Object a, Object b) {
+            var frame = new Frame(environment, layout, captured);
+            frame.define(symbols[0], a);
+            frame.define(symbols[1], b);
+            return run(frame);
+        }
+
+        @Override
+        public Object call3(Object a, Object b, Object c) {
+            var frame = new Frame(environment, layout, captured);
+            frame.define(symbols[0], a);
+            frame.define(symbols[1], b);
+            frame.define(symbols[2], c);
+            return run(frame);
+        }
+
+        @Override
+        public Object call(Object... args) {
+            var frame = new Frame(environment, layout, captured);
+            for (var i = 0; i < symbols.length; i++) {
+                frame.define(symbols[i], args[i]);
+            }
+            return run(frame);
+        }
+
+        // the frame of a tail call of this closure
+        private Frame enter() {
+            var frame = new Frame(environment, layout, captured);
+            frame.callee = this;
+            return frame;
+        }
+
+        // the frame of a tail call with the given arguments, or the value of the call if it takes another number of them
+        private Object tailCall(Object[] args) {
+            if (args.length != symbols.length) return call(args);
+            var frame = enter();
+            for (var i = 0; i < symbols.length; i++) {
+                frame.define(symbols[i], args[i]);
+            }
+            return frame;
+        }
+
+        // runs the body, then the body of each function it ends with a tail call of, in the frame the call filled
+        private Object run(Frame frame) {
+            var body = this.body;
+            while (true) {
+                var result = frame.result(eval(body, frame));
+                if (!(result instanceof Frame next)) return result;
+                frame = next;
+                body = ((Closure) next.callee).body;
+            }
         }
     }
 
     // evaluator methods
 
-    private Object eval(ResolvedBit.Expression expression, Environment environment) {
+    private Object eval(ResolvedBit.Expression expression, Frame frame) {
         return switch (expression) {
-            case ResolvedBit.Expression.Identifier identifier -> eval(identifier, environment);
-            case ResolvedBit.Expression.Call call -> eval(call, environment);
-            case ResolvedBit.Expression.Block block -> eval(block, environment);
+            case ResolvedBit.Expression.Identifier identifier -> eval(identifier, frame);
+            case ResolvedBit.Expression.Call call -> eval(call, frame);
+            case ResolvedBit.Expression.CallExtension call -> eval(call, frame);
+            case ResolvedBit.Expression.Block block -> eval(block, frame);
             case ResolvedBit.Expression.NumberLiteral numberLiteral -> eval(numberLiteral);
             case ResolvedBit.Expression.StringLiteral stringLiteral -> eval(stringLiteral);
             case ResolvedBit.Expression.BooleanLiteral booleanLiteral -> eval(booleanLiteral);
-            case ResolvedBit.Expression.Minus minus -> eval(minus, environment);
-            case ResolvedBit.Expression.Plus plus -> eval(plus, environment);
-            case ResolvedBit.Expression.Multiply multiply -> eval(multiply, environment);
-            case ResolvedBit.Expression.Divide divide -> eval(divide, environment);
-            case ResolvedBit.Expression.If ifExpression -> eval(ifExpression, environment);
-            case ResolvedBit.Expression.While whileExpression -> eval(whileExpression, environment);
-            case ResolvedBit.Expression.GreaterThan greaterThan -> eval(greaterThan, environment);
-            case ResolvedBit.Expression.GreaterThanOrEqual greaterThanOrEqual -> eval(greaterThanOrEqual, environment);
-            case ResolvedBit.Expression.LessThan lessThan -> eval(lessThan, environment);
-            case ResolvedBit.Expression.LessThanOrEqual lessThanOrEqual -> eval(lessThanOrEqual, environment);
-            case ResolvedBit.Expression.Equal equal -> eval(equal, environment);
-            case ResolvedBit.Expression.NotEqual notEqual -> eval(notEqual, environment);
-            case ResolvedBit.Expression.As asExpression -> eval(asExpression, environment);
-            case ResolvedBit.Expression.Is isExpression -> eval(isExpression, environment);
-            case ResolvedBit.Expression.Struct struct -> eval(struct, environment);
-            case ResolvedBit.Expression.Array array -> eval(array, environment);
-            case ResolvedBit.Expression.Access access -> eval(access, environment);
-            case ResolvedBit.Expression.And and -> eval(and, environment);
-            case ResolvedBit.Expression.Or or -> eval(or, environment);
-            case ResolvedBit.Expression.Not not -> eval(not, environment);
-            case ResolvedBit.Expression.Function function -> eval(function, environment);
-            case ResolvedBit.Expression.Instantiation instantiation -> eval(instantiation, environment);
-            case ResolvedBit.Expression.AccessExtension access -> eval(access, environment);
-            case ResolvedBit.Expression.Break ignored -> Action.BREAK;
-            case ResolvedBit.Expression.Continue ignored -> Action.CONTINUE;
-            case ResolvedBit.Expression.Return returnExpression -> new Return(eval(returnExpression.value(), environment));
+            case ResolvedBit.Expression.Minus minus -> eval(minus, frame);
+            case ResolvedBit.Expression.Plus plus -> eval(plus, frame);
+            case ResolvedBit.Expression.Multiply multiply -> eval(multiply, frame);
+            case ResolvedBit.Expression.Divide divide -> eval(divide, frame);
+            case ResolvedBit.Expression.If ifExpression -> eval(ifExpression, frame);
+            case ResolvedBit.Expression.While whileExpression -> eval(whileExpression, frame);
+            case ResolvedBit.Expression.GreaterThan greaterThan -> eval(greaterThan, frame);
+            case ResolvedBit.Expression.GreaterThanOrEqual greaterThanOrEqual -> eval(greaterThanOrEqual, frame);
+            case ResolvedBit.Expression.LessThan lessThan -> eval(lessThan, frame);
+            case ResolvedBit.Expression.LessThanOrEqual lessThanOrEqual -> eval(lessThanOrEqual, frame);
+            case ResolvedBit.Expression.Equal equal -> eval(equal, frame);
+            case ResolvedBit.Expression.NotEqual notEqual -> eval(notEqual, frame);
+            case ResolvedBit.Expression.As asExpression -> eval(asExpression, frame);
+            case ResolvedBit.Expression.Is isExpression -> eval(isExpression, frame);
+            case ResolvedBit.Expression.Struct struct -> eval(struct, frame);
+            case ResolvedBit.Expression.Array array -> eval(array, frame);
+            case ResolvedBit.Expression.Access access -> eval(access, frame);
+            case ResolvedBit.Expression.And and -> eval(and, frame);
+            case ResolvedBit.Expression.Or or -> eval(or, frame);
+            case ResolvedBit.Expression.Not not -> eval(not, frame);
+            case ResolvedBit.Expression.Function function -> eval(function, frame);
+            case ResolvedBit.Expression.Instantiation instantiation -> eval(instantiation, frame);
+            case ResolvedBit.Expression.AccessExtension access -> eval(access, frame);
+            case ResolvedBit.Expression.Break ignored -> frame.complete(Action.BREAK, none());
+            case ResolvedBit.Expression.Continue ignored -> frame.complete(Action.CONTINUE, none());
+            case ResolvedBit.Expression.Return returnExpression -> frame.complete(Action.RETURN, eval(returnExpression.value(), frame));
         };
     }
 
-    private Object eval(ResolvedBit.Expression.Identifier identifier, Environment environment) {
-        return environment.get(identifier.name());
+    private Object eval(ResolvedBit.Expression.Identifier identifier, Frame frame) {
+        return frame.get(identifier.name());
+    }
+
+    private Object eval(ResolvedBit.Expression.Call call, Frame frame) {
+        if (call.callee() instanceof ResolvedBit.Expression.Access access && access.intrinsic()) {
+            var receiver = eval(access.expression(), frame);
+            var arguments = eval(call.arguments(), frame);
+            return switch (access.field()) {
+                case "size" -> Values.size(receiver);
+                case "get" -> Values.get(receiver, arguments[0]);
+                case "set" -> Values.set(receiver, arguments[0], arguments[1]);
+                case "add" -> Values.add(receiver, arguments[0]);
+                case "remove" -> Values.remove(receiver, arguments[0]);
+                case "sequence" -> Values.sequence(receiver);
+                case "next" -> Values.next(receiver);
+                default -> throw new IllegalStateException("Unexpected intrinsic " + access.field());
+            };
+        }
+        if (call.callee() instanceof ResolvedBit.Expression.Access access) {
+            var receiver = eval(access.expression(), frame);
+            var cache = cache(access);
+            var arguments = call.arguments();
+            if (call.tail()) {
+                var args = arguments(call, frame);
+                var method = cache.method(receiver);
+                if (method == null) {
+                    return tailCall((BitCallable) cache.read(receiver), args);
+                }
+                var all = new Object[1 + args.length];
+                all[0] = receiver;
+                System.arraycopy(args, 0, all, 1, args.length);
+                return tailCall(method, all);
+            }
+            if (call.generics().isEmpty() && arguments.size() < 4) {
+                return switch (arguments.size()) {
+                    case 0 -> cache.call0(receiver);
+                    case 1 -> cache.call1(receiver, eval(arguments.get(0), frame));
+                    case 2 -> cache.call2(receiver, eval(arguments.get(0), frame), eval(arguments.get(1), frame));
+                    default -> cache.call3(receiver, eval(arguments.get(0), frame), eval(arguments.get(1), frame), eval(arguments.get(2), frame));
+                };
+            }
+            return cache.callWith(receiver, arguments(call, frame));
+        }
+        var callee = (BitCallable) eval(call.callee(), frame);
+        var arguments = call.arguments();
+        if (call.tail() && callee instanceof Closure closure && closure.symbols.length == call.generics().size() + arguments.size()) {
+            var next = closure.enter();
+            var i = 0;
+            for (var generic : Values.reify(call.generics(), frame)) next.define(closure.symbols[i++], generic);
+            for (var argument : arguments) next.define(closure.symbols[i++], eval(argument, frame));
+            return next;
+        }
+        if (call.generics().isEmpty()) {
+            return switch (arguments.size()) {
+                case 0 -> callee.call0();
+                case 1 -> callee.call1(eval(arguments.get(0), frame));
+                case 2 -> callee.call2(eval(arguments.get(0), frame), eval(arguments.get(1), frame));
+                case 3 -> callee.call3(eval(arguments.get(0), frame), eval(arguments.get(1), frame), eval(arguments.get(2), frame));
+                default -> callee.call(eval(arguments, frame));
+            };
+        }
+        return callee.callWith(arguments(call, frame));
     }
 
-    @SuppressWarnings("unchecked")
-    private Object eval(ResolvedBit.Expression.Call call, Environment environment) {
-        var callee = (Function<List<Object>, Object>) eval(call.callee(), environment);
-        return callee.apply(Stream.concat(call.generics().stream(), call.arguments().stream().map(a -> eval(a, environment))).toList());
+    // a closure is left for the caller to run in the frame returned here, any other function is called
+    private static Object tailCall(BitCallable function, Object[] args) {
+        return function instanceof Closure closure ? closure.tailCall(args) : function.callWith(args);
+    }
+
+    // the generic arguments of a call followed by its arguments
+    private Object[] arguments(ResolvedBit.Expression.Call call, Frame frame) {
+        var generics = Values.reify(call.generics(), frame);
+        var arguments = call.arguments();
+        var args = new Object[generics.size() + arguments.size()];
+        for (var i = 0; i < generics.size(); i++) {
+            args[i] = generics.get(i);
+        }
+        for (var i = 0; i < arguments.size(); i++) {
+            args[generics.size() + i] = eval(arguments.get(i), frame);
+        }
+        return args;
+    }
+
+    private Object eval(ResolvedBit.Expression.CallExtension call, Frame frame) {
+        var receiver = eval(call.receiver(), frame);
+        var function = (BitCallable) frame.get(call.name());
+        var arguments = call.arguments();
+        if (call.tail() && function instanceof Closure closure && closure.symbols.length == 1 + call.receiverGenerics().size() + call.generics().size() + arguments.size()) {
+            var next = closure.enter();
+            var i = 0;
+            next.define(closure.symbols[i++], receiver);
+            for (var generic : Values.reify(call.receiverGenerics(), frame)) next.define(closure.symbols[i++], generic);
+            for (var generic : Values.reify(call.generics(), frame)) next.define(closure.symbols[i++], generic);
+            for (var argument : arguments) next.define(closure.symbols[i++], eval(argument, frame));
+            return next;
+        }
+        if (call.receiverGenerics().isEmpty() && call.generics().isEmpty() && arguments.size() < 4) {
+            return switch (arguments.size()) {
+                case 0 -> function.call1(receiver);
+                case 1 -> function.call2(receiver, eval(arguments.get(0), frame));
+                case 2 -> function.call3(receiver, eval(arguments.get(0), frame), eval(arguments.get(1), frame));
+                default -> function.call4(receiver, eval(arguments.get(0), frame), eval(arguments.get(1), frame), eval(arguments.get(2), frame));
+            };
+        }
+        var receiverGenerics = Values.reify(call.receiverGenerics(), frame);
+        var generics = Values.reify(call.generics(), frame);
+        var args = new Object[1 + receiverGenerics.size() + generics.size() + arguments.size()];
+        var i = 0;
+        args[i++] = receiver;
+        for (var generic : receiverGenerics) args[i++] = generic;
+        for (var generic : generics) args[i++] = generic;
+        for (var argument : arguments) args[i++] = eval(argument, frame);
+        return function.callWith(args);
+    }
+
+    private Object[] eval(List<ResolvedBit.Expression> expressions, Frame frame) {
+        var values = new Object[expressions.size()];
+        for (var i = 0; i < values.length; i++) {
+            values[i] = eval(expressions.get(i), frame);
+        }
+        return values;
     }
 
-    private Object eval(ResolvedBit.Expression.Block block, Environment environment) {
+    private Object eval(ResolvedBit.Expression.Block block, Frame frame) {
         Object result = null;
         for (var statement : block.statements()) {
             switch (statement) {
-                case ResolvedBit.Expression expression -> {
-                    result = eval(expression, environment);
-                    if (result == Action.BREAK || result == Action.CONTINUE || result instanceof Return) return result;
-                }
-                case ResolvedBit.Declaration declaration -> interpret(declaration, environment);
-                case ResolvedBit.Declaration.VariableAssignment assignment -> interpret(assignment, environment);
-                case ResolvedBit.Declaration.VariableFieldAssignment assignment -> interpret(assignment, environment);
+                case ResolvedBit.Expression expression -> result = eval(expression, frame);
+                case ResolvedBit.Declaration declaration -> interpret(declaration, frame);
+                case ResolvedBit.Declaration.VariableAssignment assignment -> interpret(assignment, frame);
+                case ResolvedBit.Declaration.VariableFieldAssignment assignment -> interpret(assignment, frame);
                 default -> throw new IllegalStateException("Unexpected statement " + statement);
             }
+            if (block.abrupt() && frame.completion != null) break;
         }
         return result;
     }
 
     private Object eval(ResolvedBit.Expression.NumberLiteral numberLiteral) {
-        try {
-            return new BigInteger(numberLiteral.value());
-        } catch (NumberFormatException e) {
-            throw new RuntimeException("Invalid number literal: " + numberLiteral.value(), e);
-        }
+        return numberLiteral.value();
     }
 
     private Object eval(ResolvedBit.Expression.StringLiteral stringLiteral) {
-        return new Struct(Map.of(
-                "$", stringLiteral.value(),
-                "sequence", (Function<List<Object>, Object>) args -> {
-                    var str = stringLiteral.value();
-                    var iterator = str.chars().mapToObj(c -> eval(new ResolvedBit.Expression.StringLiteral(String.valueOf((char) c), string(), never()))).iterator();
-                    return new Struct(Map.of(
-                            "next", (Function<List<Object>, Object>) a -> iterator.hasNext() ? iterator.next() : none()
-                    ));
-                },
-                "size", (Function<List<Object>, Object>) args -> BigInteger.valueOf(stringLiteral.value().length()),
-                "get", (Function<List<Object>, Object>) args -> {
-                    var index = (BigInteger) args.getFirst();
-                    var str = stringLiteral.value();
-                    if (index.compareTo(BigInteger.ZERO) < 0 || index.compareTo(BigInteger.valueOf(str.length())) >= 0) {
-                        return none();
-                    }
-                    return eval(new ResolvedBit.Expression.StringLiteral(String.valueOf(str.charAt(index.intValue())), string(), never()));
-                }
-        ));
+        return strings.computeIfAbsent(stringLiteral, literal -> new BitString(literal.value()));
     }
 
     private Object eval(ResolvedBit.Expression.BooleanLiteral booleanLiteral) {
         return booleanLiteral.value();
     }
 
-    private Object eval(ResolvedBit.Expression.Minus minus, Environment environment) {
-        var lhs = (BigInteger) eval(minus.lhs(), environment);
-        var rhs = (BigInteger) eval(minus.rhs(), environment);
-        return lhs.subtract(rhs);
+    private Object eval(ResolvedBit.Expression.Minus minus, Frame frame) {
+        var lhs = eval(minus.lhs(), frame);
+        var rhs = eval(minus.rhs(), frame);
+        if (minus.primitive()) return (Long) lhs - (Long) rhs;
+        return Integers.subtract(lhs, rhs);
     }
 
-    private Object eval(ResolvedBit.Expression.Plus plus, Environment environment) {
-        var lhs = (BigInteger) eval(plus.lhs(), environment);
-        var rhs = (BigInteger) eval(plus.rhs(), environment);
-        return lhs.add(rhs);
+    private Object eval(ResolvedBit.Expression.Plus plus, Frame frame) {
+        var lhs = eval(plus.lhs(), frame);
+        var rhs = eval(plus.rhs(), frame);
+        if (plus.primitive()) return (Long) lhs + (Long) rhs;
+        return Integers.add(lhs, rhs);
     }
 
-    private Object eval(ResolvedBit.Expression.Multiply multiply, Environment environment) {
-        var lhs = (BigInteger) eval(multiply.lhs(), environment);
-        var rhs = (BigInteger) eval(multiply.rhs(), environment);
-        return lhs.multiply(rhs);
+    private Object eval(ResolvedBit.Expression.Multiply multiply, Frame frame) {
+        var lhs = eval(multiply.lhs(), frame);
+        var rhs = eval(multiply.rhs(), frame);
+        if (multiply.primitive()) return (Long) lhs * (Long) rhs;
+        return Integers.multiply(lhs, rhs);
     }
 
-    private Object eval(ResolvedBit.Expression.Divide divide, Environment environment) {
-        var lhs = (BigInteger) eval(divide.lhs(), environment);
-        var rhs = (BigInteger) eval(divide.rhs(), environment);
-        if (rhs.equals(BigInteger.ZERO)) {
-            throw new ArithmeticException("Division by zero");
-        }
-        return lhs.divide(rhs);
+    private Object eval(ResolvedBit.Expression.Divide divide, Frame frame) {
+        var lhs = eval(divide.lhs(), frame);
+        var rhs = eval(divide.rhs(), frame);
+        if (divide.primitive()) return (Long) lhs / (Long) rhs;
+        return Integers.divide(lhs, rhs);
     }
 
-    private Object eval(ResolvedBit.Expression.If ifExpression, Environment environment) {
-        var condition = (boolean) eval(ifExpression.condition(), environment);
+    private Object eval(ResolvedBit.Expression.If ifExpression, Frame frame) {
+        var condition = (boolean) eval(ifExpression.condition(), frame);
         if (condition) {
-            return eval(ifExpression.thenBranch(), environment);
+            return eval(ifExpression.thenBranch(), frame);
         } else {
-            return ifExpression.elseBranch() != null ? eval(ifExpression.elseBranch(), environment) : none();
+            return ifExpression.elseBranch() != null ? eval(ifExpression.elseBranch(), frame) : none();
         }
     }
 
-    private Object eval(ResolvedBit.Expression.While whileExpression, Environment environment) {
-        while ((boolean) eval(whileExpression.condition(), environment)) {
-            var iterationResult = eval(whileExpression.body(), environment);
-            if (iterationResult == Action.BREAK || iterationResult instanceof Return) break;
+    private Object eval(ResolvedBit.Expression.While whileExpression, Frame frame) {
+        while ((boolean) eval(whileExpression.condition(), frame)) {
+            eval(whileExpression.body(), frame);
+            if (whileExpression.abrupt() && frame.completion != null) {
+                var completion = frame.completion;
+                if (completion == Action.RETURN) break;
+                frame.completion = null;
+                if (completion == Action.BREAK) break;
+            }
         }
         return none();
     }
 
-    private Object eval(ResolvedBit.Expression.GreaterThan greaterThan, Environment environment) {
-        var lhs = (BigInteger) eval(greaterThan.lhs(), environment);
-        var rhs = (BigInteger) eval(greaterThan.rhs(), environment);
-        return lhs.compareTo(rhs) > 0;
+    private Object eval(ResolvedBit.Expression.GreaterThan greaterThan, Frame frame) {
+        var lhs = eval(greaterThan.lhs(), frame);
+        var rhs = eval(greaterThan.rhs(), frame);
+        if (greaterThan.primitive()) return (Long) lhs > (Long) rhs;
+        return Integers.compare(lhs, rhs) > 0;
     }
 
-    private Object eval(ResolvedBit.Expression.GreaterThanOrEqual greaterThanOrEqual, Environment environment) {
-        var lhs = (BigInteger) eval(greaterThanOrEqual.lhs(), environment);
-        var rhs = (BigInteger) eval(greaterThanOrEqual.rhs(), environment);
-        return lhs.compareTo(rhs) >= 0;
+    private Object eval(ResolvedBit.Expression.GreaterThanOrEqual greaterThanOrEqual, Frame frame) {
+        var lhs = eval(greaterThanOrEqual.lhs(), frame);
+        var rhs = eval(greaterThanOrEqual.rhs(), frame);
+        if (greaterThanOrEqual.primitive()) return (Long) lhs >= (Long) rhs;
+        return Integers.compare(lhs, rhs) >= 0;
     }
 
-    private Object eval(ResolvedBit.Expression.LessThan lessThan, Environment environment) {
-        var lhs = (BigInteger) eval(lessThan.lhs(), environment);
-        var rhs = (BigInteger) eval(lessThan.rhs(), environment);
-        return lhs.compareTo(rhs) < 0;
+    private Object eval(ResolvedBit.Expression.LessThan lessThan, Frame frame) {
+        var lhs = eval(lessThan.lhs(), frame);
+        var rhs = eval(lessThan.rhs(), frame);
+        if (lessThan.primitive()) return (Long) lhs < (Long) rhs;
+        return Integers.compare(lhs, rhs) < 0;
     }
 
-    private Object eval(ResolvedBit.Expression.LessThanOrEqual lessThanOrEqual, Environment environment) {
-        var lhs = (BigInteger) eval(lessThanOrEqual.lhs(), environment);
-        var rhs = (BigInteger) eval(lessThanOrEqual.rhs(), environment);
-        return lhs.compareTo(rhs) <= 0;
+    private Object eval(ResolvedBit.Expression.LessThanOrEqual lessThanOrEqual, Frame frame) {
+        var lhs = eval(lessThanOrEqual.lhs(), frame);
+        var rhs = eval(lessThanOrEqual.rhs(), frame);
+        if (lessThanOrEqual.primitive()) return (Long) lhs <= (Long) rhs;
+        return Integers.compare(lhs, rhs) <= 0;
     }
 
-    private Object eval(ResolvedBit.Expression.Equal equal, Environment environment) {
-        var lhs = eval(equal.lhs(), environment);
-        var rhs = eval(equal.rhs(), environment);
+    private Object eval(ResolvedBit.Expression.Equal equal, Frame frame) {
+        var lhs = eval(equal.lhs(), frame);
+        var rhs = eval(equal.rhs(), frame);
         return Objects.equals(lhs, rhs);
     }
 
-    private Object eval(ResolvedBit.Expression.NotEqual equal, Environment environment) {
-        var lhs = eval(equal.lhs(), environment);
-        var rhs = eval(equal.rhs(), environment);
+    private Object eval(ResolvedBit.Expression.NotEqual equal, Frame frame) {
+        var lhs = eval(equal.lhs(), frame);
+        var rhs = eval(equal.rhs(), frame);
         return !Objects.equals(lhs, rhs);
     }
 
-    private Object eval(ResolvedBit.Expression.Struct struct, Environment environment) {
-        var fields = struct.fields().entrySet().stream()
-                .collect(Collectors.toMap(Map.Entry::getKey, entry -> eval(entry.getValue(), environment)));
-        return new Struct(fields);
-    }
-
-    private Object eval(ResolvedBit.Expression.Array array, Environment environment) {
-        var value = array.elements().stream()
-                .map(element -> eval(element, environment))
-                .toArray(Object[]::new);
-        return new Struct(Map.of(
-                "size", (Function<List<Object>, Object>) args -> BigInteger.valueOf(value.length),
-                "get", (Function<List<Object>, Object>) args -> {
-                    var index = (BigInteger) args.getFirst();
-                    if (index.compareTo(BigInteger.ZERO) < 0 || index.compareTo(BigInteger.valueOf(value.length)) >= 0) {
-                        return none();
-                    }
-                    return value[index.intValue()];
-                },
-                "set", (Function<List<Object>, Object>) args -> {
-                    var index = (BigInteger) args.get(0);
-                    if (index.compareTo(BigInteger.ZERO) < 0 || index.compareTo(BigInteger.valueOf(value.length)) >= 0) {
-                        throw new IndexOutOfBoundsException("Index out of bounds: " + index);
-                    }
-                    var prev = value[index.intValue()];
-                    value[index.intValue()] = args.get(1);
-                    return prev;
-                },
-                "toString", (Function<List<Object>, Object>) args -> {
-                    return "[" + Stream.of(value).map(Objects::toString).collect(Collectors.joining(", ")) + "]";
-                },
-                "sequence", (Function<List<Object>, Object>) args -> {
-                    var iterator = Arrays.stream(value).iterator();
-                    return new Struct(Map.of(
-                            "next", (Function<List<Object>, Object>) a -> {
-                                return iterator.hasNext() ? iterator.next() : none();
-                            }
-                    ));
-                }
-        ));
-    }
-
-    private Object eval(ResolvedBit.Expression.As asExpression, Environment environment) {
-        var value = eval(asExpression.expression(), environment);
-        var type = asExpression.type();
-        if (!isAssignable(value, type, environment)) {
-            throw new RuntimeException("Cannot cast " + value + " to type " + type);
+    private Object eval(ResolvedBit.Expression.Struct struct, Frame frame) {
+        var instance = new Struct(shapes.computeIfAbsent(struct, s -> Shape.of(s.fields().keySet())));
+        for (var entry : struct.fields().entrySet()) {
+            instance.setField(entry.getKey(), eval(entry.getValue(), frame));
         }
-        return value;
+        return instance;
     }
 
-    private Object eval(ResolvedBit.Expression.Is isExpression, Environment environment) {
-        var value = eval(isExpression.expression(), environment);
-        var type = isExpression.checkType();
-        return isAssignable(value, type, environment);
+    private Object eval(ResolvedBit.Expression.Array array, Frame frame) {
+        return BitList.of(eval(array.elements(), frame), array.primitive());
     }
 
-    private Object eval(ResolvedBit.Expression.Access access, Environment environment) {
-        var struct = (Struct) eval(access.expression(), environment);
-        var fieldValue = struct.getField(access.field());
-        if (fieldValue == null) {
-            throw new RuntimeException("Field '" + access.field() + "' not found in struct: " + struct);
+    private Object eval(ResolvedBit.Expression.As asExpression, Frame frame) {
+        var value = eval(asExpression.expression(), frame);
+        var test = typeTests.computeIfAbsent(asExpression, a -> new TypeTest(asExpression.type()));
+        if (!test.test(value, frame)) {
+            throw new RuntimeException("Cannot cast " + value + " to type " + test.type());
         }
-        return fieldValue;
-    }
-
-    private Object eval(ResolvedBit.Expression.AccessExtension access, Environment environment) {
-        var value = eval(access.expression(), environment);
-        @SuppressWarnings("unchecked") var function = (Function<List<Object>, Object>) environment.get(access.name());
-        return (Function<List<Object>, Object>) args -> {
-            var newArgs = new ArrayList<>();
-            newArgs.add(value);
-            newArgs.addAll(access.generics());
-            newArgs.addAll(args);
-            return function.apply(newArgs);
-        };
+        return value;
     }
 
-    private Object eval(ResolvedBit.Expression.And and, Environment environment) {
-        var lhs = (boolean) eval(and.lhs(), environment);
-        if (!lhs) return false;
-        return eval(and.rhs(), environment);
+    private Object eval(ResolvedBit.Expression.Is isExpression, Frame frame) {
+        var value = eval(isExpression.expression(), frame);
+        return typeTests.computeIfAbsent(isExpression, i -> new TypeTest(isExpression.checkType())).test(value, frame);
     }
 
-    private Object eval(ResolvedBit.Expression.Or or, Environment environment) {
-        var lhs = (boolean) eval(or.lhs(), environment);
-        if (lhs) return true;
-        return eval(or.rhs(), environment);
+    private Object eval(ResolvedBit.Expression.Access access, Frame frame) {
+        var value = eval(access.expression(), frame);
+        return cache(access).read(value);
     }
 
-    private Object eval(ResolvedBit.Expression.Not not, Environment environment) {
-        var value = (boolean) eval(not.expression(), environment);
-        return !value;
+    private FieldCache cache(ResolvedBit.Expression.Access access) {
+        return fieldCaches.computeIfAbsent(access, a -> new FieldCache(access.field(), access.slot()));
     }
 
-    private Object eval(ResolvedBit.Expression.Function function, Environment environment) {
-        return (Function<List<Object>, Object>) args -> {
-            for (var i = 0; i < function.generics().size(); i++) {
-                environment.assignVariable(function.generics().get(i).name(), args.get(i));
-            }
-            var offset = function.generics().size();
-            for (var i = 0; i < function.parameters().size(); i++) {
-                environment.assignVariable(function.parameters().get(i).name(), args.get(offset + i));
-            }
-            var result = eval(function.body(), environment);
-            if (result instanceof Return(var value)) {
-                return value;
-            }
-            return result;
-        };
+    private Object eval(ResolvedBit.Expression.AccessExtension access, Frame frame) {
+        var value = eval(access.expression(), frame);
+        var function = (BitCallable) frame.get(access.name());
+        return BitCallable.bind(function, value, Values.reify(access.generics(), frame).toArray());
     }
 
-    private Object eval(ResolvedBit.Expression.Instantiation instantiation, Environment environment) {
-        @SuppressWarnings("unchecked") var constructor = (Function<List<Object>, Object>) environment.get(instantiation.className());
-        var args = instantiation.arguments().stream().map(a -> eval(a, environment)).toList();
-        return constructor.apply(args);
+    private Object eval(ResolvedBit.Expression.And and, Frame frame) {
+        var lhs = (boolean) eval(and.lhs(), frame);
+        if (!lhs) return false;
+        return eval(and.rhs(), frame);
     }
 
-    // is assignable
-
-    public boolean isAssignable(Object value, Type type, Environment environment) {
-        if (type == any()) return true;
-        if (type == never()) return false;
-
-        if (type instanceof Type.TypeVariable typeVariable) {
-            return isAssignable(value, (Type) environment.get(typeVariable.name()), environment);
-        }
-
-        if (value instanceof BigInteger bigInteger) {
-            return extend(integer(bigInteger), type);
-        }
-
-        if (value instanceof String) {
-            return extend(string(), type);
-        }
-
-        if (value instanceof Boolean bool) {
-            return extend(bool ? _true() : _false(), type);
-        }
-
-        if (value instanceof Struct(var fields)) {
-            if (!(type instanceof Type.Struct(var typeFields))) return false;
-            for (var entry : fields.entrySet()) {
-                var fieldType = typeFields.get(entry.getKey());
-                if (fieldType != null && !isAssignable(entry.getValue(), fieldType, environment)) {
-                    return false;
-                }
-            }
-            return true;
-        }
-
-        if (value instanceof Type.Nominal nominal) {
-            return extend(nominal, type);
-        }
+    private Object eval(ResolvedBit.Expression.Or or, Frame frame) {
+        var lhs = (boolean) eval(or.lhs(), frame);
+        if (lhs) return true;
+        return eval(or.rhs(), frame);
+    }
 
-        if (value instanceof Function) {
-            return extend(type, function(any())) || extend(type, function(any(), none())) || extend(type, function(any(), none(), none())) || extend(type, function(any(), none(), none(), none())) || extend(type, function(any(), none(), none(), none(), none()));
-        }
+    private Object eval(ResolvedBit.Expression.Not not, Frame frame) {
+        var value = (boolean) eval(not.expression(), frame);
+        return !value;
+    }
 
-        return false;
+    private Object eval(ResolvedBit.Expression.Function function, Frame frame) {
+        var bindings = new ArrayList<ResolvedBit.Symbol>();
+        function.generics().forEach(generic -> bindings.add(generic.name()));
+        function.parameters().forEach(parameter -> bindings.add(parameter.name()));
+        return closure(function.frame(), frame.capture(function.frame()), bindings, function.body(), frame.environment());
     }
 
-    private enum Action { BREAK, CONTINUE }
-    private record Return(Object value) {}
+    private Object eval(ResolvedBit.Expression.Instantiation instantiation, Frame frame) {
+        var constructor = (BitCallable) frame.get(instantiation.className());
+        return constructor.callWith(eval(instantiation.arguments(), frame));
+    }
 }
@@ -0,0 +1,1255 @@
+package io.github.ageofwar.bit.interpreter;
+
+import io.github.ageofwar.bit.resolver.ResolvedBit;
+import io.github.ageofwar.bit.types.Type;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+
+import static io.github.ageofwar.bit.types.Types.none;
+
+// a pre-linked executable tree: every node knows its children and the storage of the symbols it touches
+abstract class Node {
+    abstract Object execute(Frame frame);
+
+    // only called on nodes the resolver proved to produce an integer in the long range
+    long executeLong(Frame frame) {
+        return (Long) execute(frame);
+    }
+
+    // a closure is left for the caller to run in the frame returned here, see TailCall; any other function is called
+    static Object tailCall(BitCallable function, Object[] args) {
+        return function instanceof Closure closure ? closure.tailCall(args) : function.callWith(args);
+    }
+
+    static Object[] evaluate(Node[] nodes, Frame frame) {
+        var values = new Object[nodes.length];
+        for (var i = 0; i < values.length; i++) {
+            values[i] = nodes[i].execute(frame);
+        }
+        return values;
+    }
+
+    // variables
+
+    static final class Constant extends Node {
+        private final Object value;
+
+        Constant(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return value;
+        }
+    }
+
+    static final class GlobalRead extends Node {
+        private final ResolvedBit.Symbol symbol;
+
+        GlobalRead(ResolvedBit.Symbol symbol) {
+            this.symbol = symbol;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return frame.environment().get(symbol);
+        }
+    }
+
+    static final class LocalRead extends Node {
+        private final int slot;
+
+        LocalRead(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return frame.load(slot);
+        }
+    }
+
+    static final class CellRead extends Node {
+        private final int slot;
+
+        CellRead(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return ((Cell) frame.load(slot)).value;
+        }
+    }
+
+    static final class GlobalWrite extends Node {
+        private final ResolvedBit.Symbol symbol;
+        private final Node value;
+
+        GlobalWrite(ResolvedBit.Symbol symbol, Node value) {
+            this.symbol = symbol;
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            frame.environment().assignVariable(symbol, value.execute(frame));
+            return null;
+        }
+    }
+
+    static final class LocalWrite extends Node {
+        private final int slot;
+        private final Node value;
+
+        LocalWrite(int slot, Node value) {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            frame.store(slot, value.execute(frame));
+            return null;
+        }
+    }
+
+    static final class CellDefine extends Node {
+        private final int slot;
+        private final Node value;
+
+        CellDefine(int slot, Node value) {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            frame.store(slot, new Cell(value.execute(frame)));
+            return null;
+        }
+    }
+
+    static final class CellWrite extends Node {
+        private final int slot;
+        private final Node value;
+
+        CellWrite(int slot, Node value) {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            ((Cell) frame.load(slot)).value = value.execute(frame);
+            return null;
+        }
+    }
+
+    static final class FieldWrite extends Node {
+        private final Node struct;
+        private final FieldCache cache;
+        private final Node value;
+
+        FieldWrite(Node struct, FieldCache cache, Node value) {
+            this.struct = struct;
+            this.cache = cache;
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            cache.write(struct.execute(frame), value.execute(frame));
+            return null;
+        }
+    }
+
+    // control flow
+
+    static final class Block extends Node {
+        private final Node[] statements;
+        private final boolean[] expressions;
+        private final boolean abrupt;
+
+        Block(Node[] statements, boolean[] expressions, boolean abrupt) {
+            this.statements = statements;
+            this.expressions = expressions;
+            this.abrupt = abrupt;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            Object result = null;
+            for (var i = 0; i < statements.length; i++) {
+                var value = statements[i].execute(frame);
+                if (expressions[i]) result = value;
+                if (abrupt && frame.completion != null) break;
+            }
+            return result;
+        }
+    }
+
+    static final class If extends Node {
+        private final Node condition;
+        private final Node thenBranch;
+        private final Node elseBranch;
+
+        If(Node condition, Node thenBranch, Node elseBranch) {
+            this.condition = condition;
+            this.thenBranch = thenBranch;
+            this.elseBranch = elseBranch;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return (boolean) condition.execute(frame) ? thenBranch.execute(frame) : elseBranch.execute(frame);
+        }
+    }
+
+    static final class While extends Node {
+        private final Node condition;
+        private final Node body;
+        private final boolean abrupt;
+
+        While(Node condition, Node body, boolean abrupt) {
+            this.condition = condition;
+            this.body = body;
+            this.abrupt = abrupt;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            while ((boolean) condition.execute(frame)) {
+                body.execute(frame);
+                if (abrupt && frame.completion != null) {
+                    var completion = frame.completion;
+                    if (completion == Action.RETURN) break;
+                    frame.completion = null;
+                    if (completion == Action.BREAK) break;
+                }
+            }
+            return none();
+        }
+    }
+
+    static final class Jump extends Node {
+        private final Action action;
+
+        Jump(Action action) {
+            this.action = action;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return frame.complete(action, none());
+        }
+    }
+
+    static final class ReturnValue extends Node {
+        private final Node value;
+
+        ReturnValue(Node value) {
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return frame.complete(Action.RETURN, value.execute(frame));
+        }
+    }
+
+    // operators
+
+    static final class Plus extends Node {
+        private final Node lhs, rhs;
+
+        Plus(Node lhs, Node rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return Integers.add(lhs.execute(frame), rhs.execute(frame));
+        }
+    }
+
+    static final class Minus extends Node {
+        private final Node lhs, rhs;
+
+        Minus(Node lhs, Node rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return Integers.subtract(lhs.execute(frame), rhs.execute(frame));
+        }
+    }
+
+    static final class Multiply extends Node {
+        private final Node lhs, rhs;
+
+        Multiply(Node lhs, Node rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return Integers.multiply(lhs.execute(frame), rhs.execute(frame));
+        }
+    }
+
+    static final class Divide extends Node {
+        private final Node lhs, rhs;
+
+        Divide(Node lhs, Node rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return Integers.divide(lhs.execute(frame), rhs.execute(frame));
+        }
+    }
+
+    static final class GreaterThan extends Node {
+        private final Node lhs, rhs;
+
+        GreaterThan(Node lhs, Node rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return Integers.compare(lhs.execute(frame), rhs.execute(frame)) > 0;
+        }
+    }
+
+    static final class GreaterThanOrEqual extends Node {
+        private final Node lhs, rhs;
+
+        GreaterThanOrEqual(Node lhs, Node rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return Integers.compare(lhs.execute(frame), rhs.execute(frame)) >= 0;
+        }
+    }
+
+    static final class LessThan extends Node {
+        private final Node lhs, rhs;
+
+        LessThan(Node lhs, Node rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return Integers.compare(lhs.execute(frame), rhs.execute(frame)) < 0;
+        }
+    }
+
+    static final class LessThanOrEqual extends Node {
+        private final Node lhs, rhs;
+
+        LessThanOrEqual(Node lhs, Node rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return Integers.compare(lhs.execute(frame), rhs.execute(frame)) <= 0;
+        }
+    }
+
+    // arithmetic and comparisons the resolver proved to stay within long bounds, computed without boxing in between
+
+    static final class LongPlus extends Node {
+        private final Node lhs, rhs;
+
+        LongPlus(Node lhs, Node rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return executeLong(frame);
+        }
+
+        @Override
+        long executeLong(Frame frame) {
+            return lhs.executeLong(frame) + rhs.executeLong(frame);
+        }
+    }
+
+    static final class LongMinus extends Node {
+        private final Node lhs, rhs;
+
+        LongMinus(Node lhs, Node rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return executeLong(frame);
+        }
+
+        @Override
+        long executeLong(Frame frame) {
+            return lhs.executeLong(frame) - rhs.executeLong(frame);
+        }
+    }
+
+    static final class LongMultiply extends Node {
+        private final Node lhs, rhs;
+
+        LongMultiply(Node lhs, Node rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return executeLong(frame);
+        }
+
+        @Override
+        long executeLong(Frame frame) {
+            return lhs.executeLong(frame) * rhs.executeLong(frame);
+        }
+    }
+
+    static final class LongDivide extends Node {
+        private final Node lhs, rhs;
+
+        LongDivide(Node lhs, Node rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return executeLong(frame);
+        }
+
+        @Override
+        long executeLong(Frame frame) {
+            return lhs.executeLong(frame) / rhs.executeLong(frame);
+        }
+    }
+
+    static final class LongGreaterThan extends Node {
+        private final Node lhs, rhs;
+
+        LongGreaterThan(Node lhs, Node rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return lhs.executeLong(frame) > rhs.executeLong(frame);
+        }
+    }
+
+    static final class LongGreaterThanOrEqual extends Node {
+        private final Node lhs, rhs;
+
+        LongGreaterThanOrEqual(Node lhs, Node rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return lhs.executeLong(frame) >= rhs.executeLong(frame);
+        }
+    }
+
+    static final class LongLessThan extends Node {
+        private final Node lhs, rhs;
+
+        LongLessThan(Node lhs, Node rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return lhs.executeLong(frame) < rhs.executeLong(frame);
+        }
+    }
+
+    static final class LongLessThanOrEqual extends Node {
+        private final Node lhs, rhs;
+
+        LongLessThanOrEqual(Node lhs, Node rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return lhs.executeLong(frame) <= rhs.executeLong(frame);
+        }
+    }
+
+    static final class Equal extends Node {
+        private final Node lhs, rhs;
+
+        Equal(Node lhs, Node rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return Objects.equals(lhs.execute(frame), rhs.execute(frame));
+        }
+    }
+
+    static final class NotEqual extends Node {
+        private final Node lhs, rhs;
+
+        NotEqual(Node lhs, Node rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return !Objects.equals(lhs.execute(frame), rhs.execute(frame));
+        }
+    }
+
+    static final class And extends Node {
+        private final Node lhs, rhs;
+
+        And(Node lhs, Node rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            if (!(boolean) lhs.execute(frame)) return false;
+            return rhs.execute(frame);
+        }
+    }
+
+    static final class Or extends Node {
+        private final Node lhs, rhs;
+
+        Or(Node lhs, Node rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            if ((boolean) lhs.execute(frame)) return true;
+            return rhs.execute(frame);
+        }
+    }
+
+    static final class Not extends Node {
+        private final Node expression;
+
+        Not(Node expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return !(boolean) expression.execute(frame);
+        }
+    }
+
+    static final class As extends Node {
+        private final Node expression;
+        private final TypeTest test;
+
+        As(Node expression, Type type) {
+            this.expression = expression;
+            this.test = new TypeTest(type);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            var value = expression.execute(frame);
+            if (!test.test(value, frame)) {
+                throw new RuntimeException("Cannot cast " + value + " to type " + test.type());
+            }
+            return value;
+        }
+    }
+
+    static final class Is extends Node {
+        private final Node expression;
+        private final TypeTest test;
+
+        Is(Node expression, Type type) {
+            this.expression = expression;
+            this.test = new TypeTest(type);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return test.test(expression.execute(frame), frame);
+        }
+    }
+
+    // structures
+
+    // values are evaluated in the order the resolver lists the fields and stored at the slots the shape assigns to their fields
+    static final class StructLiteral extends Node {
+        private final Shape shape;
+        private final int[] slots;
+        private final Node[] values;
+
+        StructLiteral(Shape shape, int[] slots, Node[] values) {
+            this.shape = shape;
+            this.slots = slots;
+            this.values = values;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            var fields = new Object[shape.size()];
+            for (var i = 0; i < values.length; i++) {
+                fields[slots[i]] = values[i].execute(frame);
+            }
+            return new Struct(shape, fields);
+        }
+    }
+
+    static final class ArrayLiteral extends Node {
+        private final Node[] elements;
+        private final boolean primitive;
+
+        ArrayLiteral(Node[] elements, boolean primitive) {
+            this.elements = elements;
+            this.primitive = primitive;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return BitList.of(evaluate(elements, frame), primitive);
+        }
+    }
+
+    static final class Access extends Node {
+        private final Node expression;
+        private final FieldCache cache;
+
+        Access(Node expression, FieldCache cache) {
+            this.expression = expression;
+            this.cache = cache;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return cache.read(expression.execute(frame));
+        }
+    }
+
+    // intrinsic calls of native members
+
+    static final class IntrinsicSize extends Node {
+        private final Node receiver;
+
+        IntrinsicSize(Node receiver) {
+            this.receiver = receiver;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return Values.size(receiver.execute(frame));
+        }
+    }
+
+    static final class IntrinsicGet extends Node {
+        private final Node receiver, index;
+
+        IntrinsicGet(Node receiver, Node index) {
+            this.receiver = receiver;
+            this.index = index;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            var value = receiver.execute(frame);
+            return Values.get(value, index.execute(frame));
+        }
+    }
+
+    static final class IntrinsicSet extends Node {
+        private final Node receiver, index, element;
+
+        IntrinsicSet(Node receiver, Node index, Node element) {
+            this.receiver = receiver;
+            this.index = index;
+            this.element = element;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            var value = receiver.execute(frame);
+            var i = index.execute(frame);
+            return Values.set(value, i, element.execute(frame));
+        }
+    }
+
+    static final class IntrinsicAdd extends Node {
+        private final Node receiver, element;
+
+        IntrinsicAdd(Node receiver, Node element) {
+            this.receiver = receiver;
+            this.element = element;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            var value = receiver.execute(frame);
+            return Values.add(value, element.execute(frame));
+        }
+    }
+
+    static final class IntrinsicRemove extends Node {
+        private final Node receiver, index;
+
+        IntrinsicRemove(Node receiver, Node index) {
+            this.receiver = receiver;
+            this.index = index;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            var value = receiver.execute(frame);
+            return Values.remove(value, index.execute(frame));
+        }
+    }
+
+    static final class IntrinsicSequence extends Node {
+        private final Node receiver;
+
+        IntrinsicSequence(Node receiver) {
+            this.receiver = receiver;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return Values.sequence(receiver.execute(frame));
+        }
+    }
+
+    static final class IntrinsicNext extends Node {
+        private final Node receiver;
+
+        IntrinsicNext(Node receiver) {
+            this.receiver = receiver;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return Values.next(receiver.execute(frame));
+        }
+    }
+
+    // functions
+
+    static final class Call extends Node {
+        private final Node callee;
+        private final Type[] generics;
+        // type arguments that mention type variables of the enclosing function are bound per call
+        private final boolean reify;
+        private final Node[] arguments;
+
+        Call(Node callee, List<Type> generics, Node[] arguments) {
+            this.callee = callee;
+            this.generics = generics.toArray(Type[]::new);
+            this.reify = generics.stream().anyMatch(generic -> generic instanceof Type.TypeVariable);
+            this.arguments = arguments;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return invoke((BitCallable) callee.execute(frame), frame);
+        }
+
+        Object invoke(BitCallable function, Frame frame) {
+            if (generics.length == 0) {
+                var arguments = this.arguments;
+                return switch (arguments.length) {
+                    case 0 -> function.call0();
+                    case 1 -> function.call1(arguments[0].execute(frame));
+                    case 2 -> function.call2(arguments[0].execute(frame), arguments[1].execute(frame));
+                    case 3 -> function.call3(arguments[0].execute(frame), arguments[1].execute(frame), arguments[2].execute(frame));
+                    case 4 -> function.call4(arguments[0].execute(frame), arguments[1].execute(frame), arguments[2].execute(frame), arguments[3].execute(frame));
+                    default -> function.call(evaluate(arguments, frame));
+                };
+            }
+            var args = new Object[generics.length + arguments.length];
+            for (var i = 0; i < generics.length; i++) {
+                args[i] = reify ? Values.reify(generics[i], frame) : generics[i];
+            }
+            for (var i = 0; i < arguments.length; i++) {
+                args[generics.length + i] = arguments[i].execute(frame);
+            }
+            return function.callWith(args);
+        }
+    }
+
+    // a call its function ends with: a closure gets its frame filled here and returned for the caller to run, any other
+    // function is called as usual
+    static final class TailCall extends Node {
+        private final Node callee;
+        private final Call call;
+
+        TailCall(Node callee, List<Type> generics, Node[] arguments) {
+            this.callee = callee;
+            this.call = new Call(callee, generics, arguments);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            var function = (BitCallable) callee.execute(frame);
+            var call = this.call;
+            if (!(function instanceof Closure closure) || closure.bindings.length != call.generics.length + call.arguments.length) {
+                return call.invoke(function, frame);
+            }
+            var next = closure.enter();
+            var bindings = closure.bindings;
+            var generics = call.generics;
+            for (var i = 0; i < generics.length; i++) {
+                next.store(bindings[i], call.reify ? Values.reify(generics[i], frame) : generics[i]);
+            }
+            var arguments = call.arguments;
+            for (var i = 0; i < arguments.length; i++) {
+                next.store(bindings[generics.length + i], arguments[i].execute(frame));
+            }
+            return next;
+        }
+    }
+
+    // a call of a member: a method of the receiver class gets the receiver, a function stored in a field does not
+    static final class CallMember extends Node {
+        private final Node receiver;
+        private final FieldCache cache;
+        private final Type[] generics;
+        private final boolean reify;
+        private final Node[] arguments;
+
+        CallMember(Node receiver, FieldCache cache, List<Type> generics, Node[] arguments) {
+            this.receiver = receiver;
+            this.cache = cache;
+            this.generics = generics.toArray(Type[]::new);
+            this.reify = generics.stream().anyMatch(generic -> generic instanceof Type.TypeVariable);
+            this.arguments = arguments;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            var receiver = this.receiver.execute(frame);
+            var arguments = this.arguments;
+            if (generics.length == 0 && arguments.length < 4) {
+                return switch (arguments.length) {
+                    case 0 -> cache.call0(receiver);
+                    case 1 -> cache.call1(receiver, arguments[0].execute(frame));
+                    case 2 -> cache.call2(receiver, arguments[0].execute(frame), arguments[1].execute(frame));
+                    default -> cache.call3(receiver, arguments[0].execute(frame), arguments[1].execute(frame), arguments[2].execute(frame));
+                };
+            }
+            var args = new Object[generics.length + arguments.length];
+            for (var i = 0; i < generics.length; i++) {
+                args[i] = reify ? Values.reify(generics[i], frame) : generics[i];
+            }
+            for (var i = 0; i < arguments.length; i++) {
+                args[generics.length + i] = arguments[i].execute(frame);
+            }
+            return cache.callWith(receiver, args);
+        }
+    }
+
+    // the tail call of a member, as TailCall; the member is looked up once the arguments are computed, as CallMember
+    // does
+    static final class TailCallMember extends Node {
+        private final Node receiver;
+        private final FieldCache cache;
+        private final Type[] generics;
+        private final boolean reify;
+        private final Node[] arguments;
+
+        TailCallMember(Node receiver, FieldCache cache, List<Type> generics, Node[] arguments) {
+            this.receiver = receiver;
+            this.cache = cache;
+            this.generics = generics.toArray(Type[]::new);
+            this.reify = generics.stream().anyMatch(generic -> generic instanceof Type.TypeVariable);
+            this.arguments = arguments;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            var receiver = this.receiver.execute(frame);
+            var args = new Object[1 + generics.length + arguments.length];
+            args[0] = receiver;
+            for (var i = 0; i < generics.length; i++) {
+                args[1 + i] = reify ? Values.reify(generics[i], frame) : generics[i];
+            }
+            for (var i = 0; i < arguments.length; i++) {
+                args[1 + generics.length + i] = arguments[i].execute(frame);
+            }
+            var method = cache.method(receiver);
+            if (method != null) {
+                return tailCall(method, args);
+            }
+            return tailCall((BitCallable) cache.read(receiver), Arrays.copyOfRange(args, 1, args.length));
+        }
+    }
+
+    // the receiver and the generics of both the extension and the call precede the arguments
+    static final class CallExtension extends Node {
+        private final Node receiver;
+        private final Node extension;
+        private final Type[] generics;
+        private final boolean reify;
+        private final Node[] arguments;
+
+        CallExtension(Node receiver, Node extension, List<Type> generics, Node[] arguments) {
+            this.receiver = receiver;
+            this.extension = extension;
+            this.generics = generics.toArray(Type[]::new);
+            this.reify = generics.stream().anyMatch(generic -> generic instanceof Type.TypeVariable);
+            this.arguments = arguments;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            var receiver = this.receiver.execute(frame);
+            return invoke(receiver, (BitCallable) extension.execute(frame), frame);
+        }
+
+        Object invoke(Object receiver, BitCallable function, Frame frame) {
+            var arguments = this.arguments;
+            if (generics.length == 0 && arguments.length < 4) {
+                return switch (arguments.length) {
+                    case 0 -> function.call1(receiver);
+                    case 1 -> function.call2(receiver, arguments[0].execute(frame));
+                    case 2 -> function.call3(receiver, arguments[0].execute(frame), arguments[1].execute(frame));
+                    default -> function.call4(receiver, arguments[0].execute(frame), arguments[1].execute(frame), arguments[2].execute(frame));
+                };
+            }
+            var args = new Object[1 + generics.length + arguments.length];
+            args[0] = receiver;
+            for (var i = 0; i < generics.length; i++) {
+                args[1 + i] = reify ? Values.reify(generics[i], frame) : generics[i];
+            }
+            for (var i = 0; i < arguments.length; i++) {
+                args[1 + generics.length + i] = arguments[i].execute(frame);
+            }
+            return function.callWith(args);
+        }
+    }
+
+    // the tail call of an extension, as TailCall
+    static final class TailCallExtension extends Node {
+        private final Node receiver;
+        private final Node extension;
+        private final CallExtension call;
+
+        TailCallExtension(Node receiver, Node extension, List<Type> generics, Node[] arguments) {
+            this.receiver = receiver;
+            this.extension = extension;
+            this.call = new CallExtension(receiver, extension, generics, arguments);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            var receiver = this.receiver.execute(frame);
+            var function = (BitCallable) extension.execute(frame);
+            var call = this.call;
+            if (!(function instanceof Closure closure) || closure.bindings.length != 1 + call.generics.length + call.arguments.length) {
+                return call.invoke(receiver, function, frame);
+            }
+            var next = closure.enter();
+            var bindings = closure.bindings;
+            next.store(bindings[0], receiver);
+            var generics = call.generics;
+            for (var i = 0; i < generics.length; i++) {
+                next.store(bindings[1 + i], call.reify ? Values.reify(generics[i], frame) : generics[i]);
+            }
+            var arguments = call.arguments;
+            for (var i = 0; i < arguments.length; i++) {
+                next.store(bindings[1 + generics.length + i], arguments[i].execute(frame));
+            }
+            return next;
+        }
+    }
+
+    static final class AccessExtension extends Node {
+        private final Node expression;
+        private final Node extension;
+        private final List<Type> generics;
+
+        AccessExtension(Node expression, Node extension, List<Type> generics) {
+            this.expression = expression;
+            this.extension = extension;
+            this.generics = generics;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            var value = expression.execute(frame);
+            var function = (BitCallable) extension.execute(frame);
+            return BitCallable.bind(function, value, Values.reify(generics, frame).toArray());
+        }
+    }
+
+    static final class Instantiation extends Node {
+        private final Node constructor;
+        private final Node[] arguments;
+
+        Instantiation(Node constructor, Node[] arguments) {
+            this.constructor = constructor;
+            this.arguments = arguments;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            var constructor = (BitCallable) this.constructor.execute(frame);
+            return constructor.callWith(evaluate(arguments, frame));
+        }
+    }
+
+    // a function literal; evaluating it captures the enclosing frame into a new closure
+    static final class Lambda extends Node {
+        private final ResolvedBit.FrameLayout layout;
+        private final int[] bindings;
+        private final Node body;
+
+        Lambda(ResolvedBit.FrameLayout layout, int[] bindings, Node body) {
+            this.layout = layout;
+            this.bindings = bindings;
+            this.body = body;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return new Closure(frame.environment(), layout, frame.capture(layout), bindings, body);
+        }
+
+        ResolvedBit.FrameLayout layout() {
+            return layout;
+        }
+    }
+
+    static final class Closure implements BitCallable {
+        private final Environment environment;
+        private final ResolvedBit.FrameLayout layout;
+        private final Object[] captured;
+        private final int[] bindings;
+        private final Node body;
+
+        Closure(Environment environment, ResolvedBit.FrameLayout layout, Object[] captured, int[] bindings, Node body) {
+            this.environment = environment;
+            this.layout = layout;
+            this.captured = captured;
+            this.bindings = bindings;
+            this.body = body;
+        }
+
+        @Override
+        public Object call0() {
+            return run(new Frame(environment, layout, captured));
+        }
+
+        @Override
+        public Object call1(Object a) {
+            var frame = new Frame(environment, layout, captured);
+            frame.store(bindings[0], a);
+            return run(frame);
+        }
+
+        @Override
+        public Object call2(Object a, Object b) {
+            var frame = new Frame(environment, layout, captured);
+            frame.store(bindings[0], a);
+            frame.store(bindings[1], b);
+            return run(frame);
+        }
+
+        @Override
+        public Object call3(Object a, Object b, Object c) {
+            var frame = new Frame(environment, layout, captured);
+            frame.store(bindings[0], a);
+            frame.store(bindings[1], b);
+            frame.store(bindings[2], c);
+            return run(frame);
+        }
+
+        @Override
+        public Object call4(Object a, Object b, Object c, Object d) {
+            var frame = new Frame(environment, layout, captured);
+            frame.store(bindings[0], a);
+            frame.store(bindings[1], b);
+            frame.store(bindings[2], c);
+            frame.store(bindings[3], d);
+            return run(frame);
+        }
+
+        @Override
+        public Object call(Object... args) {
+            var frame = new Frame(environment, layout, captured);
+            for (var i = 0; i < bindings.length; i++) {
+                frame.store(bindings[i], args[i]);
+            }
+            return run(frame);
+        }
+
+        // the frame of a tail call of this closure
+        Frame enter() {
+            var frame = new Frame(environment, layout, captured);
+            frame.callee = this;
+            return frame;
+        }
+
+        // the frame of a tail call with the given arguments, or the value of the call if it takes another number of them
+        Object tailCall(Object[] args) {
+            if (args.length != bindings.length) return call(args);
+            var frame = enter();
+            for (var i = 0; i < bindings.length; i++) {
+                frame.store(bindings[i], args[i]);
+            }
+            return frame;
+        }
+
+        // runs the body, then the body of each function it ends with a tail call of, in the frame the call filled
+        private Object run(Frame frame) {
+            var body = this.body;
+            while (true) {
+                var result = frame.result(body.execute(frame));
+                if (!(result instanceof Frame next)) return result;
+                frame = next;
+                body = ((Closure) next.callee).body;
+            }
+        }
+
+        Object[] captured() {
+            return captured;
+        }
+    }
+
+    // declarations
+
+    static final class FunctionDeclaration extends Node {
+        private final ResolvedBit.Symbol name;
+        private final Lambda function;
+        private final int[] selfCaptures;
+
+        FunctionDeclaration(ResolvedBit.Symbol name, Lambda function) {
+            this.name = name;
+            this.function = function;
+            this.selfCaptures = function.layout().captures().stream()
+                    .filter(capture -> capture.source().id() == name.id())
+                    .mapToInt(capture -> function.layout().captures().indexOf(capture))
+                    .toArray();
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            var closure = (Closure) function.execute(frame);
+            frame.define(name, closure);
+            // a local function referring to itself captured its own slot before it was assigned
+            for (var capture : selfCaptures) {
+                closure.captured()[capture] = closure;
+            }
+            return null;
+        }
+    }
+
+    static final class ClassDeclaration extends Node {
+        private final ResolvedBit.Symbol name;
+        private final ResolvedBit.FrameLayout layout;
+        private final int[] parameters;
+        private final int thisSlot;
+        private final String[] memberNames;
+        private final Node[] members;
+        private final String[] methodNames;
+        private final Node[] methods;
+
+        // members are run by the constructor, the ones that are not fields of the instance have a null name. Methods
+        // are created once, when the class is declared
+        ClassDeclaration(ResolvedBit.Symbol name, ResolvedBit.FrameLayout layout, int[] parameters, int thisSlot, String[] memberNames, Node[] members, String[] methodNames, Node[] methods) {
+            this.name = name;
+            this.layout = layout;
+            this.parameters = parameters;
+            this.thisSlot = thisSlot;
+            this.memberNames = memberNames;
+            this.members = members;
+            this.methodNames = methodNames;
+            this.methods = methods;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            var environment = frame.environment();
+            var captured = frame.capture(layout);
+            var methods = new HashMap<String, BitCallable>();
+            for (var i = 0; i < methodNames.length; i++) {
+                methods.put(methodNames[i], (BitCallable) this.methods[i].execute(frame));
+            }
+            var fields = Arrays.stream(memberNames).filter(Objects::nonNull).toList();
+            var shape = Shape.of(fields, methods);
+            var memberSlots = new int[memberNames.length];
+            for (var i = 0; i < memberNames.length; i++) {
+                memberSlots[i] = memberNames[i] != null ? shape.slot(memberNames[i]) : -1;
+            }
+            frame.define(name, (BitCallable) args -> {
+                var constructorFrame = new Frame(environment, layout, captured);
+                for (var i = 0; i < parameters.length; i++) {
+                    constructorFrame.store(parameters[i], args[i]);
+                }
+                var instance = new Struct(shape);
+                constructorFrame.store(thisSlot, instance);
+                for (var i = 0; i < members.length; i++) {
+                    var value = members[i].execute(constructorFrame);
+                    if (memberSlots[i] >= 0) instance.set(memberSlots[i], value);
+                }
+                return instance;
+            });
+            return null;
+        }
+    }
+
+    static final class Sequence extends Node {
+        private final Node[] nodes;
+
+        Sequence(Node[] nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            for (var node : nodes) {
+                node.execute(frame);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package io.github.ageofwar.bit.interpreter;
+
+import io.github.ageofwar.bit.resolver.ResolvedBit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.github.ageofwar.bit.types.Types.none;
+
+// translates the resolved tree once into nodes, so that execution no longer dispatches on the tree shape
+class NodeCompiler {
+    Node compile(ResolvedBit.Declaration declaration) {
+        return switch (declaration) {
+            case ResolvedBit.Declaration.Variable variable -> define(variable.name(), compile(variable.value()));
+            case ResolvedBit.Declaration.Value value -> define(value.name(), compile(value.value()));
+            case ResolvedBit.Declaration.Function function -> new Node.FunctionDeclaration(function.name(), lambda(function));
+            case ResolvedBit.Declaration.Type type -> type.valueName() != null ? define(type.valueName(), new Node.Constant(type.value())) : new Node.Sequence(new Node[0]);
+            case ResolvedBit.Declaration.Class classDeclaration -> compile(classDeclaration);
+            case ResolvedBit.Declaration.Implementation implementation -> compile(implementation);
+        };
+    }
+
+    private Node compile(ResolvedBit.Declaration.Class classDeclaration) {
+        var constructor = classDeclaration.constructor();
+        var parameters = constructor.parameters().stream().mapToInt(parameter -> slot(parameter.name())).toArray();
+        var memberNames = new ArrayList<String>();
+        var memberNodes = new ArrayList<Node>();
+        var methodNames = new ArrayList<String>();
+        var methods = new ArrayList<Node>();
+        for (var member : classDeclaration.members()) {
+            switch (member.declaration()) {
+                case ResolvedBit.Declaration.Variable v -> {
+                    memberNames.add(v.name().name());
+                    memberNodes.add(compile(v.value()));
+                }
+                case ResolvedBit.Declaration.Value v -> {
+                    memberNames.add(v.name().name());
+                    memberNodes.add(compile(v.value()));
+                }
+                case ResolvedBit.Declaration.Function f -> {
+                    methodNames.add(f.name().name());
+                    methods.add(lambda(f, member.receiver()));
+                }
+                case ResolvedBit.Declaration declaration -> {
+                    memberNames.add(null);
+                    memberNodes.add(compile(declaration));
+                }
+            }
+        }
+        return new Node.ClassDeclaration(classDeclaration.name(), constructor.frame(), parameters, slot(classDeclaration.thisSymbol()), memberNames.toArray(String[]::new), memberNodes.toArray(Node[]::new), methodNames.toArray(String[]::new), methods.toArray(Node[]::new));
+    }
+
+    private Node compile(ResolvedBit.Declaration.Implementation implementation) {
+        var extensions = new Node[implementation.extensions().size()];
+        for (var i = 0; i < extensions.length; i++) {
+            var function = implementation.extensions().get(i);
+            var bindings = new ArrayList<ResolvedBit.Symbol>();
+            bindings.add(function.thisSymbol());
+            implementation.generics().forEach(generic -> bindings.add(generic.name()));
+            function.generics().forEach(generic -> bindings.add(generic.name()));
+            function.parameters().forEach(parameter -> bindings.add(parameter.name()));
+            extensions[i] = define(function.name(), new Node.Lambda(function.frame(), slots(bindings), compile(function.body())));
+        }
+        return new Node.Sequence(extensions);
+    }
+
+    private Node.Lambda lambda(ResolvedBit.Declaration.Function function) {
+        return lambda(function, null);
+    }
+
+    // a method takes its receiver before the generic arguments
+    private Node.Lambda lambda(ResolvedBit.Declaration.Function function, ResolvedBit.Symbol receiver) {
+        var bindings = new ArrayList<ResolvedBit.Symbol>();
+        if (receiver != null) bindings.add(receiver);
+        function.generics().forEach(generic -> bindings.add(generic.name()));
+        function.parameters().forEach(parameter -> bindings.add(parameter.name()));
+        return new Node.Lambda(function.frame(), slots(bindings), compile(function.body()));
+    }
+
+    Node compile(ResolvedBit.Expression expression) {
+        return switch (expression) {
+            case ResolvedBit.Expression.Identifier identifier -> read(identifier.name());
+            case ResolvedBit.Expression.Call call -> compile(call);
+            case ResolvedBit.Expression.CallExtension call -> {
+                var generics = new ArrayList<>(call.receiverGenerics());
+                generics.addAll(call.generics());
+                if (call.tail()) {
+                    yield new Node.TailCallExtension(compile(call.receiver()), read(call.name()), generics, compile(call.arguments()));
+                }
+                yield new Node.CallExtension(compile(call.receiver()), read(call.name()), generics, compile(call.arguments()));
+            }
+            case ResolvedBit.Expression.Block block -> compile(block);
+            case ResolvedBit.Expression.NumberLiteral numberLiteral -> new Node.Constant(numberLiteral.value());
+            case ResolvedBit.Expression.StringLiteral stringLiteral -> new Node.Constant(new BitString(stringLiteral.value()));
+            case ResolvedBit.Expression.BooleanLiteral booleanLiteral -> new Node.Constant(booleanLiteral.value());
+            case ResolvedBit.Expression.Minus minus -> minus.primitive() ? new Node.LongMinus(compile(minus.lhs()), compile(minus.rhs())) : new Node.Minus(compile(minus.lhs()), compile(minus.rhs()));
+            case ResolvedBit.Expression.Plus plus -> plus.primitive() ? new Node.LongPlus(compile(plus.lhs()), compile(plus.rhs())) : new Node.Plus(compile(plus.lhs()), compile(plus.rhs()));
+            case ResolvedBit.Expression.Multiply multiply -> multiply.primitive() ? new Node.LongMultiply(compile(multiply.lhs()), compile(multiply.rhs())) : new Node.Multiply(compile(multiply.lhs()), compile(multiply.rhs()));
+            case ResolvedBit.Expression.Divide divide -> divide.primitive() ? new Node.LongDivide(compile(divide.lhs()), compile(divide.rhs())) : new Node.Divide(compile(divide.lhs()), compile(divide.rhs()));
+            case ResolvedBit.Expression.If ifExpression -> new Node.If(
+                    compile(ifExpression.condition()),
+                    compile(ifExpression.thenBranch()),
+                    ifExpression.elseBranch() != null ? compile(ifExpression.elseBranch()) : new Node.Constant(none())
+            );
+            case ResolvedBit.Expression.While whileExpression -> new Node.While(compile(whileExpression.condition()), compile(whileExpression.body()), whileExpression.abrupt());
+            case ResolvedBit.Expression.GreaterThan greaterThan -> greaterThan.primitive() ? new Node.LongGreaterThan(compile(greaterThan.lhs()), compile(greaterThan.rhs())) : new Node.GreaterThan(compile(greaterThan.lhs()), compile(greaterThan.rhs()));
+            case ResolvedBit.Expression.GreaterThanOrEqual greaterThanOrEqual -> greaterThanOrEqual.primitive() ? new Node.LongGreaterThanOrEqual(compile(greaterThanOrEqual.lhs()), compile(greaterThanOrEqual.rhs())) : new Node.GreaterThanOrEqual(compile(greaterThanOrEqual.lhs()), compile(greaterThanOrEqual.rhs()));
+            case ResolvedBit.Expression.LessThan lessThan -> lessThan.primitive() ? new Node.LongLessThan(compile(lessThan.lhs()), compile(lessThan.rhs())) : new Node.LessThan(compile(lessThan.lhs()), compile(lessThan.rhs()));
+            case ResolvedBit.Expression.LessThanOrEqual lessThanOrEqual -> lessThanOrEqual.primitive() ? new Node.LongLessThanOrEqual(compile(lessThanOrEqual.lhs()), compile(lessThanOrEqual.rhs())) : new Node.LessThanOrEqual(compile(lessThanOrEqual.lhs()), compile(lessThanOrEqual.rhs()));
+            case ResolvedBit.Expression.Equal equal -> new Node.Equal(compile(equal.lhs()), compile(equal.rhs()));
+            case ResolvedBit.Expression.NotEqual notEqual -> new Node.NotEqual(compile(notEqual.lhs()), compile(notEqual.rhs()));
+            case ResolvedBit.Expression.As asExpression -> new Node.As(compile(asExpression.expression()), asExpression.type());
+            case ResolvedBit.Expression.Is isExpression -> new Node.Is(compile(isExpression.expression()), isExpression.checkType());
+            case ResolvedBit.Expression.Struct struct -> compile(struct);
+            case ResolvedBit.Expression.Array array -> new Node.ArrayLiteral(compile(array.elements()), array.primitive());
+            case ResolvedBit.Expression.Access access -> new Node.Access(compile(access.expression()), new FieldCache(access.field(), access.slot()));
+            case ResolvedBit.Expression.And and -> new Node.And(compile(and.lhs()), compile(and.rhs()));
+            case ResolvedBit.Expression.Or or -> new Node.Or(compile(or.lhs()), compile(or.rhs()));
+            case ResolvedBit.Expression.Not not -> new Node.Not(compile(not.expression()));
+            case ResolvedBit.Expression.Function function -> compile(function);
+            case ResolvedBit.Expression.Instantiation instantiation -> new Node.Instantiation(read(instantiation.className()), compile(instantiation.arguments()));
+            case ResolvedBit.Expression.AccessExtension access -> new Node.AccessExtension(compile(access.expression()), read(access.name()), access.generics());
+            case ResolvedBit.Expression.Break ignored -> new Node.Jump(Action.BREAK);
+            case ResolvedBit.Expression.Continue ignored -> new Node.Jump(Action.CONTINUE);
+            case ResolvedBit.Expression.Return returnExpression -> new Node.ReturnValue(compile(returnExpression.value()));
+        };
+    }
+
+    private Node[] compile(List<ResolvedBit.Expression> expressions) {
+        var nodes = new Node[expressions.size()];
+        for (var i = 0; i < nodes.length; i++) {
+            nodes[i] = compile(expressions.get(i));
+        }
+        return nodes;
+    }
+
+    private Node compile(ResolvedBit.Expression.Call call) {
+        if (call.callee() instanceof ResolvedBit.Expression.Access access && access.intrinsic()) {
+            var receiver = compile(access.expression());
+            var arguments = compile(call.arguments());
+            return switch (access.field()) {
+                case "size" -> new Node.IntrinsicSize(receiver);
+                case "get" -> new Node.IntrinsicGet(receiver, arguments[0]);
+                case "set" -> new Node.IntrinsicSet(receiver, arguments[0], arguments[1]);
+                case "add" -> new Node.IntrinsicAdd(receiver, arguments[0]);
+                case "remove" -> new Node.IntrinsicRemove(receiver, arguments[0]);
+                case "sequence" -> new Node.IntrinsicSequence(receiver);
+                case "next" -> new Node.IntrinsicNext(receiver);
+                default -> throw new IllegalStateException("Unexpected intrinsic " + access.field());
+            };
+        }
+        if (call.callee() instanceof ResolvedBit.Expression.Access access && call.tail()) {
+            return new Node.TailCallMember(compile(access.expression()), new FieldCache(access.field(), access.slot()), call.generics(), compile(call.arguments()));
+        }
+        if (call.callee() instanceof ResolvedBit.Expression.Access access) {
+            return new Node.CallMember(compile(access.expression()), new FieldCache(access.field(), access.slot()), call.generics(), compile(call.arguments()));
+        }
+        if (call.tail()) {
+            return new Node.TailCall(compile(call.callee()), call.generics(), compile(call.arguments()));
+        }
+        return new Node.Call(compile(call.callee()), call.generics(), compile(call.arguments()));
+    }
+
+    private Node compile(ResolvedBit.Expression.Block block) {
+        var statements = block.statements();
+        var nodes = new Node[statements.size()];
+        var expressions = new boolean[statements.size()];
+        for (var i = 0; i < nodes.length; i++) {
+            nodes[i] = switch (statements.get(i)) {
+                case ResolvedBit.Expression expression -> {
+                    expressions[i] = true;
+                    yield compile(expression);
+                }
+                case ResolvedBit.Declaration declaration -> compile(declaration);
+                case ResolvedBit.VariableAssignment assignment -> assign(assignment.name(), compile(assignment.value()));
+                case ResolvedBit.VariableFieldAssignment assignment -> new Node.FieldWrite(compile(assignment.struct()), new FieldCache(assignment.name(), assignment.slot()), compile(assignment.value()));
+                default -> throw new IllegalStateException("Unexpected statement " + statements.get(i));
+            };
+        }
+        return new Node.Block(nodes, expressions, block.abrupt());
+    }
+
+    private Node compile(ResolvedBit.Expression.Struct struct) {
+        var shape = Shape.of(struct.fields().keySet());
+        var slots = new int[struct.fields().size()];
+        var values = new Node[struct.fields().size()];
+        var i = 0;
+        for (var entry : struct.fields().entrySet()) {
+            slots[i] = shape.slot(entry.getKey());
+            values[i] = compile(entry.getValue());
+            i++;
+        }
+        return new Node.StructLiteral(shape, slots, values);
+    }
+
+    private Node compile(ResolvedBit.Expression.Function function) {
+        var bindings = new ArrayList<ResolvedBit.Symbol>();
+        function.generics().forEach(generic -> bindings.add(generic.name()));
+        function.parameters().forEach(parameter -> bindings.add(parameter.name()));
+        return new Node.Lambda(function.frame(), slots(bindings), compile(function.body()));
+    }
+
+    // symbols
+
+    private static Node read(ResolvedBit.Symbol symbol) {
+        return switch (symbol.storage()) {
+            case GLOBAL -> new Node.GlobalRead(symbol);
+            case LOCAL -> new Node.LocalRead(symbol.slot());
+            case CELL -> new Node.CellRead(symbol.slot());
+        };
+    }
+
+    private static Node define(ResolvedBit.Symbol symbol, Node value) {
+        return switch (symbol.storage()) {
+            case GLOBAL -> new Node.GlobalWrite(symbol, value);
+            case LOCAL -> new Node.LocalWrite(symbol.slot(), value);
+            case CELL -> new Node.CellDefine(symbol.slot(), value);
+        };
+    }
+
+    private static Node assign(ResolvedBit.Symbol symbol, Node value) {
+        return switch (symbol.storage()) {
+            case GLOBAL -> new Node.GlobalWrite(symbol, value);
+            case LOCAL -> new Node.LocalWrite(symbol.slot(), value);
+            case CELL -> new Node.CellWrite(symbol.slot(), value);
+        };
+    }
+
+    // arguments, generics and receivers are always bound to plain slots of the callee frame
+    private static int slot(ResolvedBit.Symbol symbol) {
+        if (symbol.storage() != ResolvedBit.Symbol.Storage.LOCAL) {
+            throw new IllegalStateException("Expected a local binding: " + symbol);
+        }
+        return symbol.slot();
+    }
+
+    private static int[] slots(List<ResolvedBit.Symbol> symbols) {
+        return symbols.stream().mapToInt(NodeCompiler::slot).toArray();
+    }
+}
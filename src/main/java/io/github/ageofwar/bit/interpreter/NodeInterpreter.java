@@ -0,0 +1,33 @@
+package io.github.ageofwar.bit.interpreter;
+
+import io.github.ageofwar.bit.resolver.ResolvedBit;
+
+
+public class NodeInterpreter {
+    public void interpret(ResolvedBit.Program program, String mainFunctionName) {
+        var environment = Environment.init(program.variables());
+        interpret(program, environment);
+
+        ResolvedBit.Symbol mainSymbol = null;
+        for (var declaration : program.declarations()) {
+            if (declaration.name() != null && declaration.name().name().equals(mainFunctionName)) {
+                mainSymbol = declaration.name();
+                break;
+            }
+        }
+        if (mainSymbol == null) {
+            throw new RuntimeException("Main function not found: " + mainFunctionName);
+        }
+        var main = (BitCallable) environment.get(mainSymbol);
+        main.call0();
+    }
+
+    public void interpret(ResolvedBit.Program program, Environment environment) {
+        var compiler = new NodeCompiler();
+        var nodes = program.declarations().stream().map(compiler::compile).toList();
+        var frame = new Frame(environment);
+        for (var node : nodes) {
+            node.execute(frame);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package io.github.ageofwar.bit.interpreter;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// the layout of a struct: its member names in sorted order, so a member sits at the index the resolver predicts from an
+// exact struct type. A member is either a field, stored in a slot of the struct, or a method of its class, shared by all
+// the instances and called with the instance as first argument. Shapes of struct literals only have fields and are
+// interned, a class creates its own shape once when it is declared
+public final class Shape {
+    private static final Map<List<String>, Shape> SHAPES = new ConcurrentHashMap<>();
+
+    private final String[] names;
+    private final int[] slots;
+    private final BitCallable[] methods;
+    private final int size;
+    private final Map<String, Integer> members;
+
+    private Shape(String[] names, Map<String, BitCallable> methods) {
+        this.names = names;
+        this.slots = new int[names.length];
+        this.methods = methods.isEmpty() ? null : new BitCallable[names.length];
+        members = new HashMap<>();
+        var size = 0;
+        for (var i = 0; i < names.length; i++) {
+            members.put(names[i], i);
+            var method = methods.get(names[i]);
+            if (method != null) {
+                this.methods[i] = method;
+                slots[i] = -1;
+            } else {
+                slots[i] = size++;
+            }
+        }
+        this.size = size;
+    }
+
+    public static Shape of(Collection<String> names) {
+        var sorted = sorted(names);
+        return SHAPES.computeIfAbsent(sorted, key -> new Shape(key.toArray(String[]::new), Map.of()));
+    }
+
+    public static Shape of(String... names) {
+        return of(Arrays.asList(names));
+    }
+
+    public static Shape of(Collection<String> fields, Map<String, BitCallable> methods) {
+        var names = new ArrayList<>(fields);
+        names.addAll(methods.keySet());
+        return new Shape(sorted(names).toArray(String[]::new), methods);
+    }
+
+    private static List<String> sorted(Collection<String> names) {
+        return names.stream().distinct().sorted().map(String::intern).toList();
+    }
+
+    // the number of slots of a struct
+    public int size() {
+        return size;
+    }
+
+    public int members() {
+        return names.length;
+    }
+
+    public String name(int member) {
+        return names[member];
+    }
+
+    // the index of a member, or -1 when structs of this shape do not have it
+    public int member(String name) {
+        var member = members.get(name);
+        return member != null ? member : -1;
+    }
+
+    // the slot of a field, or -1 for a method
+    public int slot(int member) {
+        return slots[member];
+    }
+
+    public int slot(String name) {
+        var member = member(name);
+        return member < 0 ? -1 : slots[member];
+    }
+
+    public BitCallable method(int member) {
+        return methods != null ? methods[member] : null;
+    }
+
+    public boolean hasMethods() {
+        return methods != null;
+    }
+
+    boolean sameMembers(Shape other) {
+        return this == other || Arrays.equals(names, other.names);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(names);
+    }
+}
@@ -1,21 +1,75 @@
 package io.github.ageofwar.bit.interpreter;
 
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Objects;
 import java.util.StringJoiner;
 
-public record Struct(Map<String, Object> fields) {
+// field values are stored at the slots of the struct shape; a slot is null until a class constructor assigns it
+public final class Struct {
+    private static final Object[] NO_GENERICS = new Object[0];
+
+    private final Shape shape;
+    private final Object[] values;
+
+    public Struct(Shape shape) {
+        this(shape, new Object[shape.size()]);
+    }
+
+    public Struct(Shape shape, Object[] values) {
+        this.shape = shape;
+        this.values = values;
+    }
+
+    public Shape shape() {
+        return shape;
+    }
+
+    public Object get(int slot) {
+        return values[slot];
+    }
+
+    public void set(int slot, Object value) {
+        values[slot] = value;
+    }
+
+    // the value of a member, a method is bound to this instance
+    public Object member(int member) {
+        var slot = shape.slot(member);
+        return slot >= 0 ? values[slot] : BitCallable.bind(shape.method(member), this, NO_GENERICS);
+    }
+
     public Object getField(String fieldName) {
-        return fields.get(fieldName);
+        var member = shape.member(fieldName);
+        return member < 0 ? null : member(member);
     }
 
     public void setField(String fieldName, Object value) {
-        fields.put(fieldName, value);
+        var slot = shape.slot(fieldName);
+        if (slot < 0) {
+            throw new RuntimeException("Field '" + fieldName + "' not found in struct: " + this);
+        }
+        values[slot] = value;
+    }
+
+    // instances of a class with methods are only equal to themselves
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        return o instanceof Struct struct && !shape.hasMethods() && !struct.shape.hasMethods() && shape.sameMembers(struct.shape) && Arrays.equals(values, struct.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return shape.hasMethods() ? System.identityHashCode(this) : Objects.hash(shape.toString(), Arrays.hashCode(values));
     }
 
     @Override
     public String toString() {
         var joiner = new StringJoiner(", ", "[", "]");
-        fields.forEach((key, value) -> joiner.add(key + "=" + value));
+        for (var i = 0; i < shape.members(); i++) {
+            var slot = shape.slot(i);
+            joiner.add(shape.name(i) + "=" + (slot >= 0 ? values[slot] : shape.method(i)));
+        }
         return joiner.toString();
     }
 }
@@ -0,0 +1,8 @@
+package io.github.ageofwar.bit.interpreter;
+
+import io.github.ageofwar.bit.resolver.ResolvedBit;
+
+// the generic arguments a running function was called with, looked up by the symbol of the type variable
+public interface TypeBindings {
+    Object lookup(ResolvedBit.Symbol symbol);
+}
@@ -0,0 +1,194 @@
+package io.github.ageofwar.bit.interpreter;
+
+import io.github.ageofwar.bit.types.Type;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static io.github.ageofwar.bit.types.Types.*;
+
+// the runtime test of an is or as site, compiled once from its static type. Whether a string, a boolean, None, a native
+// list or a function passes only depends on the type, so those answers are decided up front; integers are checked
+// against the intervals the type admits and structs against a plan built for each shape seen at the site, up to
+// eight shapes, past that the plan is rebuilt on every test. A type variable is looked up in the bindings of the
+// running function and tested against the type it is bound to
+public final class TypeTest {
+    private static final int ENTRIES = 8;
+    private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+
+    private final Type type;
+    private final Type.TypeVariable variable;
+    private final boolean any;
+    private final long[] longs;
+    private final BigInteger[] bigIntegers;
+    private final boolean string;
+    private final boolean _true;
+    private final boolean _false;
+    private final boolean none;
+    private final boolean list;
+    private final boolean sequence;
+    private final boolean callable;
+    private final Map<String, Type> fields;
+    private final Map<String, TypeTest> fieldTests = new HashMap<>();
+    private final Shape[] shapes = new Shape[ENTRIES];
+    private final Plan[] plans = new Plan[ENTRIES];
+    private TypeTest bound;
+
+    public TypeTest(Type type) {
+        this.type = type;
+        variable = type instanceof Type.TypeVariable typeVariable ? typeVariable : null;
+        any = type == any();
+        var intervals = new ArrayList<BigInteger>();
+        intervals(type, intervals);
+        bigIntegers = intervals.toArray(BigInteger[]::new);
+        longs = longs(bigIntegers);
+        var constant = variable == null && !any && type != never();
+        string = constant && extend(string(), type);
+        _true = constant && extend(_true(), type);
+        _false = constant && extend(_false(), type);
+        none = constant && extend(none(), type);
+        fields = constant && type instanceof Type.Struct(var f) ? f : null;
+        list = fields != null && BitList.MEMBERS.containsAll(fields.keySet());
+        sequence = fields != null && Set.of("next").containsAll(fields.keySet());
+        callable = constant && (extend(type, function(any())) || extend(type, function(any(), none())) || extend(type, function(any(), none(), none())) || extend(type, function(any(), none(), none(), none())) || extend(type, function(any(), none(), none(), none(), none())));
+    }
+
+    public Type type() {
+        return type;
+    }
+
+    public boolean test(Object value, TypeBindings bindings) {
+        if (any) return true;
+        if (variable != null) return bound(bindings).test(value, bindings);
+        return switch (value) {
+            case Long l -> test(l);
+            case BigInteger bigInteger -> test(bigInteger);
+            case BitString ignored -> string;
+            case Boolean bool -> bool ? _true : _false;
+            case Struct struct -> fields != null && plan(struct.shape()).test(struct, bindings);
+            case BitList ignored -> list;
+            case BitSequence ignored -> sequence;
+            case Type.Nominal nominal -> nominal == none() ? none : extend(nominal, type);
+            case BitCallable ignored -> callable;
+            case null, default -> false;
+        };
+    }
+
+    private boolean test(long value) {
+        for (var i = 0; i < longs.length; i += 2) {
+            if (longs[i] <= value && value <= longs[i + 1]) return true;
+        }
+        return false;
+    }
+
+    private boolean test(BigInteger value) {
+        for (var i = 0; i < bigIntegers.length; i += 2) {
+            if ((bigIntegers[i] == null || bigIntegers[i].compareTo(value) <= 0) && (bigIntegers[i + 1] == null || bigIntegers[i + 1].compareTo(value) >= 0)) return true;
+        }
+        return false;
+    }
+
+    // the test of the type a variable is bound to, kept for the last binding seen
+    private TypeTest bound(TypeBindings bindings) {
+        var type = bindings != null && bindings.lookup(variable.name()) instanceof Type b ? b : variable.bounds();
+        var test = bound;
+        if (test == null || test.type != type) {
+            test = new TypeTest(type);
+            bound = test;
+        }
+        return test;
+    }
+
+    private Plan plan(Shape shape) {
+        for (var i = 0; i < ENTRIES; i++) {
+            var cached = shapes[i];
+            if (cached == shape) return plans[i];
+            if (cached == null) {
+                var plan = plan(shape, fields);
+                plans[i] = plan;
+                shapes[i] = shape;
+                return plan;
+            }
+        }
+        return plan(shape, fields);
+    }
+
+    // the fields of the shape to check and the tests of their types; methods are shared by the whole shape, so they
+    // are checked once here
+    private Plan plan(Shape shape, Map<String, Type> fields) {
+        var slots = new ArrayList<Integer>();
+        var tests = new ArrayList<TypeTest>();
+        for (var i = 0; i < shape.members(); i++) {
+            var fieldType = fields.get(shape.name(i));
+            if (fieldType == null || fieldType == any()) continue;
+            var test = fieldTests.computeIfAbsent(shape.name(i), name -> new TypeTest(fieldType));
+            var slot = shape.slot(i);
+            if (slot < 0) {
+                if (!test.test(shape.method(i), null)) return Plan.REJECT;
+            } else {
+                slots.add(slot);
+                tests.add(test);
+            }
+        }
+        return new Plan(slots.stream().mapToInt(Integer::intValue).toArray(), tests.toArray(TypeTest[]::new));
+    }
+
+    private record Plan(int[] slots, TypeTest[] tests) {
+        static final Plan REJECT = new Plan(null, null);
+
+        boolean test(Struct struct, TypeBindings bindings) {
+            if (slots == null) return false;
+            for (var i = 0; i < slots.length; i++) {
+                if (!tests[i].test(struct.get(slots[i]), bindings)) return false;
+            }
+            return true;
+        }
+    }
+
+    // the intervals of integers the type admits as pairs of bounds, a null bound is open
+    private static void intervals(Type type, List<BigInteger> intervals) {
+        switch (type) {
+            case Type.Any ignored -> {
+                intervals.add(null);
+                intervals.add(null);
+            }
+            case Type.Integer ignored -> {
+                intervals.add(null);
+                intervals.add(null);
+            }
+            case Type.Range(var lo, var hi) -> {
+                intervals.add(lo);
+                intervals.add(hi);
+            }
+            case Type.NumberLiteral(var value) -> {
+                intervals.add(value);
+                intervals.add(value);
+            }
+            case Type.Union(var types) -> {
+                for (var t : types) {
+                    intervals(t, intervals);
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    // the same intervals clamped to longs, those no long lies in are dropped
+    private static long[] longs(BigInteger[] intervals) {
+        var longs = new ArrayList<Long>();
+        for (var i = 0; i < intervals.length; i += 2) {
+            var lo = intervals[i] == null ? LONG_MIN : intervals[i].max(LONG_MIN);
+            var hi = intervals[i + 1] == null ? LONG_MAX : intervals[i + 1].min(LONG_MAX);
+            if (lo.compareTo(hi) > 0) continue;
+            longs.add(lo.longValue());
+            longs.add(hi.longValue());
+        }
+        return longs.stream().mapToLong(Long::longValue).toArray();
+    }
+}
@@ -0,0 +1,92 @@
+package io.github.ageofwar.bit.interpreter;
+
+import io.github.ageofwar.bit.resolver.ResolvedBit;
+import io.github.ageofwar.bit.types.Type;
+
+import java.util.*;
+
+// runtime representation of values, shared by the execution engines
+public final class Values {
+    private Values() {
+    }
+
+    public static Object access(Object value, String field) {
+        var fieldValue = switch (value) {
+            case BitString string -> string.member(field);
+            case BitList list -> list.member(field);
+            case BitSequence sequence -> sequence.member(field);
+            default -> ((Struct) value).getField(field);
+        };
+        if (fieldValue == null) {
+            throw new RuntimeException("Field '" + field + "' not found in struct: " + value);
+        }
+        return fieldValue;
+    }
+
+    // instances of a class have a field for each variable and value member, its functions are methods of the class
+    public static List<String> fields(ResolvedBit.Declaration.Class classDeclaration) {
+        var names = new ArrayList<String>();
+        for (var member : classDeclaration.members()) {
+            switch (member.declaration()) {
+                case ResolvedBit.Declaration.Variable v -> names.add(v.name().name());
+                case ResolvedBit.Declaration.Value v -> names.add(v.name().name());
+                default -> {}
+            }
+        }
+        return names;
+    }
+
+    // intrinsic calls of the members native values implement; any other receiver is called through its field
+
+    public static Object size(Object receiver) {
+        if (receiver instanceof BitList list) return list.size();
+        if (receiver instanceof BitString string) return string.size();
+        return ((BitCallable) access(receiver, "size")).call0();
+    }
+
+    public static Object get(Object receiver, Object index) {
+        if (receiver instanceof BitList list) return list.get(index);
+        if (receiver instanceof BitString string) return string.get(index);
+        return ((BitCallable) access(receiver, "get")).call1(index);
+    }
+
+    public static Object set(Object receiver, Object index, Object value) {
+        if (receiver instanceof BitList list) return list.set(index, value);
+        return ((BitCallable) access(receiver, "set")).call2(index, value);
+    }
+
+    public static Object add(Object receiver, Object value) {
+        if (receiver instanceof BitList list) return list.add(value);
+        return ((BitCallable) access(receiver, "add")).call1(value);
+    }
+
+    public static Object remove(Object receiver, Object index) {
+        if (receiver instanceof BitList list) return list.remove(index);
+        return ((BitCallable) access(receiver, "remove")).call1(index);
+    }
+
+    public static Object sequence(Object receiver) {
+        if (receiver instanceof BitList list) return list.sequence();
+        if (receiver instanceof BitString string) return string.sequence();
+        return ((BitCallable) access(receiver, "sequence")).call0();
+    }
+
+    public static Object next(Object receiver) {
+        if (receiver instanceof BitSequence sequence) return sequence.next();
+        return ((BitCallable) access(receiver, "next")).call0();
+    }
+
+    // generic arguments are passed by value, so type variables of the caller must be bound before the call
+    public static Type reify(Type generic, TypeBindings bindings) {
+        return generic instanceof Type.TypeVariable typeVariable && bindings.lookup(typeVariable.name()) instanceof Type bound ? bound : generic;
+    }
+
+    public static List<Type> reify(List<Type> generics, TypeBindings bindings) {
+        if (generics.isEmpty()) return generics;
+        var reified = new ArrayList<Type>(generics.size());
+        for (var generic : generics) {
+            reified.add(reify(generic, bindings));
+        }
+        return reified;
+    }
+}
@@ -0,0 +1,362 @@
+package io.github.ageofwar.bit.lexer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+// a lexer over a source held whole in an array. It reads the same tokens as Lexer, but scans them as spans of the
+// source: next() moves to the next token and returns its kind, start() and end() delimit it, and its text or token are
+// only made when asked for. Tokens without a payload are the shared ones of their kind, and identifiers are interned,
+// so that a name is a single string and a single token however many times it appears
+public final class SpanLexer implements TokenStream {
+    private static final byte IDENTIFIER_START = 1;
+    private static final byte IDENTIFIER_PART = 2;
+    private static final byte WHITESPACE = 4;
+    private static final byte DIGIT = 8;
+    // the classes of the ascii characters, as Character sees them
+    private static final byte[] ASCII = new byte[128];
+
+    static {
+        for (char c = 0; c < ASCII.length; c++) {
+            if (Character.isJavaIdentifierStart(c)) ASCII[c] |= IDENTIFIER_START;
+            if (Character.isJavaIdentifierPart(c)) ASCII[c] |= IDENTIFIER_PART;
+            if (Character.isWhitespace(c)) ASCII[c] |= WHITESPACE;
+            if (Character.isDigit(c)) ASCII[c] |= DIGIT;
+        }
+    }
+
+    private static final Token.BooleanLiteral TRUE = new Token.BooleanLiteral(true);
+    private static final Token.BooleanLiteral FALSE = new Token.BooleanLiteral(false);
+
+    private final char[] source;
+    private final int length;
+    private final Names names = new Names();
+    private int position;
+    private Token.Kind kind;
+    private int start;
+    private int end;
+    // the token of the current identifier, keyword or boolean, found in names while scanning it
+    private Token word;
+    // whether the current string literal has escape sequences to decode
+    private boolean escaped;
+
+    public SpanLexer(char[] source, int length) {
+        this.source = source;
+        this.length = length;
+    }
+
+    public SpanLexer(char[] source) {
+        this(source, source.length);
+    }
+
+    public SpanLexer(String source) {
+        this(source.toCharArray());
+    }
+
+    // reads the whole source first
+    public SpanLexer(Reader reader) {
+        this(read(reader));
+    }
+
+    private SpanLexer(CharBuffer buffer) {
+        this(buffer.chars, buffer.length);
+    }
+
+    @Override
+    public Token nextToken() {
+        return next() != null ? token() : null;
+    }
+
+    // moves to the next token and returns its kind, or null at the end of the source
+    public Token.Kind next() {
+        while (true) {
+            if (position >= length) {
+                start = end = position;
+                return kind = null;
+            }
+            var c = source[position];
+            start = position;
+            switch (c) {
+                case '(' -> { return single(Token.Kind.LEFT_PARENTHESIS); }
+                case ')' -> { return single(Token.Kind.RIGHT_PARENTHESIS); }
+                case '[' -> { return single(Token.Kind.LEFT_BRACKET); }
+                case ']' -> { return single(Token.Kind.RIGHT_BRACKET); }
+                case '{' -> { return single(Token.Kind.LEFT_BRACE); }
+                case '}' -> { return single(Token.Kind.RIGHT_BRACE); }
+                case '"' -> { return string(); }
+                case '=' -> { return peek(1) == '=' ? pair(Token.Kind.EQUAL) : single(Token.Kind.ASSIGN); }
+                case ',' -> { return single(Token.Kind.COMMA); }
+                case ':' -> { return single(Token.Kind.COLON); }
+                case '/' -> {
+                    if (peek(1) != '/') return single(Token.Kind.SLASH);
+                    comment();
+                }
+                case '*' -> { return single(Token.Kind.ASTERISK); }
+                case '&' -> { return single(Token.Kind.AMPERSAND); }
+                case '|' -> { return single(Token.Kind.PIPE); }
+                case '.' -> { return single(Token.Kind.DOT); }
+                case '>' -> { return peek(1) == '=' ? pair(Token.Kind.GREATER_THAN_OR_EQUAL) : single(Token.Kind.GREATER_THAN); }
+                case '<' -> { return peek(1) == '=' ? pair(Token.Kind.LESS_THAN_OR_EQUAL) : single(Token.Kind.LESS_THAN); }
+                case '\n' -> { return single(Token.Kind.NEW_LINE); }
+                case '\r' -> {
+                    position++;
+                    if (position < length && source[position] == '\n') position++;
+                    while (position < length && is(source[position], WHITESPACE)) position++;
+                    end = position;
+                    return kind = Token.Kind.NEW_LINE;
+                }
+                case '-' -> {
+                    var next = peek(1);
+                    if (next >= 0 && is((char) next, DIGIT)) return number();
+                    return next == '>' ? pair(Token.Kind.ARROW) : single(Token.Kind.MINUS);
+                }
+                case '0', '1', '2', '3', '4', '5', '6', '7', '8', '9' -> { return number(); }
+                case '+' -> {
+                    var next = peek(1);
+                    return next >= 0 && is((char) next, DIGIT) ? number() : single(Token.Kind.PLUS);
+                }
+                default -> {
+                    if (is(c, IDENTIFIER_START)) return word();
+                    if (!is(c, WHITESPACE)) {
+                        throw new LexerException("Unexpected character: '" + c + "'", position);
+                    }
+                    // whitespace takes the line breaks after it along
+                    var i = position + 1;
+                    while (i < length && is(source[i], WHITESPACE)) i++;
+                    position = i;
+                }
+            }
+        }
+    }
+
+    public Token.Kind kind() {
+        return kind;
+    }
+
+    public int start() {
+        return start;
+    }
+
+    public int end() {
+        return end;
+    }
+
+    // the source of the current token
+    public String text() {
+        return new String(source, start, end - start);
+    }
+
+    // the token at the current span
+    public Token token() {
+        return switch (kind) {
+            case IDENTIFIER, KEYWORD, BOOLEAN_LITERAL -> word;
+            case NUMBER_LITERAL -> new Token.NumberLiteral(text());
+            case STRING_LITERAL -> new Token.StringLiteral(escaped ? unescape() : new String(source, start + 1, end - start - 2));
+            default -> kind.token();
+        };
+    }
+
+    private Token.Kind single(Token.Kind kind) {
+        end = ++position;
+        return this.kind = kind;
+    }
+
+    private Token.Kind pair(Token.Kind kind) {
+        end = position += 2;
+        return this.kind = kind;
+    }
+
+    private int peek(int offset) {
+        return position + offset < length ? source[position + offset] : -1;
+    }
+
+    // a comment runs to the end of its line, and takes the line break along
+    private void comment() {
+        position += 2;
+        while (position < length && source[position] != '\n' && source[position] != '\r') position++;
+        if (position < length && source[position++] == '\r' && position < length && source[position] == '\n') position++;
+    }
+
+    private Token.Kind word() {
+        var source = this.source;
+        var i = position;
+        var hash = 0;
+        do {
+            hash = 31 * hash + source[i++];
+        } while (i < length && is(source[i], IDENTIFIER_PART));
+        end = position = i;
+        word = names.intern(source, start, end, hash);
+        return kind = switch (word) {
+            case Token.Keyword ignored -> Token.Kind.KEYWORD;
+            case Token.BooleanLiteral ignored -> Token.Kind.BOOLEAN_LITERAL;
+            default -> Token.Kind.IDENTIFIER;
+        };
+    }
+
+    private Token.Kind number() {
+        var i = position;
+        if (source[i] == '-' || source[i] == '+') i++;
+        do {
+            i++;
+        } while (i < length && is(source[i], DIGIT));
+        end = position = i;
+        return kind = Token.Kind.NUMBER_LITERAL;
+    }
+
+    // checks the escape sequences, they are only decoded when the token is made
+    private Token.Kind string() {
+        escaped = false;
+        position++;
+        while (true) {
+            if (position >= length) {
+                throw new LexerException("Unterminated string literal", position);
+            }
+            var c = source[position++];
+            if (c == '"') break;
+            if (c == '\\') {
+                escaped = true;
+                if (position >= length) {
+                    throw new LexerException("Unterminated escape sequence", position);
+                }
+                var escape = source[position++];
+                if (escape != 'n' && escape != 't' && escape != '"' && escape != '\\') {
+                    throw new LexerException("Unknown escape sequence: '\\" + escape + "'", position);
+                }
+            }
+        }
+        end = position;
+        return kind = Token.Kind.STRING_LITERAL;
+    }
+
+    private String unescape() {
+        var builder = new StringBuilder(end - start - 2);
+        for (var i = start + 1; i < end - 1; i++) {
+            var c = source[i];
+            if (c == '\\') {
+                c = switch (source[++i]) {
+                    case 'n' -> '\n';
+                    case 't' -> '\t';
+                    default -> source[i];
+                };
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    private static boolean is(char c, byte type) {
+        return c < 128 ? (ASCII[c] & type) != 0 : isUnicode(c, type);
+    }
+
+    private static boolean isUnicode(char c, byte type) {
+        return switch (type) {
+            case IDENTIFIER_START -> Character.isJavaIdentifierStart(c);
+            case IDENTIFIER_PART -> Character.isJavaIdentifierPart(c);
+            case WHITESPACE -> Character.isWhitespace(c);
+            default -> Character.isDigit(c);
+        };
+    }
+
+    private static CharBuffer read(Reader reader) {
+        try {
+            var chars = new char[8192];
+            var length = 0;
+            int read;
+            while ((read = reader.read(chars, length, chars.length - length)) != -1) {
+                length += read;
+                if (length == chars.length) chars = Arrays.copyOf(chars, chars.length * 2);
+            }
+            return new CharBuffer(chars, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private record CharBuffer(char[] chars, int length) {}
+
+    // the words met so far, looked up straight from the source; keywords and booleans are there from the start
+    private static final class Names {
+        private char[][] names = new char[256][];
+        private Token[] tokens = new Token[256];
+        private int size;
+
+        Names() {
+            for (var keyword : Token.Keyword.Type.values()) {
+                put(keyword.keyword().toCharArray(), new Token.Keyword(keyword));
+            }
+            put("true".toCharArray(), TRUE);
+            put("false".toCharArray(), FALSE);
+        }
+
+        Token intern(char[] source, int start, int end, int hash) {
+            var mask = names.length - 1;
+            for (var i = spread(hash) & mask; ; i = (i + 1) & mask) {
+                var name = names[i];
+                if (name == null) {
+                    var token = new Token.Identifier(new String(source, start, end - start));
+                    insert(i, Arrays.copyOfRange(source, start, end), token);
+                    return token;
+                }
+                if (Arrays.equals(name, 0, name.length, source, start, end)) return tokens[i];
+            }
+        }
+
+        private void put(char[] name, Token token) {
+            var mask = names.length - 1;
+            var i = spread(hash(name)) & mask;
+            while (names[i] != null) i = (i + 1) & mask;
+            insert(i, name, token);
+        }
+
+        private void insert(int i, char[] name, Token token) {
+            names[i] = name;
+            tokens[i] = token;
+            if (++size * 2 > names.length) {
+                var oldNames = names;
+                var oldTokens = tokens;
+                names = new char[oldNames.length * 2][];
+                tokens = new Token[oldNames.length * 2];
+                size = 0;
+                for (var j = 0; j < oldNames.length; j++) {
+                    if (oldNames[j] != null) put(oldNames[j], oldTokens[j]);
+                }
+            }
+        }
+
+        // the same hash word() computes while scanning
+        private static int hash(char[] name) {
+            var hash = 0;
+            for (var c : name) hash = 31 * hash + c;
+            return hash;
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    public class LexerException extends IllegalStateException {
+        public LexerException(String message, int position) {
+            super(message + " at " + location(position));
+        }
+    }
+
+    // where the streaming lexer would report an error after reading up to a position
+    private String location(int position) {
+        var line = 1;
+        var column = 1;
+        var last = -1;
+        for (var i = 0; i < position; i++) {
+            var c = source[i];
+            if (c == '\r' || (c == '\n' && last != '\r')) {
+                line++;
+                column = 1;
+            } else if (last != -1 && c != '\n') {
+                column++;
+            }
+            last = c;
+        }
+        return "(line " + line + ", column " + column + ")";
+    }
+}
@@ -32,6 +32,83 @@ public sealed interface Token {
     record Equal() implements Token {}
     record NotEqual() implements Token {}
     record Arrow() implements Token {}
+    // what a token is apart from its payload; the tokens of a kind that has none are all the same token
+    enum Kind {
+        IDENTIFIER(null),
+        KEYWORD(null),
+        STRING_LITERAL(null),
+        BOOLEAN_LITERAL(null),
+        NUMBER_LITERAL(null),
+        RIGHT_PARENTHESIS(new RightParenthesis()),
+        LEFT_PARENTHESIS(new LeftParenthesis()),
+        RIGHT_BRACKET(new RightBracket()),
+        LEFT_BRACKET(new LeftBracket()),
+        RIGHT_BRACE(new RightBrace()),
+        LEFT_BRACE(new LeftBrace()),
+        ASSIGN(new Assign()),
+        COMMA(new Comma()),
+        COLON(new Colon()),
+        NEW_LINE(new NewLine()),
+        PLUS(new Plus()),
+        MINUS(new Minus()),
+        ASTERISK(new Asterisk()),
+        SLASH(new Slash()),
+        DOT(new Dot()),
+        AMPERSAND(new Ampersand()),
+        PIPE(new Pipe()),
+        GREATER_THAN(new GreaterThan()),
+        LESS_THAN(new LessThan()),
+        GREATER_THAN_OR_EQUAL(new GreaterThanOrEqual()),
+        LESS_THAN_OR_EQUAL(new LessThanOrEqual()),
+        EQUAL(new Equal()),
+        NOT_EQUAL(new NotEqual()),
+        ARROW(new Arrow());
+
+        private final Token token;
+
+        Kind(Token token) {
+            this.token = token;
+        }
+
+        // the shared token of this kind, or null when its tokens have a payload
+        public Token token() {
+            return token;
+        }
+
+        public static Kind of(Token token) {
+            return switch (token) {
+                case Identifier t -> IDENTIFIER;
+                case Keyword t -> KEYWORD;
+                case StringLiteral t -> STRING_LITERAL;
+                case BooleanLiteral t -> BOOLEAN_LITERAL;
+                case NumberLiteral t -> NUMBER_LITERAL;
+                case RightParenthesis t -> RIGHT_PARENTHESIS;
+                case LeftParenthesis t -> LEFT_PARENTHESIS;
+                case RightBracket t -> RIGHT_BRACKET;
+                case LeftBracket t -> LEFT_BRACKET;
+                case RightBrace t -> RIGHT_BRACE;
+                case LeftBrace t -> LEFT_BRACE;
+                case Assign t -> ASSIGN;
+                case Comma t -> COMMA;
+                case Colon t -> COLON;
+                case NewLine t -> NEW_LINE;
+                case Plus t -> PLUS;
+                case Minus t -> MINUS;
+                case Asterisk t -> ASTERISK;
+                case Slash t -> SLASH;
+                case Dot t -> DOT;
+                case Ampersand t -> AMPERSAND;
+                case Pipe t -> PIPE;
+                case GreaterThan t -> GREATER_THAN;
+                case LessThan t -> LESS_THAN;
+                case GreaterThanOrEqual t -> GREATER_THAN_OR_EQUAL;
+                case LessThanOrEqual t -> LESS_THAN_OR_EQUAL;
+                case Equal t -> EQUAL;
+                case NotEqual t -> NOT_EQUAL;
+                case Arrow t -> ARROW;
+            };
+        }
+    }
     record Keyword(Type type) implements Token {
         public enum Type {
             IF("if"),
@@ -67,6 +144,10 @@ public sealed interface Token {
 
             private final String name;
 
+            public String keyword() {
+                return name;
+            }
+
             public static Type fromName(String name) {
                 return byName.get(name);
             }
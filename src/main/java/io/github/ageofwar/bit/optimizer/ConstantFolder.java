@@ -0,0 +1,147 @@
+package io.github.ageofwar.bit.optimizer;
+
+import io.github.ageofwar.bit.resolver.ResolvedBit;
+import io.github.ageofwar.bit.types.Type;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static io.github.ageofwar.bit.types.Types.*;
+
+// replaces what the types of the resolver already know with literals, and drops the branches, casts, checks and
+// statements that can't be observed
+public final class ConstantFolder {
+    public ResolvedBit.Program fold(ResolvedBit.Program program) {
+        var variables = new Variables();
+        program.declarations().forEach(variables::declaration);
+        var folder = new Folder(new Effects(program.declarations()), variables.ids);
+        var declarations = program.declarations().stream().map(folder::declaration).toList();
+        return new ResolvedBit.Program(declarations, program.environment(), program.variables());
+    }
+
+    // the symbols that may be assigned after they are declared
+    private static final class Variables extends TreeRewriter {
+        private final Set<Integer> ids = new HashSet<>();
+
+        @Override
+        ResolvedBit.Declaration declaration(ResolvedBit.Declaration declaration) {
+            if (declaration instanceof ResolvedBit.Declaration.Variable variable) ids.add(variable.name().id());
+            return super.declaration(declaration);
+        }
+
+        @Override
+        ResolvedBit statement(ResolvedBit statement) {
+            if (statement instanceof ResolvedBit.VariableAssignment assignment) ids.add(assignment.name().id());
+            return super.statement(statement);
+        }
+    }
+
+    // whether an expression reads one of the given symbols
+    private static final class Reads extends TreeRewriter {
+        private final Set<Integer> symbols;
+        private boolean found;
+
+        Reads(Set<Integer> symbols) {
+            this.symbols = symbols;
+        }
+
+        @Override
+        ResolvedBit.Expression expression(ResolvedBit.Expression expression) {
+            if (found) return expression;
+            if (expression instanceof ResolvedBit.Expression.Identifier identifier && symbols.contains(identifier.name().id())) {
+                found = true;
+                return expression;
+            }
+            return super.expression(expression);
+        }
+    }
+
+    private static final class Folder extends TreeRewriter {
+        private final Effects effects;
+        private final Set<Integer> variables;
+
+        Folder(Effects effects, Set<Integer> variables) {
+            this.effects = effects;
+            this.variables = variables;
+        }
+
+        @Override
+        ResolvedBit.Expression expression(ResolvedBit.Expression expression) {
+            var folded = switch (super.expression(expression)) {
+                case ResolvedBit.Expression.If ifExpression -> branch(ifExpression);
+                case ResolvedBit.Expression.Block block -> block(block);
+                case ResolvedBit.Expression.As as when extend(as.expression().type(), as.type()) -> as.expression();
+                case ResolvedBit.Expression.Is is when extend(is.expression().type(), is.checkType()) && !effects.of(is.expression()) ->
+                        new ResolvedBit.Expression.BooleanLiteral(true, _true(), is.returnType());
+                case ResolvedBit.Expression rewritten -> rewritten;
+            };
+            return constant(folded);
+        }
+
+        private ResolvedBit.Expression constant(ResolvedBit.Expression expression) {
+            switch (expression) {
+                case ResolvedBit.Expression.NumberLiteral ignored -> {
+                    return expression;
+                }
+                case ResolvedBit.Expression.BooleanLiteral ignored -> {
+                    return expression;
+                }
+                default -> {}
+            }
+            var type = expression.type();
+            if (type instanceof Type.NumberLiteral(var value) && !effects.of(expression) && !readsVariable(expression)) {
+                return new ResolvedBit.Expression.NumberLiteral(value.bitLength() < Long.SIZE ? (Number) value.longValue() : value, type, expression.returnType());
+            }
+            if ((type.equals(_true()) || type.equals(_false())) && !effects.of(expression) && !readsVariable(expression)) {
+                return new ResolvedBit.Expression.BooleanLiteral(type.equals(_true()), type, expression.returnType());
+            }
+            return expression;
+        }
+
+        private boolean readsVariable(ResolvedBit.Expression expression) {
+            var reads = new Reads(variables);
+            reads.expression(expression);
+            return reads.found;
+        }
+
+        // the condition has been folded already, a literal one can't be observed
+        private static ResolvedBit.Expression branch(ResolvedBit.Expression.If ifExpression) {
+            if (!(ifExpression.condition() instanceof ResolvedBit.Expression.BooleanLiteral condition)) {
+                return ifExpression;
+            }
+            if (condition.value()) {
+                return ifExpression.thenBranch();
+            }
+            return ifExpression.elseBranch() != null ? ifExpression.elseBranch() : ifExpression;
+        }
+
+        // the value of a block is that of the last expression it computes, what comes before it is kept only if it
+        // can be observed
+        private ResolvedBit.Expression block(ResolvedBit.Expression.Block block) {
+            var statements = block.statements();
+            var kept = new ArrayList<ResolvedBit>(statements.size());
+            var last = false;
+            for (var i = statements.size() - 1; i >= 0; i--) {
+                var statement = statements.get(i);
+                if (last && statement instanceof ResolvedBit.Expression expression && dead(expression)) continue;
+                kept.add(statement);
+                last |= statement instanceof ResolvedBit.Expression;
+            }
+            if (kept.size() == statements.size()) {
+                return block;
+            }
+            Collections.reverse(kept);
+            return new ResolvedBit.Expression.Block(kept, block.abrupt(), block.type(), block.returnType());
+        }
+
+        private boolean dead(ResolvedBit.Expression expression) {
+            return switch (expression) {
+                case ResolvedBit.Expression.While whileExpression -> whileExpression.condition() instanceof ResolvedBit.Expression.BooleanLiteral condition && !condition.value();
+                case ResolvedBit.Expression.If ifExpression when ifExpression.elseBranch() == null && ifExpression.condition() instanceof ResolvedBit.Expression.BooleanLiteral condition && !condition.value() -> true;
+                default -> !effects.of(expression);
+            };
+        }
+    }
+}
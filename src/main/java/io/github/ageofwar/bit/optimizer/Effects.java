@@ -0,0 +1,81 @@
+package io.github.ageofwar.bit.optimizer;
+
+import io.github.ageofwar.bit.resolver.ResolvedBit;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// whether computing an expression may be observed, or may fail: a call, an assignment, a loop, a jump, a cast or a
+// division that may fail, or an instance of a class whose members may do one of these
+final class Effects {
+    // the top-level classes of the program, by the ids of their type and constructor
+    private final Map<Integer, ResolvedBit.Declaration.Class> declarations = new HashMap<>();
+    private final Map<Integer, Boolean> classes = new HashMap<>();
+
+    Effects(List<ResolvedBit.Declaration> declarations) {
+        for (var declaration : declarations) {
+            if (declaration instanceof ResolvedBit.Declaration.Class classDeclaration) {
+                this.declarations.put(classDeclaration.name().id(), classDeclaration);
+                this.declarations.put(classDeclaration.valueName().id(), classDeclaration);
+            }
+        }
+    }
+
+    boolean of(ResolvedBit.Expression expression) {
+        return switch (expression) {
+            case ResolvedBit.Expression.Identifier ignored -> false;
+            case ResolvedBit.Expression.NumberLiteral ignored -> false;
+            case ResolvedBit.Expression.StringLiteral ignored -> false;
+            case ResolvedBit.Expression.BooleanLiteral ignored -> false;
+            case ResolvedBit.Expression.Function ignored -> false;
+            case ResolvedBit.Expression.Minus minus -> of(minus.lhs()) || of(minus.rhs());
+            case ResolvedBit.Expression.Plus plus -> of(plus.lhs()) || of(plus.rhs());
+            case ResolvedBit.Expression.Multiply multiply -> of(multiply.lhs()) || of(multiply.rhs());
+            // only a primitive division is known not to divide by zero
+            case ResolvedBit.Expression.Divide divide -> !divide.primitive() || of(divide.lhs()) || of(divide.rhs());
+            case ResolvedBit.Expression.GreaterThan compare -> of(compare.lhs()) || of(compare.rhs());
+            case ResolvedBit.Expression.GreaterThanOrEqual compare -> of(compare.lhs()) || of(compare.rhs());
+            case ResolvedBit.Expression.LessThan compare -> of(compare.lhs()) || of(compare.rhs());
+            case ResolvedBit.Expression.LessThanOrEqual compare -> of(compare.lhs()) || of(compare.rhs());
+            case ResolvedBit.Expression.Equal equal -> of(equal.lhs()) || of(equal.rhs());
+            case ResolvedBit.Expression.NotEqual notEqual -> of(notEqual.lhs()) || of(notEqual.rhs());
+            case ResolvedBit.Expression.And and -> of(and.lhs()) || of(and.rhs());
+            case ResolvedBit.Expression.Or or -> of(or.lhs()) || of(or.rhs());
+            case ResolvedBit.Expression.Not not -> of(not.expression());
+            case ResolvedBit.Expression.Is is -> of(is.expression());
+            case ResolvedBit.Expression.Access access -> of(access.expression());
+            case ResolvedBit.Expression.AccessExtension access -> of(access.expression());
+            case ResolvedBit.Expression.If ifExpression -> of(ifExpression.condition()) || of(ifExpression.thenBranch()) || (ifExpression.elseBranch() != null && of(ifExpression.elseBranch()));
+            case ResolvedBit.Expression.Struct struct -> struct.fields().values().stream().anyMatch(this::of);
+            case ResolvedBit.Expression.Array array -> array.elements().stream().anyMatch(this::of);
+            case ResolvedBit.Expression.Block block -> block.statements().stream().anyMatch(this::of);
+            case ResolvedBit.Expression.Instantiation instantiation -> instantiation.arguments().stream().anyMatch(this::of) || instantiate(instantiation.className());
+            default -> true;
+        };
+    }
+
+    private boolean of(ResolvedBit statement) {
+        return switch (statement) {
+            case ResolvedBit.Expression expression -> of(expression);
+            case ResolvedBit.Declaration.Variable variable -> of(variable.value());
+            case ResolvedBit.Declaration.Value value -> of(value.value());
+            case ResolvedBit.Declaration ignored -> false;
+            default -> true;
+        };
+    }
+
+    // a class being checked is instantiated by its own members, which is taken as an effect
+    private boolean instantiate(ResolvedBit.Symbol constructor) {
+        var classDeclaration = declarations.get(constructor.id());
+        if (classDeclaration == null) {
+            return true;
+        }
+        var known = classes.get(constructor.id());
+        if (known != null) return known;
+        classes.put(constructor.id(), true);
+        var effects = classDeclaration.members().stream().anyMatch(member -> of(member.declaration()));
+        classes.put(constructor.id(), effects);
+        return effects;
+    }
+}
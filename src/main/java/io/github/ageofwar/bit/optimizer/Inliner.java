@@ -0,0 +1,352 @@
+package io.github.ageofwar.bit.optimizer;
+
+import io.github.ageofwar.bit.resolver.ResolvedBit;
+import io.github.ageofwar.bit.types.Type;
+
+import java.util.*;
+
+import static io.github.ageofwar.bit.types.Types.complete;
+
+// replaces the calls of small top-level functions and extensions that don't recurse, return or capture their frame
+// with their bodies, in a region of the caller frame
+public final class Inliner {
+    public static final int FUNCTION_SIZE = 32;
+    public static final int EXTENSION_SIZE = 32;
+
+    private final int functionSize;
+    private final int extensionSize;
+    private final Map<String, Integer> inlined = new LinkedHashMap<>();
+
+    public Inliner() {
+        this(FUNCTION_SIZE, EXTENSION_SIZE);
+    }
+
+    // the largest bodies, in nodes, of the functions and the extensions that are inlined
+    public Inliner(int functionSize, int extensionSize) {
+        this.functionSize = functionSize;
+        this.extensionSize = extensionSize;
+    }
+
+    public ResolvedBit.Program inline(ResolvedBit.Program program) {
+        var ids = new MaxId();
+        program.declarations().forEach(ids::declaration);
+        var pass = new Pass(program.declarations(), Math.max(ids.max + 1, program.variables()));
+        var declarations = new ArrayList<ResolvedBit.Declaration>(program.declarations().size());
+        for (var declaration : program.declarations()) {
+            declarations.add(switch (declaration) {
+                case ResolvedBit.Declaration.Function function -> pass.callee(function.name().id()).function();
+                case ResolvedBit.Declaration.Implementation implementation -> {
+                    var extensions = implementation.extensions().stream().map(extension -> pass.callee(extension.name().id()).extension()).toList();
+                    yield new ResolvedBit.Declaration.Implementation(implementation.generics(), implementation.receiver(), extensions);
+                }
+                default -> pass.declaration(declaration);
+            });
+        }
+        return new ResolvedBit.Program(declarations, program.environment(), program.variables());
+    }
+
+    // how many calls of each function and extension were inlined, by name, in the order they were first inlined
+    public Map<String, Integer> report() {
+        return Collections.unmodifiableMap(inlined);
+    }
+
+    private static final class MaxId extends TreeRewriter {
+        private int max;
+
+        @Override
+        ResolvedBit.Symbol symbol(ResolvedBit.Symbol symbol) {
+            max = Math.max(max, symbol.id());
+            return symbol;
+        }
+    }
+
+    // a top-level function or an extension of an implementation, once the calls in its body are inlined
+    private record Callee(ResolvedBit.Declaration.Function function, ResolvedBit.Declaration.Implementation.Function extension, String name, ResolvedBit.Symbol receiver, List<ResolvedBit.Symbol> parameters, List<ResolvedBit.GenericDeclaration> receiverGenerics, List<ResolvedBit.GenericDeclaration> generics, ResolvedBit.Expression body, int frameSize, boolean inlinable, boolean typeUses) {}
+
+    // the slots of the function being rewritten; calls in the statements of the program and in class bodies are left
+    // alone, they have no frame to put a body in
+    private static final class Frame {
+        private final boolean open;
+        private int size;
+
+        Frame(boolean open, int size) {
+            this.open = open;
+            this.size = size;
+        }
+    }
+
+    private final class Pass extends TreeRewriter {
+        private final Map<Integer, ResolvedBit.Declaration.Function> functions = new HashMap<>();
+        private final Map<Integer, ResolvedBit.Declaration.Implementation.Function> extensions = new HashMap<>();
+        private final Map<Integer, List<ResolvedBit.GenericDeclaration>> implementations = new HashMap<>();
+        private final Map<Integer, Callee> callees = new HashMap<>();
+        // the callees being rewritten, a call of one of them is recursive
+        private final Set<Integer> active = new HashSet<>();
+        private final Deque<Frame> frames = new ArrayDeque<>();
+        private int nextId;
+
+        Pass(List<ResolvedBit.Declaration> declarations, int nextId) {
+            this.nextId = nextId;
+            for (var declaration : declarations) {
+                switch (declaration) {
+                    case ResolvedBit.Declaration.Function function -> functions.put(function.name().id(), function);
+                    case ResolvedBit.Declaration.Implementation implementation -> {
+                        for (var extension : implementation.extensions()) {
+                            extensions.put(extension.name().id(), extension);
+                            implementations.put(extension.name().id(), implementation.generics());
+                        }
+                    }
+                    default -> {}
+                }
+            }
+        }
+
+        Callee callee(int id) {
+            var known = callees.get(id);
+            if (known != null || !active.add(id)) return known;
+            Callee callee;
+            var function = functions.get(id);
+            if (function != null) {
+                var rewritten = function(function);
+                var parameters = rewritten.parameters().stream().map(ResolvedBit.Declaration.Function.Parameter::name).toList();
+                var body = new Body(id, rewritten.body());
+                var inlinable = body.inlinable() && TreeSize.of(rewritten.body()) <= functionSize;
+                callee = new Callee(rewritten, null, function.name().name(), null, parameters, List.of(), rewritten.generics(), rewritten.body(), rewritten.frame().size(), inlinable, body.typeUses);
+            } else {
+                var rewritten = extension(extensions.get(id));
+                var parameters = rewritten.parameters().stream().map(ResolvedBit.Declaration.Implementation.Function.Parameter::name).toList();
+                var body = new Body(id, rewritten.body());
+                var inlinable = body.inlinable() && TreeSize.of(rewritten.body()) <= extensionSize;
+                callee = new Callee(null, rewritten, rewritten.name().name(), rewritten.thisSymbol(), parameters, implementations.get(id), rewritten.generics(), rewritten.body(), rewritten.frame().size(), inlinable, body.typeUses);
+            }
+            active.remove(id);
+            callees.put(id, callee);
+            return callee;
+        }
+
+        @Override
+        ResolvedBit.Declaration.Function function(ResolvedBit.Declaration.Function function) {
+            frames.push(new Frame(true, function.frame().size()));
+            var rewritten = super.function(function);
+            var frame = frames.pop();
+            return new ResolvedBit.Declaration.Function(rewritten.name(), rewritten.generics(), rewritten.parameters(), rewritten.body(), rewritten.type(), new ResolvedBit.FrameLayout(frame.size, rewritten.frame().captures()));
+        }
+
+        @Override
+        ResolvedBit.Declaration.Implementation.Function extension(ResolvedBit.Declaration.Implementation.Function function) {
+            frames.push(new Frame(true, function.frame().size()));
+            var rewritten = super.extension(function);
+            var frame = frames.pop();
+            return new ResolvedBit.Declaration.Implementation.Function(rewritten.name(), rewritten.thisSymbol(), rewritten.generics(), rewritten.parameters(), rewritten.body(), rewritten.type(), new ResolvedBit.FrameLayout(frame.size, rewritten.frame().captures()));
+        }
+
+        @Override
+        ResolvedBit.Declaration.Class classDeclaration(ResolvedBit.Declaration.Class classDeclaration) {
+            frames.push(new Frame(false, 0));
+            var rewritten = super.classDeclaration(classDeclaration);
+            frames.pop();
+            return rewritten;
+        }
+
+        @Override
+        ResolvedBit.Expression expression(ResolvedBit.Expression expression) {
+            if (expression instanceof ResolvedBit.Expression.Function function) {
+                frames.push(new Frame(true, function.frame().size()));
+                var rewritten = (ResolvedBit.Expression.Function) super.expression(function);
+                var frame = frames.pop();
+                return new ResolvedBit.Expression.Function(rewritten.generics(), rewritten.parameters(), rewritten.body(), new ResolvedBit.FrameLayout(frame.size, rewritten.frame().captures()), rewritten.type(), rewritten.returnType());
+            }
+            var rewritten = super.expression(expression);
+            if (frames.isEmpty() || !frames.peek().open) {
+                return rewritten;
+            }
+            return switch (rewritten) {
+                case ResolvedBit.Expression.Call call when call.callee() instanceof ResolvedBit.Expression.Identifier callee && functions.containsKey(callee.name().id()) && callee.name().storage() == ResolvedBit.Symbol.Storage.GLOBAL ->
+                        inline(call, callee.name(), null, List.of(), call.arguments(), call.generics());
+                case ResolvedBit.Expression.Call call when call.callee() instanceof ResolvedBit.Expression.AccessExtension callee && extensions.containsKey(callee.name().id()) ->
+                        inline(call, callee.name(), callee.expression(), callee.generics(), call.arguments(), call.generics());
+                case ResolvedBit.Expression.CallExtension call when extensions.containsKey(call.name().id()) ->
+                        inline(call, call.name(), call.receiver(), call.receiverGenerics(), call.arguments(), call.generics());
+                default -> rewritten;
+            };
+        }
+
+        private ResolvedBit.Expression inline(ResolvedBit.Expression call, ResolvedBit.Symbol name, ResolvedBit.Expression receiver, List<Type> receiverGenerics, List<ResolvedBit.Expression> arguments, List<Type> generics) {
+            var callee = callee(name.id());
+            if (callee == null || !callee.inlinable() || callee.parameters().size() != arguments.size()) {
+                return call;
+            }
+            var mapping = new HashMap<Type.TypeVariable, Type>();
+            if (callee.typeUses() && !(callee.receiverGenerics().isEmpty() && callee.generics().isEmpty())) {
+                if (!bind(callee.receiverGenerics(), receiverGenerics, mapping) || !bind(callee.generics(), generics, mapping)) {
+                    return call;
+                }
+            }
+
+            var frame = frames.peek();
+            var rename = new Rename(frame.size, mapping, call instanceof ResolvedBit.Expression.Call c ? c.tail() : ((ResolvedBit.Expression.CallExtension) call).tail());
+            frame.size += callee.frameSize();
+            var statements = new ArrayList<ResolvedBit>(arguments.size() + 2);
+            var assigned = new Assigned();
+            if (receiver != null) assigned.expression(receiver);
+            assigned.expressions(arguments);
+            if (callee.receiver() != null) {
+                bind(callee.receiver(), receiver, assigned.ids, rename, statements);
+            }
+            for (var i = 0; i < arguments.size(); i++) {
+                bind(callee.parameters().get(i), arguments.get(i), assigned.ids, rename, statements);
+            }
+            statements.add(rename.expression(callee.body()));
+            inlined.merge(callee.name(), 1, Integer::sum);
+            return new ResolvedBit.Expression.Block(statements, false, call.type(), call.returnType());
+        }
+
+        private static void bind(ResolvedBit.Symbol parameter, ResolvedBit.Expression argument, Set<Integer> assigned, Rename rename, List<ResolvedBit> statements) {
+            var constant = switch (argument) {
+                case ResolvedBit.Expression.NumberLiteral ignored -> true;
+                case ResolvedBit.Expression.StringLiteral ignored -> true;
+                case ResolvedBit.Expression.BooleanLiteral ignored -> true;
+                case ResolvedBit.Expression.Identifier identifier -> identifier.name().storage() == ResolvedBit.Symbol.Storage.LOCAL && !assigned.contains(identifier.name().id());
+                default -> false;
+            };
+            if (constant) {
+                rename.arguments.put(parameter.id(), argument);
+            } else {
+                statements.add(new ResolvedBit.Declaration.Value(rename.symbol(parameter), argument, argument.type()));
+            }
+        }
+
+        private static boolean bind(List<ResolvedBit.GenericDeclaration> generics, List<Type> arguments, Map<Type.TypeVariable, Type> mapping) {
+            if (generics.size() != arguments.size()) return false;
+            for (var i = 0; i < generics.size(); i++) {
+                if (!(generics.get(i).type() instanceof Type.TypeVariable variable) || variables(arguments.get(i), Collections.newSetFromMap(new IdentityHashMap<>()))) {
+                    return false;
+                }
+                mapping.put(variable, arguments.get(i));
+            }
+            return true;
+        }
+
+        // whether a type mentions a type variable, which only the frame of the caller binds
+        private static boolean variables(Type type, Set<Type> visited) {
+            if (!visited.add(type)) return false;
+            return switch (type) {
+                case Type.TypeVariable ignored -> true;
+                case Type.Union(var types) -> Arrays.stream(types).anyMatch(t -> variables(t, visited));
+                case Type.Intersection(var types) -> Arrays.stream(types).anyMatch(t -> variables(t, visited));
+                case Type.Function(var returnType, var ignored, var parameters) -> variables(returnType, visited) || Arrays.stream(parameters).anyMatch(t -> variables(t, visited));
+                case Type.Struct(var fields) -> fields.values().stream().anyMatch(t -> variables(t, visited));
+                default -> false;
+            };
+        }
+
+        // a copy of a body inlined at one call: its locals move to the region of the caller frame starting at offset.
+        // The tail calls of the body stay tail calls only if the call it replaces was one
+        private final class Rename extends TreeRewriter {
+            private final int offset;
+            private final Map<Type.TypeVariable, Type> mapping;
+            private final boolean tail;
+            private final Map<Integer, ResolvedBit.Symbol> symbols = new HashMap<>();
+            // the parameters replaced by their argument, by id
+            private final Map<Integer, ResolvedBit.Expression> arguments = new HashMap<>();
+
+            Rename(int offset, Map<Type.TypeVariable, Type> mapping, boolean tail) {
+                this.offset = offset;
+                this.mapping = mapping;
+                this.tail = tail;
+            }
+
+            @Override
+            ResolvedBit.Symbol symbol(ResolvedBit.Symbol symbol) {
+                if (symbol.storage() == ResolvedBit.Symbol.Storage.GLOBAL) {
+                    return symbol;
+                }
+                return symbols.computeIfAbsent(symbol.id(), id -> new ResolvedBit.Symbol(symbol.name(), nextId++, symbol.storage(), offset + symbol.slot()));
+            }
+
+            @Override
+            ResolvedBit.Expression expression(ResolvedBit.Expression expression) {
+                if (expression instanceof ResolvedBit.Expression.Identifier identifier && arguments.containsKey(identifier.name().id())) {
+                    return arguments.get(identifier.name().id());
+                }
+                var rewritten = super.expression(expression);
+                if (mapping.isEmpty() && (tail || !(rewritten instanceof ResolvedBit.Expression.Call || rewritten instanceof ResolvedBit.Expression.CallExtension))) {
+                    return rewritten;
+                }
+                return switch (rewritten) {
+                    case ResolvedBit.Expression.As as -> new ResolvedBit.Expression.As(as.expression(), complete(as.type(), mapping), as.returnType());
+                    case ResolvedBit.Expression.Is is -> new ResolvedBit.Expression.Is(is.expression(), complete(is.checkType(), mapping), is.type(), is.returnType());
+                    case ResolvedBit.Expression.Call call -> new ResolvedBit.Expression.Call(call.callee(), call.arguments(), types(call.generics()), tail && call.tail(), call.type(), call.returnType());
+                    case ResolvedBit.Expression.CallExtension call -> new ResolvedBit.Expression.CallExtension(call.receiver(), call.name(), types(call.receiverGenerics()), call.arguments(), types(call.generics()), tail && call.tail(), call.type(), call.returnType());
+                    case ResolvedBit.Expression.AccessExtension access -> new ResolvedBit.Expression.AccessExtension(access.expression(), types(access.generics()), access.name(), access.type(), access.returnType());
+                    case ResolvedBit.Expression.Instantiation instantiation -> new ResolvedBit.Expression.Instantiation(instantiation.className(), instantiation.arguments(), types(instantiation.generics()), instantiation.type(), instantiation.returnType());
+                    default -> rewritten;
+                };
+            }
+
+            private List<Type> types(List<Type> types) {
+                return types.stream().map(type -> complete(type, mapping)).toList();
+            }
+        }
+    }
+
+    // the symbols the arguments of a call assign
+    private static final class Assigned extends TreeRewriter {
+        private final Set<Integer> ids = new HashSet<>();
+
+        @Override
+        ResolvedBit statement(ResolvedBit statement) {
+            if (statement instanceof ResolvedBit.VariableAssignment assignment) ids.add(assignment.name().id());
+            return super.statement(statement);
+        }
+    }
+
+    // what decides whether a body can be inlined
+    private static final class Body extends TreeRewriter {
+        private final int id;
+        private boolean recursive;
+        private boolean escapes;
+        private boolean typeUses;
+
+        Body(int id, ResolvedBit.Expression body) {
+            this.id = id;
+            expression(body);
+        }
+
+        boolean inlinable() {
+            return !recursive && !escapes;
+        }
+
+        @Override
+        ResolvedBit.Symbol symbol(ResolvedBit.Symbol symbol) {
+            if (symbol.storage() == ResolvedBit.Symbol.Storage.GLOBAL && symbol.id() == id) recursive = true;
+            return symbol;
+        }
+
+        @Override
+        ResolvedBit.Declaration declaration(ResolvedBit.Declaration declaration) {
+            switch (declaration) {
+                case ResolvedBit.Declaration.Variable ignored -> {}
+                case ResolvedBit.Declaration.Value ignored -> {}
+                default -> escapes = true;
+            }
+            return super.declaration(declaration);
+        }
+
+        @Override
+        ResolvedBit.Expression expression(ResolvedBit.Expression expression) {
+            switch (expression) {
+                case ResolvedBit.Expression.Return ignored -> escapes = true;
+                case ResolvedBit.Expression.Function ignored -> escapes = true;
+                case ResolvedBit.Expression.As ignored -> typeUses = true;
+                case ResolvedBit.Expression.Is ignored -> typeUses = true;
+                case ResolvedBit.Expression.Call call -> typeUses |= !call.generics().isEmpty();
+                case ResolvedBit.Expression.CallExtension call -> typeUses |= !call.receiverGenerics().isEmpty() || !call.generics().isEmpty();
+                case ResolvedBit.Expression.AccessExtension access -> typeUses |= !access.generics().isEmpty();
+                case ResolvedBit.Expression.Instantiation instantiation -> typeUses |= !instantiation.generics().isEmpty();
+                default -> {}
+            }
+            return super.expression(expression);
+        }
+    }
+}
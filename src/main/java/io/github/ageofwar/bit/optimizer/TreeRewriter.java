@@ -0,0 +1,115 @@
+package io.github.ageofwar.bit.optimizer;
+
+import io.github.ageofwar.bit.resolver.ResolvedBit;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+// rebuilds a resolved tree bottom up; a pass overrides the methods of the nodes it changes and calls these for the
+// children. Every symbol of the tree goes through symbol, declared or read
+class TreeRewriter {
+    ResolvedBit.Symbol symbol(ResolvedBit.Symbol symbol) {
+        return symbol;
+    }
+
+    ResolvedBit.Declaration declaration(ResolvedBit.Declaration declaration) {
+        return switch (declaration) {
+            case ResolvedBit.Declaration.Variable variable -> new ResolvedBit.Declaration.Variable(symbol(variable.name()), expression(variable.value()), variable.type());
+            case ResolvedBit.Declaration.Value value -> new ResolvedBit.Declaration.Value(symbol(value.name()), expression(value.value()), value.type());
+            case ResolvedBit.Declaration.Function function -> function(function);
+            case ResolvedBit.Declaration.Type type -> new ResolvedBit.Declaration.Type(symbol(type.name()), type.valueName() != null ? symbol(type.valueName()) : null, type.parameters(), type.value());
+            case ResolvedBit.Declaration.Class classDeclaration -> classDeclaration(classDeclaration);
+            case ResolvedBit.Declaration.Implementation implementation -> new ResolvedBit.Declaration.Implementation(generics(implementation.generics()), implementation.receiver(), implementation.extensions().stream().map(this::extension).toList());
+        };
+    }
+
+    ResolvedBit.Declaration.Function function(ResolvedBit.Declaration.Function function) {
+        var parameters = function.parameters().stream().map(parameter -> new ResolvedBit.Declaration.Function.Parameter(symbol(parameter.name()), parameter.type())).toList();
+        return new ResolvedBit.Declaration.Function(symbol(function.name()), generics(function.generics()), parameters, expression(function.body()), function.type(), frame(function.frame()));
+    }
+
+    ResolvedBit.Declaration.Implementation.Function extension(ResolvedBit.Declaration.Implementation.Function function) {
+        var parameters = function.parameters().stream().map(parameter -> new ResolvedBit.Declaration.Implementation.Function.Parameter(symbol(parameter.name()), parameter.type())).toList();
+        return new ResolvedBit.Declaration.Implementation.Function(symbol(function.name()), symbol(function.thisSymbol()), generics(function.generics()), parameters, expression(function.body()), function.type(), frame(function.frame()));
+    }
+
+    ResolvedBit.Declaration.Class classDeclaration(ResolvedBit.Declaration.Class classDeclaration) {
+        var constructor = classDeclaration.constructor();
+        var parameters = constructor.parameters().stream().map(parameter -> new ResolvedBit.Declaration.Class.Constructor.Parameter(symbol(parameter.name()), parameter.type())).toList();
+        var members = classDeclaration.members().stream().map(member -> new ResolvedBit.Declaration.Class.Member(declaration(member.declaration()), member.receiver() != null ? symbol(member.receiver()) : null, member.visibility())).toList();
+        return new ResolvedBit.Declaration.Class(symbol(classDeclaration.name()), symbol(classDeclaration.valueName()), symbol(classDeclaration.thisSymbol()), generics(classDeclaration.generics()), new ResolvedBit.Declaration.Class.Constructor(parameters, frame(constructor.frame())), members, classDeclaration.type());
+    }
+
+    ResolvedBit statement(ResolvedBit statement) {
+        return switch (statement) {
+            case ResolvedBit.Expression expression -> expression(expression);
+            case ResolvedBit.Declaration declaration -> declaration(declaration);
+            case ResolvedBit.VariableAssignment assignment -> new ResolvedBit.VariableAssignment(symbol(assignment.name()), expression(assignment.value()));
+            case ResolvedBit.VariableFieldAssignment assignment -> new ResolvedBit.VariableFieldAssignment(expression(assignment.struct()), assignment.name(), assignment.slot(), expression(assignment.value()));
+            default -> throw new IllegalStateException("Unexpected statement " + statement);
+        };
+    }
+
+    ResolvedBit.Expression expression(ResolvedBit.Expression expression) {
+        return switch (expression) {
+            case ResolvedBit.Expression.Identifier identifier -> new ResolvedBit.Expression.Identifier(symbol(identifier.name()), identifier.type(), identifier.returnType());
+            case ResolvedBit.Expression.Call call -> new ResolvedBit.Expression.Call(expression(call.callee()), expressions(call.arguments()), call.generics(), call.tail(), call.type(), call.returnType());
+            case ResolvedBit.Expression.CallExtension call -> new ResolvedBit.Expression.CallExtension(expression(call.receiver()), symbol(call.name()), call.receiverGenerics(), expressions(call.arguments()), call.generics(), call.tail(), call.type(), call.returnType());
+            case ResolvedBit.Expression.Block block -> new ResolvedBit.Expression.Block(block.statements().stream().map(this::statement).toList(), block.abrupt(), block.type(), block.returnType());
+            case ResolvedBit.Expression.NumberLiteral literal -> literal;
+            case ResolvedBit.Expression.StringLiteral literal -> literal;
+            case ResolvedBit.Expression.BooleanLiteral literal -> literal;
+            case ResolvedBit.Expression.Minus minus -> new ResolvedBit.Expression.Minus(expression(minus.lhs()), expression(minus.rhs()), minus.primitive(), minus.type(), minus.returnType());
+            case ResolvedBit.Expression.Plus plus -> new ResolvedBit.Expression.Plus(expression(plus.lhs()), expression(plus.rhs()), plus.primitive(), plus.type(), plus.returnType());
+            case ResolvedBit.Expression.Multiply multiply -> new ResolvedBit.Expression.Multiply(expression(multiply.lhs()), expression(multiply.rhs()), multiply.primitive(), multiply.type(), multiply.returnType());
+            case ResolvedBit.Expression.Divide divide -> new ResolvedBit.Expression.Divide(expression(divide.lhs()), expression(divide.rhs()), divide.primitive(), divide.type(), divide.returnType());
+            case ResolvedBit.Expression.GreaterThan compare -> new ResolvedBit.Expression.GreaterThan(expression(compare.lhs()), expression(compare.rhs()), compare.primitive(), compare.type(), compare.returnType());
+            case ResolvedBit.Expression.GreaterThanOrEqual compare -> new ResolvedBit.Expression.GreaterThanOrEqual(expression(compare.lhs()), expression(compare.rhs()), compare.primitive(), compare.type(), compare.returnType());
+            case ResolvedBit.Expression.LessThan compare -> new ResolvedBit.Expression.LessThan(expression(compare.lhs()), expression(compare.rhs()), compare.primitive(), compare.type(), compare.returnType());
+            case ResolvedBit.Expression.LessThanOrEqual compare -> new ResolvedBit.Expression.LessThanOrEqual(expression(compare.lhs()), expression(compare.rhs()), compare.primitive(), compare.type(), compare.returnType());
+            case ResolvedBit.Expression.Equal equal -> new ResolvedBit.Expression.Equal(expression(equal.lhs()), expression(equal.rhs()), equal.type(), equal.returnType());
+            case ResolvedBit.Expression.NotEqual notEqual -> new ResolvedBit.Expression.NotEqual(expression(notEqual.lhs()), expression(notEqual.rhs()), notEqual.type(), notEqual.returnType());
+            case ResolvedBit.Expression.And and -> new ResolvedBit.Expression.And(expression(and.lhs()), expression(and.rhs()), and.type(), and.returnType());
+            case ResolvedBit.Expression.Or or -> new ResolvedBit.Expression.Or(expression(or.lhs()), expression(or.rhs()), or.type(), or.returnType());
+            case ResolvedBit.Expression.Not not -> new ResolvedBit.Expression.Not(expression(not.expression()), not.type(), not.returnType());
+            case ResolvedBit.Expression.If ifExpression -> new ResolvedBit.Expression.If(expression(ifExpression.condition()), expression(ifExpression.thenBranch()), ifExpression.elseBranch() != null ? expression(ifExpression.elseBranch()) : null, ifExpression.type(), ifExpression.returnType());
+            case ResolvedBit.Expression.While whileExpression -> new ResolvedBit.Expression.While(expression(whileExpression.condition()), expression(whileExpression.body()), whileExpression.abrupt(), whileExpression.type(), whileExpression.returnType());
+            case ResolvedBit.Expression.As as -> new ResolvedBit.Expression.As(expression(as.expression()), as.type(), as.returnType());
+            case ResolvedBit.Expression.Is is -> new ResolvedBit.Expression.Is(expression(is.expression()), is.checkType(), is.type(), is.returnType());
+            case ResolvedBit.Expression.Access access -> new ResolvedBit.Expression.Access(expression(access.expression()), access.field(), access.slot(), access.intrinsic(), access.type(), access.returnType());
+            case ResolvedBit.Expression.AccessExtension access -> new ResolvedBit.Expression.AccessExtension(expression(access.expression()), access.generics(), symbol(access.name()), access.type(), access.returnType());
+            case ResolvedBit.Expression.Struct struct -> {
+                var fields = new LinkedHashMap<String, ResolvedBit.Expression>();
+                struct.fields().forEach((name, value) -> fields.put(name, expression(value)));
+                yield new ResolvedBit.Expression.Struct(fields, struct.type(), struct.returnType());
+            }
+            case ResolvedBit.Expression.Array array -> new ResolvedBit.Expression.Array(expressions(array.elements()), array.primitive(), array.type(), array.returnType());
+            case ResolvedBit.Expression.Function function -> {
+                var parameters = function.parameters().stream().map(parameter -> new ResolvedBit.Expression.Function.Parameter(symbol(parameter.name()), parameter.type())).toList();
+                yield new ResolvedBit.Expression.Function(generics(function.generics()), parameters, expression(function.body()), frame(function.frame()), function.type(), function.returnType());
+            }
+            case ResolvedBit.Expression.Instantiation instantiation -> new ResolvedBit.Expression.Instantiation(symbol(instantiation.className()), expressions(instantiation.arguments()), instantiation.generics(), instantiation.type(), instantiation.returnType());
+            case ResolvedBit.Expression.Break breakExpression -> breakExpression;
+            case ResolvedBit.Expression.Continue continueExpression -> continueExpression;
+            case ResolvedBit.Expression.Return returnExpression -> new ResolvedBit.Expression.Return(expression(returnExpression.value()), returnExpression.type(), returnExpression.returnType());
+        };
+    }
+
+    List<ResolvedBit.Expression> expressions(List<ResolvedBit.Expression> expressions) {
+        var rewritten = new ArrayList<ResolvedBit.Expression>(expressions.size());
+        for (var expression : expressions) {
+            rewritten.add(expression(expression));
+        }
+        return rewritten;
+    }
+
+    List<ResolvedBit.GenericDeclaration> generics(List<ResolvedBit.GenericDeclaration> generics) {
+        return generics.stream().map(generic -> new ResolvedBit.GenericDeclaration(symbol(generic.name()), generic.extendsType(), generic.type())).toList();
+    }
+
+    ResolvedBit.FrameLayout frame(ResolvedBit.FrameLayout frame) {
+        var captures = frame.captures().stream().map(capture -> new ResolvedBit.FrameLayout.Capture(symbol(capture.source()), symbol(capture.target()))).toList();
+        return new ResolvedBit.FrameLayout(frame.size(), captures);
+    }
+}
@@ -0,0 +1,135 @@
+package io.github.ageofwar.bit.optimizer;
+
+import io.github.ageofwar.bit.resolver.ResolvedBit;
+import io.github.ageofwar.bit.resolver.Resolver;
+
+import java.util.*;
+
+// keeps the top-level declarations a program reaches from its entry function, and the extensions of an implementation
+// it reaches one by one. A value or variable nothing reaches is dropped only when computing it can't be observed: no
+// call, assignment, loop, cast or division that may fail, and no instance of a class whose members may do one of these.
+// The global symbols left are then numbered again one after the other, past the builtins, so that the environment of
+// the program is as large as what survives
+public final class TreeShaker {
+    public ResolvedBit.Program shake(ResolvedBit.Program program, String entry) {
+        var declarations = program.declarations();
+        var entryIndex = -1;
+        for (var i = 0; i < declarations.size(); i++) {
+            var name = declarations.get(i).name();
+            if (name != null && name.name().equals(entry)) {
+                entryIndex = i;
+                break;
+            }
+        }
+        if (entryIndex < 0) {
+            return program;
+        }
+
+        var sites = sites(declarations);
+        var reached = new boolean[declarations.size()];
+        var reachedExtensions = new HashSet<Integer>();
+        var queue = new ArrayDeque<Site>();
+        reached[entryIndex] = true;
+        queue.add(new Site(entryIndex, -1));
+        var effects = new Effects(declarations);
+        for (var i = 0; i < declarations.size(); i++) {
+            var root = switch (declarations.get(i)) {
+                case ResolvedBit.Declaration.Variable variable -> effects.of(variable.value());
+                case ResolvedBit.Declaration.Value value -> effects.of(value.value());
+                default -> false;
+            };
+            if (root && !reached[i]) {
+                reached[i] = true;
+                queue.add(new Site(i, -1));
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            var site = queue.poll();
+            var references = new References();
+            var declaration = declarations.get(site.declaration());
+            if (declaration instanceof ResolvedBit.Declaration.Implementation implementation) {
+                references.generics(implementation.generics());
+                references.extension(implementation.extensions().get(site.extension()));
+            } else {
+                references.declaration(declaration);
+            }
+            for (var id : references.ids) {
+                var target = sites.get(id);
+                if (target == null) continue;
+                var first = target.extension() < 0 ? !reached[target.declaration()] : reachedExtensions.add(id);
+                if (first) {
+                    reached[target.declaration()] = true;
+                    queue.add(target);
+                }
+            }
+        }
+
+        var renumber = new Renumber();
+        var kept = new ArrayList<ResolvedBit.Declaration>();
+        for (var i = 0; i < declarations.size(); i++) {
+            if (!reached[i]) continue;
+            if (declarations.get(i) instanceof ResolvedBit.Declaration.Implementation implementation) {
+                var extensions = implementation.extensions().stream()
+                        .filter(extension -> reachedExtensions.contains(extension.name().id()))
+                        .toList();
+                kept.add(renumber.declaration(new ResolvedBit.Declaration.Implementation(implementation.generics(), implementation.receiver(), extensions)));
+            } else {
+                kept.add(renumber.declaration(declarations.get(i)));
+            }
+        }
+        return new ResolvedBit.Program(kept, program.environment(), renumber.next);
+    }
+
+    // a top-level declaration, or one extension of an implementation
+    private record Site(int declaration, int extension) {}
+
+    // where each global symbol a program can refer to is declared
+    private static Map<Integer, Site> sites(List<ResolvedBit.Declaration> declarations) {
+        var sites = new HashMap<Integer, Site>();
+        for (var i = 0; i < declarations.size(); i++) {
+            var site = new Site(i, -1);
+            switch (declarations.get(i)) {
+                case ResolvedBit.Declaration.Type type -> {
+                    sites.put(type.name().id(), site);
+                    if (type.valueName() != null) sites.put(type.valueName().id(), site);
+                }
+                case ResolvedBit.Declaration.Class classDeclaration -> {
+                    sites.put(classDeclaration.name().id(), site);
+                    sites.put(classDeclaration.valueName().id(), site);
+                }
+                case ResolvedBit.Declaration.Implementation implementation -> {
+                    for (var j = 0; j < implementation.extensions().size(); j++) {
+                        sites.put(implementation.extensions().get(j).name().id(), new Site(i, j));
+                    }
+                }
+                case ResolvedBit.Declaration declaration -> sites.put(declaration.name().id(), site);
+            }
+        }
+        return sites;
+    }
+
+    // the global symbols a part of the tree refers to
+    private static final class References extends TreeRewriter {
+        private final Set<Integer> ids = new LinkedHashSet<>();
+
+        @Override
+        ResolvedBit.Symbol symbol(ResolvedBit.Symbol symbol) {
+            if (symbol.storage() == ResolvedBit.Symbol.Storage.GLOBAL) ids.add(symbol.id());
+            return symbol;
+        }
+    }
+
+    private static final class Renumber extends TreeRewriter {
+        private final Map<Integer, ResolvedBit.Symbol> symbols = new HashMap<>();
+        private int next = Resolver.BUILTINS;
+
+        @Override
+        ResolvedBit.Symbol symbol(ResolvedBit.Symbol symbol) {
+            if (symbol.storage() != ResolvedBit.Symbol.Storage.GLOBAL || symbol.id() < Resolver.BUILTINS) {
+                return symbol;
+            }
+            return symbols.computeIfAbsent(symbol.id(), id -> new ResolvedBit.Symbol(symbol.name(), next++));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package io.github.ageofwar.bit.optimizer;
+
+import io.github.ageofwar.bit.resolver.ResolvedBit;
+
+// the number of nodes of a resolved tree: its declarations, statements and expressions
+public final class TreeSize {
+    private TreeSize() {
+    }
+
+    public static int of(ResolvedBit.Program program) {
+        var counter = new Counter();
+        program.declarations().forEach(counter::declaration);
+        return counter.nodes;
+    }
+
+    public static int of(ResolvedBit.Expression expression) {
+        var counter = new Counter();
+        counter.expression(expression);
+        return counter.nodes;
+    }
+
+    private static final class Counter extends TreeRewriter {
+        private int nodes;
+
+        @Override
+        ResolvedBit.Declaration declaration(ResolvedBit.Declaration declaration) {
+            nodes++;
+            return super.declaration(declaration);
+        }
+
+        @Override
+        ResolvedBit.Declaration.Implementation.Function extension(ResolvedBit.Declaration.Implementation.Function function) {
+            nodes++;
+            return super.extension(function);
+        }
+
+        @Override
+        ResolvedBit statement(ResolvedBit statement) {
+            if (!(statement instanceof ResolvedBit.Expression) && !(statement instanceof ResolvedBit.Declaration)) nodes++;
+            return super.statement(statement);
+        }
+
+        @Override
+        ResolvedBit.Expression expression(ResolvedBit.Expression expression) {
+            nodes++;
+            return super.expression(expression);
+        }
+    }
+}
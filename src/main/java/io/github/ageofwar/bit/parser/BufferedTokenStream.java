@@ -1,65 +1,84 @@
 package io.github.ageofwar.bit.parser;
 
+import io.github.ageofwar.bit.lexer.SpanLexer;
 import io.github.ageofwar.bit.lexer.Token;
 import io.github.ageofwar.bit.lexer.TokenStream;
 
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Queue;
+import java.util.Arrays;
 
+// the tokens read so far, with their kinds, in growing arrays: looking ahead reads tokens up to where it looks, and
+// backtracking moves the position back to a mark, so neither copies anything
 public class BufferedTokenStream {
     private final TokenStream stream;
-    private final Queue<Token> peek;
-    private final List<Token> history;
+    private Token[] tokens = new Token[256];
+    private Token.Kind[] kinds = new Token.Kind[256];
+    private int size;
+    private int position;
+    private boolean ended;
 
     private Token lastToken;
 
     public BufferedTokenStream(TokenStream stream) {
         this.stream = stream;
-        peek = new ArrayDeque<>();
-        history = new ArrayList<>();
     }
 
     public Token next() {
-        lastToken = peek.isEmpty() ? stream.nextToken() : peek.poll();
-        history.add(lastToken);
+        lastToken = peek();
+        if (lastToken != null) position++;
         return lastToken;
     }
 
     public Token peek() {
-        if (!peek.isEmpty()) {
-            return peek.peek();
-        }
-        var token = stream.nextToken();
-        if (token != null) peek.add(token);
-        return token;
+        return peek(0);
     }
 
-    public Token[] peek(int count) {
-        while (peek.size() < count) {
-            var token = stream.nextToken();
-            if (token == null) {
-                break;
-            }
-            peek.add(token);
-        }
-        return peek.toArray(new Token[count]);
+    // the token offset tokens after the next one, or null past the end
+    public Token peek(int offset) {
+        return fill(position + offset) ? tokens[position + offset] : null;
     }
 
-    public void checkpoint() {
-        history.clear();
+    public Token.Kind peekKind() {
+        return fill(position) ? kinds[position] : null;
     }
 
-    public void rollback() {
-        var oldPeek = peek.toArray(Token[]::new);
-        peek.clear();
-        peek.addAll(history);
-        peek.addAll(List.of(oldPeek));
-        history.clear();
+    // the position to go back to with reset, it stays valid whatever is read after it
+    public int mark() {
+        return position;
+    }
+
+    public void reset(int mark) {
+        position = mark;
     }
 
     public Token lastToken() {
         return lastToken;
     }
+
+    // reads tokens until the one at index, false when the stream ends before it
+    private boolean fill(int index) {
+        while (index >= size) {
+            if (ended) return false;
+            Token token;
+            Token.Kind kind;
+            if (stream instanceof SpanLexer lexer) {
+                kind = lexer.next();
+                token = kind != null ? lexer.token() : null;
+            } else {
+                token = stream.nextToken();
+                kind = token != null ? Token.Kind.of(token) : null;
+            }
+            if (token == null) {
+                ended = true;
+                return false;
+            }
+            if (size == tokens.length) {
+                tokens = Arrays.copyOf(tokens, size * 2);
+                kinds = Arrays.copyOf(kinds, size * 2);
+            }
+            tokens[size] = token;
+            kinds[size] = kind;
+            size++;
+        }
+        return true;
+    }
 }
@@ -1,6 +1,6 @@
 package io.github.ageofwar.bit.parser;
 
-import io.github.ageofwar.bit.lexer.Lexer;
+import io.github.ageofwar.bit.lexer.SpanLexer;
 import io.github.ageofwar.bit.lexer.Token;
 import io.github.ageofwar.bit.lexer.TokenStream;
 
@@ -9,37 +9,45 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static io.github.ageofwar.bit.parser.Parsers.expect;
 import static io.github.ageofwar.bit.parser.Parsers.matches;
 
 public class Parser {
-    private static Integer precedence(Token token) {
-        return switch (token) {
-            case Token.Dot t -> 8;
-            case Token.LeftParenthesis t -> 7;
-            case Token.Asterisk t -> 6;
-            case Token.Slash t -> 6;
-            case Token.Minus t -> 5;
-            case Token.Plus t -> 5;
-            case Token.Keyword(var type) -> switch (type) {
-                case AS, IS, NOT -> 4;
-                case AND, OR -> 1;
-                default -> null;
-            };
-            case Token.GreaterThan t -> 3;
-            case Token.GreaterThanOrEqual t -> 3;
-            case Token.LessThan t -> 3;
-            case Token.LessThanOrEqual t -> 3;
-            case Token.Equal t -> 2;
-            case Token.NotEqual t -> 2;
-            case Token.Ampersand t -> 1;
-            case Token.Pipe t -> 1;
-            default -> null;
-        };
+    // the precedence of the operators by token kind, and of the keyword operators by keyword; -1 for the others
+    private static final int[] PRECEDENCES = Parsers.table(Token.Kind.class, Map.ofEntries(
+            Map.entry(Token.Kind.DOT, 8),
+            Map.entry(Token.Kind.LEFT_PARENTHESIS, 7),
+            Map.entry(Token.Kind.ASTERISK, 6),
+            Map.entry(Token.Kind.SLASH, 6),
+            Map.entry(Token.Kind.MINUS, 5),
+            Map.entry(Token.Kind.PLUS, 5),
+            Map.entry(Token.Kind.GREATER_THAN, 3),
+            Map.entry(Token.Kind.GREATER_THAN_OR_EQUAL, 3),
+            Map.entry(Token.Kind.LESS_THAN, 3),
+            Map.entry(Token.Kind.LESS_THAN_OR_EQUAL, 3),
+            Map.entry(Token.Kind.EQUAL, 2),
+            Map.entry(Token.Kind.NOT_EQUAL, 2),
+            Map.entry(Token.Kind.AMPERSAND, 1),
+            Map.entry(Token.Kind.PIPE, 1)
+    ));
+    private static final int[] KEYWORD_PRECEDENCES = Parsers.table(Token.Keyword.Type.class, Map.ofEntries(
+            Map.entry(Token.Keyword.Type.AS, 4),
+            Map.entry(Token.Keyword.Type.IS, 4),
+            Map.entry(Token.Keyword.Type.NOT, 4),
+            Map.entry(Token.Keyword.Type.AND, 1),
+            Map.entry(Token.Keyword.Type.OR, 1)
+    ));
+
+    private static int precedence(Token.Kind kind, Token token) {
+        if (kind == Token.Kind.KEYWORD) {
+            return KEYWORD_PRECEDENCES[((Token.Keyword) token).type().ordinal()];
+        }
+        return PRECEDENCES[kind.ordinal()];
     }
 
-    private static Associativity associativity(Token token) {
+    private static Associativity associativity(Token.Kind kind) {
         return Associativity.LEFT;
     }
 
@@ -52,7 +60,7 @@ public class Parser {
     }
 
     public Parser(Reader reader) {
-        this(new Lexer(reader));
+        this(new SpanLexer(reader));
     }
 
     public Bit.Program nextProgram() {
@@ -387,9 +395,10 @@ public class Parser {
         while (true) {
             var operator = tokens.peek();
             if (operator == null) return lhs;
-            var precedence = precedence(operator);
-            if (precedence == null || precedence < minPrecedence) return lhs;
-            var assoc = associativity(operator);
+            var kind = tokens.peekKind();
+            var precedence = precedence(kind, operator);
+            if (precedence < 0 || precedence < minPrecedence) return lhs;
+            var assoc = associativity(kind);
             int nextMinPrecedence = assoc != Associativity.RIGHT ? precedence + 1 : precedence;
             if (matches(tokens, Token.Keyword.Type.AS) || matches(tokens, Token.Keyword.Type.IS)) {
                 tokens.next();
@@ -405,12 +414,12 @@ public class Parser {
                 continue;
             }
             if (matches(tokens, Token.LeftParenthesis.class) || matches(tokens, Token.LessThan.class)) {
+                var mark = tokens.mark();
                 try {
-                    tokens.checkpoint();
                     lhs = nextCall(lhs);
                     continue;
                 } catch (ParserException ignored) {
-                    tokens.rollback();
+                    tokens.reset(mark);
                 }
             }
             tokens.next();
@@ -444,10 +453,9 @@ public class Parser {
     }
 
     private Bit.Expression nextPrimaryExpression() {
-        var peek = tokens.peek(3);
-        return switch (peek[0]) {
+        return switch (tokens.peek()) {
             case Token.Keyword(var type) -> switch (type) {
-                case NOT -> new Bit.Expression.Not(nextExpression(precedence(peek[0])));
+                case NOT -> new Bit.Expression.Not(nextExpression(KEYWORD_PRECEDENCES[Token.Keyword.Type.NOT.ordinal()]));
                 case IF -> nextIfExpression();
                 case WHILE -> nextWhileExpression();
                 case NEW -> nextInstantiation();
@@ -460,7 +468,7 @@ public class Parser {
             case Token.NumberLiteral token -> nextNumber();
             case Token.StringLiteral token -> nextString();
             case Token.BooleanLiteral token -> nextBoolean();
-            case Token.LeftParenthesis token -> peek[1] instanceof Token.RightParenthesis || peek[2] instanceof Token.Colon ? nextFunction() : nextGroupExpression();
+            case Token.LeftParenthesis token -> tokens.peek(1) instanceof Token.RightParenthesis || tokens.peek(2) instanceof Token.Colon ? nextFunction() : nextGroupExpression();
             case Token.LeftBracket token ->  nextStructOrArray();
             case Token.LeftBrace token -> nextBlock();
             case Token.LessThan token -> nextFunction();
@@ -535,8 +543,7 @@ public class Parser {
     }
 
     private Bit.Expression nextStructOrArray() {
-        var peek = tokens.peek(4);
-        return switch (peek[1] instanceof Token.NewLine ? peek[3] : peek[2]) {
+        return switch (tokens.peek(1) instanceof Token.NewLine ? tokens.peek(3) : tokens.peek(2)) {
             case Token.Colon token -> nextStruct();
             default -> nextArray();
         };
@@ -577,8 +584,7 @@ public class Parser {
     }
 
     private Bit nextBlockElement() {
-        var tokens = this.tokens.peek(2);
-        return switch (tokens[0]) {
+        return switch (tokens.peek()) {
             case Token.Keyword(var type) -> switch (type) {
                 case RETURN -> nextReturn();
                 case BREAK -> nextBreak();
@@ -587,7 +593,7 @@ public class Parser {
                 case SET -> nextVariableAssignment();
                 default -> nextDeclaration();
             };
-            case Token.Identifier identifier -> tokens[1] instanceof Token.Assign || tokens[1] instanceof Token.Colon ? nextValueDeclaration() : nextExpression();
+            case Token.Identifier identifier -> tokens.peek(1) instanceof Token.Assign || tokens.peek(1) instanceof Token.Colon ? nextValueDeclaration() : nextExpression();
             default -> nextExpression();
         };
     }
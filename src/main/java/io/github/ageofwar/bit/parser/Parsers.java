@@ -2,6 +2,8 @@ package io.github.ageofwar.bit.parser;
 
 import io.github.ageofwar.bit.lexer.Token;
 
+import java.util.Arrays;
+import java.util.Map;
 import java.util.function.Predicate;
 
 public class Parsers {
@@ -18,7 +20,11 @@ public class Parsers {
 
     @SuppressWarnings("unchecked")
     public static  <T extends Token> T expect(BufferedTokenStream tokens, Class<T> tokenType) {
-        return (T) expect(tokens, tokenType::isInstance, "Expected " + tokenType.getSimpleName());
+        var token = tokens.next();
+        if (!tokenType.isInstance(token)) {
+            throw new ParserException(errorMessage(tokens, "Expected " + tokenType.getSimpleName()));
+        }
+        return (T) token;
     }
 
     public static void expect(BufferedTokenStream tokens, Token.Keyword.Type keyword) {
@@ -28,17 +34,20 @@ public class Parsers {
         }
     }
 
-    private static boolean matches(BufferedTokenStream tokens, Predicate<Token> predicate) {
-        var token = tokens.peek();
-        return token != null && predicate.test(token);
+    // a value for some constants of an enum, indexed by ordinal; -1 for the others
+    static <E extends Enum<E>> int[] table(Class<E> type, Map<E, Integer> values) {
+        var table = new int[type.getEnumConstants().length];
+        Arrays.fill(table, -1);
+        values.forEach((constant, value) -> table[constant.ordinal()] = value);
+        return table;
     }
 
     public static boolean matches(BufferedTokenStream tokens, Class<? extends Token> tokenType) {
-        return matches(tokens, tokenType::isInstance);
+        return tokenType.isInstance(tokens.peek());
     }
 
     public static boolean matches(BufferedTokenStream tokens, Token.Keyword.Type keyword) {
-        return matches(tokens, token -> token instanceof Token.Keyword && ((Token.Keyword) token).type() == keyword);
+        return tokens.peek() instanceof Token.Keyword(var type) && type == keyword;
     }
 
     private static String errorMessage(BufferedTokenStream tokens, String message) {
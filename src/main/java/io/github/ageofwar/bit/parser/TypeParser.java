@@ -3,8 +3,8 @@ package io.github.ageofwar.bit.parser;
 import io.github.ageofwar.bit.lexer.Token;
 import io.github.ageofwar.bit.lexer.TokenStream;
 
-import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -12,31 +12,32 @@ import static io.github.ageofwar.bit.parser.Parsers.expect;
 import static io.github.ageofwar.bit.parser.Parsers.matches;
 
 public class TypeParser {
-    private static final Map<Class<? extends Token>, Integer> OPERATOR_PRECEDENCES = Map.ofEntries(
-            new AbstractMap.SimpleEntry<>(Token.Dot.class, 7),
-            new AbstractMap.SimpleEntry<>(Token.Keyword.class, 6),
-            new AbstractMap.SimpleEntry<>(Token.Asterisk.class, 5),
-            new AbstractMap.SimpleEntry<>(Token.Slash.class, 5),
-            new AbstractMap.SimpleEntry<>(Token.Minus.class, 4),
-            new AbstractMap.SimpleEntry<>(Token.Plus.class, 4),
-            new AbstractMap.SimpleEntry<>(Token.Equal.class, 2),
-            new AbstractMap.SimpleEntry<>(Token.NotEqual.class, 2),
-            new AbstractMap.SimpleEntry<>(Token.Ampersand.class, 1),
-            new AbstractMap.SimpleEntry<>(Token.Pipe.class, 1)
-    );
+    // the precedence of the operators by token kind, -1 for the tokens that aren't; any keyword is one
+    private static final int[] OPERATOR_PRECEDENCES = Parsers.table(Token.Kind.class, Map.ofEntries(
+            Map.entry(Token.Kind.DOT, 7),
+            Map.entry(Token.Kind.KEYWORD, 6),
+            Map.entry(Token.Kind.ASTERISK, 5),
+            Map.entry(Token.Kind.SLASH, 5),
+            Map.entry(Token.Kind.MINUS, 4),
+            Map.entry(Token.Kind.PLUS, 4),
+            Map.entry(Token.Kind.EQUAL, 2),
+            Map.entry(Token.Kind.NOT_EQUAL, 2),
+            Map.entry(Token.Kind.AMPERSAND, 1),
+            Map.entry(Token.Kind.PIPE, 1)
+    ));
 
-    private static final Map<Class<? extends Token>, Associativity> OPERATOR_ASSOCIATIVITY = Map.ofEntries(
-            new AbstractMap.SimpleEntry<>(Token.Plus.class, Associativity.LEFT),
-            new AbstractMap.SimpleEntry<>(Token.Minus.class, Associativity.LEFT),
-            new AbstractMap.SimpleEntry<>(Token.Asterisk.class, Associativity.LEFT),
-            new AbstractMap.SimpleEntry<>(Token.Slash.class, Associativity.LEFT),
-            new AbstractMap.SimpleEntry<>(Token.Equal.class, Associativity.LEFT),
-            new AbstractMap.SimpleEntry<>(Token.NotEqual.class, Associativity.LEFT),
-            new AbstractMap.SimpleEntry<>(Token.Keyword.class, Associativity.LEFT),
-            new AbstractMap.SimpleEntry<>(Token.Dot.class, Associativity.LEFT),
-            new AbstractMap.SimpleEntry<>(Token.Ampersand.class, Associativity.LEFT),
-            new AbstractMap.SimpleEntry<>(Token.Pipe.class, Associativity.LEFT)
-    );
+    private static final Map<Token.Kind, Associativity> OPERATOR_ASSOCIATIVITY = new EnumMap<>(Map.ofEntries(
+            Map.entry(Token.Kind.PLUS, Associativity.LEFT),
+            Map.entry(Token.Kind.MINUS, Associativity.LEFT),
+            Map.entry(Token.Kind.ASTERISK, Associativity.LEFT),
+            Map.entry(Token.Kind.SLASH, Associativity.LEFT),
+            Map.entry(Token.Kind.EQUAL, Associativity.LEFT),
+            Map.entry(Token.Kind.NOT_EQUAL, Associativity.LEFT),
+            Map.entry(Token.Kind.KEYWORD, Associativity.LEFT),
+            Map.entry(Token.Kind.DOT, Associativity.LEFT),
+            Map.entry(Token.Kind.AMPERSAND, Associativity.LEFT),
+            Map.entry(Token.Kind.PIPE, Associativity.LEFT)
+    ));
 
     private final BufferedTokenStream tokens;
 
@@ -91,9 +92,10 @@ public class TypeParser {
         while (true) {
             var operator = tokens.peek();
             if (operator == null) return lhs;
-            var precedence = OPERATOR_PRECEDENCES.get(operator.getClass());
-            if (precedence == null || precedence < minPrecedence) return lhs;
-            var assoc = OPERATOR_ASSOCIATIVITY.get(operator.getClass());
+            var kind = tokens.peekKind();
+            var precedence = OPERATOR_PRECEDENCES[kind.ordinal()];
+            if (precedence < 0 || precedence < minPrecedence) return lhs;
+            var assoc = OPERATOR_ASSOCIATIVITY.get(kind);
             int nextMinPrecedence = assoc == Associativity.LEFT ? precedence + 1 : precedence;
             tokens.next();
             var rhs = nextExpression(nextMinPrecedence);
@@ -110,18 +112,17 @@ public class TypeParser {
     }
 
     private Bit.TypeExpression nextPrimaryExpression() {
-        var peek = tokens.peek(3);
-        var expression = switch (peek[0]) {
+        var expression = switch (tokens.peek()) {
             case Token.Identifier token -> nextIdentifier();
             case Token.NumberLiteral token -> nextNumberLiteral();
             case Token.StringLiteral token -> nextStringLiteral();
             case Token.BooleanLiteral token -> nextBooleanLiteral();
             case Token.LeftParenthesis token -> {
+                var mark = tokens.mark();
                 try {
-                    tokens.checkpoint();
                     yield nextFunction();
                 } catch (ParserException e) {
-                    tokens.rollback();
+                    tokens.reset(mark);
                     yield nextGroupedExpression();
                 }
             }
@@ -0,0 +1,67 @@
+package io.github.ageofwar.bit.resolver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class FunctionScope {
+    private final FunctionScope parent;
+    private final FunctionScope base;
+    private final List<ResolvedBit.FrameLayout.Capture> captures;
+    private final Map<Integer, ResolvedBit.Symbol> captured;
+    private int size;
+    private int jumps;
+
+    FunctionScope(FunctionScope parent) {
+        this(parent, null);
+    }
+
+    private FunctionScope(FunctionScope parent, FunctionScope base) {
+        this.parent = parent;
+        this.base = base;
+        this.captures = new ArrayList<>();
+        this.captured = new HashMap<>();
+        this.size = base != null ? base.size : 0;
+    }
+
+    // a scope sharing the slots already allocated in this one, used by the functions of an impl block
+    FunctionScope fork() {
+        return new FunctionScope(parent, this);
+    }
+
+    int allocate() {
+        return size++;
+    }
+
+    // counts the break, continue and return expressions resolved so far in this function
+    void jump() {
+        jumps++;
+    }
+
+    int jumps() {
+        return jumps;
+    }
+
+    ResolvedBit.Symbol capture(ResolvedBit.Symbol symbol, FunctionScope owner) {
+        if (owner == this || owner == base) {
+            return symbol;
+        }
+        var existing = captured.get(symbol.id());
+        if (existing != null) {
+            return existing;
+        }
+        if (parent == null) {
+            throw new IllegalStateException("Symbol not reachable from the current function: " + symbol);
+        }
+        var source = parent.capture(symbol, owner);
+        var target = new ResolvedBit.Symbol(symbol.name(), symbol.id(), symbol.storage(), allocate());
+        captures.add(new ResolvedBit.FrameLayout.Capture(source, target));
+        captured.put(symbol.id(), target);
+        return target;
+    }
+
+    ResolvedBit.FrameLayout layout() {
+        return new ResolvedBit.FrameLayout(size, List.copyOf(captures));
+    }
+}
@@ -0,0 +1,206 @@
+package io.github.ageofwar.bit.resolver;
+
+import io.github.ageofwar.bit.parser.Bit;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// the packages imported by a program, directly or not. Their sources are all read and parsed first, at the same time,
+// then a package is resolved as soon as the packages it imports are, so that packages which don't depend on each other
+// are resolved in parallel. Symbol ids don't depend on that schedule: every package owns the range of ids that follows
+// the ranges of the packages before it, in the order a depth first visit of the imports meets them. A package resolved
+// before the sizes of those ranges are known numbers its symbols from a provisional base, and is then read back at its
+// own range from what PackageWriter wrote for it
+final class ImportGraph {
+    private final Resolver resolver;
+    private final ResolverEnvironment builtins;
+    private final PackageCache cache;
+    private final ForkJoinPool pool;
+    // a package may be imported with different names selected, each import is read on its own
+    private final Map<List<Object>, CompletableFuture<Source>> sources = new ConcurrentHashMap<>();
+    // the packages whose range is known, by name
+    private final Map<String, Resolver.Imported> imported = new ConcurrentHashMap<>();
+    // past the ranges of all the packages in the map, so that a provisional range never overlaps one of them
+    private final AtomicInteger end = new AtomicInteger(Resolver.BUILTINS);
+
+    ImportGraph(Resolver resolver, ResolverEnvironment builtins, PackageCache cache, ForkJoinPool pool) {
+        this.resolver = resolver;
+        this.builtins = builtins;
+        this.cache = cache;
+        this.pool = pool;
+    }
+
+    Imports resolve(List<Bit.Program.Import> imports) {
+        for (var importDecl : imports) {
+            discover(importDecl);
+        }
+        // reading a package discovers its imports before it completes, so the graph is whole once a round adds nothing
+        while (true) {
+            var pending = List.copyOf(sources.values());
+            CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).handle((ignored, e) -> null).join();
+            if (sources.size() == pending.size()) break;
+        }
+
+        var nodes = new HashMap<String, Node>();
+        var order = new ArrayList<Node>();
+        for (var importDecl : imports) {
+            visit(importDecl, nodes, order);
+        }
+
+        var base = CompletableFuture.completedFuture(Resolver.BUILTINS);
+        for (var node : order) {
+            var nodeBase = base;
+            var dependencies = node.dependencies().stream().map(Node::imported).toArray(CompletableFuture[]::new);
+            var provisional = CompletableFuture.allOf(dependencies).thenApplyAsync(ignored -> provisional(node, nodeBase.getNow(null)), pool);
+            provisional.thenCombineAsync(nodeBase, (resolved, start) -> place(node, resolved, start), pool).whenComplete((result, e) -> {
+                if (e != null) {
+                    node.imported().completeExceptionally(e);
+                } else {
+                    node.imported().complete(result);
+                }
+            });
+            base = nodeBase.thenCombine(provisional, (start, resolved) -> start + resolved.end() - resolved.base());
+        }
+
+        // the first error in the order a sequential resolver would have met it
+        var declarations = new ArrayList<ResolvedBit.Declaration>();
+        for (var node : order) {
+            declarations.addAll(join(node.imported()).declarations());
+        }
+        var direct = new ArrayList<Resolver.Imported>();
+        for (var importDecl : imports) {
+            direct.add(imported.get(name(importDecl)));
+        }
+        return new Imports(declarations, direct, join(base));
+    }
+
+    // declarations are those of all the packages, imported are the packages imported directly, end is past their ranges
+    record Imports(List<ResolvedBit.Declaration> declarations, List<Resolver.Imported> imported, int end) {}
+
+    private record Source(Bit.Program.Import importDecl, String source, String sourceKey, PackageCache.Entry entry, Bit.Program program, List<Bit.Program.Import> imports) {
+        Bit.Program parsed() {
+            return program != null ? program : Resolver.parse(source);
+        }
+    }
+
+    private record Node(String name, Source source, List<Node> dependencies, CompletableFuture<Placed> imported) {}
+
+    // a package resolved with its symbols numbered from base to end; payload is what PackageWriter wrote for it, null
+    // when it wasn't needed or the package can't be written
+    private record Resolved(ResolvedBit.Program program, String key, int base, int end, byte[] payload) {}
+
+    private record Placed(Resolver.Imported imported, List<ResolvedBit.Declaration> declarations) {}
+
+    private void discover(Bit.Program.Import importDecl) {
+        sources.computeIfAbsent(List.of(name(importDecl), importDecl.identifiers()), key -> CompletableFuture.supplyAsync(() -> {
+            var source = resolver.source(importDecl.path());
+            var sourceKey = cache != null ? PackageCache.sourceKey(source, importDecl.identifiers(), Resolver.BUILTINS) : null;
+            var entry = cache != null ? cache.read(sourceKey) : null;
+            // the imports of a cached package are known without parsing it, they are those of the source it was written from
+            var program = entry == null ? Resolver.parse(source) : null;
+            var imports = entry != null ? entry.imports() : program.imports();
+            for (var dependency : imports) {
+                discover(dependency);
+            }
+            return new Source(importDecl, source, sourceKey, entry, program, imports);
+        }, pool));
+    }
+
+    // puts a package in the order after the packages it imports, the first time it is met
+    private Node visit(Bit.Program.Import importDecl, Map<String, Node> nodes, List<Node> order) {
+        var name = name(importDecl);
+        if (nodes.containsKey(name)) {
+            var node = nodes.get(name);
+            if (node == null) {
+                throw new Resolver.ResolverException("Cyclic import detected for package: " + name);
+            }
+            return node;
+        }
+        nodes.put(name, null); // mark as in-progress to detect cyclic imports
+
+        var source = join(sources.get(List.of(name, importDecl.identifiers())));
+        var dependencies = new ArrayList<Node>();
+        for (var dependency : source.imports()) {
+            dependencies.add(visit(dependency, nodes, order));
+        }
+        var node = new Node(name, source, dependencies, new CompletableFuture<>());
+        nodes.put(name, node);
+        order.add(node);
+        return node;
+    }
+
+    // resolves a package from the base of its range when it is already known, otherwise from past all the known ranges
+    private Resolved provisional(Node node, Integer base) {
+        var start = base != null ? base : end.get();
+        var source = node.source();
+        var dependencies = dependencies(node);
+        var key = cache != null ? PackageCache.key(source.sourceKey(), dependencies.stream().map(Resolver.Imported::key).toList()) : null;
+
+        var entry = source.entry();
+        if (entry != null && entry.key().equals(key)) {
+            var program = resolver.read(entry.payload(), builtins.newPackageEnvironment(start), dependencies, imported);
+            if (program != null) {
+                return new Resolved(program, key, start, program.variables(), entry.payload());
+            }
+        }
+
+        var program = source.parsed();
+        var environment = builtins.newPackageEnvironment(start);
+        var mergedEnvironment = Resolver.merge(environment, dependencies);
+        var resolved = resolver.resolvePackage(program.declarations(), environment, mergedEnvironment, source.importDecl().identifiers());
+        byte[] payload = null;
+        // a lazily resolved package is incomplete, it is resolved again when it has to be moved
+        if ((cache != null || base == null) && !resolver.lazy()) {
+            try {
+                payload = new PackageWriter(Resolver.BUILTINS, start, environment.variables(), imported).write(resolved.declarations(), mergedEnvironment, resolved.environment());
+                if (cache != null) {
+                    cache.write(source.sourceKey(), new PackageCache.Entry(key, program.imports(), payload));
+                }
+            } catch (IOException e) {
+                // not every package can be written, it is resolved again when it has to be moved and next time
+            }
+        }
+        return new Resolved(resolved, key, start, environment.variables(), payload);
+    }
+
+    // moves a package to its range
+    private Placed place(Node node, Resolved resolved, int base) {
+        var program = resolved.program();
+        if (resolved.base() != base) {
+            var dependencies = dependencies(node);
+            program = resolved.payload() != null ? resolver.read(resolved.payload(), builtins.newPackageEnvironment(base), dependencies, imported) : null;
+            if (program == null) {
+                var environment = builtins.newPackageEnvironment(base);
+                var source = node.source();
+                program = resolver.resolvePackage(source.parsed().declarations(), environment, Resolver.merge(environment, dependencies), source.importDecl().identifiers());
+            }
+        }
+        var placed = new Resolver.Imported(program.environment(), resolved.key(), base, program.variables());
+        end.accumulateAndGet(placed.end(), Math::max);
+        imported.put(node.name(), placed);
+        return new Placed(placed, program.declarations());
+    }
+
+    private List<Resolver.Imported> dependencies(Node node) {
+        return node.dependencies().stream().map(dependency -> dependency.imported().join().imported()).toList();
+    }
+
+    private static String name(Bit.Program.Import importDecl) {
+        return String.join(".", importDecl.path());
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            if (e.getCause() instanceof Error cause) throw cause;
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package io.github.ageofwar.bit.resolver;
+
+import io.github.ageofwar.bit.parser.Bit;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+// resolved packages kept on disk between runs. An entry is stored under the hash of the source of a package and of the
+// names its importer asked for, and it is only used when the packages it imports still have the keys they had when it
+// was written; those keys cover their own sources and imports in turn, so a change anywhere below a package invalidates
+// it. Entries are written to a temporary file and moved in place, so concurrent runs never read a partial entry
+public final class PackageCache {
+    private static final int MAGIC = 0x42495443;
+    // entries written under another version are never read. Bump it whenever an entry for the same source would change:
+    // the layout of PackageWriter and PackageReader, the shapes of ResolvedBit and Type, their canonical forms in Types,
+    // or what the resolver produces
+    static final int FORMAT_VERSION = 1;
+
+    private final Path directory;
+
+    public PackageCache(Path directory) {
+        this.directory = directory;
+    }
+
+    public static PackageCache defaultCache() {
+        var path = System.getenv("BIT_CACHE");
+        return new PackageCache(path != null ? Path.of(path) : Path.of(System.getProperty("java.io.tmpdir"), "bit-cache"));
+    }
+
+    // the key of the source of a package imported with the given names
+    static String sourceKey(String source, Bit.Program.Import.IdentifierSelector identifiers, int builtins) {
+        var selector = switch (identifiers) {
+            case Bit.Program.Import.IdentifierSelector.All ignored -> "*";
+            case Bit.Program.Import.IdentifierSelector.Only(var names) -> String.join(",", names);
+        };
+        return hash(List.of(String.valueOf(builtins), selector, source));
+    }
+
+    // the key of a package, given the keys of the packages it imports
+    static String key(String sourceKey, List<String> dependencies) {
+        var parts = new ArrayList<String>();
+        parts.add(sourceKey);
+        parts.addAll(dependencies);
+        return hash(parts);
+    }
+
+    Entry read(String sourceKey) {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(directory.resolve(sourceKey))))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return null;
+            var key = in.readUTF();
+            var imports = new ArrayList<Bit.Program.Import>();
+            var count = in.readInt();
+            for (var i = 0; i < count; i++) {
+                var path = new String[in.readInt()];
+                for (var j = 0; j < path.length; j++) {
+                    path[j] = in.readUTF();
+                }
+                var names = in.readInt();
+                Bit.Program.Import.IdentifierSelector identifiers;
+                if (names < 0) {
+                    identifiers = new Bit.Program.Import.IdentifierSelector.All();
+                } else {
+                    var only = new ArrayList<String>();
+                    for (var j = 0; j < names; j++) {
+                        only.add(in.readUTF());
+                    }
+                    identifiers = new Bit.Program.Import.IdentifierSelector.Only(only);
+                }
+                imports.add(new Bit.Program.Import(path, identifiers));
+            }
+            return new Entry(key, imports, in.readAllBytes());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // the cache is only an optimization: an entry that can't be written is resolved again next time
+    void write(String sourceKey, Entry entry) {
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, sourceKey, ".tmp");
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(entry.key());
+                out.writeInt(entry.imports().size());
+                for (var importDecl : entry.imports()) {
+                    out.writeInt(importDecl.path().length);
+                    for (var part : importDecl.path()) {
+                        out.writeUTF(part);
+                    }
+                    switch (importDecl.identifiers()) {
+                        case Bit.Program.Import.IdentifierSelector.All ignored -> out.writeInt(-1);
+                        case Bit.Program.Import.IdentifierSelector.Only(var names) -> {
+                            out.writeInt(names.size());
+                            for (var name : names) {
+                                out.writeUTF(name);
+                            }
+                        }
+                    }
+                }
+                out.write(entry.payload());
+            }
+            Files.move(temporary, directory.resolve(sourceKey), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    // key is the key of the package when the entry was written, imports are those of its source
+    record Entry(String key, List<Bit.Program.Import> imports, byte[] payload) {}
+
+    private static String hash(List<String> parts) {
+        return digest(parts.stream().map(part -> part.getBytes(StandardCharsets.UTF_8)).toList());
+    }
+
+    // each part is prefixed by its length, so that no two lists of parts are hashed the same
+    private static String digest(List<byte[]> parts) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            for (var part : parts) {
+                digest.update((byte) (part.length >>> 24));
+                digest.update((byte) (part.length >>> 16));
+                digest.update((byte) (part.length >>> 8));
+                digest.update((byte) part.length);
+                digest.update(part);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package io.github.ageofwar.bit.resolver;
+
+import io.github.ageofwar.bit.parser.Bit;
+import io.github.ageofwar.bit.types.Type;
+import io.github.ageofwar.bit.types.Types;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static io.github.ageofwar.bit.resolver.PackageWriter.*;
+import static io.github.ageofwar.bit.types.Types.*;
+
+// reads back a package written by PackageWriter. The symbols it declares are numbered from the current count of the
+// environment and those of its imports from where the imported packages are now; a struct is read as a recursive struct
+// first, and closing it gives the instance that is kept
+final class PackageReader {
+    private final DataInputStream in;
+    private final Resolver resolver;
+    private final int base;
+    private final Map<String, Resolver.Imported> imported;
+    private final List<Type> types = new ArrayList<>();
+    private final List<String> strings = new ArrayList<>();
+    private int count;
+
+    PackageReader(byte[] payload, Resolver resolver, int base, Map<String, Resolver.Imported> imported) {
+        this.in = new DataInputStream(new ByteArrayInputStream(payload));
+        this.resolver = resolver;
+        this.base = base;
+        this.imported = imported;
+    }
+
+    // the number of symbols the package declares
+    int count() {
+        return count;
+    }
+
+    List<ResolvedBit.Declaration> declarations() throws IOException {
+        count = number();
+        var size = number();
+        var declarations = new ArrayList<ResolvedBit.Declaration>(size);
+        for (var i = 0; i < size; i++) {
+            declarations.add((ResolvedBit.Declaration) bit());
+        }
+        return declarations;
+    }
+
+    // declares the entries written for an environment in it
+    void environment(ResolverEnvironment environment) throws IOException {
+        for (var i = number(); i > 0; i--) {
+            var name = string();
+            environment.valueTypes().declare(name, new ResolverEnvironment.VariableType(symbol(), type(), in.readBoolean()));
+        }
+        for (var i = number(); i > 0; i--) {
+            var name = string();
+            environment.types().declare(name, new ResolverEnvironment.ValueType(symbol(), type()));
+        }
+        for (var i = number(); i > 0; i--) {
+            var name = string();
+            var symbol = symbol();
+            var definition = definition();
+            environment.functionTypes().declare(name, new ResolverEnvironment.ValueTypeFunction(symbol, resolver.typeFunction(definition, environment), definition));
+        }
+        for (var i = number(); i > 0; i--) {
+            var name = string();
+            environment.constructors().declare(name, new ResolverEnvironment.ValueType(symbol(), type()));
+        }
+        for (var i = number(); i > 0; i--) {
+            var candidates = environment.extensionTypes().getSymbols().computeIfAbsent(string(), k -> new ArrayList<>());
+            for (var j = number(); j > 0; j--) {
+                candidates.add(new ResolverEnvironment.ExtensionType(symbol(), type(), type(), types()));
+            }
+        }
+    }
+
+    private ResolverEnvironment.Definition definition() throws IOException {
+        return switch (in.readByte()) {
+            case NOMINAL_FUNCTION -> new ResolverEnvironment.Definition.Nominal(string());
+            case CLASS_FUNCTION -> new ResolverEnvironment.Definition.Class(types().stream().map(t -> (Type.TypeVariable) t).toList(), type(), types());
+            case ALIAS_FUNCTION -> {
+                var name = string();
+                var parameters = new ArrayList<Bit.Declaration.Type.TypeParameter>();
+                for (var i = number(); i > 0; i--) {
+                    parameters.add(new Bit.Declaration.Type.TypeParameter(string(), typeExpression()));
+                }
+                yield new ResolverEnvironment.Definition.Alias(new Bit.Declaration.Type(name, parameters, typeExpression()));
+            }
+            default -> throw new IOException("Unknown type function");
+        };
+    }
+
+    private ResolvedBit bit() throws IOException {
+        var tag = in.readByte();
+        return switch (tag) {
+            case NULL -> null;
+            case VARIABLE_DECLARATION -> new ResolvedBit.Declaration.Variable(symbol(), expression(), type());
+            case VALUE_DECLARATION -> new ResolvedBit.Declaration.Value(symbol(), expression(), type());
+            case FUNCTION_DECLARATION -> new ResolvedBit.Declaration.Function(symbol(), generics(), parameters(ResolvedBit.Declaration.Function.Parameter::new), expression(), type(), frame());
+            case TYPE_DECLARATION -> {
+                var name = symbol();
+                var valueName = symbol();
+                var parameters = new ArrayList<ResolvedBit.Declaration.Type.TypeParameter>();
+                for (var i = number(); i > 0; i--) {
+                    var type = type();
+                    parameters.add(type == null ? null : new ResolvedBit.Declaration.Type.TypeParameter(type));
+                }
+                yield new ResolvedBit.Declaration.Type(name, valueName, Collections.unmodifiableList(parameters), type());
+            }
+            case CLASS_DECLARATION -> {
+                var name = symbol();
+                var valueName = symbol();
+                var thisSymbol = symbol();
+                var generics = generics();
+                var constructor = new ResolvedBit.Declaration.Class.Constructor(parameters(ResolvedBit.Declaration.Class.Constructor.Parameter::new), frame());
+                var members = new ArrayList<ResolvedBit.Declaration.Class.Member>();
+                for (var i = number(); i > 0; i--) {
+                    var declaration = (ResolvedBit.Declaration) bit();
+                    var receiver = symbol();
+                    members.add(new ResolvedBit.Declaration.Class.Member(declaration, receiver, ResolvedBit.Declaration.Class.Member.Visibility.values()[in.readByte()]));
+                }
+                yield new ResolvedBit.Declaration.Class(name, valueName, thisSymbol, generics, constructor, members, type());
+            }
+            case IMPLEMENTATION -> {
+                var generics = generics();
+                var receiver = type();
+                var extensions = new ArrayList<ResolvedBit.Declaration.Implementation.Function>();
+                for (var i = number(); i > 0; i--) {
+                    extensions.add(new ResolvedBit.Declaration.Implementation.Function(symbol(), symbol(), generics(), parameters(ResolvedBit.Declaration.Implementation.Function.Parameter::new), expression(), type(), frame()));
+                }
+                yield new ResolvedBit.Declaration.Implementation(generics, receiver, extensions);
+            }
+            case VARIABLE_ASSIGNMENT -> new ResolvedBit.VariableAssignment(symbol(), expression());
+            case FIELD_ASSIGNMENT -> new ResolvedBit.VariableFieldAssignment(expression(), string(), number(), expression());
+            default -> expression(tag);
+        };
+    }
+
+    private ResolvedBit.Expression expression() throws IOException {
+        return (ResolvedBit.Expression) bit();
+    }
+
+    private ResolvedBit.Expression expression(int tag) throws IOException {
+        return switch (tag) {
+            case IDENTIFIER -> new ResolvedBit.Expression.Identifier(symbol(), type(), type());
+            case CALL -> new ResolvedBit.Expression.Call(expression(), expressions(), types(), in.readBoolean(), type(), type());
+            case CALL_EXTENSION -> new ResolvedBit.Expression.CallExtension(expression(), symbol(), types(), expressions(), types(), in.readBoolean(), type(), type());
+            case BLOCK -> new ResolvedBit.Expression.Block(bits(), in.readBoolean(), type(), type());
+            case LONG_LITERAL -> new ResolvedBit.Expression.NumberLiteral(in.readLong(), type(), type());
+            case BIG_LITERAL -> new ResolvedBit.Expression.NumberLiteral(bigInteger(), type(), type());
+            case STRING_LITERAL -> new ResolvedBit.Expression.StringLiteral(string(), type(), type());
+            case BOOLEAN_LITERAL -> new ResolvedBit.Expression.BooleanLiteral(in.readBoolean(), type(), type());
+            case MINUS -> new ResolvedBit.Expression.Minus(expression(), expression(), in.readBoolean(), type(), type());
+            case PLUS -> new ResolvedBit.Expression.Plus(expression(), expression(), in.readBoolean(), type(), type());
+            case MULTIPLY -> new ResolvedBit.Expression.Multiply(expression(), expression(), in.readBoolean(), type(), type());
+            case DIVIDE -> new ResolvedBit.Expression.Divide(expression(), expression(), in.readBoolean(), type(), type());
+            case GREATER_THAN -> new ResolvedBit.Expression.GreaterThan(expression(), expression(), in.readBoolean(), type(), type());
+            case GREATER_THAN_OR_EQUAL -> new ResolvedBit.Expression.GreaterThanOrEqual(expression(), expression(), in.readBoolean(), type(), type());
+            case LESS_THAN -> new ResolvedBit.Expression.LessThan(expression(), expression(), in.readBoolean(), type(), type());
+            case LESS_THAN_OR_EQUAL -> new ResolvedBit.Expression.LessThanOrEqual(expression(), expression(), in.readBoolean(), type(), type());
+            case EQUAL -> new ResolvedBit.Expression.Equal(expression(), expression(), type(), type());
+            case NOT_EQUAL -> new ResolvedBit.Expression.NotEqual(expression(), expression(), type(), type());
+            case AND -> new ResolvedBit.Expression.And(expression(), expression(), type(), type());
+            case OR -> new ResolvedBit.Expression.Or(expression(), expression(), type(), type());
+            case NOT -> new ResolvedBit.Expression.Not(expression(), type(), type());
+            case IF -> new ResolvedBit.Expression.If(expression(), expression(), expression(), type(), type());
+            case WHILE -> new ResolvedBit.Expression.While(expression(), expression(), in.readBoolean(), type(), type());
+            case AS -> new ResolvedBit.Expression.As(expression(), type(), type());
+            case IS -> new ResolvedBit.Expression.Is(expression(), type(), type(), type());
+            case ACCESS -> new ResolvedBit.Expression.Access(expression(), string(), number(), in.readBoolean(), type(), type());
+            case ACCESS_EXTENSION -> new ResolvedBit.Expression.AccessExtension(expression(), types(), symbol(), type(), type());
+            case STRUCT_LITERAL -> {
+                var fields = new HashMap<String, ResolvedBit.Expression>();
+                for (var i = number(); i > 0; i--) {
+                    fields.put(string(), expression());
+                }
+                yield new ResolvedBit.Expression.Struct(fields, type(), type());
+            }
+            case ARRAY -> new ResolvedBit.Expression.Array(expressions(), in.readBoolean(), type(), type());
+            case LAMBDA -> new ResolvedBit.Expression.Function(generics(), parameters(ResolvedBit.Expression.Function.Parameter::new), expression(), frame(), type(), type());
+            case INSTANTIATION -> new ResolvedBit.Expression.Instantiation(symbol(), expressions(), types(), type(), type());
+            case BREAK -> new ResolvedBit.Expression.Break(type(), type());
+            case CONTINUE -> new ResolvedBit.Expression.Continue(type(), type());
+            case RETURN -> new ResolvedBit.Expression.Return(expression(), type(), type());
+            default -> throw new IOException("Unknown node " + tag);
+        };
+    }
+
+    private List<ResolvedBit> bits() throws IOException {
+        var size = number();
+        var bits = new ArrayList<ResolvedBit>(size);
+        for (var i = 0; i < size; i++) {
+            bits.add(bit());
+        }
+        return bits;
+    }
+
+    private List<ResolvedBit.Expression> expressions() throws IOException {
+        var size = number();
+        var expressions = new ArrayList<ResolvedBit.Expression>(size);
+        for (var i = 0; i < size; i++) {
+            expressions.add(expression());
+        }
+        return expressions;
+    }
+
+    private interface Parameter<T> {
+        T create(ResolvedBit.Symbol name, Type type);
+    }
+
+    private <T> List<T> parameters(Parameter<T> parameter) throws IOException {
+        var size = number();
+        var parameters = new ArrayList<T>(size);
+        for (var i = 0; i < size; i++) {
+            parameters.add(parameter.create(symbol(), type()));
+        }
+        return parameters;
+    }
+
+    private List<ResolvedBit.GenericDeclaration> generics() throws IOException {
+        var size = number();
+        var generics = new ArrayList<ResolvedBit.GenericDeclaration>(size);
+        for (var i = 0; i < size; i++) {
+            generics.add(new ResolvedBit.GenericDeclaration(symbol(), type(), type()));
+        }
+        return generics;
+    }
+
+    private ResolvedBit.FrameLayout frame() throws IOException {
+        var size = number();
+        var captures = new ArrayList<ResolvedBit.FrameLayout.Capture>();
+        for (var i = number(); i > 0; i--) {
+            captures.add(new ResolvedBit.FrameLayout.Capture(symbol(), symbol()));
+        }
+        return new ResolvedBit.FrameLayout(size, List.copyOf(captures));
+    }
+
+    private ResolvedBit.Symbol symbol() throws IOException {
+        var tag = in.readByte();
+        if (tag == NULL) return null;
+        var storage = ResolvedBit.Symbol.Storage.values()[tag - 1];
+        var name = string();
+        var slot = storage != ResolvedBit.Symbol.Storage.GLOBAL ? number() : 0;
+        var id = switch (in.readByte()) {
+            case BUILTIN -> number();
+            case OWN -> base + number();
+            case IMPORTED -> {
+                var other = imported.get(string());
+                if (other == null) throw new IOException("Symbol of a package that is not imported");
+                yield other.base() + number();
+            }
+            default -> throw new IOException("Unknown symbol");
+        };
+        return new ResolvedBit.Symbol(name, id, storage, storage == ResolvedBit.Symbol.Storage.GLOBAL ? id : slot);
+    }
+
+    private List<Type> types() throws IOException {
+        var size = number();
+        var types = new ArrayList<Type>(size);
+        for (var i = 0; i < size; i++) {
+            types.add(type());
+        }
+        return types;
+    }
+
+    private Type type() throws IOException {
+        var tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case REFERENCE:
+                return types.get(number());
+            case ANY:
+                return any();
+            case NEVER:
+                return never();
+            case INTEGER:
+                return integer();
+            case STRING:
+                return Types.string();
+            case STRUCT: {
+                var index = types.size();
+                var fields = new HashMap<String, Type>();
+                var struct = recursiveStruct(fields);
+                types.add(struct);
+                for (var i = number(); i > 0; i--) {
+                    fields.put(string(), type());
+                }
+                var closed = close(struct);
+                types.set(index, closed);
+                return closed;
+            }
+        }
+        var type = switch (tag) {
+            case NOMINAL -> nominal(string());
+            case NUMBER -> integer(bigInteger());
+            case RANGE -> {
+                var lo = in.readBoolean() ? bigInteger() : null;
+                var hi = in.readBoolean() ? bigInteger() : null;
+                yield range(lo, hi);
+            }
+            case UNION -> union(types().toArray(Type[]::new));
+            case INTERSECTION -> intersection(types().toArray(Type[]::new));
+            case FUNCTION -> {
+                var returnType = type();
+                var generics = types().stream().map(t -> (Type.TypeVariable) t).toList();
+                yield function(returnType, generics, types().toArray(Type[]::new));
+            }
+            case VARIABLE -> {
+                var variable = generic(type());
+                variable.setSymbol(symbol());
+                yield variable;
+            }
+            default -> throw new IOException("Unknown type " + tag);
+        };
+        types.add(type);
+        return type;
+    }
+
+    private Bit.TypeExpression typeExpression() throws IOException {
+        var tag = in.readByte();
+        return switch (tag) {
+            case NULL -> null;
+            case TYPE_IDENTIFIER -> new Bit.TypeExpression.Identifier(string());
+            case TYPE_NUMBER -> new Bit.TypeExpression.NumberLiteral(string());
+            case TYPE_STRING -> new Bit.TypeExpression.StringLiteral(string());
+            case TYPE_BOOLEAN -> new Bit.TypeExpression.BooleanLiteral(in.readBoolean());
+            case TYPE_STRUCT -> {
+                var fields = new LinkedHashMap<String, Bit.TypeExpression>();
+                for (var i = number(); i > 0; i--) {
+                    fields.put(string(), typeExpression());
+                }
+                yield new Bit.TypeExpression.Struct(fields);
+            }
+            case TYPE_MINUS -> new Bit.TypeExpression.Minus(typeExpression(), typeExpression());
+            case TYPE_PLUS -> new Bit.TypeExpression.Plus(typeExpression(), typeExpression());
+            case TYPE_MULTIPLY -> new Bit.TypeExpression.Multiply(typeExpression(), typeExpression());
+            case TYPE_DIVIDE -> new Bit.TypeExpression.Divide(typeExpression(), typeExpression());
+            case TYPE_UNION -> new Bit.TypeExpression.Union(typeExpression(), typeExpression());
+            case TYPE_INTERSECTION -> new Bit.TypeExpression.Intersection(typeExpression(), typeExpression());
+            case TYPE_CALL -> {
+                var callee = new Bit.TypeExpression.Identifier(string());
+                var arguments = new ArrayList<Bit.TypeExpression>();
+                for (var i = number(); i > 0; i--) {
+                    arguments.add(typeExpression());
+                }
+                yield new Bit.TypeExpression.Call(callee, arguments);
+            }
+            case TYPE_FUNCTION -> {
+                var parameters = new ArrayList<Bit.TypeExpression>();
+                for (var i = number(); i > 0; i--) {
+                    parameters.add(typeExpression());
+                }
+                yield new Bit.TypeExpression.Function(parameters, typeExpression());
+            }
+            case TYPE_MATCH -> {
+                var operand = typeExpression();
+                var cases = new ArrayList<Bit.TypeExpression.Match.MatchCase>();
+                for (var i = number(); i > 0; i--) {
+                    Bit.TypeExpression.Match.Pattern pattern = in.readBoolean()
+                            ? new Bit.TypeExpression.Match.Pattern.Expression(typeExpression())
+                            : new Bit.TypeExpression.Match.Pattern.Else();
+                    cases.add(new Bit.TypeExpression.Match.MatchCase(pattern, typeExpression()));
+                }
+                yield new Bit.TypeExpression.Match(operand, cases);
+            }
+            default -> throw new IOException("Unknown type expression " + tag);
+        };
+    }
+
+    private BigInteger bigInteger() throws IOException {
+        var magnitude = new byte[number()];
+        in.readFully(magnitude);
+        return new BigInteger(magnitude);
+    }
+
+    private String string() throws IOException {
+        var index = number();
+        if (index == -1) return null;
+        if (index >= 0) return strings.get(index);
+        var utf8 = new byte[-2 - index];
+        in.readFully(utf8);
+        var string = new String(utf8, StandardCharsets.UTF_8);
+        strings.add(string);
+        return string;
+    }
+
+    private int number() throws IOException {
+        var zigzag = 0;
+        for (var shift = 0; ; shift += 7) {
+            var b = in.readByte();
+            zigzag |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) break;
+        }
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+}
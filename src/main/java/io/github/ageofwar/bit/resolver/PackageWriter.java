@@ -0,0 +1,648 @@
+package io.github.ageofwar.bit.resolver;
+
+import io.github.ageofwar.bit.parser.Bit;
+import io.github.ageofwar.bit.types.Type;
+import io.github.ageofwar.bit.types.Types;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.github.ageofwar.bit.types.Types.*;
+
+// writes the declarations and the environments of a resolved package for the cache. A symbol is written relative to the
+// package that declared it, so that it can be numbered again when the package is read by another program. A type is
+// written once and referred to by its index after that, so shared types stay shared and recursive structs stay
+// recursive; a struct takes its index before its fields, the other types after their parts
+final class PackageWriter {
+    static final int NULL = 0, REFERENCE = 1, ANY = 2, NEVER = 3, INTEGER = 4, STRING = 5, NOMINAL = 6, NUMBER = 7,
+            RANGE = 8, STRUCT = 9, UNION = 10, INTERSECTION = 11, FUNCTION = 12, VARIABLE = 13;
+
+    static final int BUILTIN = 0, OWN = 1, IMPORTED = 2;
+
+    static final int VARIABLE_DECLARATION = 1, VALUE_DECLARATION = 2, FUNCTION_DECLARATION = 3, TYPE_DECLARATION = 4,
+            CLASS_DECLARATION = 5, IMPLEMENTATION = 6, VARIABLE_ASSIGNMENT = 7, FIELD_ASSIGNMENT = 8, IDENTIFIER = 9,
+            CALL = 10, CALL_EXTENSION = 11, BLOCK = 12, LONG_LITERAL = 13, BIG_LITERAL = 14, STRING_LITERAL = 15,
+            BOOLEAN_LITERAL = 16, MINUS = 17, PLUS = 18, MULTIPLY = 19, DIVIDE = 20, GREATER_THAN = 21,
+            GREATER_THAN_OR_EQUAL = 22, LESS_THAN = 23, LESS_THAN_OR_EQUAL = 24, EQUAL = 25, NOT_EQUAL = 26, AND = 27,
+            OR = 28, NOT = 29, IF = 30, WHILE = 31, AS = 32, IS = 33, ACCESS = 34, ACCESS_EXTENSION = 35,
+            STRUCT_LITERAL = 36, ARRAY = 37, LAMBDA = 38, INSTANTIATION = 39, BREAK = 40, CONTINUE = 41, RETURN = 42;
+
+    static final int TYPE_IDENTIFIER = 1, TYPE_NUMBER = 2, TYPE_STRING = 3, TYPE_BOOLEAN = 4, TYPE_STRUCT = 5,
+            TYPE_MINUS = 6, TYPE_PLUS = 7, TYPE_MULTIPLY = 8, TYPE_DIVIDE = 9, TYPE_UNION = 10, TYPE_INTERSECTION = 11,
+            TYPE_CALL = 12, TYPE_FUNCTION = 13, TYPE_MATCH = 14;
+
+    static final int NOMINAL_FUNCTION = 0, CLASS_FUNCTION = 1, ALIAS_FUNCTION = 2;
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private final int builtins;
+    private final int base;
+    private final int end;
+    private final Map<String, Resolver.Imported> imported;
+    private final Map<Type, Integer> types = new IdentityHashMap<>();
+    private final Map<String, Integer> strings = new HashMap<>();
+    private int nextType;
+
+    // the package declared the symbols from base to end, those below builtins are declared by every environment
+    PackageWriter(int builtins, int base, int end, Map<String, Resolver.Imported> imported) {
+        this.builtins = builtins;
+        this.base = base;
+        this.end = end;
+        this.imported = imported;
+    }
+
+    byte[] write(List<ResolvedBit.Declaration> declarations, ResolverEnvironment privateEnvironment, ResolverEnvironment publicEnvironment) throws IOException {
+        number(end - base);
+        number(declarations.size());
+        for (var declaration : declarations) {
+            bit(declaration);
+        }
+        environment(privateEnvironment);
+        environment(publicEnvironment);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    // the entries of the environment declared by the package itself, the others are merged from its imports
+    private void environment(ResolverEnvironment environment) throws IOException {
+        var valueTypes = own(environment.valueTypes().getSymbols(), ResolverEnvironment.VariableType::symbol);
+        number(valueTypes.size());
+        for (var entry : valueTypes.entrySet()) {
+            string(entry.getKey());
+            symbol(entry.getValue().symbol());
+            type(entry.getValue().type());
+            out.writeBoolean(entry.getValue().variable());
+        }
+        var types = own(environment.types().getSymbols(), ResolverEnvironment.ValueType::symbol);
+        number(types.size());
+        for (var entry : types.entrySet()) {
+            string(entry.getKey());
+            symbol(entry.getValue().symbol());
+            type(entry.getValue().type());
+        }
+        var functionTypes = own(environment.functionTypes().getSymbols(), ResolverEnvironment.ValueTypeFunction::symbol);
+        number(functionTypes.size());
+        for (var entry : functionTypes.entrySet()) {
+            string(entry.getKey());
+            symbol(entry.getValue().symbol());
+            definition(entry.getValue().definition());
+        }
+        var constructors = own(environment.constructors().getSymbols(), ResolverEnvironment.ValueType::symbol);
+        number(constructors.size());
+        for (var entry : constructors.entrySet()) {
+            string(entry.getKey());
+            symbol(entry.getValue().symbol());
+            type(entry.getValue().type());
+        }
+        var extensions = new HashMap<String, List<ResolverEnvironment.ExtensionType>>();
+        for (var entry : environment.extensionTypes().getSymbols().entrySet()) {
+            var own = entry.getValue().stream().filter(extension -> own(extension.symbol())).toList();
+            if (!own.isEmpty()) extensions.put(entry.getKey(), own);
+        }
+        number(extensions.size());
+        for (var entry : extensions.entrySet()) {
+            string(entry.getKey());
+            number(entry.getValue().size());
+            for (var extension : entry.getValue()) {
+                symbol(extension.symbol());
+                type(extension.receiverType());
+                type(extension.type());
+                types(extension.receiverGenerics());
+            }
+        }
+    }
+
+    private <T> Map<String, T> own(Map<String, T> entries, java.util.function.Function<T, ResolvedBit.Symbol> symbol) {
+        var own = new HashMap<String, T>();
+        for (var entry : entries.entrySet()) {
+            if (own(symbol.apply(entry.getValue()))) own.put(entry.getKey(), entry.getValue());
+        }
+        return own;
+    }
+
+    private boolean own(ResolvedBit.Symbol symbol) {
+        return symbol.id() >= base && symbol.id() < end;
+    }
+
+    private void definition(ResolverEnvironment.Definition definition) throws IOException {
+        switch (definition) {
+            case ResolverEnvironment.Definition.Nominal(var name) -> {
+                out.writeByte(NOMINAL_FUNCTION);
+                string(name);
+            }
+            case ResolverEnvironment.Definition.Class(var generics, var returnType, var parameters) -> {
+                out.writeByte(CLASS_FUNCTION);
+                types(generics);
+                type(returnType);
+                types(parameters);
+            }
+            case ResolverEnvironment.Definition.Alias(var declaration) -> {
+                out.writeByte(ALIAS_FUNCTION);
+                string(declaration.name());
+                number(declaration.parameters().size());
+                for (var parameter : declaration.parameters()) {
+                    string(parameter.name());
+                    typeExpression(parameter.type());
+                }
+                typeExpression(declaration.value());
+            }
+            case null -> throw new IOException("A builtin type function can't be written");
+        }
+    }
+
+    private void bit(ResolvedBit bit) throws IOException {
+        switch (bit) {
+            case ResolvedBit.Declaration.Variable(var name, var value, var type) -> {
+                out.writeByte(VARIABLE_DECLARATION);
+                symbol(name);
+                bit(value);
+                type(type);
+            }
+            case ResolvedBit.Declaration.Value(var name, var value, var type) -> {
+                out.writeByte(VALUE_DECLARATION);
+                symbol(name);
+                bit(value);
+                type(type);
+            }
+            case ResolvedBit.Declaration.Function function -> {
+                out.writeByte(FUNCTION_DECLARATION);
+                function(function);
+            }
+            case ResolvedBit.Declaration.Type(var name, var valueName, var parameters, var value) -> {
+                out.writeByte(TYPE_DECLARATION);
+                symbol(name);
+                symbol(valueName);
+                number(parameters.size());
+                for (var parameter : parameters) {
+                    type(parameter == null ? null : parameter.type());
+                }
+                type(value);
+            }
+            case ResolvedBit.Declaration.Class(var name, var valueName, var thisSymbol, var generics, var constructor, var members, var type) -> {
+                out.writeByte(CLASS_DECLARATION);
+                symbol(name);
+                symbol(valueName);
+                symbol(thisSymbol);
+                generics(generics);
+                number(constructor.parameters().size());
+                for (var parameter : constructor.parameters()) {
+                    symbol(parameter.name());
+                    type(parameter.type());
+                }
+                frame(constructor.frame());
+                number(members.size());
+                for (var member : members) {
+                    bit(member.declaration());
+                    symbol(member.receiver());
+                    out.writeByte(member.visibility().ordinal());
+                }
+                type(type);
+            }
+            case ResolvedBit.Declaration.Implementation(var generics, var receiver, var extensions) -> {
+                out.writeByte(IMPLEMENTATION);
+                generics(generics);
+                type(receiver);
+                number(extensions.size());
+                for (var extension : extensions) {
+                    symbol(extension.name());
+                    symbol(extension.thisSymbol());
+                    generics(extension.generics());
+                    number(extension.parameters().size());
+                    for (var parameter : extension.parameters()) {
+                        symbol(parameter.name());
+                        type(parameter.type());
+                    }
+                    bit(extension.body());
+                    type(extension.type());
+                    frame(extension.frame());
+                }
+            }
+            case ResolvedBit.VariableAssignment(var name, var value) -> {
+                out.writeByte(VARIABLE_ASSIGNMENT);
+                symbol(name);
+                bit(value);
+            }
+            case ResolvedBit.VariableFieldAssignment(var struct, var name, var slot, var value) -> {
+                out.writeByte(FIELD_ASSIGNMENT);
+                bit(struct);
+                string(name);
+                number(slot);
+                bit(value);
+            }
+            case ResolvedBit.Expression expression -> expression(expression);
+            case ResolvedBit.Program ignored -> throw new IOException("A program can't be written as a declaration");
+            case null -> out.writeByte(NULL);
+        }
+    }
+
+    private void expression(ResolvedBit.Expression expression) throws IOException {
+        switch (expression) {
+            case ResolvedBit.Expression.Identifier(var name, var type, var returnType) -> {
+                out.writeByte(IDENTIFIER);
+                symbol(name);
+            }
+            case ResolvedBit.Expression.Call(var callee, var arguments, var generics, var tail, var type, var returnType) -> {
+                out.writeByte(CALL);
+                bit(callee);
+                bits(arguments);
+                types(generics);
+                out.writeBoolean(tail);
+            }
+            case ResolvedBit.Expression.CallExtension(var receiver, var name, var receiverGenerics, var arguments, var generics, var tail, var type, var returnType) -> {
+                out.writeByte(CALL_EXTENSION);
+                bit(receiver);
+                symbol(name);
+                types(receiverGenerics);
+                bits(arguments);
+                types(generics);
+                out.writeBoolean(tail);
+            }
+            case ResolvedBit.Expression.Block(var statements, var abrupt, var type, var returnType) -> {
+                out.writeByte(BLOCK);
+                bits(statements);
+                out.writeBoolean(abrupt);
+            }
+            case ResolvedBit.Expression.NumberLiteral(var value, var type, var returnType) -> {
+                if (value instanceof Long l) {
+                    out.writeByte(LONG_LITERAL);
+                    out.writeLong(l);
+                } else {
+                    out.writeByte(BIG_LITERAL);
+                    bigInteger((BigInteger) value);
+                }
+            }
+            case ResolvedBit.Expression.StringLiteral(var value, var type, var returnType) -> {
+                out.writeByte(STRING_LITERAL);
+                string(value);
+            }
+            case ResolvedBit.Expression.BooleanLiteral(var value, var type, var returnType) -> {
+                out.writeByte(BOOLEAN_LITERAL);
+                out.writeBoolean(value);
+            }
+            case ResolvedBit.Expression.Minus(var lhs, var rhs, var primitive, var type, var returnType) -> arithmetic(MINUS, lhs, rhs, primitive);
+            case ResolvedBit.Expression.Plus(var lhs, var rhs, var primitive, var type, var returnType) -> arithmetic(PLUS, lhs, rhs, primitive);
+            case ResolvedBit.Expression.Multiply(var lhs, var rhs, var primitive, var type, var returnType) -> arithmetic(MULTIPLY, lhs, rhs, primitive);
+            case ResolvedBit.Expression.Divide(var lhs, var rhs, var primitive, var type, var returnType) -> arithmetic(DIVIDE, lhs, rhs, primitive);
+            case ResolvedBit.Expression.GreaterThan(var lhs, var rhs, var primitive, var type, var returnType) -> arithmetic(GREATER_THAN, lhs, rhs, primitive);
+            case ResolvedBit.Expression.GreaterThanOrEqual(var lhs, var rhs, var primitive, var type, var returnType) -> arithmetic(GREATER_THAN_OR_EQUAL, lhs, rhs, primitive);
+            case ResolvedBit.Expression.LessThan(var lhs, var rhs, var primitive, var type, var returnType) -> arithmetic(LESS_THAN, lhs, rhs, primitive);
+            case ResolvedBit.Expression.LessThanOrEqual(var lhs, var rhs, var primitive, var type, var returnType) -> arithmetic(LESS_THAN_OR_EQUAL, lhs, rhs, primitive);
+            case ResolvedBit.Expression.Equal(var lhs, var rhs, var type, var returnType) -> binary(EQUAL, lhs, rhs);
+            case ResolvedBit.Expression.NotEqual(var lhs, var rhs, var type, var returnType) -> binary(NOT_EQUAL, lhs, rhs);
+            case ResolvedBit.Expression.And(var lhs, var rhs, var type, var returnType) -> binary(AND, lhs, rhs);
+            case ResolvedBit.Expression.Or(var lhs, var rhs, var type, var returnType) -> binary(OR, lhs, rhs);
+            case ResolvedBit.Expression.Not(var operand, var type, var returnType) -> {
+                out.writeByte(NOT);
+                bit(operand);
+            }
+            case ResolvedBit.Expression.If(var condition, var thenBranch, var elseBranch, var type, var returnType) -> {
+                out.writeByte(IF);
+                bit(condition);
+                bit(thenBranch);
+                bit(elseBranch);
+            }
+            case ResolvedBit.Expression.While(var condition, var body, var abrupt, var type, var returnType) -> {
+                out.writeByte(WHILE);
+                bit(condition);
+                bit(body);
+                out.writeBoolean(abrupt);
+            }
+            case ResolvedBit.Expression.As(var operand, var type, var returnType) -> {
+                out.writeByte(AS);
+                bit(operand);
+            }
+            case ResolvedBit.Expression.Is(var operand, var checkType, var type, var returnType) -> {
+                out.writeByte(IS);
+                bit(operand);
+                type(checkType);
+            }
+            case ResolvedBit.Expression.Access(var operand, var field, var slot, var intrinsic, var type, var returnType) -> {
+                out.writeByte(ACCESS);
+                bit(operand);
+                string(field);
+                number(slot);
+                out.writeBoolean(intrinsic);
+            }
+            case ResolvedBit.Expression.AccessExtension(var operand, var generics, var name, var type, var returnType) -> {
+                out.writeByte(ACCESS_EXTENSION);
+                bit(operand);
+                types(generics);
+                symbol(name);
+            }
+            case ResolvedBit.Expression.Struct(var fields, var type, var returnType) -> {
+                out.writeByte(STRUCT_LITERAL);
+                number(fields.size());
+                for (var field : fields.entrySet()) {
+                    string(field.getKey());
+                    bit(field.getValue());
+                }
+            }
+            case ResolvedBit.Expression.Array(var elements, var primitive, var type, var returnType) -> {
+                out.writeByte(ARRAY);
+                bits(elements);
+                out.writeBoolean(primitive);
+            }
+            case ResolvedBit.Expression.Function(var generics, var parameters, var body, var frame, var type, var returnType) -> {
+                out.writeByte(LAMBDA);
+                generics(generics);
+                number(parameters.size());
+                for (var parameter : parameters) {
+                    symbol(parameter.name());
+                    type(parameter.type());
+                }
+                bit(body);
+                frame(frame);
+            }
+            case ResolvedBit.Expression.Instantiation(var className, var arguments, var generics, var type, var returnType) -> {
+                out.writeByte(INSTANTIATION);
+                symbol(className);
+                bits(arguments);
+                types(generics);
+            }
+            case ResolvedBit.Expression.Break ignored -> out.writeByte(BREAK);
+            case ResolvedBit.Expression.Continue ignored -> out.writeByte(CONTINUE);
+            case ResolvedBit.Expression.Return(var value, var type, var returnType) -> {
+                out.writeByte(RETURN);
+                bit(value);
+            }
+        }
+        type(expression.type());
+        type(expression.returnType());
+    }
+
+    private void arithmetic(int tag, ResolvedBit.Expression lhs, ResolvedBit.Expression rhs, boolean primitive) throws IOException {
+        binary(tag, lhs, rhs);
+        out.writeBoolean(primitive);
+    }
+
+    private void binary(int tag, ResolvedBit.Expression lhs, ResolvedBit.Expression rhs) throws IOException {
+        out.writeByte(tag);
+        bit(lhs);
+        bit(rhs);
+    }
+
+    private void bits(List<? extends ResolvedBit> bits) throws IOException {
+        number(bits.size());
+        for (var bit : bits) {
+            bit(bit);
+        }
+    }
+
+    private void function(ResolvedBit.Declaration.Function function) throws IOException {
+        symbol(function.name());
+        generics(function.generics());
+        number(function.parameters().size());
+        for (var parameter : function.parameters()) {
+            symbol(parameter.name());
+            type(parameter.type());
+        }
+        bit(function.body());
+        type(function.type());
+        frame(function.frame());
+    }
+
+    private void generics(List<ResolvedBit.GenericDeclaration> generics) throws IOException {
+        number(generics.size());
+        for (var generic : generics) {
+            symbol(generic.name());
+            type(generic.extendsType());
+            type(generic.type());
+        }
+    }
+
+    private void frame(ResolvedBit.FrameLayout frame) throws IOException {
+        number(frame.size());
+        number(frame.captures().size());
+        for (var capture : frame.captures()) {
+            symbol(capture.source());
+            symbol(capture.target());
+        }
+    }
+
+    private void symbol(ResolvedBit.Symbol symbol) throws IOException {
+        if (symbol == null) {
+            out.writeByte(NULL);
+            return;
+        }
+        out.writeByte(1 + symbol.storage().ordinal());
+        string(symbol.name());
+        if (symbol.storage() != ResolvedBit.Symbol.Storage.GLOBAL) {
+            number(symbol.slot());
+        }
+        var id = symbol.id();
+        if (id < builtins) {
+            out.writeByte(BUILTIN);
+            number(id);
+        } else if (own(symbol)) {
+            out.writeByte(OWN);
+            number(id - base);
+        } else {
+            for (var entry : imported.entrySet()) {
+                var other = entry.getValue();
+                if (other != null && id >= other.base() && id < other.end()) {
+                    out.writeByte(IMPORTED);
+                    string(entry.getKey());
+                    number(id - other.base());
+                    return;
+                }
+            }
+            throw new IOException("Symbol not declared by an imported package: " + symbol);
+        }
+    }
+
+    private void types(List<? extends Type> types) throws IOException {
+        number(types.size());
+        for (var type : types) {
+            type(type);
+        }
+    }
+
+    private void type(Type type) throws IOException {
+        if (type == null) {
+            out.writeByte(NULL);
+            return;
+        }
+        var index = types.get(type);
+        if (index != null) {
+            out.writeByte(REFERENCE);
+            number(index);
+            return;
+        }
+        if (type == any()) {
+            out.writeByte(ANY);
+            return;
+        }
+        if (type == never()) {
+            out.writeByte(NEVER);
+            return;
+        }
+        if (type == integer()) {
+            out.writeByte(INTEGER);
+            return;
+        }
+        if (type == Types.string()) {
+            out.writeByte(STRING);
+            return;
+        }
+        switch (type) {
+            case Type.Struct(var fields) -> {
+                out.writeByte(STRUCT);
+                types.put(type, nextType++);
+                number(fields.size());
+                for (var field : fields.entrySet()) {
+                    string(field.getKey());
+                    type(field.getValue());
+                }
+                return;
+            }
+            case Type.Nominal(var name) -> {
+                out.writeByte(NOMINAL);
+                string(name);
+            }
+            case Type.NumberLiteral(var value) -> {
+                out.writeByte(NUMBER);
+                bigInteger(value);
+            }
+            case Type.Range(var lo, var hi) -> {
+                out.writeByte(RANGE);
+                out.writeBoolean(lo != null);
+                if (lo != null) bigInteger(lo);
+                out.writeBoolean(hi != null);
+                if (hi != null) bigInteger(hi);
+            }
+            case Type.Union(var members) -> {
+                out.writeByte(UNION);
+                types(List.of(members));
+            }
+            case Type.Intersection(var members) -> {
+                out.writeByte(INTERSECTION);
+                types(List.of(members));
+            }
+            case Type.Function(var returnType, var generics, var parameters) -> {
+                out.writeByte(FUNCTION);
+                type(returnType);
+                types(generics);
+                types(List.of(parameters));
+            }
+            case Type.TypeVariable variable -> {
+                out.writeByte(VARIABLE);
+                type(variable.bounds());
+                symbol(variable.name());
+            }
+            default -> throw new IOException("Type can't be written: " + type);
+        }
+        types.put(type, nextType++);
+    }
+
+    private void typeExpression(Bit.TypeExpression expression) throws IOException {
+        switch (expression) {
+            case Bit.TypeExpression.Identifier(var name) -> {
+                out.writeByte(TYPE_IDENTIFIER);
+                string(name);
+            }
+            case Bit.TypeExpression.NumberLiteral(var value) -> {
+                out.writeByte(TYPE_NUMBER);
+                string(value);
+            }
+            case Bit.TypeExpression.StringLiteral(var value) -> {
+                out.writeByte(TYPE_STRING);
+                string(value);
+            }
+            case Bit.TypeExpression.BooleanLiteral(var value) -> {
+                out.writeByte(TYPE_BOOLEAN);
+                out.writeBoolean(value);
+            }
+            case Bit.TypeExpression.Struct(var fields) -> {
+                out.writeByte(TYPE_STRUCT);
+                number(fields.size());
+                for (var field : fields.entrySet()) {
+                    string(field.getKey());
+                    typeExpression(field.getValue());
+                }
+            }
+            case Bit.TypeExpression.Minus(var lhs, var rhs) -> typeExpressions(TYPE_MINUS, lhs, rhs);
+            case Bit.TypeExpression.Plus(var lhs, var rhs) -> typeExpressions(TYPE_PLUS, lhs, rhs);
+            case Bit.TypeExpression.Multiply(var lhs, var rhs) -> typeExpressions(TYPE_MULTIPLY, lhs, rhs);
+            case Bit.TypeExpression.Divide(var lhs, var rhs) -> typeExpressions(TYPE_DIVIDE, lhs, rhs);
+            case Bit.TypeExpression.Union(var lhs, var rhs) -> typeExpressions(TYPE_UNION, lhs, rhs);
+            case Bit.TypeExpression.Intersection(var lhs, var rhs) -> typeExpressions(TYPE_INTERSECTION, lhs, rhs);
+            case Bit.TypeExpression.Call(var callee, var arguments) -> {
+                out.writeByte(TYPE_CALL);
+                string(callee.name());
+                number(arguments.size());
+                for (var argument : arguments) {
+                    typeExpression(argument);
+                }
+            }
+            case Bit.TypeExpression.Function(var parameters, var returnType) -> {
+                out.writeByte(TYPE_FUNCTION);
+                number(parameters.size());
+                for (var parameter : parameters) {
+                    typeExpression(parameter);
+                }
+                typeExpression(returnType);
+            }
+            case Bit.TypeExpression.Match(var operand, var cases) -> {
+                out.writeByte(TYPE_MATCH);
+                typeExpression(operand);
+                number(cases.size());
+                for (var matchCase : cases) {
+                    if (matchCase.pattern() instanceof Bit.TypeExpression.Match.Pattern.Expression(var pattern)) {
+                        out.writeBoolean(true);
+                        typeExpression(pattern);
+                    } else {
+                        out.writeBoolean(false);
+                    }
+                    typeExpression(matchCase.value());
+                }
+            }
+            case null -> out.writeByte(NULL);
+        }
+    }
+
+    private void typeExpressions(int tag, Bit.TypeExpression lhs, Bit.TypeExpression rhs) throws IOException {
+        out.writeByte(tag);
+        typeExpression(lhs);
+        typeExpression(rhs);
+    }
+
+    private void bigInteger(BigInteger value) throws IOException {
+        var magnitude = value.toByteArray();
+        number(magnitude.length);
+        out.write(magnitude);
+    }
+
+    // a string is written the first time it is met and referred to by its index after that
+    private void string(String string) throws IOException {
+        if (string == null) {
+            number(-1);
+            return;
+        }
+        var index = strings.get(string);
+        if (index != null) {
+            number(index);
+            return;
+        }
+        strings.put(string, strings.size());
+        var utf8 = string.getBytes(StandardCharsets.UTF_8);
+        number(-2 - utf8.length);
+        out.write(utf8);
+    }
+
+    // a variable-length int, small magnitudes of either sign take one byte
+    private void number(int value) throws IOException {
+        var zigzag = (value << 1) ^ (value >> 31);
+        while ((zigzag & ~0x7F) != 0) {
+            out.writeByte((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        out.writeByte(zigzag);
+    }
+}
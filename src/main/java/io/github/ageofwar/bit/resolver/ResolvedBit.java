@@ -13,19 +13,20 @@ public sealed interface ResolvedBit {
 
         record Variable(Symbol name, Expression value, io.github.ageofwar.bit.types.Type type) implements Declaration {}
         record Value(Symbol name, Expression value, io.github.ageofwar.bit.types.Type type) implements Declaration {}
-        record Function(Symbol name, List<GenericDeclaration> generics, List<Parameter> parameters, Expression body, io.github.ageofwar.bit.types.Type type) implements Declaration {
+        record Function(Symbol name, List<GenericDeclaration> generics, List<Parameter> parameters, Expression body, io.github.ageofwar.bit.types.Type type, FrameLayout frame) implements Declaration {
             public record Parameter(Symbol name, io.github.ageofwar.bit.types.Type type) {}
         }
         record Type(Symbol name, Symbol valueName, List<TypeParameter> parameters, io.github.ageofwar.bit.types.Type value) implements Declaration {
             public record TypeParameter(io.github.ageofwar.bit.types.Type type) {}
         }
         record Class(Symbol name, Symbol valueName, Symbol thisSymbol, List<GenericDeclaration> generics, Constructor constructor, List<Member> members, io.github.ageofwar.bit.types.Type type) implements Declaration {
-            public record Member(Declaration declaration, Visibility visibility) {
+            // receiver binds the instance a method is called on, it is null for the other members
+            public record Member(Declaration declaration, Symbol receiver, Visibility visibility) {
                 public enum Visibility {
                     PUBLIC, PRIVATE
                 }
             }
-            public record Constructor(List<Parameter> parameters) {
+            public record Constructor(List<Parameter> parameters, FrameLayout frame) {
                 public record Parameter(Symbol name, io.github.ageofwar.bit.types.Type type) {}
             }
         }
@@ -35,47 +36,58 @@ public sealed interface ResolvedBit {
                 return null;
             }
 
-            public record Function(Symbol name, Symbol thisSymbol, List<GenericDeclaration> generics, List<Parameter> parameters, Expression body, io.github.ageofwar.bit.types.Type type) {
+            public record Function(Symbol name, Symbol thisSymbol, List<GenericDeclaration> generics, List<Parameter> parameters, Expression body, io.github.ageofwar.bit.types.Type type, FrameLayout frame) {
                 public record Parameter(Symbol name, io.github.ageofwar.bit.types.Type type) {}
             }
         }
     }
 
     record VariableAssignment(Symbol name, Expression value) implements ResolvedBit {}
-    record VariableFieldAssignment(Expression struct, String name, Expression value) implements ResolvedBit {}
+    // slot is the index of the field in a struct whose fields are exactly those of the static type, -1 if unknown
+    record VariableFieldAssignment(Expression struct, String name, int slot, Expression value) implements ResolvedBit {}
 
     sealed interface Expression extends ResolvedBit {
         Type type();
         Type returnType();
 
         record Identifier(Symbol name, Type type, Type returnType) implements Expression {}
-        record Call(Expression callee, List<Expression> arguments, List<Type> generics, Type type, Type returnType) implements Expression {}
-        record Block(List<ResolvedBit> statements, Type type, Type returnType) implements Expression {}
-        record NumberLiteral(String value, Type type, Type returnType) implements Expression {}
+        // a tail call is the last thing its function computes, its value is the one the function returns; the engines
+        // run it in place of the caller, so recursion through tail calls doesn't grow the stack
+        record Call(Expression callee, List<Expression> arguments, List<Type> generics, boolean tail, Type type, Type returnType) implements Expression {}
+        // a call of an extension: the function gets the receiver, its generics, the generics of the call and the
+        // arguments at once, without binding it to the receiver first
+        record CallExtension(Expression receiver, Symbol name, List<Type> receiverGenerics, List<Expression> arguments, List<Type> generics, boolean tail, Type type, Type returnType) implements Expression {}
+        // abrupt blocks and loops contain a break, continue or return of their own function, which they check for after
+        // every statement or iteration
+        record Block(List<ResolvedBit> statements, boolean abrupt, Type type, Type returnType) implements Expression {}
+        record NumberLiteral(Number value, Type type, Type returnType) implements Expression {}
         record StringLiteral(String value, Type type, Type returnType) implements Expression {}
         record BooleanLiteral(boolean value, Type type, Type returnType) implements Expression {}
-        record Minus(Expression lhs, Expression rhs, Type type, Type returnType) implements Expression {}
-        record Plus(Expression lhs, Expression rhs, Type type, Type returnType) implements Expression {}
-        record Multiply(Expression lhs, Expression rhs, Type type, Type returnType) implements Expression {}
-        record Divide(Expression lhs, Expression rhs, Type type, Type returnType) implements Expression {}
-        record GreaterThan(Expression lhs, Expression rhs, Type type, Type returnType) implements Expression {}
-        record GreaterThanOrEqual(Expression lhs, Expression rhs, Type type, Type returnType) implements Expression {}
-        record LessThan(Expression lhs, Expression rhs, Type type, Type returnType) implements Expression {}
-        record LessThanOrEqual(Expression lhs, Expression rhs, Type type, Type returnType) implements Expression {}
+        // primitive operations have operands and a result that provably fit in a long
+        record Minus(Expression lhs, Expression rhs, boolean primitive, Type type, Type returnType) implements Expression {}
+        record Plus(Expression lhs, Expression rhs, boolean primitive, Type type, Type returnType) implements Expression {}
+        record Multiply(Expression lhs, Expression rhs, boolean primitive, Type type, Type returnType) implements Expression {}
+        record Divide(Expression lhs, Expression rhs, boolean primitive, Type type, Type returnType) implements Expression {}
+        record GreaterThan(Expression lhs, Expression rhs, boolean primitive, Type type, Type returnType) implements Expression {}
+        record GreaterThanOrEqual(Expression lhs, Expression rhs, boolean primitive, Type type, Type returnType) implements Expression {}
+        record LessThan(Expression lhs, Expression rhs, boolean primitive, Type type, Type returnType) implements Expression {}
+        record LessThanOrEqual(Expression lhs, Expression rhs, boolean primitive, Type type, Type returnType) implements Expression {}
         record Equal(Expression lhs, Expression rhs, Type type, Type returnType) implements Expression {}
         record NotEqual(Expression lhs, Expression rhs, Type type, Type returnType) implements Expression {}
         record And(Expression lhs, Expression rhs, Type type, Type returnType) implements Expression {}
         record Or(Expression lhs, Expression rhs, Type type, Type returnType) implements Expression {}
         record Not(Expression expression, Type type, Type returnType) implements Expression {}
         record If(Expression condition, Expression thenBranch, Expression elseBranch, Type type, Type returnType) implements Expression {}
-        record While(Expression condition, Expression body, Type type, Type returnType) implements Expression {}
+        record While(Expression condition, Expression body, boolean abrupt, Type type, Type returnType) implements Expression {}
         record As(Expression expression, Type type, Type returnType) implements Expression {}
         record Is(Expression expression, Type checkType, Type type, Type returnType) implements Expression {}
-        record Access(Expression expression, String field, Type type, Type returnType) implements Expression {}
+        // an intrinsic access reads a member that strings, lists and sequences implement natively; a call of it skips
+        // materializing the member when the receiver turns out to be one of them. slot is a hint as in VariableFieldAssignment
+        record Access(Expression expression, String field, int slot, boolean intrinsic, Type type, Type returnType) implements Expression {}
         record AccessExtension(Expression expression, List<Type> generics, Symbol name, Type type, Type returnType) implements Expression {}
         record Struct(Map<String, Expression> fields, Type type, Type returnType) implements Expression {}
-        record Array(List<Expression> elements, Type type, Type returnType) implements Expression {}
-        record Function(List<GenericDeclaration> generics, List<Parameter> parameters, Expression body, Type type, Type returnType) implements Expression {
+        record Array(List<Expression> elements, boolean primitive, Type type, Type returnType) implements Expression {}
+        record Function(List<GenericDeclaration> generics, List<Parameter> parameters, Expression body, FrameLayout frame, Type type, Type returnType) implements Expression {
             public record Parameter(Symbol name, Type type) {}
         }
         record Instantiation(Symbol className, List<Expression> arguments, List<Type> generics, Type type, Type returnType) implements Expression {}
@@ -87,7 +99,23 @@ public sealed interface ResolvedBit {
 
     record GenericDeclaration(Symbol name, Type extendsType, Type type) {}
 
-    record Symbol(String name, int id) {
+    record FrameLayout(int size, List<Capture> captures) {
+        public static final FrameLayout EMPTY = new FrameLayout(0, List.of());
+
+        // source is read from the frame creating the closure, target is its slot in the closure frame
+        public record Capture(Symbol source, Symbol target) {}
+    }
+
+    record Symbol(String name, int id, Storage storage, int slot) {
+        public Symbol(String name, int id) {
+            this(name, id, Storage.GLOBAL, id);
+        }
+
+        // cells are mutable locals, boxed so that closures capturing them share the same variable
+        public enum Storage {
+            GLOBAL, LOCAL, CELL
+        }
+
         @Override
         public String toString() {
             return name + "#" + id;
@@ -1,6 +1,6 @@
 package io.github.ageofwar.bit.resolver;
 
-import io.github.ageofwar.bit.lexer.Lexer;
+import io.github.ageofwar.bit.lexer.SpanLexer;
 import io.github.ageofwar.bit.packages.PackageResolver;
 import io.github.ageofwar.bit.parser.Bit;
 import io.github.ageofwar.bit.parser.Parser;
@@ -8,61 +8,215 @@ import io.github.ageofwar.bit.types.Type;
 import io.github.ageofwar.bit.types.TypeFunction;
 import io.github.ageofwar.bit.types.Types;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import static io.github.ageofwar.bit.types.Types.*;
 
 public class Resolver {
+    // members implemented natively by strings, lists and sequences, with their arity
+    private static final Map<String, Integer> INTRINSICS = Map.of("size", 0, "get", 1, "set", 2, "add", 1, "remove", 1, "sequence", 0, "next", 0);
+    // the symbols every environment starts with, they have the same ids in every program
+    public static final int BUILTINS = ResolverEnvironment.init().variables();
+
     private final PackageResolver packageResolver;
+    private final PackageCache cache;
+    private final ForkJoinPool pool;
+    private final Mode mode;
+    // the bodies of the imported functions not resolved yet, by the symbol their signature declared
+    private final Map<ResolvedBit.Symbol, Pending> pending = Collections.synchronizedMap(new IdentityHashMap<>());
+    // the symbols declared by a body resolved after its package are numbered here, apart from every package range
+    private final AtomicInteger lateIds = new AtomicInteger(Integer.MIN_VALUE);
+
+    // strict resolves every function of every imported package; lazy only declares their signatures, and resolves a
+    // body the first time the function is referenced from the program, from the values of the packages or from another
+    // body being resolved, so that the functions the program never reaches are neither checked nor run
+    public enum Mode {
+        STRICT, LAZY
+    }
 
     public Resolver(PackageResolver packageResolver) {
-        this.packageResolver = packageResolver;
+        this(packageResolver, null);
     }
 
-    public ResolvedBit.Program resolve(Bit.Program program) {
-        var environment = ResolverEnvironment.init();
-        return resolve(program, environment, new Bit.Program.Import.IdentifierSelector.All(), new HashMap<>());
+    // imported packages are read from the cache when they haven't changed since they were resolved, and written to it
+    // otherwise; a null cache resolves all of them
+    public Resolver(PackageResolver packageResolver, PackageCache cache) {
+        this(packageResolver, cache, ForkJoinPool.commonPool());
     }
 
-    private ResolvedBit.Program resolve(Bit.Program program, ResolverEnvironment environment, Bit.Program.Import.IdentifierSelector publicDeclarations, Map<String, ResolvedBit.Program> alreadyImported) {
-        var declarations = new ArrayList<ResolvedBit.Declaration>();
+    // imported packages that don't depend on each other are read, parsed and resolved at the same time on the pool
+    public Resolver(PackageResolver packageResolver, PackageCache cache, ForkJoinPool pool) {
+        this(packageResolver, cache, pool, Mode.STRICT);
+    }
 
-        var mergedEnvironment = new ResolverEnvironment(environment);
-        for (var importDecl : program.imports()) {
-            var key = String.join(".", importDecl.path());
-            var resolvedProgram = alreadyImported.get(key);
-            if (!alreadyImported.containsKey(key)) {
-                alreadyImported.put(key, null); // mark as in-progress to detect cyclic imports
-                var importedProgram = packageResolver.resolvePackage(importDecl.path());
-                var lexer = new Lexer(importedProgram);
-                var parser = new Parser(lexer);
-                var importedBitProgram = parser.nextProgram();
-                var importEnv = new ResolverEnvironment(environment);
-                resolvedProgram = resolve(importedBitProgram, importEnv, importDecl.identifiers(), alreadyImported);
-                alreadyImported.put(key, resolvedProgram);
-                declarations.addAll(resolvedProgram.declarations());
-            } else if (resolvedProgram == null) {
-                throw new ResolverException("Cyclic import detected for package: " + key);
-            }
+    // a lazy resolver reads cached packages but doesn't write them, since the packages it resolves are incomplete
+    public Resolver(PackageResolver packageResolver, PackageCache cache, ForkJoinPool pool, Mode mode) {
+        this.packageResolver = packageResolver;
+        this.cache = cache;
+        this.pool = pool;
+        this.mode = mode;
+    }
 
-            mergedEnvironment.mergeFrom(resolvedProgram.environment());
+    public ResolvedBit.Program resolve(Bit.Program program) {
+        var builtins = ResolverEnvironment.init();
+        var imports = new ImportGraph(this, builtins, cache, pool).resolve(program.imports());
+        var environment = builtins.newPackageEnvironment(imports.end());
+        var mergedEnvironment = new ResolverEnvironment(environment);
+        for (var imported : imports.imported()) {
+            mergedEnvironment.mergeFrom(imported.environment());
         }
+        var resolved = resolve(program.declarations(), environment, mergedEnvironment, new Bit.Program.Import.IdentifierSelector.All(), new ArrayList<>(imports.declarations()), false);
+        if (mode == Mode.STRICT) {
+            return resolved;
+        }
+        var declarations = link(resolved.declarations());
+        pending.clear();
+        return new ResolvedBit.Program(declarations, resolved.environment(), resolved.variables());
+    }
 
+    boolean lazy() {
+        return mode == Mode.LAZY;
+    }
+
+    // the functions of a package are declared lazily in lazy mode
+    ResolvedBit.Program resolvePackage(List<Bit.Declaration> programDeclarations, ResolverEnvironment environment, ResolverEnvironment mergedEnvironment, Bit.Program.Import.IdentifierSelector publicDeclarations) {
+        return resolve(programDeclarations, environment, mergedEnvironment, publicDeclarations, new ArrayList<>(), lazy());
+    }
+
+    private ResolvedBit.Program resolve(List<Bit.Declaration> programDeclarations, ResolverEnvironment environment, ResolverEnvironment mergedEnvironment, Bit.Program.Import.IdentifierSelector publicDeclarations, List<ResolvedBit.Declaration> declarations, boolean lazy) {
         var publicEnvironment = new ResolverEnvironment(mergedEnvironment);
-        for (var declaration : program.declarations()) {
-            var resolved = resolve(
-                    declaration,
-                    publicDeclarations.isIdentifier(declaration.name())
-                            ? publicEnvironment
-                            : mergedEnvironment
-            );
+        for (var declaration : programDeclarations) {
+            var declarationEnvironment = publicDeclarations.isIdentifier(declaration.name())
+                    ? publicEnvironment
+                    : mergedEnvironment;
+            var resolved = switch (declaration) {
+                case Bit.Declaration.Function function -> resolve(function, declarationEnvironment, declarationEnvironment.newFunctionEnvironment(), lazy);
+                case Bit.Declaration.Implementation implementation -> resolve(implementation, declarationEnvironment, lazy);
+                default -> resolve(declaration, declarationEnvironment);
+            };
             declarations.add(resolved);
         }
 
         return new ResolvedBit.Program(declarations, publicEnvironment, environment.variables());
     }
 
+    // a body resolved on first reference; the reference a recursive body makes to its own function finds it started,
+    // and only needs the signature
+    private static final class Pending {
+        private Supplier<?> body;
+        private Object resolved;
+
+        Pending(Supplier<?> body) {
+            this.body = body;
+        }
+
+        Object force() {
+            if (body != null) {
+                var started = body;
+                body = null;
+                resolved = started.get();
+            }
+            return resolved;
+        }
+    }
+
+    private void defer(ResolvedBit.Symbol symbol, Supplier<?> body) {
+        pending.put(symbol, new Pending(body));
+    }
+
+    // resolves the body of the function a symbol refers to, if it is still pending. Packages resolved at the same
+    // time may reach the same function, so bodies are resolved one at a time
+    private void reference(ResolvedBit.Symbol symbol) {
+        if (mode == Mode.STRICT) return;
+        synchronized (pending) {
+            var deferred = pending.get(symbol);
+            if (deferred != null) deferred.force();
+        }
+    }
+
+    private Object resolved(ResolvedBit.Symbol symbol) {
+        var deferred = pending.get(symbol);
+        return deferred != null ? deferred.resolved : null;
+    }
+
+    // puts the resolved bodies in place of the signatures the packages declared, and leaves out the functions that
+    // were never referenced: nothing reachable can call them
+    private List<ResolvedBit.Declaration> link(List<ResolvedBit.Declaration> declarations) {
+        var completed = new ArrayList<ResolvedBit.Declaration>(declarations.size());
+        for (var declaration : declarations) {
+            switch (declaration) {
+                case ResolvedBit.Declaration.Function function when function.body() == null -> {
+                    if (resolved(function.name()) instanceof ResolvedBit.Declaration.Function resolved) {
+                        completed.add(resolved);
+                    }
+                }
+                case ResolvedBit.Declaration.Implementation implementation -> {
+                    var extensions = new ArrayList<ResolvedBit.Declaration.Implementation.Function>();
+                    for (var extension : implementation.extensions()) {
+                        if (extension.body() != null) {
+                            extensions.add(extension);
+                        } else if (resolved(extension.name()) instanceof ResolvedBit.Declaration.Implementation.Function resolved) {
+                            extensions.add(resolved);
+                        }
+                    }
+                    completed.add(new ResolvedBit.Declaration.Implementation(implementation.generics(), implementation.receiver(), extensions));
+                }
+                default -> completed.add(declaration);
+            }
+        }
+        return completed;
+    }
+
+    // a resolved package, with the symbols from base to end; key identifies its source and those of its imports, it is
+    // null without a cache
+    record Imported(ResolverEnvironment environment, String key, int base, int end) {}
+
+    // a package written by PackageWriter, declared in an environment of its own, or null when it can't be read
+    ResolvedBit.Program read(byte[] payload, ResolverEnvironment environment, List<Imported> dependencies, Map<String, Imported> imported) {
+        try {
+            var reader = new PackageReader(payload, this, environment.variables(), imported);
+            var declarations = reader.declarations();
+            var mergedEnvironment = merge(environment, dependencies);
+            reader.environment(mergedEnvironment);
+            var publicEnvironment = new ResolverEnvironment(mergedEnvironment);
+            reader.environment(publicEnvironment);
+            environment.reserve(reader.count());
+            return new ResolvedBit.Program(declarations, publicEnvironment, environment.variables());
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    static ResolverEnvironment merge(ResolverEnvironment environment, List<Imported> dependencies) {
+        var mergedEnvironment = new ResolverEnvironment(environment);
+        for (var dependency : dependencies) {
+            mergedEnvironment.mergeFrom(dependency.environment());
+        }
+        return mergedEnvironment;
+    }
+
+    String source(String[] path) {
+        try (var reader = packageResolver.resolvePackage(path)) {
+            var source = new StringWriter();
+            reader.transferTo(source);
+            return source.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read package: " + String.join(".", path), e);
+        }
+    }
+
+    static Bit.Program parse(String source) {
+        return new Parser(new SpanLexer(source)).nextProgram();
+    }
+
 
     private ResolvedBit.Declaration resolve(Bit.Declaration declaration, ResolverEnvironment environment) {
         return switch (declaration) {
@@ -99,7 +253,7 @@ public class Resolver {
                 if (!extend(resolvedExpression.type(), type)) {
                     throw new ResolverException("Type mismatch: expected " + type + " but got " + resolvedExpression.type());
                 }
-                return new ResolvedBit.Declaration.VariableFieldAssignment(struct, field, resolvedExpression);
+                return new ResolvedBit.Declaration.VariableFieldAssignment(struct, field, slot(fields, field), resolvedExpression);
             } else {
                 throw new ResolverException("Type '" + structType + "' is not a struct type.");
             }
@@ -133,7 +287,11 @@ public class Resolver {
     }
 
     private ResolvedBit.Declaration.Function resolve(Bit.Declaration.Function function, ResolverEnvironment environment) {
-        var functionEnvironment = new ResolverEnvironment(environment);
+        return resolve(function, environment, environment.newFunctionEnvironment(), false);
+    }
+
+    // a lazy function is declared with a null body and frame, that the body resolved later replaces
+    private ResolvedBit.Declaration.Function resolve(Bit.Declaration.Function function, ResolverEnvironment environment, ResolverEnvironment functionEnvironment, boolean lazy) {
 
         var generics = new ArrayList<ResolvedBit.GenericDeclaration>();
         for (var generic : function.generics()) {
@@ -156,16 +314,24 @@ public class Resolver {
         var functionType = function(returnType, generics.stream().map(g -> (Type.TypeVariable) g.type()).toList(), parameters.stream().map(ResolvedBit.Declaration.Function.Parameter::type).toArray(Type[]::new));
         var symbol = environment.declareValueType(function.name(), functionType);
 
-        var body = resolve(function.body(), functionEnvironment);
-        var inferredReturnType = union(body.type(), body.returnType());
-        if (!extend(inferredReturnType, returnType)) {
-            throw new ResolverException("Type mismatch: expected " + returnType + " but got " + inferredReturnType);
+        var bodyEnvironment = lazy ? functionEnvironment.lateEnvironment(lateIds) : functionEnvironment;
+        Supplier<ResolvedBit.Declaration.Function> resolveBody = () -> {
+            var body = resolve(function.body(), bodyEnvironment);
+            var inferredReturnType = union(body.type(), body.returnType());
+            if (!extend(inferredReturnType, returnType)) {
+                throw new ResolverException("Type mismatch: expected " + returnType + " but got " + inferredReturnType);
+            }
+            return new ResolvedBit.Declaration.Function(symbol, generics, parameters, TailCalls.mark(body), functionType, functionEnvironment.frameLayout());
+        };
+        if (lazy) {
+            defer(symbol, resolveBody);
+            return new ResolvedBit.Declaration.Function(symbol, generics, parameters, null, functionType, null);
         }
-        return new ResolvedBit.Declaration.Function(symbol, generics, parameters, body, functionType);
+        return resolveBody.get();
     }
 
     private ResolvedBit.Declaration.Class resolve(Bit.Declaration.Class classDeclaration, ResolverEnvironment environment) {
-        var membersEnvironment = new ResolverEnvironment(environment);
+        var membersEnvironment = environment.newFunctionEnvironment();
 
         var generics = new ArrayList<ResolvedBit.GenericDeclaration>();
         if (classDeclaration.generics() != null) {
@@ -184,18 +350,28 @@ public class Resolver {
             constructorParameters.add(new ResolvedBit.Declaration.Class.Constructor.Parameter(symbol, resolve(param.type(), membersEnvironment)));
         }
 
-        var constructor = new ResolvedBit.Declaration.Class.Constructor(constructorParameters);
-
         var bodyEnvironment = new ResolverEnvironment(membersEnvironment);
-        var methodEnvironment = new ResolverEnvironment(environment); // methods can't access constructor parameters
+        // methods can't access constructor parameters: they are created once with the class and get the instance as
+        // their first argument
+        var methodEnvironment = new ResolverEnvironment(environment);
         var resolvedMembers = new ArrayList<ResolvedBit.Declaration.Class.Member>();
         var thisType = new HashMap<String, Type>();
         var publicType = new HashMap<String, Type>();
-        var thisSymbol = methodEnvironment.declareValueType("this", struct(thisType));
+        var instanceType = recursiveStruct(thisType);
+        // the instance under construction, not visible to the members
+        var thisSymbol = new ResolverEnvironment(membersEnvironment).declareValueType("this", instanceType);
         for (var member : classDeclaration.members()) {
-            var resolvedDeclaration = resolve(member.declaration(), member.declaration() instanceof Bit.Declaration.Function ? methodEnvironment : bodyEnvironment);
+            ResolvedBit.Declaration resolvedDeclaration;
+            ResolvedBit.Symbol receiver = null;
+            if (member.declaration() instanceof Bit.Declaration.Function function) {
+                var functionEnvironment = methodEnvironment.newFunctionEnvironment();
+                receiver = functionEnvironment.declareValueType("this", instanceType);
+                resolvedDeclaration = resolve(function, methodEnvironment, functionEnvironment, false);
+            } else {
+                resolvedDeclaration = resolve(member.declaration(), bodyEnvironment);
+            }
             var visibility = member.visibility() == Bit.Declaration.Class.Member.Visibility.PUBLIC ? ResolvedBit.Declaration.Class.Member.Visibility.PUBLIC : ResolvedBit.Declaration.Class.Member.Visibility.PRIVATE;
-            resolvedMembers.add(new ResolvedBit.Declaration.Class.Member(resolvedDeclaration, visibility));
+            resolvedMembers.add(new ResolvedBit.Declaration.Class.Member(resolvedDeclaration, receiver, visibility));
             if (resolvedDeclaration instanceof ResolvedBit.Declaration.Class || resolvedDeclaration instanceof ResolvedBit.Declaration.Type) {
                 continue;
             }
@@ -211,21 +387,31 @@ public class Resolver {
             }
         }
 
+        close(instanceType);
+        var constructor = new ResolvedBit.Declaration.Class.Constructor(constructorParameters, membersEnvironment.frameLayout());
         var returnType = struct(publicType);
         var parameterTypes = constructorParameters.stream()
                 .map(ResolvedBit.Declaration.Class.Constructor.Parameter::type)
                 .toArray(Type[]::new);
 
-        var valueSymbol = generics.isEmpty() ? environment.declareType(classDeclaration.name(), returnType) : environment.declareFunctionType(classDeclaration.name(), new TypeFunction(args -> {
-            var t = complete(function(returnType, generics.stream().map(g -> (Type.TypeVariable) g.type()).toList(), parameterTypes), Arrays.stream(args).toList());
-            return ((Type.Function) t).returnType();
-        }));
+        ResolvedBit.Symbol valueSymbol;
+        if (generics.isEmpty()) {
+            valueSymbol = environment.declareType(classDeclaration.name(), returnType);
+        } else {
+            var definition = new ResolverEnvironment.Definition.Class(generics.stream().map(g -> (Type.TypeVariable) g.type()).toList(), returnType, List.of(parameterTypes));
+            valueSymbol = environment.declareFunctionType(classDeclaration.name(), typeFunction(definition, environment), definition);
+        }
         var symbol = environment.declareConstructor(classDeclaration.name(), function(returnType, generics.stream().map(g -> (Type.TypeVariable) g.type()).toList(), parameterTypes));
         return new ResolvedBit.Declaration.Class(symbol, valueSymbol, thisSymbol, generics, constructor, resolvedMembers, returnType);
     }
 
     private ResolvedBit.Declaration.Implementation resolve(Bit.Declaration.Implementation implementation, ResolverEnvironment environment) {
-        var extensionsEnvironment = new ResolverEnvironment(environment);
+        return resolve(implementation, environment, false);
+    }
+
+    // the extensions of a lazy implementation are declared with a null body and frame, as lazy functions are
+    private ResolvedBit.Declaration.Implementation resolve(Bit.Declaration.Implementation implementation, ResolverEnvironment environment, boolean lazy) {
+        var extensionsEnvironment = new ResolverEnvironment(environment, new FunctionScope(environment.scope()));
         var generics = new ArrayList<ResolvedBit.GenericDeclaration>();
         if (implementation.generics() != null) {
             for (var generic : implementation.generics()) {
@@ -241,7 +427,7 @@ public class Resolver {
 
         var extensions = new ArrayList<ResolvedBit.Declaration.Implementation.Function>();
         for (var func : implementation.extensions()) {
-            var functionEnvironment = new ResolverEnvironment(extensionsEnvironment);
+            var functionEnvironment = new ResolverEnvironment(extensionsEnvironment, extensionsEnvironment.scope().fork());
 
             var fnGenerics = new ArrayList<ResolvedBit.GenericDeclaration>();
             for (var generic : func.generics()) {
@@ -265,11 +451,20 @@ public class Resolver {
             var functionType = function(returnType, fnGenerics.stream().map(g -> (Type.TypeVariable) g.type()).toList(), parameters.stream().map(ResolvedBit.Declaration.Implementation.Function.Parameter::type).toArray(Type[]::new));
             var symbol = environment.declareExtensionType(func.name(), receiver, functionType, generics.stream().map(ResolvedBit.GenericDeclaration::type).toList());
 
-            var body = resolve(func.body(), functionEnvironment);
-            if (!extend(body.type(), returnType)) {
-                throw new ResolverException("Type mismatch: expected " + returnType + " but got " + body.type());
+            var bodyEnvironment = lazy ? functionEnvironment.lateEnvironment(lateIds) : functionEnvironment;
+            Supplier<ResolvedBit.Declaration.Implementation.Function> resolveBody = () -> {
+                var body = resolve(func.body(), bodyEnvironment);
+                if (!extend(body.type(), returnType)) {
+                    throw new ResolverException("Type mismatch: expected " + returnType + " but got " + body.type());
+                }
+                return new ResolvedBit.Declaration.Implementation.Function(symbol, thisSymbol, fnGenerics, parameters, TailCalls.mark(body), functionType, functionEnvironment.frameLayout());
+            };
+            if (lazy) {
+                defer(symbol, resolveBody);
+                extensions.add(new ResolvedBit.Declaration.Implementation.Function(symbol, thisSymbol, fnGenerics, parameters, null, functionType, null));
+            } else {
+                extensions.add(resolveBody.get());
             }
-            extensions.add(new ResolvedBit.Declaration.Implementation.Function(symbol, thisSymbol, fnGenerics, parameters, body, functionType));
         }
 
         return new ResolvedBit.Declaration.Implementation(generics, receiver, extensions);
@@ -294,28 +489,40 @@ public class Resolver {
             }
         } else {
             if (declaration.value() == null) {
-                var typeFunction = new TypeFunction((args) -> nominal(declaration.name()));
-                var symbol = environment.declareFunctionType(declaration.name(), typeFunction);
+                var definition = new ResolverEnvironment.Definition.Nominal(declaration.name());
+                var symbol = environment.declareFunctionType(declaration.name(), typeFunction(definition, environment), definition);
                 return new ResolvedBit.Declaration.Type(symbol, null, typeParameters, nominal(declaration.name()));
             } else {
-                // TODO recursive type functions
-                var typeFunction = new TypeFunction((args) -> {
-                    var newEnvironment = new ResolverEnvironment(environment);
-                    for (int i = 0; i < typeParameters.size(); i++) {
-                        var typeParameter = typeParameters.get(i);
-                        if (typeParameter == null) {
-                            continue;
-                        }
-                        newEnvironment.declareType(declaration.parameters().get(i).name(), args[i]);
-                    }
-                    return resolve(declaration.value(), newEnvironment);
-                });
-                var symbol = environment.declareFunctionType(declaration.name(), typeFunction);
+                var definition = new ResolverEnvironment.Definition.Alias(declaration);
+                var symbol = environment.declareFunctionType(declaration.name(), typeFunction(definition, environment), definition);
                 return new ResolvedBit.Declaration.Type(symbol, null, typeParameters, null);
             }
         }
     }
 
+    // the type function a definition declares in an environment; an alias resolves its value in that environment every
+    // time it is applied
+    TypeFunction typeFunction(ResolverEnvironment.Definition definition, ResolverEnvironment environment) {
+        return switch (definition) {
+            case ResolverEnvironment.Definition.Nominal(var name) -> new TypeFunction(args -> nominal(name));
+            case ResolverEnvironment.Definition.Class(var generics, var returnType, var parameters) -> new TypeFunction(args -> {
+                var t = complete(function(returnType, generics, parameters.toArray(Type[]::new)), Arrays.stream(args).toList());
+                return ((Type.Function) t).returnType();
+            });
+            // TODO recursive type functions
+            case ResolverEnvironment.Definition.Alias(var declaration) -> new TypeFunction(args -> {
+                var newEnvironment = new ResolverEnvironment(environment);
+                for (int i = 0; i < declaration.parameters().size(); i++) {
+                    if (declaration.parameters().get(i).type() == null) {
+                        continue;
+                    }
+                    newEnvironment.declareType(declaration.parameters().get(i).name(), args[i]);
+                }
+                return resolve(declaration.value(), newEnvironment);
+            });
+        };
+    }
+
     // expressions
 
     private ResolvedBit.Expression resolve(Bit.Expression expression, ResolverEnvironment environment) {
@@ -356,19 +563,23 @@ public class Resolver {
 
     private ResolvedBit.Expression.Return resolve(Bit.Expression.Return returnExpr, ResolverEnvironment environment) {
         var value = resolve(returnExpr.value(), environment);
+        environment.jump();
         return new ResolvedBit.Expression.Return(value, value.type(), value.type());
     }
 
     private ResolvedBit.Expression.Break resolve(Bit.Expression.Break breakExpr, ResolverEnvironment environment) {
+        environment.jump();
         return new ResolvedBit.Expression.Break(none(), never());
     }
 
     private ResolvedBit.Expression.Continue resolve(Bit.Expression.Continue continueStmt, ResolverEnvironment environment) {
+        environment.jump();
         return new ResolvedBit.Expression.Continue(none(), never());
     }
 
     private ResolvedBit.Expression resolve(Bit.Expression.Identifier identifier, ResolverEnvironment environment) {
         var entry = environment.getValueType(identifier.name());
+        reference(entry.symbol());
         return new ResolvedBit.Expression.Identifier(entry.symbol(), entry.type(), never());
     }
 
@@ -396,7 +607,10 @@ public class Resolver {
                 throw new ResolverException("Argument " + (i + 1) + " type mismatch: expected " + expectedType + " but got " + actualType);
             }
         }
-        return new ResolvedBit.Expression.Call(callee, argumentTypes, generics, completeFunctionType.returnType(), never());
+        if (callee instanceof ResolvedBit.Expression.AccessExtension extension) {
+            return new ResolvedBit.Expression.CallExtension(extension.expression(), extension.name(), extension.generics(), argumentTypes, generics, false, completeFunctionType.returnType(), never());
+        }
+        return new ResolvedBit.Expression.Call(callee, argumentTypes, generics, false, completeFunctionType.returnType(), never());
     }
 
     private List<Type> resolveCallGenerics(List<Bit.TypeExpression> generics, Type.Function calleeType, List<ResolvedBit.Expression> arguments, ResolverEnvironment environment) {
@@ -432,6 +646,7 @@ public class Resolver {
 
     private ResolvedBit.Expression resolve(Bit.Expression.Block block, ResolverEnvironment environment) {
         var blockEnvironment = new ResolverEnvironment(environment);
+        var jumps = environment.jumps();
         var statements = block.statements().stream()
                 .map(statement -> {
                     return switch (statement) {
@@ -444,11 +659,13 @@ public class Resolver {
                 .toList();
         var lastType = statements.isEmpty() ? none() : ((statements.getLast() instanceof ResolvedBit.Expression expr) ? expr.type() : none());
         var returnTypes = statements.stream().filter(statement -> statement instanceof ResolvedBit.Expression).map(expression -> ((ResolvedBit.Expression) expression).returnType()).toArray(Type[]::new);
-        return new ResolvedBit.Expression.Block(statements, lastType, union(returnTypes));
+        return new ResolvedBit.Expression.Block(statements, environment.jumps() != jumps, lastType, union(returnTypes));
     }
 
     private ResolvedBit.Expression resolve(Bit.Expression.NumberLiteral numberLiteral, ResolverEnvironment environment) {
-        return new ResolvedBit.Expression.NumberLiteral(numberLiteral.value(), integer(numberLiteral.value()), never());
+        // parsed once here: literals in the long range become the Long the runtime computes with
+        var value = new BigInteger(numberLiteral.value());
+        return new ResolvedBit.Expression.NumberLiteral(value.bitLength() < Long.SIZE ? (Number) value.longValue() : value, integer(value), never());
     }
 
     private ResolvedBit.Expression resolve(Bit.Expression.StringLiteral stringLiteral, ResolverEnvironment environment) {
@@ -465,7 +682,8 @@ public class Resolver {
         if (!extend(lhs.type(), integer()) || !extend(rhs.type(), integer())) {
             throw new ResolverException("Type mismatch: expected integer but got " + lhs.type() + " and " + rhs.type());
         }
-        return new ResolvedBit.Expression.Minus(lhs, rhs, subtract(lhs.type(), rhs.type()), union(lhs.returnType(), rhs.returnType()));
+        var type = subtract(lhs.type(), rhs.type());
+        return new ResolvedBit.Expression.Minus(lhs, rhs, primitive(lhs, rhs, environment, type), type, union(lhs.returnType(), rhs.returnType()));
     }
 
     private ResolvedBit.Expression resolve(Bit.Expression.Plus plus, ResolverEnvironment environment) {
@@ -474,7 +692,8 @@ public class Resolver {
         if (!extend(lhs.type(), integer()) || !extend(rhs.type(), integer())) {
             throw new ResolverException("Type mismatch: expected integer or string but got " + lhs.type() + " and " + rhs.type());
         }
-        return new ResolvedBit.Expression.Plus(lhs, rhs, add(lhs.type(), rhs.type()), union(lhs.returnType(), rhs.returnType()));
+        var type = add(lhs.type(), rhs.type());
+        return new ResolvedBit.Expression.Plus(lhs, rhs, primitive(lhs, rhs, environment, type), type, union(lhs.returnType(), rhs.returnType()));
     }
 
     private ResolvedBit.Expression resolve(Bit.Expression.Multiply multiply, ResolverEnvironment environment) {
@@ -483,7 +702,8 @@ public class Resolver {
         if (!extend(lhs.type(), integer()) || !extend(rhs.type(), integer())) {
             throw new ResolverException("Type mismatch: expected integer but got " + lhs.type() + " and " + rhs.type());
         }
-        return new ResolvedBit.Expression.Multiply(lhs, rhs, multiply(lhs.type(), rhs.type()), union(lhs.returnType(), rhs.returnType()));
+        var type = multiply(lhs.type(), rhs.type());
+        return new ResolvedBit.Expression.Multiply(lhs, rhs, primitive(lhs, rhs, environment, type), type, union(lhs.returnType(), rhs.returnType()));
     }
 
     private ResolvedBit.Expression resolve(Bit.Expression.Divide divide, ResolverEnvironment environment) {
@@ -492,7 +712,10 @@ public class Resolver {
         if (!extend(lhs.type(), integer()) || !extend(rhs.type(), integer())) {
             throw new ResolverException("Type mismatch: expected integer but got " + lhs.type() + " and " + rhs.type());
         }
-        return new ResolvedBit.Expression.Divide(lhs, rhs, divide(lhs.type(), rhs.type()), union(lhs.returnType(), rhs.returnType()));
+        var type = divide(lhs.type(), rhs.type());
+        // a divisor that may be zero must still raise the language's own error
+        var primitive = primitive(lhs, rhs, environment, type) && !extend(integer(BigInteger.ZERO), rhs.type());
+        return new ResolvedBit.Expression.Divide(lhs, rhs, primitive, type, union(lhs.returnType(), rhs.returnType()));
     }
 
     private ResolvedBit.Expression resolve(Bit.Expression.GreaterThan greaterThan, ResolverEnvironment environment) {
@@ -501,7 +724,7 @@ public class Resolver {
         if (!extend(lhs.type(), integer()) || !extend(rhs.type(), integer())) {
             throw new ResolverException("Type mismatch: expected integer but got " + lhs.type() + " and " + rhs.type());
         }
-        return new ResolvedBit.Expression.GreaterThan(lhs, rhs, greaterThan(lhs.type(), rhs.type()), union(lhs.returnType(), rhs.returnType()));
+        return new ResolvedBit.Expression.GreaterThan(lhs, rhs, primitive(lhs, rhs, environment), greaterThan(lhs.type(), rhs.type()), union(lhs.returnType(), rhs.returnType()));
     }
 
     private ResolvedBit.Expression resolve(Bit.Expression.GreaterThanOrEqual greaterThanOrEqual, ResolverEnvironment environment) {
@@ -510,7 +733,7 @@ public class Resolver {
         if (!extend(lhs.type(), integer()) || !extend(rhs.type(), integer())) {
             throw new ResolverException("Type mismatch: expected integer but got " + lhs.type() + " and " + rhs.type());
         }
-        return new ResolvedBit.Expression.GreaterThanOrEqual(lhs, rhs, greaterThanOrEqual(lhs.type(), rhs.type()), union(lhs.returnType(), rhs.returnType()));
+        return new ResolvedBit.Expression.GreaterThanOrEqual(lhs, rhs, primitive(lhs, rhs, environment), greaterThanOrEqual(lhs.type(), rhs.type()), union(lhs.returnType(), rhs.returnType()));
     }
 
     private ResolvedBit.Expression resolve(Bit.Expression.LessThan lessThan, ResolverEnvironment environment) {
@@ -519,7 +742,7 @@ public class Resolver {
         if (!extend(lhs.type(), integer()) || !extend(rhs.type(), integer())) {
             throw new ResolverException("Type mismatch: expected integer but got " + lhs.type() + " and " + rhs.type());
         }
-        return new ResolvedBit.Expression.LessThan(lhs, rhs, lessThan(lhs.type(), rhs.type()), union(lhs.returnType(), rhs.returnType()));
+        return new ResolvedBit.Expression.LessThan(lhs, rhs, primitive(lhs, rhs, environment), lessThan(lhs.type(), rhs.type()), union(lhs.returnType(), rhs.returnType()));
     }
 
     private ResolvedBit.Expression resolve(Bit.Expression.LessThanOrEqual lessThanOrEqual, ResolverEnvironment environment) {
@@ -528,7 +751,7 @@ public class Resolver {
         if (!extend(lhs.type(), integer()) || !extend(rhs.type(), integer())) {
             throw new ResolverException("Type mismatch: expected integer but got " + lhs.type() + " and " + rhs.type());
         }
-        return new ResolvedBit.Expression.LessThanOrEqual(lhs, rhs, lessThanOrEqual(lhs.type(), rhs.type()), union(lhs.returnType(), rhs.returnType()));
+        return new ResolvedBit.Expression.LessThanOrEqual(lhs, rhs, primitive(lhs, rhs, environment), lessThanOrEqual(lhs.type(), rhs.type()), union(lhs.returnType(), rhs.returnType()));
     }
 
     private ResolvedBit.Expression resolve(Bit.Expression.Equal equal, ResolverEnvironment environment) {
@@ -600,8 +823,9 @@ public class Resolver {
         var bodyEnvironment = new ResolverEnvironment(environment);
         doRefine(condition, bodyEnvironment, null);
 
+        var jumps = environment.jumps();
         var body = resolve(whileExpr.body(), bodyEnvironment);
-        return new ResolvedBit.Expression.While(condition, body, none(), body.returnType());
+        return new ResolvedBit.Expression.While(condition, body, environment.jumps() != jumps, none(), body.returnType());
     }
 
     private ResolvedBit.Expression resolve(Bit.Expression.As as, ResolverEnvironment environment) {
@@ -635,7 +859,17 @@ public class Resolver {
         if (fieldType == null) {
             return resolveExtensions(access, environment);
         }
-        return new ResolvedBit.Expression.Access(expr, access.field(), fieldType, expr.returnType());
+        return new ResolvedBit.Expression.Access(expr, access.field(), slot(fields, access.field()), intrinsic(access.field(), fieldType), fieldType, expr.returnType());
+    }
+
+    // structs lay out their fields in name order, so this is where the field lives when the struct has no other fields
+    private static int slot(Map<String, Type> fields, String field) {
+        return (int) fields.keySet().stream().filter(name -> name.compareTo(field) < 0).count();
+    }
+
+    private static boolean intrinsic(String field, Type fieldType) {
+        var arity = INTRINSICS.get(field);
+        return arity != null && fieldType instanceof Type.Function(var returnType, var generics, var parameters) && generics.isEmpty() && parameters.length == arity;
     }
 
     private ResolvedBit.Expression resolveExtensions(Bit.Expression.Access access, ResolverEnvironment environment) {
@@ -661,6 +895,7 @@ public class Resolver {
             throw new ResolverException("Ambiguous method call: type '" + expr.type() + "' has multiple methods named '" + access.field() + "'.");
         }
         var functionType = functionTypes.getFirst();
+        reference(functionType.symbol());
         var receiverGenericsActualTypes = unify(
                 List.of(functionType.receiverType()),
                 List.of(expr.type())
@@ -674,7 +909,7 @@ public class Resolver {
             }
             generics.add(actualType);
         }
-        return new ResolvedBit.Expression.AccessExtension(expr, generics, functionType.symbol(), functionTypeCompleted, expr.returnType());
+        return new ResolvedBit.Expression.AccessExtension(expr, generics, environment.capture(functionType.symbol()), functionTypeCompleted, expr.returnType());
     }
 
     private ResolvedBit.Expression resolve(Bit.Expression.Struct struct, ResolverEnvironment environment) {
@@ -703,19 +938,21 @@ public class Resolver {
         }
         var elementType = elementTypes.isEmpty() ? never() : union(elementTypes.toArray(Type[]::new));
         var mutableArrayType = environment.getFunctionType("MutableArray").type().function().apply(new Type[] { elementType });
-        return new ResolvedBit.Expression.Array(resolvedElements, mutableArrayType, union(returnTypes.toArray(Type[]::new)));
+        return new ResolvedBit.Expression.Array(resolvedElements, fitsLong(elementType), mutableArrayType, union(returnTypes.toArray(Type[]::new)));
     }
 
     private ResolvedBit.Expression resolve(Bit.Expression.Function function, ResolverEnvironment environment) {
-        var functionEnvironment = new ResolverEnvironment(environment);
+        var functionEnvironment = environment.newFunctionEnvironment();
 
         var generics = new ArrayList<ResolvedBit.GenericDeclaration>();
-        for (var generic : function.generics()) {
-            var bounds = resolve(generic.extendsType(), functionEnvironment);
-            var type = generic(bounds);
-            var symbol = functionEnvironment.declareType(generic.name(), type);
-            type.setSymbol(symbol);
-            generics.add(new ResolvedBit.GenericDeclaration(symbol, bounds, type));
+        if (function.generics() != null) {
+            for (var generic : function.generics()) {
+                var bounds = resolve(generic.extendsType(), functionEnvironment);
+                var type = generic(bounds);
+                var symbol = functionEnvironment.declareType(generic.name(), type);
+                type.setSymbol(symbol);
+                generics.add(new ResolvedBit.GenericDeclaration(symbol, bounds, type));
+            }
         }
 
         var parameters = new ArrayList<ResolvedBit.Expression.Function.Parameter>();
@@ -734,7 +971,7 @@ public class Resolver {
         if (!extend(inferredReturnType, returnType)) {
             throw new ResolverException("Type mismatch: expected " + returnType + " but got " + inferredReturnType);
         }
-        return new ResolvedBit.Expression.Function(generics, parameters, body, functionType, never());
+        return new ResolvedBit.Expression.Function(generics, parameters, TailCalls.mark(body), functionEnvironment.frameLayout(), functionType, never());
     }
 
     private ResolvedBit.Expression resolve(Bit.Expression.Instantiation instantiation, ResolverEnvironment environment) {
@@ -867,6 +1104,10 @@ public class Resolver {
             case ResolvedBit.Expression.Is cond -> refine(cond, thenEnvironment, elseEnvironment);
             case ResolvedBit.Expression.And cond -> refine(cond, thenEnvironment, elseEnvironment);
             case ResolvedBit.Expression.Or cond -> refine(cond, thenEnvironment, elseEnvironment);
+            case ResolvedBit.Expression.LessThan cond -> refineLessThan(cond.lhs(), cond.rhs(), false, thenEnvironment, elseEnvironment);
+            case ResolvedBit.Expression.LessThanOrEqual cond -> refineLessThan(cond.lhs(), cond.rhs(), true, thenEnvironment, elseEnvironment);
+            case ResolvedBit.Expression.GreaterThan cond -> refineLessThan(cond.rhs(), cond.lhs(), false, thenEnvironment, elseEnvironment);
+            case ResolvedBit.Expression.GreaterThanOrEqual cond -> refineLessThan(cond.rhs(), cond.lhs(), true, thenEnvironment, elseEnvironment);
             default -> Stream.empty();
         };
     }
@@ -893,11 +1134,34 @@ public class Resolver {
         return refine(condition.expression(), elseEnvironment, thenEnvironment);
     }
 
+    // both operands hold in the then branch, the else branch only knows that one of them fails: there a symbol gets
+    // the union of what each operand narrows it to, and nothing if only one of them does
     private Stream<Refinement> refine(ResolvedBit.Expression.And condition, ResolverEnvironment thenEnvironment, ResolverEnvironment elseEnvironment) {
-        return Stream.concat(
-                refine(condition.lhs(), thenEnvironment, elseEnvironment),
-                refine(condition.rhs(), thenEnvironment, elseEnvironment)
-        );
+        var lhsRefinements = refine(condition.lhs(), thenEnvironment, elseEnvironment).toList();
+        var rhsRefinements = refine(condition.rhs(), thenEnvironment, elseEnvironment).toList();
+        var refinements = new ArrayList<Refinement>();
+        Stream.concat(lhsRefinements.stream(), rhsRefinements.stream())
+                .filter(refinement -> refinement.environment() != elseEnvironment)
+                .forEach(refinements::add);
+        lhsRefinements.stream().filter(refinement -> refinement.environment() == elseEnvironment).forEach(refinement -> {
+            var rhsRefinement = rhsRefinements.stream()
+                    .filter(r -> r.symbol().equals(refinement.symbol()) && r.environment() == elseEnvironment)
+                    .map(r -> r.type)
+                    .reduce(any(), Types::intersection);
+            refinements.add(new Refinement(refinement.symbol(), union(refinement.type, rhsRefinement), refinement.environment));
+        });
+        return refinements.stream();
+    }
+
+    // lhs < rhs, or lhs <= rhs when inclusive; the else branch gets the negated comparison. variables are left alone,
+    // since a loop body may reassign them and a narrowed type would outlive the comparison
+    private Stream<Refinement> refineLessThan(ResolvedBit.Expression lhs, ResolvedBit.Expression rhs, boolean inclusive, ResolverEnvironment thenEnvironment, ResolverEnvironment elseEnvironment) {
+        return Stream.of(
+                refine(lhs, rangeBelow(rhs.type(), inclusive), thenEnvironment, elseEnvironment),
+                refine(rhs, rangeAbove(lhs.type(), inclusive), thenEnvironment, elseEnvironment),
+                refine(lhs, rangeAbove(rhs.type(), !inclusive), elseEnvironment, thenEnvironment),
+                refine(rhs, rangeBelow(lhs.type(), !inclusive), elseEnvironment, thenEnvironment)
+        ).flatMap(refinements -> refinements).filter(refinement -> refinement.environment() == null || !refinement.environment().isVariable(refinement.symbol()));
     }
 
     private Stream<Refinement> refine(ResolvedBit.Expression.Or condition, ResolverEnvironment thenEnvironment, ResolverEnvironment elseEnvironment) {
@@ -924,17 +1188,50 @@ public class Resolver {
             );
             case ResolvedBit.Expression.Minus minus -> Stream.concat(
                     refine(minus.lhs(), add(type, minus.rhs().type()), thenEnvironment, elseEnvironment),
-                    refine(minus.rhs(), negate(subtract(minus.lhs().type(), type)), thenEnvironment, elseEnvironment)
+                    refine(minus.rhs(), subtract(minus.lhs().type(), type), thenEnvironment, elseEnvironment)
             );
             case ResolvedBit.Expression.Multiply multiply -> Stream.concat(
-                    refine(multiply.lhs(), divideExact(type, multiply.rhs().type()), thenEnvironment, elseEnvironment),
-                    refine(multiply.rhs(), divideExact(type, multiply.lhs().type()), thenEnvironment, elseEnvironment)
+                    refineFactor(multiply.lhs(), type, multiply.rhs().type(), thenEnvironment, elseEnvironment),
+                    refineFactor(multiply.rhs(), type, multiply.lhs().type(), thenEnvironment, elseEnvironment)
             );
-            // divide impossible to refine due to reminder and no Range type
+            case ResolvedBit.Expression.Divide divide when extend(type, integer()) ->
+                    refine(divide.lhs(), dividend(type, divide.rhs().type()), thenEnvironment, elseEnvironment);
             default -> Stream.empty();
         };
     }
 
+    // a factor that may be multiplied by zero can be anything, whatever the product
+    private Stream<Refinement> refineFactor(ResolvedBit.Expression factor, Type product, Type other, ResolverEnvironment thenEnvironment, ResolverEnvironment elseEnvironment) {
+        if (extend(integer(BigInteger.ZERO), other)) return Stream.empty();
+        return refine(factor, divideExact(product, other), thenEnvironment, elseEnvironment);
+    }
+
+    // operands and results that fit in a long let the engines skip boxing and overflow checks. A variable may be
+    // assigned by a call after a condition narrowed it, so nothing computed from one is trusted to fit
+    private static boolean primitive(ResolvedBit.Expression lhs, ResolvedBit.Expression rhs, ResolverEnvironment environment, Type... results) {
+        if (readsVariable(lhs, environment) || readsVariable(rhs, environment)) return false;
+        if (!fitsLong(lhs.type()) || !fitsLong(rhs.type())) return false;
+        for (var type : results) {
+            if (!fitsLong(type)) return false;
+        }
+        return true;
+    }
+
+    // whether the type of the expression is computed from that of a variable
+    private static boolean readsVariable(ResolvedBit.Expression expression, ResolverEnvironment environment) {
+        return switch (expression) {
+            case ResolvedBit.Expression.Identifier identifier -> environment.isVariable(identifier.name());
+            case ResolvedBit.Expression.Minus minus -> readsVariable(minus.lhs(), environment) || readsVariable(minus.rhs(), environment);
+            case ResolvedBit.Expression.Plus plus -> readsVariable(plus.lhs(), environment) || readsVariable(plus.rhs(), environment);
+            case ResolvedBit.Expression.Multiply multiply -> readsVariable(multiply.lhs(), environment) || readsVariable(multiply.rhs(), environment);
+            case ResolvedBit.Expression.Divide divide -> readsVariable(divide.lhs(), environment) || readsVariable(divide.rhs(), environment);
+            case ResolvedBit.Expression.As as -> readsVariable(as.expression(), environment);
+            case ResolvedBit.Expression.If ifExpression -> readsVariable(ifExpression.thenBranch(), environment) || (ifExpression.elseBranch() != null && readsVariable(ifExpression.elseBranch(), environment));
+            case ResolvedBit.Expression.Block block -> !block.statements().isEmpty() && block.statements().getLast() instanceof ResolvedBit.Expression last && readsVariable(last, environment);
+            default -> false;
+        };
+    }
+
     public static class ResolverException extends RuntimeException {
         public ResolverException(String message) {
             super(message);
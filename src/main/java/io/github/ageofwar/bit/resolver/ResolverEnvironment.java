@@ -1,10 +1,13 @@
 package io.github.ageofwar.bit.resolver;
 
+import io.github.ageofwar.bit.parser.Bit;
 import io.github.ageofwar.bit.types.Type;
 import io.github.ageofwar.bit.types.TypeFunction;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static io.github.ageofwar.bit.types.Types.*;
@@ -23,7 +26,12 @@ public class ResolverEnvironment {
     private final ScopedTable<ValueType> constructors;
     private final ScopedTable<List<ExtensionType>> extensionTypes;
 
-    private AtomicInteger variablesCount;
+    private final FunctionScope scope;
+    private final Map<Integer, FunctionScope> owners;
+
+    private final AtomicInteger variablesCount;
+    // the global symbols numbered from here on are hidden, they were declared after the body resolved here
+    private final int horizon;
 
     public static ResolverEnvironment init() {
         var environment = new ResolverEnvironment(null);
@@ -36,6 +44,8 @@ public class ResolverEnvironment {
         environment.declareValueType("__file_write", function(none(), any(), string()));
 
         environment.declareExtensionType("toString", integer(), function(string()), List.of());
+        var element = generic(any());
+        environment.declareValueType("__list_new", function(list(element), List.of(element)));
 
         environment.declareType("Any", any());
         environment.declareType("Never", never());
@@ -43,39 +53,137 @@ public class ResolverEnvironment {
         environment.declareType("Boolean", _boolean());
         environment.declareType("String", string());
         environment.declareType("None", none());
+        environment.declareFunctionType("Range", new TypeFunction(args -> {
+            if (args.length != 2 || !(args[0] instanceof Type.NumberLiteral(var lo)) || !(args[1] instanceof Type.NumberLiteral(var hi))) {
+                throw new IllegalArgumentException("Range expects two number literals, but got " + List.of(args));
+            }
+            return range(lo, hi);
+        }));
 
         return environment;
     }
 
     public ResolverEnvironment(ResolverEnvironment parent) {
+        this(parent, parent != null ? parent.scope : null);
+    }
+
+    ResolverEnvironment(ResolverEnvironment parent, FunctionScope scope) {
+        this(parent, scope, parent != null ? parent.variablesCount : new AtomicInteger(), parent != null ? parent.owners : new HashMap<>(), parent != null ? parent.horizon : Integer.MAX_VALUE);
+    }
+
+    private ResolverEnvironment(ResolverEnvironment parent, FunctionScope scope, AtomicInteger variablesCount, Map<Integer, FunctionScope> owners, int horizon) {
         this.parent = parent;
+        this.scope = scope;
         this.valueTypes = new ScopedTable<>(parent != null ? parent.valueTypes : null);
         this.types = new ScopedTable<>(parent != null ? parent.types : null);
         this.functionTypes = new ScopedTable<>(parent != null ? parent.functionTypes : null);
         this.extensionTypes = new ScopedTable<>(parent != null ? parent.extensionTypes : null);
         this.constructors = new ScopedTable<>(parent != null ? parent.constructors : null);
-        variablesCount = parent != null ? parent.variablesCount : new AtomicInteger();
+        this.variablesCount = variablesCount;
+        this.owners = owners;
+        this.horizon = horizon;
+    }
+
+    // an environment for a package resolved on its own, possibly at the same time as others: it numbers its symbols
+    // from base and shares nothing mutable with the environments of the other packages
+    ResolverEnvironment newPackageEnvironment(int base) {
+        return new ResolverEnvironment(this, scope, new AtomicInteger(base), new HashMap<>(), horizon);
+    }
+
+    // an environment for a body resolved after the range of its package was closed: it numbers the symbols it declares
+    // from ids instead, and sees the global symbols of the package as they were when it was declared
+    ResolverEnvironment lateEnvironment(AtomicInteger ids) {
+        return new ResolverEnvironment(this, scope, ids, owners, variablesCount.get());
+    }
+
+    private <T> T visible(T entry, ResolvedBit.Symbol symbol) {
+        return entry != null && symbol.storage() == ResolvedBit.Symbol.Storage.GLOBAL && symbol.id() >= horizon ? null : entry;
+    }
+
+    ScopedTable<VariableType> valueTypes() {
+        return valueTypes;
+    }
+
+    ScopedTable<ValueType> types() {
+        return types;
+    }
+
+    ScopedTable<ValueTypeFunction> functionTypes() {
+        return functionTypes;
+    }
+
+    ScopedTable<ValueType> constructors() {
+        return constructors;
+    }
+
+    ScopedTable<List<ExtensionType>> extensionTypes() {
+        return extensionTypes;
+    }
+
+    public ResolverEnvironment newFunctionEnvironment() {
+        return new ResolverEnvironment(this, new FunctionScope(scope));
+    }
+
+    FunctionScope scope() {
+        return scope;
+    }
+
+    void jump() {
+        if (scope != null) scope.jump();
+    }
+
+    int jumps() {
+        return scope != null ? scope.jumps() : 0;
+    }
+
+    public ResolvedBit.FrameLayout frameLayout() {
+        return scope.layout();
     }
 
     public int variables() {
         return variablesCount.get();
     }
 
+    // takes the ids of the symbols of a package read from the cache, which were numbered from the current count
+    void reserve(int count) {
+        variablesCount.addAndGet(count);
+    }
+
+    private ResolvedBit.Symbol newSymbol(String name, boolean variable) {
+        var id = variablesCount.getAndIncrement();
+        if (scope == null) {
+            return new ResolvedBit.Symbol(name, id);
+        }
+        owners.put(id, scope);
+        var storage = variable ? ResolvedBit.Symbol.Storage.CELL : ResolvedBit.Symbol.Storage.LOCAL;
+        return new ResolvedBit.Symbol(name, id, storage, scope.allocate());
+    }
+
+    // symbols declared by an enclosing function are captured into the current frame on first use
+    ResolvedBit.Symbol capture(ResolvedBit.Symbol symbol) {
+        var owner = owners.get(symbol.id());
+        if (owner == null || owner == scope) {
+            return symbol;
+        }
+        return scope.capture(symbol, owner);
+    }
+
     public ResolvedBit.Symbol declareVariableType(String name, Type type) {
-        var symbol = new ResolvedBit.Symbol(name, variablesCount.getAndIncrement());
+        var symbol = newSymbol(name, true);
         valueTypes.declare(name, new VariableType(symbol, type, true));
         return symbol;
     }
 
     public ValueType getVariableType(String name) {
         var value = valueTypes.resolve(name);
+        if (value != null) value = visible(value, value.symbol());
         if (value == null) {
             throw new RuntimeException("Variable not declared: " + name);
         }
         if (!value.variable()) {
             throw new RuntimeException("Not a variable: " + name);
         }
-        return new ValueType(value.symbol, value.type);
+        return new ValueType(capture(value.symbol), value.type);
     }
 
     public ResolvedBit.Symbol declareValueType(String name, Type type) {
@@ -84,17 +192,28 @@ public class ResolverEnvironment {
             throw new RuntimeException("Variable with same name already declared: " + name);
         }
 
-        var symbol = new ResolvedBit.Symbol(name, variablesCount.getAndIncrement());
+        var symbol = newSymbol(name, false);
         valueTypes.declare(name, new VariableType(symbol, type, false));
         return symbol;
     }
 
+    public boolean isVariable(String name) {
+        var value = valueTypes.resolve(name);
+        return value != null && value.variable();
+    }
+
+    // whether the symbol was declared with var, also where a condition has narrowed its type
+    public boolean isVariable(ResolvedBit.Symbol symbol) {
+        return valueTypes.resolveAll(symbol.name()).stream().anyMatch(value -> value.variable() && value.symbol().id() == symbol.id());
+    }
+
     public ValueType getValueType(String name) {
         var value = valueTypes.resolve(name);
+        if (value != null) value = visible(value, value.symbol());
         if (value == null) {
             throw new RuntimeException("Variable not declared: " + name);
         }
-        return new ValueType(value.symbol, value.type);
+        return new ValueType(capture(value.symbol), value.type);
     }
 
     public ResolvedBit.Symbol declareType(String name, Type type) {
@@ -103,32 +222,42 @@ public class ResolverEnvironment {
             throw new RuntimeException("Type already declared: " + name);
         }
 
-        var symbol = new ResolvedBit.Symbol(name, variablesCount.getAndIncrement());
+        var symbol = newSymbol(name, false);
         types.declare(name, new ValueType(symbol, type));
         return symbol;
     }
 
     public ValueType getType(String name) {
         var value = types.resolve(name);
+        if (value != null) value = visible(value, value.symbol());
         if (value == null) {
             throw new RuntimeException("Type not declared: " + name);
         }
+        if (value.type() instanceof Type.TypeVariable) {
+            // type variables are read at runtime by 'is' and 'as'
+            return new ValueType(capture(value.symbol()), value.type());
+        }
         return value;
     }
 
     public ResolvedBit.Symbol declareFunctionType(String name, TypeFunction type) {
+        return declareFunctionType(name, type, null);
+    }
+
+    public ResolvedBit.Symbol declareFunctionType(String name, TypeFunction type, Definition definition) {
         var alreadyDeclared = functionTypes.resolve(name);
         if (alreadyDeclared != null) {
             throw new RuntimeException("Function type already declared: " + name);
         }
 
-        var symbol = new ResolvedBit.Symbol(name, variablesCount.getAndIncrement());
-        functionTypes.declare(name, new ValueTypeFunction(symbol, type));
+        var symbol = newSymbol(name, false);
+        functionTypes.declare(name, new ValueTypeFunction(symbol, type, definition));
         return symbol;
     }
 
     public ValueTypeFunction getFunctionType(String name) {
         var value = functionTypes.resolve(name);
+        if (value != null) value = visible(value, value.symbol());
         if (value == null) {
             throw new RuntimeException("Function type not declared: " + name);
         }
@@ -136,34 +265,36 @@ public class ResolverEnvironment {
     }
 
     public ResolvedBit.Symbol declareConstructor(String name, Type type) {
-        var symbol = new ResolvedBit.Symbol(name, variablesCount.getAndIncrement());
+        var symbol = newSymbol(name, false);
         constructors.declare(name, new ValueType(symbol, type));
         return symbol;
     }
 
     public ValueType getConstructor(String name) {
         var value = constructors.resolve(name);
+        if (value != null) value = visible(value, value.symbol());
         if (value == null) {
             throw new RuntimeException("Constructor not declared: " + name);
         }
-        return value;
+        return new ValueType(capture(value.symbol()), value.type());
     }
 
     public ResolvedBit.Symbol declareExtensionType(String name, Type receiverType, Type type, List<Type> receiverGenerics) {
-        var symbol = new ResolvedBit.Symbol(name, variablesCount.getAndIncrement());
+        var symbol = newSymbol(name, false);
         var candidates = extensionTypes.getSymbols().computeIfAbsent(name, k -> new ArrayList<>());
         candidates.add(new ExtensionType(symbol, receiverType, type, receiverGenerics));
         return symbol;
     }
 
     public List<ExtensionType> getExtensionTypes(String name) {
-        return extensionTypes.resolveAll(name).stream().flatMap(List::stream).toList();
+        return extensionTypes.resolveAll(name).stream().flatMap(List::stream).filter(extension -> visible(extension, extension.symbol()) != null).toList();
     }
 
     public void refineValueType(ResolvedBit.Symbol oldSymbol, Type type) {
         var existingType = valueTypes.resolve(oldSymbol.name());
         var newType = intersection(existingType.type(), type);
-        valueTypes.declare(oldSymbol.name(), new VariableType(existingType.symbol, newType, false));
+        // a condition may refine the same symbol more than once, each refinement narrows the previous one
+        valueTypes.getSymbols().put(oldSymbol.name(), new VariableType(existingType.symbol, newType, false));
     }
 
     public void mergeFrom(ResolverEnvironment other) {
@@ -190,12 +321,20 @@ public class ResolverEnvironment {
         for (var extensionType : other.extensionTypes.getSymbols().entrySet()) {
             var existing = this.extensionTypes.getSymbols().get(extensionType.getKey());
             if (existing != null) throw new RuntimeException("Duplicate extension function: " + extensionType.getKey());
-            extensionTypes.declare(extensionType.getKey(), extensionType.getValue());
+            // copied, so that extensions declared later here don't end up in the environment merged from
+            extensionTypes.declare(extensionType.getKey(), new ArrayList<>(extensionType.getValue()));
         }
     }
 
-    public record ValueTypeFunction(ResolvedBit.Symbol symbol, TypeFunction type) {
+    // definition is how the function was declared, null for the builtin ones
+    public record ValueTypeFunction(ResolvedBit.Symbol symbol, TypeFunction type, Definition definition) {
 
+    }
+    // the declaration of a type function as data, from which a package read from the cache declares it again
+    public sealed interface Definition {
+        record Nominal(String name) implements Definition {}
+        record Class(List<Type.TypeVariable> generics, Type returnType, List<Type> parameters) implements Definition {}
+        record Alias(Bit.Declaration.Type declaration) implements Definition {}
     }
     public record ValueType(ResolvedBit.Symbol symbol, Type type) {
 
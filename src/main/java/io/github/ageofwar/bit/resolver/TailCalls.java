@@ -0,0 +1,54 @@
+package io.github.ageofwar.bit.resolver;
+
+import java.util.ArrayList;
+
+// marks the calls a function body ends with, in the last statement of a block, a branch of an if or a return
+final class TailCalls {
+    private TailCalls() {
+    }
+
+    static ResolvedBit.Expression mark(ResolvedBit.Expression body) {
+        return mark(body, true);
+    }
+
+    // tail is false for expressions whose value is thrown away
+    private static ResolvedBit.Expression mark(ResolvedBit.Expression expression, boolean tail) {
+        return switch (expression) {
+            case ResolvedBit.Expression.Call call when tail && !(call.callee() instanceof ResolvedBit.Expression.Access access && access.intrinsic()) ->
+                    new ResolvedBit.Expression.Call(call.callee(), call.arguments(), call.generics(), true, call.type(), call.returnType());
+            case ResolvedBit.Expression.CallExtension call when tail ->
+                    new ResolvedBit.Expression.CallExtension(call.receiver(), call.name(), call.receiverGenerics(), call.arguments(), call.generics(), true, call.type(), call.returnType());
+            case ResolvedBit.Expression.Block block -> {
+                var statements = block.statements();
+                var marked = new ArrayList<ResolvedBit>(statements.size());
+                var changed = false;
+                for (var i = 0; i < statements.size(); i++) {
+                    var statement = statements.get(i);
+                    if (statement instanceof ResolvedBit.Expression statementExpression) {
+                        statement = mark(statementExpression, tail && i == statements.size() - 1);
+                    }
+                    changed |= statement != statements.get(i);
+                    marked.add(statement);
+                }
+                yield changed ? new ResolvedBit.Expression.Block(marked, block.abrupt(), block.type(), block.returnType()) : block;
+            }
+            case ResolvedBit.Expression.If ifExpression -> {
+                var thenBranch = mark(ifExpression.thenBranch(), tail);
+                var elseBranch = ifExpression.elseBranch() != null ? mark(ifExpression.elseBranch(), tail) : null;
+                if (thenBranch == ifExpression.thenBranch() && elseBranch == ifExpression.elseBranch()) yield ifExpression;
+                yield new ResolvedBit.Expression.If(ifExpression.condition(), thenBranch, elseBranch, ifExpression.type(), ifExpression.returnType());
+            }
+            case ResolvedBit.Expression.While whileExpression -> {
+                var body = mark(whileExpression.body(), false);
+                if (body == whileExpression.body()) yield whileExpression;
+                yield new ResolvedBit.Expression.While(whileExpression.condition(), body, whileExpression.abrupt(), whileExpression.type(), whileExpression.returnType());
+            }
+            case ResolvedBit.Expression.Return returnExpression -> {
+                var value = mark(returnExpression.value(), true);
+                if (value == returnExpression.value()) yield returnExpression;
+                yield new ResolvedBit.Expression.Return(value, returnExpression.type(), returnExpression.returnType());
+            }
+            default -> expression;
+        };
+    }
+}
@@ -0,0 +1,49 @@
+package io.github.ageofwar.bit.types;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// the canonical instance of every type, looked up by its kind and its parts. Parts that are types are canonical too, so
+// they are compared by identity and a lookup never walks the type graph. A type is held weakly: once nothing else
+// refers to it, its entry is dropped and the parts it kept alive can go as well
+final class Interner {
+    private final Map<List<Object>, Entry> table = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Type> queue = new ReferenceQueue<>();
+
+    private static final class Entry extends WeakReference<Type> {
+        private final List<Object> key;
+
+        Entry(Type type, List<Object> key, ReferenceQueue<Type> queue) {
+            super(type, queue);
+            this.key = key;
+        }
+    }
+
+    Type intern(List<Object> key, Supplier<Type> factory) {
+        expunge();
+        while (true) {
+            var entry = table.get(key);
+            if (entry != null) {
+                var type = entry.get();
+                if (type != null) return type;
+                table.remove(key, entry);
+                continue;
+            }
+            var type = factory.get();
+            if (table.putIfAbsent(key, new Entry(type, key, queue)) == null) return type;
+        }
+    }
+
+    private void expunge() {
+        Reference<? extends Type> reference;
+        while ((reference = queue.poll()) != null) {
+            var entry = (Entry) reference;
+            table.remove(entry.key, entry);
+        }
+    }
+}
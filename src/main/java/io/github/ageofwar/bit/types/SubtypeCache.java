@@ -0,0 +1,57 @@
+package io.github.ageofwar.bit.types;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// the decided subtype queries, keyed by the identity of the two types since types are canonical. It holds up to a
+// fixed number of answers and evicts the least recently used one past that
+public final class SubtypeCache {
+    private final int capacity;
+    private final Map<Object, Boolean> answers;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    SubtypeCache(int capacity) {
+        this.capacity = capacity;
+        answers = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Boolean> eldest) {
+                if (size() <= SubtypeCache.this.capacity) return false;
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    Boolean get(Object query) {
+        Boolean answer;
+        synchronized (answers) {
+            answer = answers.get(query);
+        }
+        (answer != null ? hits : misses).increment();
+        return answer;
+    }
+
+    void put(Object query, boolean answer) {
+        synchronized (answers) {
+            answers.put(query, answer);
+        }
+    }
+
+    Statistics statistics() {
+        int size;
+        synchronized (answers) {
+            size = answers.size();
+        }
+        return new Statistics(hits.sum(), misses.sum(), evictions.sum(), size);
+    }
+
+    public record Statistics(long hits, long misses, long evictions, int size) {
+        @Override
+        public String toString() {
+            return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", size=" + size;
+        }
+    }
+}
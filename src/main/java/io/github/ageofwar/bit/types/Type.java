@@ -8,6 +8,9 @@ import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
+// types are canonical: the factories of Types return the same instance for the same type, so equality is identity.
+// Type variables are not interned, each of them is only equal to itself; a recursive struct is interned by its shape
+// when it is closed
 public sealed interface Type {
     record Any() implements Type {
         @Override
@@ -16,11 +19,11 @@ public sealed interface Type {
         }
         @Override
         public boolean equals(Object obj) {
-            return safeEquals(obj);
+            return this == obj;
         }
         @Override
         public int hashCode() {
-            return safeHashCode();
+            return System.identityHashCode(this);
         }
     }
     record Never() implements Type {
@@ -30,11 +33,11 @@ public sealed interface Type {
         }
         @Override
         public boolean equals(Object obj) {
-            return safeEquals(obj);
+            return this == obj;
         }
         @Override
         public int hashCode() {
-            return safeHashCode();
+            return System.identityHashCode(this);
         }
     }
     record Nominal(java.lang.String name) implements Type {
@@ -44,11 +47,11 @@ public sealed interface Type {
         }
         @Override
         public boolean equals(Object obj) {
-            return safeEquals(obj);
+            return this == obj;
         }
         @Override
         public int hashCode() {
-            return safeHashCode();
+            return System.identityHashCode(this);
         }
     }
     record NumberLiteral(BigInteger value) implements Type {
@@ -58,11 +61,26 @@ public sealed interface Type {
         }
         @Override
         public boolean equals(Object obj) {
-            return safeEquals(obj);
+            return this == obj;
         }
         @Override
         public int hashCode() {
-            return safeHashCode();
+            return System.identityHashCode(this);
+        }
+    }
+    // the integers between lo and hi, both inclusive; a null bound leaves that side open
+    record Range(BigInteger lo, BigInteger hi) implements Type {
+        @Override
+        public java.lang.String toString() {
+            return safeToString();
+        }
+        @Override
+        public boolean equals(Object obj) {
+            return this == obj;
+        }
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
         }
     }
     record Integer() implements Type {
@@ -72,11 +90,11 @@ public sealed interface Type {
         }
         @Override
         public boolean equals(Object obj) {
-            return safeEquals(obj);
+            return this == obj;
         }
         @Override
         public int hashCode() {
-            return safeHashCode();
+            return System.identityHashCode(this);
         }
     }
     record Struct(Map<java.lang.String, Type> fields) implements Type {
@@ -86,11 +104,11 @@ public sealed interface Type {
         }
         @Override
         public boolean equals(Object obj) {
-            return safeEquals(obj);
+            return this == obj;
         }
         @Override
         public int hashCode() {
-            return safeHashCode();
+            return System.identityHashCode(this);
         }
     }
     record Union(Type... types) implements Type {
@@ -100,11 +118,11 @@ public sealed interface Type {
         }
         @Override
         public boolean equals(Object obj) {
-            return safeEquals(obj);
+            return this == obj;
         }
         @Override
         public int hashCode() {
-            return safeHashCode();
+            return System.identityHashCode(this);
         }
     }
     record Intersection(Type... types) implements Type {
@@ -114,11 +132,11 @@ public sealed interface Type {
         }
         @Override
         public boolean equals(Object obj) {
-            return safeEquals(obj);
+            return this == obj;
         }
         @Override
         public int hashCode() {
-            return safeHashCode();
+            return System.identityHashCode(this);
         }
     }
     record Function(Type returnType, List<TypeVariable> generics, Type... parameters) implements Type {
@@ -128,11 +146,11 @@ public sealed interface Type {
         }
         @Override
         public boolean equals(Object obj) {
-            return safeEquals(obj);
+            return this == obj;
         }
         @Override
         public int hashCode() {
-            return safeHashCode();
+            return System.identityHashCode(this);
         }
     }
     final class TypeVariable implements Type {
@@ -150,12 +168,12 @@ public sealed interface Type {
 
         @Override
         public boolean equals(Object obj) {
-            return safeEquals(obj);
+            return this == obj;
         }
 
         @Override
         public int hashCode() {
-            return safeHashCode();
+            return System.identityHashCode(this);
         }
 
         public Type bounds() {
@@ -185,6 +203,7 @@ public sealed interface Type {
             case Never n -> "Never";
             case Nominal n -> n.name();
             case NumberLiteral n -> n.value().toString();
+            case Range r -> "Range<" + (r.lo() == null ? "-inf" : r.lo()) + ", " + (r.hi() == null ? "inf" : r.hi()) + ">";
             case Integer i -> "Integer";
             case Struct s -> {
                 var inner = s.fields().entrySet().stream()
@@ -210,89 +229,4 @@ public sealed interface Type {
             }
         };
     }
-
-    default boolean safeEquals(Object other) {
-        if (!(other instanceof Type o)) return false;
-        return safeEquals(o, new IdentityHashMap<>(), new IdentityHashMap<>());
-    }
-
-    private boolean safeEquals(Type other, Map<Type, Type> visitedA, Map<Type, Type> visitedB) {
-        if (this == other) return true;
-        if (other == null) return false;
-        if (visitedA.containsKey(this) && visitedB.containsKey(other))
-            return visitedA.get(this) == other && visitedB.get(other) == this;
-
-        visitedA.put(this, other);
-        visitedB.put(other, this);
-
-        if (!this.getClass().equals(other.getClass())) return false;
-
-        return switch (this) {
-            case Any a -> true;
-            case Never n -> true;
-            case Nominal n -> n.name().equals(((Nominal) other).name());
-            case NumberLiteral n -> n.value().equals(((NumberLiteral) other).value());
-            case Integer i -> true;
-            case Struct s -> {
-                var o = (Struct) other;
-                if (s.fields().size() != o.fields().size()) yield false;
-                var ok = true;
-                for (var e : s.fields().entrySet()) {
-                    var oType = o.fields().get(e.getKey());
-                    if (oType == null || !e.getValue().safeEquals(oType, visitedA, visitedB)) {
-                        ok = false;
-                        break;
-                    }
-                }
-                yield ok;
-            }
-            case Union u -> Arrays.equals(u.types(), ((Union) other).types());
-            case Intersection i -> Arrays.equals(i.types(), ((Intersection) other).types());
-            case Function f -> {
-                var o = (Function) other;
-                if (!f.returnType().safeEquals(o.returnType(), visitedA, visitedB)) yield false;
-                if (f.generics().size() != o.generics().size()) yield false;
-                if (f.parameters().length != o.parameters().length) yield false;
-                var ok = true;
-                for (int j = 0; j < f.parameters().length; j++) {
-                    if (!f.parameters()[j].safeEquals(o.parameters()[j], visitedA, visitedB)) {
-                        ok = false;
-                        break;
-                    }
-                }
-                yield ok;
-            }
-            case TypeVariable v -> v.bounds().safeEquals(((TypeVariable) other).bounds(), visitedA, visitedB);
-        };
-    }
-
-    default int safeHashCode() {
-        return safeHashCode(new IdentityHashMap<>());
-    }
-
-    private int safeHashCode(Map<Type, Boolean> visited) {
-        if (visited.containsKey(this)) return 0x9e3779b9; // numero fisso per cicli
-        visited.put(this, true);
-
-        return switch (this) {
-            case Any a -> 1;
-            case Never n -> 2;
-            case Nominal n -> n.name().hashCode();
-            case NumberLiteral n -> n.value().hashCode();
-            case Integer i -> 3;
-            case Struct s -> s.fields().entrySet().stream()
-                    .mapToInt(e -> e.getKey().hashCode() * 31 + e.getValue().safeHashCode(visited))
-                    .reduce(7, (a, b) -> a * 31 + b);
-            case Union u -> Arrays.stream(u.types())
-                    .mapToInt(t -> t.safeHashCode(visited)).reduce(5, (a, b) -> a * 31 + b);
-            case Intersection i -> Arrays.stream(i.types())
-                    .mapToInt(t -> t.safeHashCode(visited)).reduce(11, (a, b) -> a * 31 + b);
-            case Function f -> f.returnType().safeHashCode(visited)
-                    + f.generics().size() * 97
-                    + Arrays.stream(f.parameters())
-                    .mapToInt(p -> p.safeHashCode(visited))
-                    .reduce(13, (a, b) -> a * 31 + b);
-            case TypeVariable v -> v.bounds().safeHashCode(visited);
-        };
-    }
 }
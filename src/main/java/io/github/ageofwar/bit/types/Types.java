@@ -2,15 +2,30 @@ package io.github.ageofwar.bit.types;
 
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.BinaryOperator;
 import java.util.stream.Stream;
 
 public class Types {
+    private static final Interner TYPES = new Interner();
+    private static final SubtypeCache SUBTYPES = new SubtypeCache(1 << 16);
+    private static final Set<Type> OPEN = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    private static final Set<Type> KNOTS = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    private static final Map<Type, Integer> ATOM_IDS = new ConcurrentHashMap<>();
+    private static final List<Type> ATOMS = new CopyOnWriteArrayList<>();
+    private static final Map<Type, Long> ORDINALS = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final AtomicLong NEXT_ORDINAL = new AtomicLong();
     private static final Type ANY = new Type.Any();
     private static final Type NEVER = new Type.Never();
-    private static final Type NONE = new Type.Nominal("None");
-    private static final Type TRUE = new Type.Nominal("true");
-    private static final Type FALSE = new Type.Nominal("false");
+    private static final Type NONE = nominal("None");
+    private static final Type TRUE = nominal("true");
+    private static final Type FALSE = nominal("false");
     private static final Type INTEGER = new Type.Integer();
+    private static final Type STRING = newString();
 
     private Types() {
     }
@@ -20,13 +35,24 @@ public class Types {
     }
 
     public static Type integer(BigInteger value) {
-        return new Type.NumberLiteral(value);
+        return TYPES.intern(Arrays.asList(Type.NumberLiteral.class, value), () -> new Type.NumberLiteral(value));
     }
 
     public static Type integer(String value) {
         return integer(new BigInteger(value));
     }
 
+    // a null bound leaves that side of the range open
+    public static Type range(BigInteger lo, BigInteger hi) {
+        if (lo == null && hi == null) return INTEGER;
+        if (lo != null && hi != null) {
+            var comparison = lo.compareTo(hi);
+            if (comparison > 0) return NEVER;
+            if (comparison == 0) return integer(lo);
+        }
+        return TYPES.intern(Arrays.asList(Type.Range.class, lo, hi), () -> new Type.Range(lo, hi));
+    }
+
     public static Type any() {
         return ANY;
     }
@@ -48,97 +74,324 @@ public class Types {
     }
 
     public static Type _boolean() {
-        return new Type.Union(_true(), _false());
+        return union(_true(), _false());
     }
 
+    // one shared instance, so that the runtime can test strings against it by identity
     public static Type string() {
+        return STRING;
+    }
+
+    private static Type newString() {
         var fields = new HashMap<String, Type>();
-        var string = struct(fields);
+        var string = recursiveStruct(fields);
         fields.put("sequence", function(struct(Map.of("next", function(union(string, none()))))));
         fields.put("size", function(integer()));
         fields.put("get", function(string, integer()));
-        return string;
+        return close(string);
     }
 
+    // the structural type of a native list, which makes it a MutableList of the stdlib
+    public static Type list(Type element) {
+        var elementOrNone = union(element, none());
+        var fields = new HashMap<String, Type>();
+        fields.put("sequence", function(struct(Map.of("next", function(elementOrNone)))));
+        fields.put("size", function(integer()));
+        fields.put("get", function(elementOrNone, integer()));
+        fields.put("set", function(elementOrNone, integer(), element));
+        fields.put("add", function(none(), element));
+        fields.put("remove", function(elementOrNone, integer()));
+        return struct(fields);
+    }
+
+    // the fields are copied in the order of their names, which is also the key they are interned by
     public static Type struct(Map<String, Type> fields) {
-        return new Type.Struct(fields);
+        var sorted = new LinkedHashMap<String, Type>();
+        var key = new ArrayList<Object>(1 + 2 * fields.size());
+        key.add(Type.Struct.class);
+        for (var name : new TreeSet<>(fields.keySet())) {
+            sorted.put(name, fields.get(name));
+            key.add(name);
+            key.add(fields.get(name));
+        }
+        return TYPES.intern(key, () -> new Type.Struct(Collections.unmodifiableMap(sorted)));
+    }
+
+    // a struct whose fields are put in the map after it is created, so that they can refer to the struct itself. Until
+    // it is closed, it is not interned and subtype answers about it are not cached
+    public static Type.Struct recursiveStruct(Map<String, Type> fields) {
+        var struct = new Type.Struct(fields);
+        OPEN.add(struct);
+        return struct;
+    }
+
+    // all the fields of a recursive struct are in place; returns its canonical instance. A struct that does not reach
+    // itself is interned by its parts, one that does by its shape, unless it reaches another struct that is still open
+    public static Type close(Type.Struct struct) {
+        OPEN.remove(struct);
+        var shape = new Shape(struct);
+        if (!shape.recursive) return struct(struct.fields());
+        if (shape.open) return struct;
+        return TYPES.intern(shape.key, () -> {
+            KNOTS.add(struct);
+            return struct;
+        });
+    }
+
+    // the graph a recursive struct reaches, in the order of its parts: each struct, union, intersection and function is
+    // numbered when first met and is its number when met again. Closed recursive structs interned already stop the walk
+    private static final class Shape {
+        private final Type.Struct root;
+        private final Map<Type, Integer> numbers = new IdentityHashMap<>();
+        private final List<Object> key = new ArrayList<>();
+        private boolean recursive;
+        private boolean open;
+
+        Shape(Type.Struct root) {
+            this.root = root;
+            key.add(Shape.class);
+            add(root);
+        }
+
+        private void add(Type type) {
+            var number = numbers.get(type);
+            if (number != null) {
+                if (type == root) recursive = true;
+                key.add(new Seen(number));
+                return;
+            }
+            switch (type) {
+                case Type.Struct struct when !KNOTS.contains(struct) -> {
+                    if (struct != root && OPEN.contains(struct)) open = true;
+                    numbers.put(type, numbers.size());
+                    key.add(Type.Struct.class);
+                    key.add(struct.fields().size());
+                    for (var name : new TreeSet<>(struct.fields().keySet())) {
+                        key.add(name);
+                        add(struct.fields().get(name));
+                    }
+                }
+                case Type.Union(var types) -> {
+                    numbers.put(type, numbers.size());
+                    key.add(Type.Union.class);
+                    key.add(types.length);
+                    for (var member : types) add(member);
+                }
+                case Type.Intersection(var types) -> {
+                    numbers.put(type, numbers.size());
+                    key.add(Type.Intersection.class);
+                    key.add(types.length);
+                    for (var member : types) add(member);
+                }
+                case Type.Function(var returnType, var generics, var parameters) -> {
+                    numbers.put(type, numbers.size());
+                    key.add(Type.Function.class);
+                    key.add(generics);
+                    key.add(parameters.length);
+                    add(returnType);
+                    for (var parameter : parameters) add(parameter);
+                }
+                default -> key.add(type);
+            }
+        }
     }
 
+    private record Seen(int number) {}
+
     public static Type function(Type returnType, Type... parameters) {
-        return new Type.Function(returnType, List.of(), parameters);
+        return function(returnType, List.of(), parameters);
     }
 
     public static Type function(Type returnType, List<Type.TypeVariable> generics, Type... parameters) {
-        return new Type.Function(returnType, generics, parameters);
+        var key = new ArrayList<Object>(3 + parameters.length);
+        key.add(Type.Function.class);
+        key.add(returnType);
+        key.add(List.copyOf(generics));
+        key.addAll(Arrays.asList(parameters));
+        return TYPES.intern(key, () -> new Type.Function(returnType, List.copyOf(generics), parameters.clone()));
     }
 
     public static Type nominal(String name) {
-        return new Type.Nominal(name);
+        return TYPES.intern(Arrays.asList(Type.Nominal.class, name), () -> new Type.Nominal(name));
     }
 
+    // a union is kept in a canonical order: its nominals by atom, then its integers as disjoint intervals that do not
+    // touch, from the lowest, then the remaining members by ordinal. Nominals only extend themselves and integers only
+    // other integers, so only the remaining members have to be compared with each other
     public static Type union(Type... types) {
-        var actualTypes = new ArrayList<Type>();
-
+        var members = new Members();
         for (var type : types) {
-            if (type == ANY) return ANY;
-            if (type == NEVER) continue;
-            if (type instanceof Type.Union(var subTypes)) {
-                for (var subType : subTypes) {
-                    if (subType == ANY) return ANY;
-                    if (subType == NEVER) continue;
-                    if (actualTypes.stream().anyMatch(t -> extend(subType, t))) continue;
-                    actualTypes.removeIf(t -> extend(t, subType));
-                    actualTypes.add(subType);
+            if (!members.add(type)) return ANY;
+        }
+        return members.union();
+    }
+
+    private static Type unionOf(List<Type> types) {
+        var key = new ArrayList<Object>(1 + types.size());
+        key.add(Type.Union.class);
+        key.addAll(types);
+        return TYPES.intern(key, () -> new Type.Union(types.toArray(Type[]::new)));
+    }
+
+    // the members of a union split by kind
+    private static final class Members {
+        private final BitSet atoms = new BitSet();
+        private final List<Type.Range> intervals = new ArrayList<>();
+        private final List<Type> others = new ArrayList<>();
+
+        static Members of(Type type) {
+            var members = new Members();
+            members.add(type);
+            return members;
+        }
+
+        // false when the type is Any, which absorbs the whole union
+        boolean add(Type type) {
+            switch (type) {
+                case Type.Any any -> {
+                    return false;
                 }
-                continue;
+                case Type.Never never -> {
+                }
+                case Type.Union(var types) -> {
+                    for (var member : types) {
+                        if (!add(member)) return false;
+                    }
+                }
+                case Type.Nominal nominal -> atoms.set(atom(nominal));
+                case Type.NumberLiteral literal -> intervals.add(bounds(literal));
+                case Type.Range range -> intervals.add(range);
+                case Type.Integer integer -> intervals.add(bounds(integer));
+                default -> others.add(type);
+            }
+            return true;
+        }
+
+        List<Type.Range> coalesced() {
+            if (intervals.size() < 2) return intervals;
+            var sorted = new ArrayList<>(intervals);
+            sorted.sort((a, b) -> a.lo() == null ? (b.lo() == null ? 0 : -1) : b.lo() == null ? 1 : a.lo().compareTo(b.lo()));
+            var merged = new ArrayList<Type.Range>();
+            var current = sorted.getFirst();
+            for (var range : sorted.subList(1, sorted.size())) {
+                if (current.hi() == null || range.lo() == null || range.lo().compareTo(current.hi().add(BigInteger.ONE)) <= 0) {
+                    current = new Type.Range(current.lo(), current.hi() == null || range.hi() == null ? null : current.hi().max(range.hi()));
+                } else {
+                    merged.add(current);
+                    current = range;
+                }
+            }
+            merged.add(current);
+            return merged;
+        }
+
+        Type union() {
+            var types = new ArrayList<Type>();
+            for (var atom = atoms.nextSetBit(0); atom >= 0; atom = atoms.nextSetBit(atom + 1)) {
+                types.add(ATOMS.get(atom));
+            }
+            for (var interval : coalesced()) {
+                types.add(range(interval.lo(), interval.hi()));
             }
-            if (actualTypes.stream().anyMatch(t -> extend(type, t))) continue;
-            actualTypes.removeIf(t -> extend(t, type));
-            actualTypes.add(type);
+            var atomic = types.size();
+            var kept = new ArrayList<Type>();
+            for (var type : others) {
+                // a type variable may be bounded by the nominals or the integers of the union
+                if (type instanceof Type.TypeVariable && types.subList(0, atomic).stream().anyMatch(t -> extend(type, t))) continue;
+                if (kept.stream().anyMatch(t -> extend(type, t))) continue;
+                kept.removeIf(t -> extend(t, type));
+                kept.add(type);
+            }
+            kept.sort(Comparator.comparingLong(Types::ordinal));
+            types.addAll(kept);
+            if (types.isEmpty()) return NEVER;
+            if (types.size() == 1) return types.getFirst();
+            return unionOf(types);
         }
+    }
 
-        if (actualTypes.isEmpty()) return NEVER;
-        if (actualTypes.size() == 1) return actualTypes.getFirst();
+    private static int atom(Type.Nominal nominal) {
+        return ATOM_IDS.computeIfAbsent(nominal, n -> {
+            synchronized (ATOMS) {
+                ATOMS.add(n);
+                return ATOMS.size() - 1;
+            }
+        });
+    }
 
-        return new Type.Union(actualTypes.toArray(Type[]::new));
+    // a stable order between types that have no other, the order they were first put in a union
+    private static long ordinal(Type type) {
+        return ORDINALS.computeIfAbsent(type, t -> NEXT_ORDINAL.getAndIncrement());
     }
 
     public static Type intersection(Type... types) {
         var actualType = any();
-
         for (var type : types) {
-            if (type == ANY) continue;
-            if (type == NEVER) return NEVER;
             if (type instanceof Type.Intersection(var subTypes)) {
                 for (var subType : subTypes) {
-                    if (subType == ANY) continue;
-                    if (subType == NEVER) return NEVER;
-                    if (extend(actualType, subType)) continue;
-                    if (extend(subType, actualType)) actualType = subType;
+                    actualType = intersect(actualType, subType);
                 }
-                continue;
+            } else {
+                actualType = intersect(actualType, type);
             }
-            if (extend(actualType, type)) continue;
-            if (extend(type, actualType)) actualType = type;
-            if (actualType instanceof Type.Struct(var fields) && type instanceof Type.Struct(var newFields)) {
-                var mergedFields = new HashMap<>(fields);
-                mergedFields.putAll(newFields);
-                for (var entry : newFields.entrySet()) {
-                    if (fields.containsKey(entry.getKey())) {
-                        mergedFields.put(entry.getKey(), intersection(fields.get(entry.getKey()), entry.getValue()));
-                    }
+        }
+        return actualType;
+    }
+
+    private static Type intersect(Type actualType, Type type) {
+        if (type == ANY) return actualType;
+        if (actualType == ANY) return type;
+        if (type == NEVER || actualType == NEVER) return NEVER;
+        if (extend(actualType, type)) return actualType;
+        if (extend(type, actualType)) return type;
+        if (actualType instanceof Type.Union || type instanceof Type.Union) return meet(actualType, type);
+        if (isInteger(actualType) && isInteger(type)) {
+            var bounds = bounds(actualType);
+            var newBounds = bounds(type);
+            return range(max(bounds.lo(), newBounds.lo()), bounds.hi() == null ? newBounds.hi() : newBounds.hi() == null ? bounds.hi() : bounds.hi().min(newBounds.hi()));
+        }
+        if (actualType instanceof Type.Struct(var fields) && type instanceof Type.Struct(var newFields)) {
+            var mergedFields = new HashMap<>(fields);
+            mergedFields.putAll(newFields);
+            for (var entry : newFields.entrySet()) {
+                if (fields.containsKey(entry.getKey())) {
+                    mergedFields.put(entry.getKey(), intersection(fields.get(entry.getKey()), entry.getValue()));
                 }
-                actualType = struct(mergedFields);
             }
-            if (actualType instanceof Type.Union(var unionTypes)) {
-                actualType = union(Stream.of(unionTypes).filter(t -> extend(type, t)).toArray(Type[]::new));
+            return struct(mergedFields);
+        }
+        return actualType;
+    }
+
+    // the common nominals, the overlap of the intervals and, for the other members, those that extend the other side
+    // and the merge of two structs
+    private static Type meet(Type leftType, Type rightType) {
+        var left = Members.of(leftType);
+        var right = Members.of(rightType);
+        var result = new Members();
+        result.atoms.or(left.atoms);
+        result.atoms.and(right.atoms);
+        var rightIntervals = right.coalesced();
+        for (var l : left.coalesced()) {
+            for (var r : rightIntervals) {
+                var lo = max(l.lo(), r.lo());
+                var hi = l.hi() == null ? r.hi() : r.hi() == null ? l.hi() : l.hi().min(r.hi());
+                if (lo == null || hi == null || lo.compareTo(hi) <= 0) result.intervals.add(new Type.Range(lo, hi));
             }
-            if (type instanceof Type.Union(var unionTypes)) {
-                var tt = actualType;
-                actualType = union(Stream.of(unionTypes).filter(t -> extend(tt, t)).toArray(Type[]::new));
+        }
+        for (var l : left.others) {
+            if (extend(l, rightType)) {
+                result.add(l);
+                continue;
+            }
+            for (var r : right.others) {
+                if (l instanceof Type.Struct && r instanceof Type.Struct) result.add(intersect(l, r));
             }
         }
-        return actualType;
+        for (var r : right.others) {
+            if (extend(r, leftType)) result.add(r);
+        }
+        return result.union();
     }
 
     public static Type.TypeVariable generic(Type extendsType) {
@@ -194,12 +447,12 @@ public class Types {
                     );
             case Type.Struct(var fields) -> {
                 var copy = new HashMap<String, Type>();
-                var struct = struct(copy);
+                var struct = recursiveStruct(copy);
                 visited.put(type, struct); // Importante: registra PRIMA di ricorrere
                 for (var e : fields.entrySet()) {
                     copy.put(e.getKey(), complete(e.getValue(), mapping, visited));
                 }
-                yield struct;
+                yield close(struct);
             }
             default -> type;
         };
@@ -264,7 +517,13 @@ public class Types {
 
                 unify(returnType, actualFn.returnType(), mapping, covariant);
             }
-            case Type.Struct(var fields) -> unify(new ArrayList<>(fields.values()), new ArrayList<>( actualType instanceof Type.Struct ? ((Type.Struct) actualType).fields().values() : fields.values().stream().map((f) -> never()).toList()) , mapping);
+            case Type.Struct(var fields) -> {
+                // fields are matched by name, the actual struct may declare more of them in any order
+                var actualFields = actualType instanceof Type.Struct(var f) ? f : Map.<String, Type>of();
+                for (var field : fields.entrySet()) {
+                    unify(field.getValue(), actualFields.getOrDefault(field.getKey(), never()), mapping);
+                }
+            }
             default -> {}
         }
     }
@@ -284,26 +543,63 @@ public class Types {
     // extends
 
     public static boolean extend(Type type, Type other) {
-        return extend(type, other, new HashSet<>());
+        return extend(type, other, new Assumptions());
+    }
+
+    public static SubtypeCache.Statistics subtypeStatistics() {
+        return SUBTYPES.statistics();
     }
 
     private record Pair<T, U>(T first, U second) {}
-    private static boolean extend(Type type, Type other, Set<Pair<Type, Type>> visited) {
+
+    // the queries being decided on the current path, assumed to hold when they are reached again, and the shallowest
+    // of them the answers below have relied on, OPEN_STRUCT when they looked at a struct that is not closed yet
+    private static final class Assumptions {
+        private static final int OPEN_STRUCT = -1;
+
+        private final Map<Pair<Type, Type>, Integer> pending = new HashMap<>();
+        private int lowest = Integer.MAX_VALUE;
+    }
+
+    private static boolean extend(Type type, Type other, Assumptions visited) {
+        if (type == other) return true;
+        if (other == any()) return true;
+
         var pair = new Pair<>(type, other);
-        if (visited.contains(pair)) {
-            // Se abbiamo già controllato questa coppia, evitiamo di rieseguire
+        var cached = SUBTYPES.get(pair);
+        if (cached != null) return cached;
+        var assumed = visited.pending.get(pair);
+        if (assumed != null) {
+            visited.lowest = Math.min(visited.lowest, assumed);
             return true;
         }
-        visited.add(pair);
+        var depth = visited.pending.size();
+        visited.pending.put(pair, depth);
+        var outer = visited.lowest;
+        visited.lowest = Integer.MAX_VALUE;
 
-        if (type == other) return true;
-        if (other == any()) return true;
+        var result = decide(type, other, visited);
 
+        visited.pending.remove(pair);
+        // assumptions only make an answer more likely to be true, so false is final; true is final unless it relied on
+        // a query further up the path that may still turn out false
+        var dependent = visited.lowest < depth;
+        if (visited.lowest != Assumptions.OPEN_STRUCT && (!result || !dependent)) SUBTYPES.put(pair, result);
+        visited.lowest = dependent ? Math.min(outer, visited.lowest) : outer;
+        return result;
+    }
+
+    private static boolean decide(Type type, Type other, Assumptions visited) {
+        // the fields of an open struct may still change, so no answer that looked at them is final
+        if (type instanceof Type.Struct && OPEN.contains(type) || other instanceof Type.Struct && OPEN.contains(other)) {
+            visited.lowest = Assumptions.OPEN_STRUCT;
+        }
         return switch (type) {
             case Type.Never never -> true;
             case Type.Any any -> false;
             case Type.Nominal nominal -> extend(nominal, other, visited);
             case Type.NumberLiteral numberLiteral -> extend(numberLiteral, other, visited);
+            case Type.Range range -> extend(range, other, visited);
             case Type.Integer integer -> extend(integer, other, visited);
             case Type.Union union -> extend(union, other, visited);
             case Type.Intersection intersection -> extend(intersection, other, visited);
@@ -313,39 +609,60 @@ public class Types {
         };
     }
 
-    private static boolean extend(Type.Nominal type, Type other, Set<Pair<Type, Type>> visited) {
+    private static boolean extend(Type.Nominal type, Type other, Assumptions visited) {
         if (other instanceof Type.Union(var types)) {
             return Stream.of(types).anyMatch(t -> extend(type, t, visited));
         }
         return type == other;
     }
 
-    private static boolean extend(Type.NumberLiteral type, Type other, Set<Pair<Type, Type>> visited) {
+    private static boolean extend(Type.NumberLiteral type, Type other, Assumptions visited) {
         if (other == INTEGER) return true;
         if (other instanceof Type.Union(var types)) return Stream.of(types).anyMatch(t -> extend(type, t, visited));
+        if (other instanceof Type.Range range) return contains(range, bounds(type));
         return other instanceof Type.NumberLiteral(var value) && type.value().equals(value);
     }
 
-    private static boolean extend(Type.Integer type, Type other, Set<Pair<Type, Type>> visited) {
+    private static boolean extend(Type.Integer type, Type other, Assumptions visited) {
         if (other instanceof Type.Union(var types)) return Stream.of(types).anyMatch(t -> extend(type, t, visited));
         return other == INTEGER;
     }
 
-    private static boolean extend(Type.Union type, Type other, Set<Pair<Type, Type>> visited) {
+    private static boolean extend(Type.Union type, Type other, Assumptions visited) {
+        if (other instanceof Type.Union union) return extend(Members.of(type), union, visited);
         for (var t : type.types()) {
             if (!extend(t, other, visited)) return false;
         }
         return true;
     }
 
-    private static boolean extend(Type.Intersection type, Type other, Set<Pair<Type, Type>> visited) {
+    // between two unions the nominals are a subset test and every interval has to lie in one of the other side, which
+    // are sorted and apart; only the remaining members are checked one by one
+    private static boolean extend(Members members, Type.Union union, Assumptions visited) {
+        var other = Members.of(union);
+        var atoms = (BitSet) members.atoms.clone();
+        atoms.andNot(other.atoms);
+        if (!atoms.isEmpty()) return false;
+        var intervals = other.coalesced();
+        var i = 0;
+        for (var interval : members.coalesced()) {
+            while (i < intervals.size() && intervals.get(i).hi() != null && interval.lo() != null && intervals.get(i).hi().compareTo(interval.lo()) < 0) i++;
+            if (i == intervals.size() || !contains(intervals.get(i), interval)) return false;
+        }
+        for (var t : members.others) {
+            if (!extend(t, union, visited)) return false;
+        }
+        return true;
+    }
+
+    private static boolean extend(Type.Intersection type, Type other, Assumptions visited) {
         for (var t : type.types()) {
             if (extend(t, other, visited)) return true;
         }
         return false;
     }
 
-    private static boolean extend(Type.Function function, Type other, Set<Pair<Type, Type>> visited) {
+    private static boolean extend(Type.Function function, Type other, Assumptions visited) {
         if (other instanceof Type.Union(var types)) return Stream.of(types).anyMatch(t -> extend(function, t, visited));
         if (!(other instanceof Type.Function(var returnType, var generics, var parameters))) return false;
         if (!extend(function.returnType(), returnType, visited)) return false;
@@ -355,7 +672,7 @@ public class Types {
         return true;
     }
 
-    private static boolean extend(Type.Struct type, Type other, Set<Pair<Type, Type>> visited) {
+    private static boolean extend(Type.Struct type, Type other, Assumptions visited) {
         if (other instanceof Type.Union(var types)) return Stream.of(types).anyMatch(t -> extend(type, t, visited));
         if (!(other instanceof Type.Struct(var fields))) return false;
         for (var entry : fields.entrySet()) {
@@ -365,78 +682,129 @@ public class Types {
         return true;
     }
 
-    private static boolean extend(Type.TypeVariable typeVariable, Type other, Set<Pair<Type, Type>> visited) {
+    private static boolean extend(Type.TypeVariable typeVariable, Type other, Assumptions visited) {
         if (other instanceof Type.TypeVariable otherTypeVariable) return typeVariable.name().equals(otherTypeVariable.name());
         if (other instanceof Type.Union(var types)) return Stream.of(types).anyMatch(t -> extend(typeVariable, t, visited));
         return extend(typeVariable.bounds(), other, visited);
     }
 
+    private static boolean extend(Type.Range type, Type other, Assumptions visited) {
+        if (other == INTEGER) return true;
+        if (other instanceof Type.Union(var types)) return Stream.of(types).anyMatch(t -> extend(type, t, visited));
+        return other instanceof Type.Range range && contains(range, type);
+    }
+
+    // ranges
+
+    private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+    private static final int DISTRIBUTION_LIMIT = 16;
+
+    // the interval an integer type lies in, null for types that are not integers; unions are widened to their hull
+    private static Type.Range bounds(Type type) {
+        return switch (type) {
+            case Type.NumberLiteral(var value) -> new Type.Range(value, value);
+            case Type.Range range -> range;
+            case Type.Integer integer -> new Type.Range(null, null);
+            case Type.TypeVariable typeVariable -> bounds(typeVariable.bounds());
+            case Type.Union(var types) -> {
+                BigInteger lo = null, hi = null;
+                for (var i = 0; i < types.length; i++) {
+                    var bounds = bounds(types[i]);
+                    if (bounds == null) yield null;
+                    lo = i == 0 || lo != null && bounds.lo() != null ? min(lo, bounds.lo()) : null;
+                    hi = i == 0 || hi != null && bounds.hi() != null ? max(hi, bounds.hi()) : null;
+                }
+                yield types.length == 0 ? null : new Type.Range(lo, hi);
+            }
+            default -> null;
+        };
+    }
+
+    // a single interval: a number literal, a range or Integer itself
+    private static boolean isInteger(Type type) {
+        return type instanceof Type.NumberLiteral || type instanceof Type.Range || type == INTEGER;
+    }
+
+    private static boolean isBounded(Type.Range range) {
+        return range.lo() != null && range.hi() != null;
+    }
+
+    private static boolean contains(Type.Range outer, Type.Range inner) {
+        return (outer.lo() == null || inner.lo() != null && outer.lo().compareTo(inner.lo()) <= 0)
+                && (outer.hi() == null || inner.hi() != null && outer.hi().compareTo(inner.hi()) >= 0);
+    }
+
+    private static boolean disjoint(Type left, Type right) {
+        if (!isInteger(left) || !isInteger(right)) return false;
+        var leftBounds = bounds(left);
+        var rightBounds = bounds(right);
+        return leftBounds.hi() != null && rightBounds.lo() != null && leftBounds.hi().compareTo(rightBounds.lo()) < 0
+                || rightBounds.hi() != null && leftBounds.lo() != null && rightBounds.hi().compareTo(leftBounds.lo()) < 0;
+    }
+
+    private static Type hull(BigInteger... values) {
+        var lo = values[0];
+        var hi = values[0];
+        for (var value : values) {
+            lo = lo.min(value);
+            hi = hi.max(value);
+        }
+        return range(lo, hi);
+    }
+
+    // null stands for the open side, so it absorbs everything it is added to
+    private static BigInteger sum(BigInteger a, BigInteger b) {
+        return a == null || b == null ? null : a.add(b);
+    }
+
+    private static BigInteger difference(BigInteger a, BigInteger b) {
+        return a == null || b == null ? null : a.subtract(b);
+    }
+
+    private static BigInteger min(BigInteger a, BigInteger b) {
+        return a == null ? b : b == null ? a : a.min(b);
+    }
+
+    private static BigInteger max(BigInteger a, BigInteger b) {
+        return a == null ? b : b == null ? a : a.max(b);
+    }
+
     // operations
 
     public static Type add(Type left, Type right) {
-        if (!extend(left, integer())) throw new IllegalArgumentException("Left operand must be an integer type");
-        if (!extend(right, integer())) throw new IllegalArgumentException("Right operand must be an integer type");
-        if (left instanceof Type.NumberLiteral(var value1) && right instanceof Type.NumberLiteral(var value2)) {
-            return integer(value1.add(value2));
-        }
-        if (left instanceof Type.Union(var types)) {
-            return union(Stream.of(types).map(t -> add(t, right)).toArray(Type[]::new));
-        }
-        if (right instanceof Type.Union(var types)) {
-            return union(Stream.of(types).map(t -> add(left, t)).toArray(Type[]::new));
-        }
-        return integer();
+        return arithmetic(left, right, Types::add, (l, r) -> range(sum(l.lo(), r.lo()), sum(l.hi(), r.hi())));
     }
 
     public static Type subtract(Type left, Type right) {
-        if (!extend(left, integer())) throw new IllegalArgumentException("Left operand must be an integer type");
-        if (!extend(right, integer())) throw new IllegalArgumentException("Right operand must be an integer type");
-        if (left instanceof Type.NumberLiteral(var value1) && right instanceof Type.NumberLiteral(var value2)) {
-            return integer(value1.subtract(value2));
-        }
-        if (left instanceof Type.Union(var types)) {
-            return union(Stream.of(types).map(t -> subtract(t, right)).toArray(Type[]::new));
-        }
-        if (right instanceof Type.Union(var types)) {
-            return union(Stream.of(types).map(t -> subtract(left, t)).toArray(Type[]::new));
-        }
-        return integer();
+        return arithmetic(left, right, Types::subtract, (l, r) -> range(difference(l.lo(), r.hi()), difference(l.hi(), r.lo())));
     }
 
     public static Type multiply(Type left, Type right) {
-        if (!extend(left, integer())) throw new IllegalArgumentException("Left operand must be an integer type");
-        if (!extend(right, integer())) throw new IllegalArgumentException("Right operand must be an integer type");
-        if (left instanceof Type.NumberLiteral(var value1) && right instanceof Type.NumberLiteral(var value2)) {
-            return integer(value1.multiply(value2));
-        }
-        if (left instanceof Type.Union(var types)) {
-            return union(Stream.of(types).map(t -> multiply(t, right)).toArray(Type[]::new));
-        }
-        if (right instanceof Type.Union(var types)) {
-            return union(Stream.of(types).map(t -> multiply(left, t)).toArray(Type[]::new));
-        }
-        return integer();
+        return arithmetic(left, right, Types::multiply, (l, r) -> {
+            if (!isBounded(l) || !isBounded(r)) return integer();
+            return hull(l.lo().multiply(r.lo()), l.lo().multiply(r.hi()), l.hi().multiply(r.lo()), l.hi().multiply(r.hi()));
+        });
     }
 
     public static Type divide(Type left, Type right) {
-        if (!extend(left, integer())) throw new IllegalArgumentException("Left operand must be an integer type");
-        if (!extend(right, integer())) throw new IllegalArgumentException("Right operand must be an integer type");
-        if (left instanceof Type.NumberLiteral(var value1) && right instanceof Type.NumberLiteral(var value2)) {
-            if (value2.equals(BigInteger.ZERO)) throw new ArithmeticException("Division by zero");
-            return integer(value1.divide(value2));
-        }
-        if (left instanceof Type.Union(var types)) {
-            return union(Stream.of(types).map(t -> divide(t, right)).toArray(Type[]::new));
-        }
-        if (right instanceof Type.Union(var types)) {
-            return union(Stream.of(types).map(t -> divide(left, t)).toArray(Type[]::new));
+        return arithmetic(left, right, Types::divide, Types::divide);
+    }
+
+    private static Type divide(Type.Range left, Type.Range right) {
+        if (BigInteger.ZERO.equals(right.lo()) && BigInteger.ZERO.equals(right.hi())) throw new ArithmeticException("Division by zero");
+        if (!isBounded(left) || !isBounded(right)) return integer();
+        // zero itself is not a divisor, so a range across it splits into its negative and its positive part
+        if (right.lo().signum() <= 0 && right.hi().signum() >= 0) {
+            var negative = right.lo().signum() < 0 ? divide(left, new Type.Range(right.lo(), BigInteger.ONE.negate())) : never();
+            var positive = right.hi().signum() > 0 ? divide(left, new Type.Range(BigInteger.ONE, right.hi())) : never();
+            return union(negative, positive);
         }
-        return integer();
+        // truncating division is monotonic in both operands once the divisor keeps its sign
+        return hull(left.lo().divide(right.lo()), left.lo().divide(right.hi()), left.hi().divide(right.lo()), left.hi().divide(right.hi()));
     }
 
     public static Type divideExact(Type left, Type right) {
-        if (!extend(left, integer())) throw new IllegalArgumentException("Left operand must be an integer type");
-        if (!extend(right, integer())) throw new IllegalArgumentException("Right operand must be an integer type");
         if (left instanceof Type.NumberLiteral(var value1) && right instanceof Type.NumberLiteral(var value2)) {
             if (value2.equals(BigInteger.ZERO)) throw new ArithmeticException("Division by zero");
             var result = value1.divideAndRemainder(value2);
@@ -446,79 +814,92 @@ public class Types {
                 return never();
             }
         }
-        if (left instanceof Type.Union(var types)) {
-            return union(Stream.of(types).map(t -> divide(t, right)).toArray(Type[]::new));
-        }
-        if (right instanceof Type.Union(var types)) {
-            return union(Stream.of(types).map(t -> divide(left, t)).toArray(Type[]::new));
-        }
-        return integer();
+        return divide(left, right);
     }
 
-    public static Type lessThanOrEqual(Type left, Type right) {
+    // the values x for which x / divisor falls in quotient, as x = quotient * divisor + remainder with |remainder| < |divisor|
+    public static Type dividend(Type quotient, Type divisor) {
+        var bounds = bounds(divisor);
+        if (bounds == null || !isBounded(bounds)) return integer();
+        var remainder = bounds.lo().abs().max(bounds.hi().abs()).subtract(BigInteger.ONE).max(BigInteger.ZERO);
+        return add(multiply(quotient, divisor), range(remainder.negate(), remainder));
+    }
+
+    // operands are distributed over unions while that stays small, past it they are approximated by their bounds
+    private static Type arithmetic(Type left, Type right, BinaryOperator<Type> operation, BiFunction<Type.Range, Type.Range, Type> interval) {
         if (!extend(left, integer())) throw new IllegalArgumentException("Left operand must be an integer type");
         if (!extend(right, integer())) throw new IllegalArgumentException("Right operand must be an integer type");
-        if (left instanceof Type.NumberLiteral(var value1) && right instanceof Type.NumberLiteral(var value2)) {
-            return value1.compareTo(value2) <= 0 ? _true() : _false();
-        }
-        if (left instanceof Type.Union(var types)) {
-            return union(Stream.of(types).map(t -> lessThanOrEqual(t, right)).toArray(Type[]::new));
-        }
-        if (right instanceof Type.Union(var types)) {
-            return union(Stream.of(types).map(t -> lessThanOrEqual(left, t)).toArray(Type[]::new));
+        if (size(left) * size(right) <= DISTRIBUTION_LIMIT) {
+            if (left instanceof Type.Union(var types)) {
+                return union(Stream.of(types).map(t -> operation.apply(t, right)).toArray(Type[]::new));
+            }
+            if (right instanceof Type.Union(var types)) {
+                return union(Stream.of(types).map(t -> operation.apply(left, t)).toArray(Type[]::new));
+            }
         }
-        return _boolean();
+        var leftBounds = bounds(left);
+        var rightBounds = bounds(right);
+        if (leftBounds == null || rightBounds == null) return integer();
+        return interval.apply(leftBounds, rightBounds);
+    }
+
+    private static int size(Type type) {
+        return type instanceof Type.Union(var types) ? types.length : 1;
+    }
+
+    public static Type lessThanOrEqual(Type left, Type right) {
+        return compare(left, right, (l, r) -> l.compareTo(r) <= 0);
     }
 
     public static Type greaterThanOrEqual(Type left, Type right) {
-        if (!extend(left, integer())) throw new IllegalArgumentException("Left operand must be an integer type");
-        if (!extend(right, integer())) throw new IllegalArgumentException("Right operand must be an integer type");
-        if (left instanceof Type.NumberLiteral(var value1) && right instanceof Type.NumberLiteral(var value2)) {
-            return value1.compareTo(value2) >= 0 ? _true() : _false();
-        }
-        if (left instanceof Type.Union(var types)) {
-            return union(Stream.of(types).map(t -> greaterThanOrEqual(t, right)).toArray(Type[]::new));
-        }
-        if (right instanceof Type.Union(var types)) {
-            return union(Stream.of(types).map(t -> greaterThanOrEqual(left, t)).toArray(Type[]::new));
-        }
-        return _boolean();
+        return compare(right, left, (l, r) -> l.compareTo(r) <= 0);
     }
 
     public static Type lessThan(Type left, Type right) {
-        if (!extend(left, integer())) throw new IllegalArgumentException("Left operand must be an integer type");
-        if (!extend(right, integer())) throw new IllegalArgumentException("Right operand must be an integer type");
-        if (left instanceof Type.NumberLiteral(var value1) && right instanceof Type.NumberLiteral(var value2)) {
-            return value1.compareTo(value2) < 0 ? _true() : _false();
-        }
-        if (left instanceof Type.Union(var types)) {
-            return union(Stream.of(types).map(t -> lessThan(t, right)).toArray(Type[]::new));
-        }
-        if (right instanceof Type.Union(var types)) {
-            return union(Stream.of(types).map(t -> lessThan(left, t)).toArray(Type[]::new));
-        }
-        return _boolean();
+        return compare(left, right, (l, r) -> l.compareTo(r) < 0);
     }
 
     public static Type greaterThan(Type left, Type right) {
+        return compare(right, left, (l, r) -> l.compareTo(r) < 0);
+    }
+
+    // the comparison is known when it holds between the extremes of both sides, or fails between the opposite ones
+    private static Type compare(Type left, Type right, BiPredicate<BigInteger, BigInteger> holds) {
         if (!extend(left, integer())) throw new IllegalArgumentException("Left operand must be an integer type");
         if (!extend(right, integer())) throw new IllegalArgumentException("Right operand must be an integer type");
-        if (left instanceof Type.NumberLiteral(var value1) && right instanceof Type.NumberLiteral(var value2)) {
-            return value1.compareTo(value2) > 0 ? _true() : _false();
-        }
-        if (left instanceof Type.Union(var types)) {
-            return union(Stream.of(types).map(t -> greaterThan(t, right)).toArray(Type[]::new));
-        }
-        if (right instanceof Type.Union(var types)) {
-            return union(Stream.of(types).map(t -> greaterThan(left, t)).toArray(Type[]::new));
-        }
+        var leftBounds = bounds(left);
+        var rightBounds = bounds(right);
+        if (leftBounds == null || rightBounds == null) return _boolean();
+        if (leftBounds.hi() != null && rightBounds.lo() != null && holds.test(leftBounds.hi(), rightBounds.lo())) return _true();
+        if (leftBounds.lo() != null && rightBounds.hi() != null && !holds.test(leftBounds.lo(), rightBounds.hi())) return _false();
         return _boolean();
     }
 
+    // the integers that are less than (or equal to) some value of the type
+    public static Type rangeBelow(Type type, boolean inclusive) {
+        var bounds = bounds(type);
+        if (bounds == null || bounds.hi() == null) return integer();
+        return range(null, inclusive ? bounds.hi() : bounds.hi().subtract(BigInteger.ONE));
+    }
+
+    // the integers that are greater than (or equal to) some value of the type
+    public static Type rangeAbove(Type type, boolean inclusive) {
+        var bounds = bounds(type);
+        if (bounds == null || bounds.lo() == null) return integer();
+        return range(inclusive ? bounds.lo() : bounds.lo().add(BigInteger.ONE), null);
+    }
+
+    // whether every value of the type fits in a long
+    public static boolean fitsLong(Type type) {
+        var bounds = bounds(type);
+        return bounds != null && isBounded(bounds) && bounds.lo().compareTo(LONG_MIN) >= 0 && bounds.hi().compareTo(LONG_MAX) <= 0;
+    }
+
     public static Type equal(Type left, Type right) {
         if (left instanceof Type.NumberLiteral(var value1) && right instanceof Type.NumberLiteral(var value2)) {
             return value1.equals(value2) ? _true() : _false();
         }
+        if (disjoint(left, right)) return _false();
         if (left instanceof Type.Union(var types)) {
             return union(Stream.of(types).map(t -> equal(t, right)).toArray(Type[]::new));
         }
@@ -532,6 +913,7 @@ public class Types {
         if (left instanceof Type.NumberLiteral(var value1) && right instanceof Type.NumberLiteral(var value2)) {
             return !value1.equals(value2) ? _true() : _false();
         }
+        if (disjoint(left, right)) return _true();
         if (left instanceof Type.Union(var types)) {
             return union(Stream.of(types).map(t -> notEqual(t, right)).toArray(Type[]::new));
         }
@@ -543,13 +925,12 @@ public class Types {
 
     public static Type negate(Type type) {
         if (!extend(type, integer())) throw new IllegalArgumentException("Operand must be an integer type");
-        if (type instanceof Type.NumberLiteral(var value)) {
-            return integer(value.negate());
-        }
         if (type instanceof Type.Union(var types)) {
             return union(Stream.of(types).map(Types::negate).toArray(Type[]::new));
         }
-        return integer();
+        var bounds = bounds(type);
+        if (bounds == null) return integer();
+        return range(bounds.hi() == null ? null : bounds.hi().negate(), bounds.lo() == null ? null : bounds.lo().negate());
     }
 
     public static Type and(Type left, Type right) {
@@ -0,0 +1,47 @@
+package io.github.ageofwar;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// every program in src/test/programs prints what its .out file holds, on every engine, with and without folding
+class ProgramTest {
+    private static final Path PROGRAMS = Path.of("src/test/programs");
+    private static final String[] ENGINES = { "tree", "nodes", "bytecode" };
+
+    @Test
+    void programsPrintTheirExpectedOutput() throws IOException {
+        try (var files = Files.list(PROGRAMS)) {
+            for (var program : files.filter(file -> file.toString().endsWith(".bit")).sorted().toList()) {
+                var expected = Files.readString(PROGRAMS.resolve(program.getFileName().toString().replace(".bit", ".out")));
+                for (var engine : ENGINES) {
+                    assertEquals(expected, run(program, "--engine=" + engine), program + " on " + engine);
+                    assertEquals(expected, run(program, "--engine=" + engine, "--no-fold"), program + " on " + engine + " without folding");
+                }
+            }
+        }
+    }
+
+    private static String run(Path program, String... options) throws IOException {
+        var args = new String[options.length + 2];
+        System.arraycopy(options, 0, args, 0, options.length);
+        args[options.length] = "--no-cache";
+        args[options.length + 1] = program.toString();
+        var out = System.out;
+        var buffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(buffer, true, StandardCharsets.UTF_8));
+        try {
+            Main.main(args);
+        } finally {
+            System.setOut(out);
+        }
+        return buffer.toString(StandardCharsets.UTF_8);
+    }
+}
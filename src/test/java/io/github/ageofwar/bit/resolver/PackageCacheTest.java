@@ -0,0 +1,42 @@
+package io.github.ageofwar.bit.resolver;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PackageCacheTest {
+    private static final String SOURCE_KEY = "package";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void entryIsReadBack() {
+        var cache = new PackageCache(directory);
+        cache.write(SOURCE_KEY, new PackageCache.Entry("key", List.of(), new byte[] { 1, 2, 3 }));
+        var entry = cache.read(SOURCE_KEY);
+        assertNotNull(entry);
+        assertEquals("key", entry.key());
+    }
+
+    @Test
+    void entryOfAnotherFormatVersionIsIgnored() throws IOException {
+        var cache = new PackageCache(directory);
+        cache.write(SOURCE_KEY, new PackageCache.Entry("key", List.of(), new byte[] { 1, 2, 3 }));
+        // the version follows the magic number
+        var file = directory.resolve(SOURCE_KEY);
+        var bytes = Files.readAllBytes(file);
+        ByteBuffer.wrap(bytes).putInt(4, PackageCache.FORMAT_VERSION + 1);
+        Files.write(file, bytes);
+        assertNull(cache.read(SOURCE_KEY));
+    }
+}
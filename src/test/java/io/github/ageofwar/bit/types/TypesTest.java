@@ -0,0 +1,43 @@
+package io.github.ageofwar.bit.types;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static io.github.ageofwar.bit.types.Types.*;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class TypesTest {
+    @Test
+    void recursiveStructsOfTheSameShapeAreOneInstance() {
+        assertSame(node(), node());
+    }
+
+    @Test
+    void recursiveStructThatDoesNotReachItselfIsInternedByItsParts() {
+        var fields = new HashMap<String, Type>();
+        var struct = recursiveStruct(fields);
+        fields.put("value", integer());
+        assertSame(struct(Map.of("value", integer())), close(struct));
+    }
+
+    @Test
+    void recursiveStructsOfAnotherShapeAreKeptApart() {
+        var fields = new HashMap<String, Type>();
+        var struct = recursiveStruct(fields);
+        fields.put("next", function(union(struct, none())));
+        fields.put("value", string());
+        assertNotSame(node(), close(struct));
+    }
+
+    // a linked list node of integers
+    private static Type node() {
+        var fields = new HashMap<String, Type>();
+        var struct = recursiveStruct(fields);
+        fields.put("next", function(union(struct, none())));
+        fields.put("value", integer());
+        return close(struct);
+    }
+}